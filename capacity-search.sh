@@ -0,0 +1,93 @@
+#!/bin/bash
+set -e
+
+# Searches for the highest throughput billing-service sustains within the SLO, for one
+# messaging system. Runs the load simulator as a Job in capacity-search mode and prints
+# its report.
+#
+# Usage: ./capacity-search.sh <kafka|activemq|rabbitmq> [otel|oneagent]
+# The SLO and step sizes can be overridden through the LOAD_CAPACITY_* variables, e.g.
+#   LOAD_CAPACITY_SLO_P99_MS=250 ./capacity-search.sh kafka
+
+messaging_system=${1:?Usage: $0 <kafka|activemq|rabbitmq> [otel|oneagent]}
+instrumentation=${2:-otel}
+namespace="$instrumentation-$messaging_system"
+job="capacity-search-$(date +%s)"
+
+case $messaging_system in
+  kafka|activemq|rabbitmq) ;;
+  *) echo "Unknown messaging system: $messaging_system" >&2; exit 1 ;;
+esac
+
+# The regular load simulator would skew the measurement; pause it for the duration of the search
+replicas=$(kubectl get deployment load-simulator -n $namespace -o jsonpath='{.spec.replicas}' 2>/dev/null || echo 0)
+restore() {
+  kubectl delete job $job -n $namespace --ignore-not-found=true > /dev/null
+  if [ "$replicas" != "0" ]; then
+    kubectl scale deployment load-simulator -n $namespace --replicas=$replicas > /dev/null
+  fi
+}
+trap restore EXIT
+if [ "$replicas" != "0" ]; then
+  kubectl scale deployment load-simulator -n $namespace --replicas=0
+fi
+
+echo "Searching capacity of billing-service in namespace: $namespace"
+kubectl apply -f - <<YAML
+apiVersion: batch/v1
+kind: Job
+metadata:
+  name: $job
+  namespace: $namespace
+  labels:
+    app: capacity-search
+spec:
+  backoffLimit: 0
+  template:
+    metadata:
+      labels:
+        app: capacity-search
+    spec:
+      restartPolicy: Never
+      containers:
+      - name: load-simulator
+        image: ghcr.io/mreider/load-simulator:latest
+        imagePullPolicy: Always
+        env:
+        - name: OPENTELEMETRY_ENABLED
+          value: "false"
+        - name: OTEL_SDK_DISABLED
+          value: "true"
+        - name: BILLING_SERVICE_URL
+          value: "http://billing-service.$namespace:8080"
+        - name: LOAD_CAPACITY_ENABLED
+          value: "true"
+        - name: LOAD_EXIT_WHEN_DONE
+          value: "true"
+        - name: LOAD_MAX_IN_FLIGHT
+          value: "${LOAD_MAX_IN_FLIGHT:-64}"
+        - name: LOAD_CAPACITY_INITIAL_RATE
+          value: "${LOAD_CAPACITY_INITIAL_RATE:-50}"
+        - name: LOAD_CAPACITY_WARMUP_SECONDS
+          value: "${LOAD_CAPACITY_WARMUP_SECONDS:-10}"
+        - name: LOAD_CAPACITY_STEP_SECONDS
+          value: "${LOAD_CAPACITY_STEP_SECONDS:-30}"
+        - name: LOAD_CAPACITY_SLO_P99_MS
+          value: "${LOAD_CAPACITY_SLO_P99_MS:-500}"
+        - name: LOAD_CAPACITY_SLO_ERROR_RATE
+          value: "${LOAD_CAPACITY_SLO_ERROR_RATE:-0.01}"
+        resources:
+          limits:
+            cpu: "2"
+            memory: "1Gi"
+          requests:
+            cpu: "1"
+            memory: "512Mi"
+YAML
+
+kubectl wait --for=condition=ready pod -l job-name=$job -n $namespace --timeout=5m > /dev/null
+kubectl logs -f job/$job -n $namespace | grep --line-buffered -E "Capacity (step|search)"
+kubectl wait --for=condition=complete job/$job -n $namespace --timeout=5m > /dev/null
+
+echo "Capacity report for $namespace:"
+kubectl logs job/$job -n $namespace | sed -n '/Load report:/,/^}/p' | tail -n +2
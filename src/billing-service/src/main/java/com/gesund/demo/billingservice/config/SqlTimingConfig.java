@@ -0,0 +1,33 @@
+package com.gesund.demo.billingservice.config;
+
+import com.gesund.demo.billingservice.util.SqlStatementStats;
+import com.gesund.demo.billingservice.util.TimingDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+
+@Configuration
+@Slf4j
+@ConditionalOnProperty(name = "sql.timing.enabled", havingValue = "true", matchIfMissing = true)
+public class SqlTimingConfig {
+
+    // Static so the post processor is registered without instantiating this configuration early
+    @Bean
+    public static BeanPostProcessor timingDataSourcePostProcessor(ObjectProvider<SqlStatementStats> statementStats) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof DataSource dataSource && !(bean instanceof TimingDataSource)) {
+                    log.info("Timing SQL statements of data source '{}'", beanName);
+                    return new TimingDataSource(dataSource, statementStats.getObject());
+                }
+                return bean;
+            }
+        };
+    }
+}
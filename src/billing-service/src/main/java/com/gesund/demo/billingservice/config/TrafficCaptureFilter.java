@@ -0,0 +1,87 @@
+package com.gesund.demo.billingservice.config;
+
+import com.gesund.demo.billingservice.util.PipelineTimestamps;
+import com.gesund.demo.billingservice.util.TrafficLogWriter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingRequestWrapper;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Records every billing request body with its arrival time into a {@link TrafficLogWriter},
+ * so load-simulator can replay the exact traffic shape later.
+ *
+ * The body is captured from what the controller reads, so capture adds a copy of the
+ * request but no extra parsing. Every start writes a new file, so earlier captures are
+ * kept for replay.
+ */
+@Slf4j
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+@ConditionalOnProperty(name = "traffic.capture.enabled", havingValue = "true")
+public class TrafficCaptureFilter extends OncePerRequestFilter {
+
+    private final TrafficLogWriter writer;
+    private final Counter skipped;
+
+    public TrafficCaptureFilter(
+            @Value("${traffic.capture.file}") String file,
+            @Value("${traffic.capture.chunk-bytes:67108864}") int chunkBytes,
+            @Value("${traffic.capture.max-bytes:1073741824}") long maxBytes,
+            MeterRegistry meterRegistry) throws IOException {
+        Path target = TrafficLogWriter.nextFile(Path.of(file));
+        this.writer = new TrafficLogWriter(target, chunkBytes, maxBytes);
+        this.skipped = Counter.builder("traffic.capture.skipped")
+                .description("Billing requests missing from the traffic log")
+                .register(meterRegistry);
+        log.info("Capturing billing traffic to {} (limit: {} bytes)", target, maxBytes);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !"POST".equals(request.getMethod()) || !"/api/billing".equals(request.getRequestURI());
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        long arrivalMicros = PipelineTimestamps.nowMicros();
+        ContentCachingRequestWrapper wrapper = new ContentCachingRequestWrapper(request);
+        try {
+            chain.doFilter(wrapper, response);
+        } finally {
+            try {
+                if (!writer.append(arrivalMicros, wrapper.getContentAsByteArray())) {
+                    // The writer logs why; the replay of this log will be missing the request
+                    skipped.increment();
+                }
+            } catch (IOException | RuntimeException e) {
+                skipped.increment();
+                log.warn("Could not capture billing request: {}", e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+        // Called by both the servlet container and Spring; the writer ignores the second call
+        try {
+            writer.close();
+        } catch (IOException e) {
+            log.warn("Could not close traffic log: {}", e.getMessage());
+        }
+    }
+}
@@ -3,6 +3,7 @@ package com.gesund.demo.billingservice.controller;
 import com.gesund.demo.billingservice.model.BillingRequest;
 import com.gesund.demo.billingservice.model.BillingResponse;
 import com.gesund.demo.billingservice.service.BillingService;
+import com.gesund.demo.billingservice.util.BillingMetrics;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.ResponseEntity;
@@ -18,12 +19,13 @@ import org.springframework.web.bind.annotation.RestController;
 public class BillingController {
 
     private final BillingService billingService;
+    private final BillingMetrics billingMetrics;
 
     @PostMapping
     public ResponseEntity<BillingResponse> createBilling(@RequestBody BillingRequest request) {
         log.info("Received billing request for customer: {}", request.getCustomerId());
         
-        BillingResponse response = billingService.processBilling(request);
+        BillingResponse response = billingMetrics.recordProcessing(() -> billingService.processBilling(request));
         return ResponseEntity.ok(response);
     }
 }
@@ -0,0 +1,75 @@
+package com.gesund.demo.billingservice.controller;
+
+import com.gesund.demo.billingservice.util.JfrProfiler;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * On-demand JFR profiling: POST /admin/profiling/captures?seconds=30 records for that long
+ * and answers with the per-stage summary; the raw recording is then available from the
+ * "recording" path in the summary.
+ */
+@RestController
+@RequestMapping("/admin/profiling")
+@RequiredArgsConstructor
+@Slf4j
+public class ProfilingController {
+
+    private final JfrProfiler jfrProfiler;
+
+    @PostMapping("/captures")
+    public DeferredResult<ResponseEntity<Map<String, Object>>> capture(
+            @RequestParam(defaultValue = "30") long seconds) {
+        // Outlive the capture itself, whatever the container's default async timeout is
+        long timeoutMs = Duration.ofSeconds(Math.max(seconds, 0) + 60).toMillis();
+        DeferredResult<ResponseEntity<Map<String, Object>>> result = new DeferredResult<>(timeoutMs);
+
+        if (seconds <= 0 || seconds > jfrProfiler.getMaxDurationSeconds()) {
+            result.setResult(ResponseEntity.badRequest().build());
+            return result;
+        }
+        try {
+            jfrProfiler.capture(Duration.ofSeconds(seconds)).whenComplete((summary, error) -> {
+                if (error != null) {
+                    result.setResult(ResponseEntity.internalServerError().build());
+                } else {
+                    result.setResult(ResponseEntity.ok(summary));
+                }
+            });
+        } catch (IllegalStateException e) {
+            result.setResult(ResponseEntity.status(HttpStatus.CONFLICT).build());
+        } catch (Exception e) {
+            log.error("Could not start JFR capture: {}", e.getMessage(), e);
+            result.setResult(ResponseEntity.internalServerError().build());
+        }
+        return result;
+    }
+
+    @GetMapping("/recordings/{id}")
+    public ResponseEntity<Resource> recording(@PathVariable String id) {
+        return jfrProfiler.recording(id)
+                .<ResponseEntity<Resource>>map(file -> ResponseEntity.ok()
+                        .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                        .header(HttpHeaders.CONTENT_DISPOSITION,
+                                ContentDisposition.attachment().filename(file.getFileName().toString()).build().toString())
+                        .body(new FileSystemResource(file)))
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+}
@@ -0,0 +1,38 @@
+package com.gesund.demo.billingservice.controller;
+
+import com.gesund.demo.billingservice.util.SqlStatementStats;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+import java.util.Set;
+
+@RestController
+@RequestMapping("/admin/sql/top")
+@RequiredArgsConstructor
+public class SqlStatsController {
+
+    private static final Set<String> ORDER_BY = Set.of("total", "p99", "max", "calls", "rows", "errors");
+
+    private final SqlStatementStats statementStats;
+
+    @GetMapping
+    public ResponseEntity<Map<String, Object>> top(@RequestParam(defaultValue = "20") int limit,
+                                                   @RequestParam(defaultValue = "total") String orderBy) {
+        if (limit <= 0 || !ORDER_BY.contains(orderBy)) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(statementStats.top(limit, orderBy));
+    }
+
+    @DeleteMapping
+    public ResponseEntity<Void> reset() {
+        statementStats.reset();
+        return ResponseEntity.noContent().build();
+    }
+}
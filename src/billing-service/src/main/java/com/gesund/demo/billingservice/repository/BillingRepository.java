@@ -3,11 +3,13 @@ package com.gesund.demo.billingservice.repository;
 import com.gesund.demo.billingservice.model.BillingRecord;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.UUID;
 import java.util.Optional;
 
 @Repository
 public interface BillingRepository extends JpaRepository<BillingRecord, Long> {
+    @Transactional(readOnly = true)
     Optional<BillingRecord> findByTransactionId(UUID transactionId);
 }
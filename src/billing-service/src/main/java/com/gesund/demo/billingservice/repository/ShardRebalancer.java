@@ -0,0 +1,139 @@
+package com.gesund.demo.billingservice.repository;
+
+import com.gesund.demo.billingservice.util.CustomerShards;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Moves billing records whose customer is owned by a different shard than the one
+ * storing them, which is what happens to about 1/N of the customers when a shard is
+ * appended.
+ *
+ * Rows are moved per customer in chunks: a chunk is inserted on the owning shard, skipping
+ * transaction IDs that are already there, and then deleted from the old shard. A run that is
+ * interrupted between the two steps leaves duplicates behind that the next run cleans up,
+ * so rebalancing can simply be repeated until the plan is empty. New writes already go to
+ * the new owner, so the moving customers' old rows are the only ones in flight.
+ */
+@Slf4j
+@Repository
+public class ShardRebalancer {
+
+    private static final String TABLE = "billing_record";
+    private static final String KEY_COLUMN = "transaction_id";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final CustomerShards customerShards;
+    private final TransactionTemplate transactionTemplate;
+
+    public ShardRebalancer(JdbcTemplate jdbcTemplate, CustomerShards customerShards,
+                           PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.customerShards = customerShards;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Lists the customers stored on a shard that does not own them. This scans the whole
+     * table on every shard.
+     */
+    public List<Move> plan() {
+        List<Move> moves = new ArrayList<>();
+        customerShards.forEachShard(shard -> jdbcTemplate.query(
+                "SELECT customer_id, count(*) FROM " + TABLE + " WHERE customer_id IS NOT NULL GROUP BY customer_id",
+                rs -> {
+                    String customerId = rs.getString(1);
+                    String owner = customerShards.shardFor(customerId);
+                    if (!owner.equals(shard)) {
+                        moves.add(new Move(customerId, shard, owner, rs.getLong(2)));
+                    }
+                }));
+        return moves;
+    }
+
+    /**
+     * Executes a plan and returns the number of rows copied to their owning shard.
+     */
+    public long rebalance(List<Move> moves, int batchSize) {
+        if (moves.isEmpty()) {
+            return 0;
+        }
+        List<String> columns = columns();
+        long copied = 0;
+        for (Move move : moves) {
+            long rows = move(move, columns, batchSize);
+            log.info("Moved {} {} rows of customer {} from {} to {}", rows, TABLE, move.customerId(), move.from(), move.to());
+            copied += rows;
+        }
+        return copied;
+    }
+
+    private long move(Move move, List<String> columns, int batchSize) {
+        String select = "SELECT id, created_at, " + String.join(", ", columns) + " FROM " + TABLE
+                + " WHERE customer_id = ? ORDER BY created_at, id LIMIT ?";
+        String insert = "INSERT INTO " + TABLE + " (" + String.join(", ", columns) + ") VALUES ("
+                + String.join(", ", Collections.nCopies(columns.size(), "?")) + ")";
+        int keyIndex = columns.indexOf(KEY_COLUMN);
+
+        long copied = 0;
+        while (true) {
+            // Each row is {id, created_at, columns...}; id and created_at address it for the delete
+            List<Object[]> chunk = customerShards.onShard(move.from(), () -> jdbcTemplate.query(select, (rs, rowNum) -> {
+                Object[] row = new Object[columns.size() + 2];
+                for (int i = 0; i < row.length; i++) {
+                    row[i] = rs.getObject(i + 1);
+                }
+                return row;
+            }, move.customerId(), batchSize));
+            if (chunk.isEmpty()) {
+                return copied;
+            }
+
+            List<Object[]> missing = customerShards.onShard(move.to(), () -> transactionTemplate.execute(status -> {
+                Set<Object> present = existingKeys(chunk, keyIndex + 2);
+                List<Object[]> values = new ArrayList<>(chunk.size());
+                for (Object[] row : chunk) {
+                    if (row[keyIndex + 2] == null || !present.contains(row[keyIndex + 2])) {
+                        values.add(Arrays.copyOfRange(row, 2, row.length));
+                    }
+                }
+                jdbcTemplate.batchUpdate(insert, values);
+                return values;
+            }));
+            copied += missing.size();
+
+            customerShards.onShard(move.from(), () -> transactionTemplate.execute(status -> jdbcTemplate.batchUpdate(
+                    "DELETE FROM " + TABLE + " WHERE id = ? AND created_at = ?",
+                    chunk.stream().map(row -> new Object[] {row[0], row[1]}).toList())));
+        }
+    }
+
+    private Set<Object> existingKeys(List<Object[]> chunk, int keyIndex) {
+        List<Object> keys = chunk.stream().map(row -> row[keyIndex]).filter(key -> key != null).toList();
+        if (keys.isEmpty()) {
+            return Set.of();
+        }
+        String sql = "SELECT " + KEY_COLUMN + " FROM " + TABLE + " WHERE " + KEY_COLUMN + " IN ("
+                + String.join(", ", Collections.nCopies(keys.size(), "?")) + ")";
+        return new HashSet<>(jdbcTemplate.queryForList(sql, Object.class, keys.toArray()));
+    }
+
+    private List<String> columns() {
+        return jdbcTemplate.queryForList("SELECT column_name FROM information_schema.columns "
+                + "WHERE table_schema = current_schema() AND table_name = ? AND column_name <> 'id' "
+                + "ORDER BY ordinal_position", String.class, TABLE);
+    }
+
+    public record Move(String customerId, String from, String to, long rows) {
+    }
+}
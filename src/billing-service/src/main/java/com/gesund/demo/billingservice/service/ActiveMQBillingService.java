@@ -6,6 +6,10 @@ import com.gesund.demo.billingservice.model.BillingRequest;
 import com.gesund.demo.billingservice.model.BillingResponse;
 import com.gesund.demo.billingservice.repository.BillingRepository;
 import com.gesund.demo.billingservice.util.ContextPropagationUtil;
+import com.gesund.demo.billingservice.util.CustomerShards;
+import com.gesund.demo.billingservice.util.PipelineTimestamps;
+import com.gesund.demo.billingservice.util.BillingSaveEvent;
+import com.gesund.demo.billingservice.util.BrokerSendEvent;
 import io.opentelemetry.api.trace.Span;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
@@ -16,6 +20,7 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.Map;
 import java.util.UUID;
 
 @Service
@@ -24,11 +29,14 @@ import java.util.UUID;
 public class ActiveMQBillingService implements BillingService {
 
     private final BillingRepository billingRepository;
+    private final CustomerShards customerShards;
     private final JmsTemplate jmsTemplate;
     
     public ActiveMQBillingService(BillingRepository billingRepository, 
+                                CustomerShards customerShards,
                                 JmsTemplate jmsTemplate) {
         this.billingRepository = billingRepository;
+        this.customerShards = customerShards;
         this.jmsTemplate = jmsTemplate;
     }
 
@@ -38,6 +46,7 @@ public class ActiveMQBillingService implements BillingService {
     @Override
     @Transactional
     public BillingResponse processBilling(BillingRequest request) {
+        Map<String, Long> timestamps = PipelineTimestamps.start(PipelineTimestamps.INGEST);
         log.info("Processing billing request for customer: {}, product: {}", 
                 request.getCustomerId(), request.getProductId());
 
@@ -53,7 +62,9 @@ public class ActiveMQBillingService implements BillingService {
                 .createdAt(LocalDateTime.now())
                 .build();
 
-        billingRepository.save(billingRecord);
+        BillingSaveEvent saveEvent = BillingSaveEvent.start();
+        customerShards.forCustomer(billingRecord.getCustomerId(), () -> billingRepository.save(billingRecord));
+        saveEvent.complete(transactionId);
         log.info("Saved billing record with transaction ID: {}", transactionId);
 
         // Create and send message
@@ -68,7 +79,9 @@ public class ActiveMQBillingService implements BillingService {
                 .messageType("BILLING_CREATED")
                 .build();
 
-        sendToActiveMQ(message);
+        BrokerSendEvent sendEvent = BrokerSendEvent.start();
+        sendToActiveMQ(message, timestamps);
+        sendEvent.complete(transactionId, "activemq", billingQueue);
         log.info("Sent billing message to ActiveMQ for transaction ID: {}", transactionId);
 
         // Create and return response
@@ -83,7 +96,7 @@ public class ActiveMQBillingService implements BillingService {
                 .build();
     }
 
-    private void sendToActiveMQ(BillingMessage message) {
+    private void sendToActiveMQ(BillingMessage message, Map<String, Long> timestamps) {
         try {
             log.debug("Sending message to ActiveMQ queue: {}, transaction ID: {}", 
                     billingQueue, message.getTransactionId().toString());
@@ -97,8 +110,13 @@ public class ActiveMQBillingService implements BillingService {
                     currentSpan.getSpanContext().getTraceId(),
                     currentSpan.getSpanContext().getSpanId());
             
+            // Stamp the enqueue time next to the trace context
+            MessagePostProcessor stamper = PipelineTimestamps.jmsStamper(
+                    PipelineTimestamps.stamp(timestamps, PipelineTimestamps.BILLING_ENQUEUE));
+
             // Send the message with context headers
-            jmsTemplate.convertAndSend(billingQueue, message, contextInjector);
+            jmsTemplate.convertAndSend(billingQueue, message,
+                    jmsMessage -> stamper.postProcessMessage(contextInjector.postProcessMessage(jmsMessage)));
         } catch (Exception e) {
             log.error("Error sending message to ActiveMQ: {}", e.getMessage(), e);
             throw e; // Re-throw the exception to let the caller handle it
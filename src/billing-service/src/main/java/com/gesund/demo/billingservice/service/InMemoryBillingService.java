@@ -0,0 +1,119 @@
+package com.gesund.demo.billingservice.service;
+
+import com.gesund.demo.billingservice.model.BillingMessage;
+import com.gesund.demo.billingservice.model.BillingRecord;
+import com.gesund.demo.billingservice.model.BillingRequest;
+import com.gesund.demo.billingservice.model.BillingResponse;
+import com.gesund.demo.billingservice.repository.BillingRepository;
+import com.gesund.demo.billingservice.util.ContextPropagationUtil;
+import com.gesund.demo.billingservice.util.CustomerShards;
+import com.gesund.demo.billingservice.util.InMemoryBroker;
+import com.gesund.demo.billingservice.util.PipelineTimestamps;
+import com.gesund.demo.billingservice.util.BillingSaveEvent;
+import com.gesund.demo.billingservice.util.BrokerSendEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+@Service
+@Slf4j
+@ConditionalOnProperty(name = "messaging.system", havingValue = "inmemory")
+public class InMemoryBillingService implements BillingService {
+
+    private final BillingRepository billingRepository;
+    private final CustomerShards customerShards;
+    private final InMemoryBroker inMemoryBroker;
+
+    public InMemoryBillingService(BillingRepository billingRepository,
+                                  CustomerShards customerShards,
+                                  InMemoryBroker inMemoryBroker) {
+        this.billingRepository = billingRepository;
+        this.customerShards = customerShards;
+        this.inMemoryBroker = inMemoryBroker;
+    }
+
+    @Value("${inmemory.queue.billing:billing.queue}")
+    private String billingQueue;
+
+    @Override
+    @Transactional
+    public BillingResponse processBilling(BillingRequest request) {
+        Map<String, Long> timestamps = PipelineTimestamps.start(PipelineTimestamps.INGEST);
+        try {
+            log.info("Processing billing request for customer: {}, product: {}", 
+                    request.getCustomerId(), request.getProductId());
+
+            // Create and save billing record
+            UUID transactionId = UUID.randomUUID();
+            BillingRecord billingRecord = BillingRecord.builder()
+                    .transactionId(transactionId)
+                    .customerId(request.getCustomerId())
+                    .productId(request.getProductId())
+                    .amount(request.getAmount())
+                    .currency(request.getCurrency())
+                    .status("PENDING")
+                    .createdAt(LocalDateTime.now())
+                    .build();
+
+            BillingSaveEvent saveEvent = BillingSaveEvent.start();
+            customerShards.forCustomer(billingRecord.getCustomerId(), () -> billingRepository.save(billingRecord));
+            saveEvent.complete(transactionId);
+            log.info("Saved billing record with transaction ID: {}", transactionId);
+
+            // Create and send message
+            BillingMessage message = BillingMessage.builder()
+                    .transactionId(transactionId)
+                    .customerId(request.getCustomerId())
+                    .productId(request.getProductId())
+                    .amount(request.getAmount())
+                    .currency(request.getCurrency())
+                    .status("PENDING")
+                    .timestamp(LocalDateTime.now())
+                    .messageType("BILLING_CREATED")
+                    .build();
+
+            BrokerSendEvent sendEvent = BrokerSendEvent.start();
+            sendToInMemoryQueue(message, timestamps);
+            sendEvent.complete(transactionId, "inmemory", billingQueue);
+            log.info("Sent billing message to in-memory queue for transaction ID: {}", transactionId);
+
+            // Create and return response
+            return BillingResponse.builder()
+                    .transactionId(transactionId)
+                    .customerId(request.getCustomerId())
+                    .productId(request.getProductId())
+                    .amount(request.getAmount())
+                    .currency(request.getCurrency())
+                    .status("PENDING")
+                    .createdAt(billingRecord.getCreatedAt())
+                    .build();
+        } catch (Exception e) {
+            log.error("Error processing billing request: {}", e.getMessage(), e);
+            throw e; // Re-throw the exception to let the caller handle it
+        }
+    }
+
+    private void sendToInMemoryQueue(BillingMessage message, Map<String, Long> timestamps) {
+        try {
+            log.debug("Sending message to in-memory queue: {}, transaction ID: {}",
+                    billingQueue, message.getTransactionId().toString());
+            Map<String, String> headers = new HashMap<>();
+            ContextPropagationUtil.injectContextToHeaders(headers);
+            PipelineTimestamps.addToHeaders(
+                    PipelineTimestamps.stamp(timestamps, PipelineTimestamps.BILLING_ENQUEUE), headers);
+
+            // Blocks for up to inmemory.send-timeout-ms while the queue is full
+            inMemoryBroker.send(billingQueue, message, headers);
+        } catch (Exception e) {
+            log.error("Error sending message to in-memory queue: {}", e.getMessage(), e);
+            throw e; // Re-throw the exception to let the caller handle it
+        }
+    }
+}
@@ -6,6 +6,10 @@ import com.gesund.demo.billingservice.model.BillingRequest;
 import com.gesund.demo.billingservice.model.BillingResponse;
 import com.gesund.demo.billingservice.repository.BillingRepository;
 import com.gesund.demo.billingservice.util.ContextPropagationUtil;
+import com.gesund.demo.billingservice.util.CustomerShards;
+import com.gesund.demo.billingservice.util.PipelineTimestamps;
+import com.gesund.demo.billingservice.util.BillingSaveEvent;
+import com.gesund.demo.billingservice.util.BrokerSendEvent;
 import io.opentelemetry.api.trace.Span;
 import io.opentelemetry.context.Context;
 import io.opentelemetry.context.Scope;
@@ -18,6 +22,7 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.Map;
 import java.util.UUID;
 
 @Service
@@ -26,11 +31,14 @@ import java.util.UUID;
 public class KafkaBillingService implements BillingService {
 
     private final BillingRepository billingRepository;
+    private final CustomerShards customerShards;
     private final KafkaTemplate<String, BillingMessage> kafkaTemplate;
     
     public KafkaBillingService(BillingRepository billingRepository, 
+                              CustomerShards customerShards,
                               KafkaTemplate<String, BillingMessage> kafkaTemplate) {
         this.billingRepository = billingRepository;
+        this.customerShards = customerShards;
         this.kafkaTemplate = kafkaTemplate;
     }
 
@@ -40,6 +48,7 @@ public class KafkaBillingService implements BillingService {
     @Override
     @Transactional
     public BillingResponse processBilling(BillingRequest request) {
+        Map<String, Long> timestamps = PipelineTimestamps.start(PipelineTimestamps.INGEST);
         try {
             log.info("Processing billing request for customer: {}, product: {}", 
                     request.getCustomerId(), request.getProductId());
@@ -56,7 +65,9 @@ public class KafkaBillingService implements BillingService {
                     .createdAt(LocalDateTime.now())
                     .build();
 
-            billingRepository.save(billingRecord);
+            BillingSaveEvent saveEvent = BillingSaveEvent.start();
+            customerShards.forCustomer(billingRecord.getCustomerId(), () -> billingRepository.save(billingRecord));
+            saveEvent.complete(transactionId);
             log.info("Saved billing record with transaction ID: {}", transactionId);
 
             // Create and send message
@@ -71,7 +82,9 @@ public class KafkaBillingService implements BillingService {
                     .messageType("BILLING_CREATED")
                     .build();
 
-            sendToKafka(message);
+            BrokerSendEvent sendEvent = BrokerSendEvent.start();
+            sendToKafka(message, timestamps);
+            sendEvent.complete(transactionId, "kafka", billingTopic);
             log.info("Sent billing message to Kafka for transaction ID: {}", transactionId);
 
             // Create and return response
@@ -90,7 +103,7 @@ public class KafkaBillingService implements BillingService {
         }
     }
 
-    private void sendToKafka(BillingMessage message) {
+    private void sendToKafka(BillingMessage message, Map<String, Long> timestamps) {
         try {
             log.debug("Sending message to Kafka topic: {}, key: {}", billingTopic, message.getTransactionId().toString());
             
@@ -103,6 +116,8 @@ public class KafkaBillingService implements BillingService {
             
             // Inject the current context into the record headers
             ContextPropagationUtil.injectContextToKafkaHeaders(record);
+            PipelineTimestamps.addToKafkaHeaders(
+                    PipelineTimestamps.stamp(timestamps, PipelineTimestamps.BILLING_ENQUEUE), record.headers());
             
             // Get current span for logging
             Span currentSpan = Span.current();
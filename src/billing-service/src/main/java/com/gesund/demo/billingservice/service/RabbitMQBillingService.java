@@ -5,7 +5,13 @@ import com.gesund.demo.billingservice.model.BillingRecord;
 import com.gesund.demo.billingservice.model.BillingRequest;
 import com.gesund.demo.billingservice.model.BillingResponse;
 import com.gesund.demo.billingservice.repository.BillingRepository;
+import com.gesund.demo.billingservice.util.ContextPropagationUtil;
+import com.gesund.demo.billingservice.util.CustomerShards;
+import com.gesund.demo.billingservice.util.PipelineTimestamps;
+import com.gesund.demo.billingservice.util.BillingSaveEvent;
+import com.gesund.demo.billingservice.util.BrokerSendEvent;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.MessagePostProcessor;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
@@ -13,6 +19,7 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.Map;
 import java.util.UUID;
 
 @Service
@@ -21,11 +28,14 @@ import java.util.UUID;
 public class RabbitMQBillingService implements BillingService {
 
     private final BillingRepository billingRepository;
+    private final CustomerShards customerShards;
     private final RabbitTemplate rabbitTemplate;
     
     public RabbitMQBillingService(BillingRepository billingRepository, 
+                                CustomerShards customerShards,
                                 RabbitTemplate rabbitTemplate) {
         this.billingRepository = billingRepository;
+        this.customerShards = customerShards;
         this.rabbitTemplate = rabbitTemplate;
     }
 
@@ -35,6 +45,7 @@ public class RabbitMQBillingService implements BillingService {
     @Override
     @Transactional
     public BillingResponse processBilling(BillingRequest request) {
+        Map<String, Long> timestamps = PipelineTimestamps.start(PipelineTimestamps.INGEST);
         try {
             log.info("Processing billing request for customer: {}, product: {}", 
                     request.getCustomerId(), request.getProductId());
@@ -51,7 +62,9 @@ public class RabbitMQBillingService implements BillingService {
                     .createdAt(LocalDateTime.now())
                     .build();
 
-            billingRepository.save(billingRecord);
+            BillingSaveEvent saveEvent = BillingSaveEvent.start();
+            customerShards.forCustomer(billingRecord.getCustomerId(), () -> billingRepository.save(billingRecord));
+            saveEvent.complete(transactionId);
             log.info("Saved billing record with transaction ID: {}", transactionId);
 
             // Create and send message
@@ -66,7 +79,9 @@ public class RabbitMQBillingService implements BillingService {
                     .messageType("BILLING_CREATED")
                     .build();
 
-            sendToRabbitMQ(message);
+            BrokerSendEvent sendEvent = BrokerSendEvent.start();
+            sendToRabbitMQ(message, timestamps);
+            sendEvent.complete(transactionId, "rabbitmq", billingQueue);
             log.info("Sent billing message to RabbitMQ for transaction ID: {}", transactionId);
 
             // Create and return response
@@ -85,11 +100,17 @@ public class RabbitMQBillingService implements BillingService {
         }
     }
 
-    private void sendToRabbitMQ(BillingMessage message) {
+    private void sendToRabbitMQ(BillingMessage message, Map<String, Long> timestamps) {
         try {
             log.debug("Sending message to RabbitMQ queue: {}, transaction ID: {}", 
                     billingQueue, message.getTransactionId().toString());
-            rabbitTemplate.convertAndSend(billingQueue, message);
+            MessagePostProcessor contextInjector = ContextPropagationUtil.createAmqpContextInjector();
+            MessagePostProcessor stamper = PipelineTimestamps.amqpStamper(
+                    PipelineTimestamps.stamp(timestamps, PipelineTimestamps.BILLING_ENQUEUE));
+
+            // Send the message with context headers
+            rabbitTemplate.convertAndSend(billingQueue, message,
+                    amqpMessage -> stamper.postProcessMessage(contextInjector.postProcessMessage(amqpMessage)));
         } catch (Exception e) {
             log.error("Error sending message to RabbitMQ: {}", e.getMessage(), e);
             throw e; // Re-throw the exception to let the caller handle it
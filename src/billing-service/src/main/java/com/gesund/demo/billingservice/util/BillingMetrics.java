@@ -0,0 +1,50 @@
+package com.gesund.demo.billingservice.util;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.function.Supplier;
+
+/**
+ * Meters for the billing stage, exposed on /actuator/prometheus.
+ *
+ * billing.process times one billing request from the controller until its message is
+ * handed to the broker, tagged with the outcome.
+ */
+@Component
+public class BillingMetrics {
+
+    private final MeterRegistry meterRegistry;
+    private final Timer processedTimer;
+    private final Timer failedTimer;
+
+    public BillingMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        this.processedTimer = processTimer("success");
+        this.failedTimer = processTimer("failure");
+    }
+
+    private Timer processTimer(String outcome) {
+        return Timer.builder("billing.process").tag("outcome", outcome)
+                .description("Time to store a billing request and publish its message")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    /**
+     * Runs the processing of one request and times it; an exception counts as a failure
+     * and is rethrown.
+     */
+    public <T> T recordProcessing(Supplier<T> processing) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        boolean success = false;
+        try {
+            T result = processing.get();
+            success = true;
+            return result;
+        } finally {
+            sample.stop(success ? processedTimer : failedTimer);
+        }
+    }
+}
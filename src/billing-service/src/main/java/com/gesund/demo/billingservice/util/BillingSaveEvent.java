@@ -0,0 +1,36 @@
+package com.gesund.demo.billingservice.util;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import java.util.UUID;
+
+/**
+ * JFR event for storing one billing record.
+ */
+@Name("com.gesund.demo.BillingSave")
+@Label("Billing Save")
+@Category({"Gesund Demo", "Pipeline"})
+@StackTrace(false)
+public class BillingSaveEvent extends Event {
+
+    @Label("Transaction ID")
+    String transactionId;
+
+    public static BillingSaveEvent start() {
+        BillingSaveEvent event = new BillingSaveEvent();
+        event.begin();
+        return event;
+    }
+
+    public void complete(UUID transactionId) {
+        end();
+        if (shouldCommit()) {
+            this.transactionId = String.valueOf(transactionId);
+            commit();
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package com.gesund.demo.billingservice.util;
+
+import java.util.AbstractQueue;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded, lock-free queue for any number of producers and consumers.
+ *
+ * This is Dmitry Vyukov's bounded MPMC ring: every slot carries a sequence number telling
+ * producers whether it is free for the current lap and consumers whether it holds the
+ * element of the current lap, so offer and poll each need one successful CAS on the tail
+ * or head counter and never block. offer returns false when the ring is full instead of
+ * waiting; back-pressure is up to the caller. The JDK has no queue with these properties:
+ * ArrayBlockingQueue is bounded but takes a lock, ConcurrentLinkedQueue is lock-free but
+ * unbounded.
+ *
+ * Iteration is weakly consistent, as with the JDK's concurrent queues: the iterator walks
+ * the positions between head and tail and returns an element only if its slot's sequence
+ * shows it published and not yet consumed, both before and after reading it. Removing
+ * through the iterator, and so remove(Object), clears the slot with a CAS; poll takes
+ * elements with a swap, so exactly one of the two gets an element, and skips cleared slots.
+ *
+ * The class only exposes java.util.Queue, so services in other packages of the same JVM
+ * can use an instance created here.
+ */
+public class InMemoryQueue<E> extends AbstractQueue<E> {
+
+    private final int mask;
+    private final AtomicReferenceArray<E> elements;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong head = new AtomicLong();
+
+    /**
+     * @param capacity the minimum capacity; it is rounded up to a power of two
+     */
+    public InMemoryQueue(int capacity) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Capacity must be between 1 and 2^30: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.mask = size - 1;
+        this.elements = new AtomicReferenceArray<>(size);
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+    @Override
+    public boolean offer(E element) {
+        if (element == null) {
+            throw new NullPointerException();
+        }
+        long position = tail.get();
+        while (true) {
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    elements.lazySet(index, element);
+                    // Publishes the element: consumers read the sequence before the slot
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                // The slot still holds the element of the previous lap
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+
+    @Override
+    public E poll() {
+        long position = head.get();
+        while (true) {
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - (position + 1);
+            if (difference == 0) {
+                if (head.compareAndSet(position, position + 1)) {
+                    // A swap, not a read, so an iterator removing the element cannot also win it
+                    E element = elements.getAndSet(index, null);
+                    // Frees the slot for the producer of the next lap
+                    sequences.set(index, position + mask + 1);
+                    if (element != null) {
+                        return element;
+                    }
+                    // Removed through an iterator: take the next one
+                }
+                position = head.get();
+            } else if (difference < 0) {
+                return null;
+            } else {
+                position = head.get();
+            }
+        }
+    }
+
+    @Override
+    public E peek() {
+        for (long position = head.get(); ; position++) {
+            int index = (int) position & mask;
+            if (sequences.get(index) != position + 1) {
+                return null;
+            }
+            E element = elements.get(index);
+            if (element != null) {
+                return element;
+            }
+        }
+    }
+
+    /**
+     * Returns an estimate: the counters are read one after the other, so concurrent
+     * operations can make it slightly off, but never outside [0, capacity]. Slots cleared
+     * through an iterator count until poll passes them.
+     */
+    @Override
+    public int size() {
+        long size = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(size, capacity()));
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return tail.get() == head.get();
+    }
+
+    /**
+     * Returns a weakly consistent iterator: it never throws ConcurrentModificationException,
+     * returns the elements in queue order, and may or may not show changes made after it
+     * was created.
+     */
+    @Override
+    public Iterator<E> iterator() {
+        return new Itr();
+    }
+
+    /**
+     * Removes one occurrence of an element, unless a consumer takes it first.
+     */
+    @Override
+    public boolean remove(Object o) {
+        if (o == null) {
+            return false;
+        }
+        Itr iterator = new Itr();
+        while (iterator.hasNext()) {
+            if (o.equals(iterator.next()) && iterator.clear()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return "InMemoryQueue[size=" + size() + ", capacity=" + capacity() + "]";
+    }
+
+    private final class Itr implements Iterator<E> {
+
+        private long position = head.get();
+        private E next;
+        private long nextPosition;
+        private E lastReturned;
+        private long lastPosition;
+
+        Itr() {
+            advance();
+        }
+
+        private void advance() {
+            next = null;
+            position = Math.max(position, head.get());
+            for (long end = tail.get(); position < end; position++) {
+                int index = (int) position & mask;
+                // Skips slots still being written and slots consumed since the tail was read
+                if (sequences.get(index) != position + 1) {
+                    continue;
+                }
+                E element = elements.get(index);
+                if (element != null && sequences.get(index) == position + 1) {
+                    next = element;
+                    nextPosition = position++;
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public E next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            lastReturned = next;
+            lastPosition = nextPosition;
+            advance();
+            return lastReturned;
+        }
+
+        @Override
+        public void remove() {
+            if (lastReturned == null) {
+                throw new IllegalStateException();
+            }
+            clear();
+        }
+
+        /**
+         * Clears the slot of the last element returned.
+         *
+         * @return false if a consumer took the element first
+         */
+        private boolean clear() {
+            int index = (int) lastPosition & mask;
+            boolean cleared = sequences.get(index) == lastPosition + 1
+                    && elements.compareAndSet(index, lastReturned, null);
+            lastReturned = null;
+            return cleared;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.gesund.demo.billingservice.util;
+
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Sends connections of read-only transactions to a {@link ReadReplicas} replica and
+ * everything else to the primary.
+ *
+ * The read-only flag is only known once the transaction has been set up, but JPA opens
+ * its connection while beginning the transaction. This DataSource therefore has to sit
+ * behind a LazyConnectionDataSourceProxy, which fetches the real connection on the first
+ * statement. A replica that cannot hand out a connection is taken out of rotation and
+ * the primary serves the transaction instead.
+ */
+public class ReadReplicaRoutingDataSource extends AbstractDataSource {
+
+    private final DataSource primary;
+    private final ReadReplicas readReplicas;
+
+    public ReadReplicaRoutingDataSource(DataSource primary, ReadReplicas readReplicas) {
+        this.primary = primary;
+        this.readReplicas = readReplicas;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            return primary.getConnection();
+        }
+        ReadReplicas.Replica replica = readReplicas.select();
+        if (replica == null) {
+            return primary.getConnection();
+        }
+        try {
+            return replica.getConnection();
+        } catch (SQLException e) {
+            readReplicas.markDown(replica, e);
+            return primary.getConnection();
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return primary.getConnection(username, password);
+    }
+
+    // Pool metrics and health checks look through to the primary's pool
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        return iface.isInstance(this) ? iface.cast(this) : primary.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this) || primary.isWrapperFor(iface);
+    }
+}
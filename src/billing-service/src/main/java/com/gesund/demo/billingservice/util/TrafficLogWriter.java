@@ -0,0 +1,153 @@
+package com.gesund.demo.billingservice.util;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Append-only, memory-mapped log of captured requests, replayed by load-simulator.
+ *
+ * Layout: a 16-byte header (magic "GSTL", version, chunk size, reserved) followed by
+ * records of {@code int length, long arrival epoch micros, byte[length] body}. The file
+ * is mapped one chunk at a time and records never straddle a chunk boundary; the rest of
+ * a chunk that cannot hold the next record is marked with a length of -1. The length is
+ * written last, so a zero length marks the end of the data even after a crash.
+ *
+ * A log is never overwritten: the writer refuses a file that already holds data, and
+ * {@link #nextFile(Path)} picks a fresh, timestamped name next to it for each start.
+ */
+@Slf4j
+public class TrafficLogWriter implements Closeable {
+
+    public static final int MAGIC = 0x4753544C;
+    public static final int VERSION = 1;
+    public static final int HEADER_BYTES = 16;
+    public static final int RECORD_HEADER_BYTES = Integer.BYTES + Long.BYTES;
+    public static final int SKIP_TO_NEXT_CHUNK = -1;
+
+    private static final DateTimeFormatter ROLL_SUFFIX = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    private final Path file;
+    private final FileChannel channel;
+    private final int chunkBytes;
+    private final long maxBytes;
+    private MappedByteBuffer chunk;
+    private long chunkStart;
+    private long records;
+    private long skipped;
+    private boolean full;
+
+    public TrafficLogWriter(Path file, int chunkBytes, long maxBytes) throws IOException {
+        this.file = file;
+        this.chunkBytes = chunkBytes;
+        this.maxBytes = maxBytes;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        if (channel.size() > 0) {
+            channel.close();
+            throw new IOException(file + " already holds a traffic log");
+        }
+        this.chunk = channel.map(FileChannel.MapMode.READ_WRITE, 0, chunkBytes);
+        chunk.putInt(MAGIC).putInt(VERSION).putInt(chunkBytes).putInt(0);
+    }
+
+    /**
+     * Returns the configured file if it is missing or empty, otherwise a sibling named after
+     * it with the current time inserted before the extension, e.g. billing-traffic-20240101-120000.log,
+     * so a restart starts a new log instead of replacing the last one.
+     */
+    public static Path nextFile(Path file) throws IOException {
+        if (!Files.exists(file) || Files.size(file) == 0) {
+            return file;
+        }
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        String stem = dot > 0 ? name.substring(0, dot) : name;
+        String extension = dot > 0 ? name.substring(dot) : "";
+        String suffix = LocalDateTime.now().format(ROLL_SUFFIX);
+        Path rolled = file.resolveSibling(stem + "-" + suffix + extension);
+        for (int i = 1; Files.exists(rolled); i++) {
+            rolled = file.resolveSibling(stem + "-" + suffix + "-" + i + extension);
+        }
+        return rolled;
+    }
+
+    /**
+     * Appends one request.
+     *
+     * @return false if the record was not written: the log reached its size limit, or the
+     *         request does not fit in a chunk; both are counted in {@link #getSkipped()}
+     */
+    public synchronized boolean append(long arrivalMicros, byte[] body) throws IOException {
+        int recordBytes = RECORD_HEADER_BYTES + body.length;
+        if (full || !channel.isOpen()) {
+            skipped++;
+            return false;
+        }
+        if (recordBytes + Integer.BYTES > chunkBytes - HEADER_BYTES) {
+            skipped++;
+            log.warn("Request of {} bytes does not fit in a {} byte chunk of traffic log {} and is not captured; "
+                    + "raise traffic.capture.chunk-bytes to capture it ({} requests skipped so far)",
+                    body.length, chunkBytes, file, skipped);
+            return false;
+        }
+        // Keep room for the next length field, which doubles as the end marker
+        if (chunk.remaining() < recordBytes + Integer.BYTES) {
+            chunk.putInt(chunk.position(), SKIP_TO_NEXT_CHUNK);
+            if (chunkStart + 2L * chunkBytes > maxBytes) {
+                full = true;
+                skipped++;
+                log.warn("Traffic log {} reached its limit of {} bytes after {} records; capture stopped",
+                        file, maxBytes, records);
+                return false;
+            }
+            chunkStart += chunkBytes;
+            chunk = channel.map(FileChannel.MapMode.READ_WRITE, chunkStart, chunkBytes);
+        }
+
+        int position = chunk.position();
+        chunk.putLong(position + Integer.BYTES, arrivalMicros);
+        chunk.put(position + RECORD_HEADER_BYTES, body);
+        chunk.putInt(position, body.length);
+        chunk.position(position + recordBytes);
+        records++;
+        return true;
+    }
+
+    public synchronized long getRecords() {
+        return records;
+    }
+
+    /**
+     * Returns the number of requests that were not captured.
+     */
+    public synchronized long getSkipped() {
+        return skipped;
+    }
+
+    /**
+     * Flushes the mapped pages and trims the unused tail of the last chunk.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (!channel.isOpen()) {
+            return;
+        }
+        chunk.force();
+        channel.truncate(chunkStart + chunk.position());
+        channel.close();
+        if (skipped > 0) {
+            log.warn("Traffic log {} closed with {} records; {} requests were not captured", file, records, skipped);
+        } else {
+            log.info("Traffic log {} closed with {} records", file, records);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+-- Billing records are range partitioned by created_at (one partition per day).
+-- Future partitions are created and expired ones dropped by PartitionMaintenance.
+
+-- Databases created before partitioning have a plain table built by Hibernate.
+-- Keep it around as billing_record_legacy so no data is lost; it can be backfilled separately.
+DO $$
+BEGIN
+    IF EXISTS (SELECT 1 FROM pg_class c JOIN pg_namespace n ON n.oid = c.relnamespace
+               WHERE c.relname = 'billing_record' AND n.nspname = current_schema() AND c.relkind = 'r') THEN
+        ALTER TABLE billing_record RENAME TO billing_record_legacy;
+        RAISE NOTICE 'Renamed unpartitioned billing_record table to billing_record_legacy';
+    END IF;
+END $$;
+
+CREATE TABLE billing_record (
+    id             BIGSERIAL,
+    transaction_id UUID,
+    customer_id    VARCHAR(255),
+    product_id     VARCHAR(255),
+    amount         NUMERIC(38, 2),
+    currency       VARCHAR(255),
+    status         VARCHAR(255),
+    created_at     TIMESTAMP(6) NOT NULL,
+    updated_at     TIMESTAMP(6),
+    PRIMARY KEY (id, created_at)
+) PARTITION BY RANGE (created_at);
+
+-- Catches rows outside the pre-created range so inserts never fail
+CREATE TABLE billing_record_default PARTITION OF billing_record DEFAULT;
+
+-- Rows arrive in created_at order, so a BRIN index stays tiny and prunes time ranges well
+CREATE INDEX billing_record_created_at_brin ON billing_record USING BRIN (created_at);
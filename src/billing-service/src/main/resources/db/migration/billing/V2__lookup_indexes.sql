@@ -0,0 +1,15 @@
+-- Lookup path for BillingRepository.findByTransactionId.
+--
+-- Indexes on the partitioned table cascade to every partition, including the ones
+-- PartitionMaintenance creates later. A lookup by transaction_id alone still probes one
+-- index per partition, because nothing tells Postgres which day the row belongs to.
+--
+-- The index is deliberately not UNIQUE: a unique index on a partitioned table must
+-- contain the partition key, so uniqueness of transaction_id cannot be enforced here.
+-- Brokers redeliver messages, so duplicates are possible and are reported by reconciliation.
+--
+-- CREATE INDEX on a partitioned table cannot run CONCURRENTLY. On a large existing table,
+-- build the index per partition with CREATE INDEX CONCURRENTLY, create the parent index
+-- ON ONLY billing_record and ATTACH the partition indexes before deploying; this
+-- migration then finds the index in place.
+CREATE INDEX IF NOT EXISTS billing_record_transaction_id ON billing_record (transaction_id);
@@ -3,6 +3,7 @@ package com.gesund.demo.invoiceaggregator.config;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import jakarta.jms.ConnectionFactory;
+import com.gesund.demo.invoiceaggregator.util.QueueBacklog;
 import org.apache.activemq.ActiveMQConnectionFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.beans.factory.config.BeanPostProcessor;
@@ -46,6 +47,15 @@ public class ActiveMQConfig {
     @Value("${spring.activemq.password:admin}")
     private String password;
 
+    @Value("${activemq.queue.payment}")
+    private String paymentQueue;
+
+    @Value("${metrics.backlog.browse-limit:10000}")
+    private int backlogBrowseLimit;
+
+    @Value("${metrics.backlog.refresh-ms:15000}")
+    private long backlogRefreshMs;
+
     @Bean
     public ConnectionFactory connectionFactory() {
         ActiveMQConnectionFactory connectionFactory = new ActiveMQConnectionFactory();
@@ -88,4 +98,9 @@ public class ActiveMQConfig {
         
         return factory;
     }
+
+    @Bean
+    public QueueBacklog.BrowsedBacklog paymentQueueBacklog() {
+        return QueueBacklog.jms(connectionFactory(), paymentQueue, backlogBrowseLimit, backlogRefreshMs);
+    }
 }
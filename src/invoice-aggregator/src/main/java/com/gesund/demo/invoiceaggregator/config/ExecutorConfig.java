@@ -0,0 +1,30 @@
+package com.gesund.demo.invoiceaggregator.config;
+
+import com.gesund.demo.invoiceaggregator.util.ContextPropagatingExecutorService;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class ExecutorConfig {
+
+    @Value("${invoice.executor.threads:10}")
+    private int threads;
+
+    @Bean(destroyMethod = "shutdown")
+    public ContextPropagatingExecutorService invoiceExecutorService(MeterRegistry meterRegistry) {
+        ContextPropagatingExecutorService executorService = new ContextPropagatingExecutorService(threads);
+        Gauge.builder("invoice.executor.queued", executorService, ContextPropagatingExecutorService::getQueueSize)
+                .description("Invoice tasks waiting for a free worker thread")
+                .register(meterRegistry);
+        Gauge.builder("invoice.executor.active", executorService, ContextPropagatingExecutorService::getActiveCount)
+                .description("Worker threads running an invoice task")
+                .register(meterRegistry);
+        Gauge.builder("invoice.executor.pool.size", executorService, ContextPropagatingExecutorService::getPoolSize)
+                .description("Worker threads of the invoice executor")
+                .register(meterRegistry);
+        return executorService;
+    }
+}
@@ -3,6 +3,7 @@ package com.gesund.demo.invoiceaggregator.config;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import com.gesund.demo.invoiceaggregator.model.PaymentMessage;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.common.serialization.StringDeserializer;
 import org.springframework.beans.factory.annotation.Value;
@@ -10,6 +11,7 @@ import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.core.MicrometerConsumerListener;
 import org.springframework.kafka.core.ConsumerFactory;
 import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
 import org.springframework.kafka.listener.CommonErrorHandler;
@@ -22,6 +24,7 @@ import lombok.extern.slf4j.Slf4j;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 
 @Configuration
 @Slf4j
@@ -34,6 +37,12 @@ public class KafkaConfig {
     @Value("${spring.application.name}")
     private String applicationName;
 
+    private final MeterRegistry meterRegistry;
+
+    public KafkaConfig(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
     @Bean
     public ConsumerFactory<String, PaymentMessage> consumerFactory() {
         Map<String, Object> props = new HashMap<>();
@@ -54,7 +63,10 @@ public class KafkaConfig {
         props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
         props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
         
-        return new DefaultKafkaConsumerFactory<>(props);
+        DefaultKafkaConsumerFactory<String, PaymentMessage> factory = new DefaultKafkaConsumerFactory<>(props);
+        // Publishes the consumer's own metrics, records-lag-max among them, as kafka.consumer.*
+        factory.addListener(new MicrometerConsumerListener<>(meterRegistry));
+        return factory;
     }
 
     @Bean
@@ -66,6 +78,9 @@ public class KafkaConfig {
         
         // Configure which exceptions should not be retried
         errorHandler.addNotRetryableExceptions(RuntimeException.class);
+
+        // Work rejected while the heap watchdog sheds load is redelivered after the backoff
+        errorHandler.addRetryableExceptions(RejectedExecutionException.class);
         
         return errorHandler;
     }
@@ -2,6 +2,8 @@ package com.gesund.demo.invoiceaggregator.config;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.gesund.demo.invoiceaggregator.util.QueueBacklog;
+import io.micrometer.core.instrument.binder.MeterBinder;
 import org.springframework.amqp.core.Queue;
 import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
@@ -62,4 +64,9 @@ public class RabbitMQConfig {
     public Queue paymentQueue() {
         return new Queue(paymentQueue, true);
     }
+
+    @Bean
+    public MeterBinder paymentQueueBacklog(RabbitTemplate rabbitTemplate) {
+        return QueueBacklog.amqp(rabbitTemplate, paymentQueue);
+    }
 }
@@ -0,0 +1,76 @@
+package com.gesund.demo.invoiceaggregator.config;
+
+import com.gesund.demo.invoiceaggregator.util.ReadReplicaRoutingDataSource;
+import com.gesund.demo.invoiceaggregator.util.ReadReplicas;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.Arrays;
+import java.util.List;
+
+@Configuration
+@Slf4j
+@ConditionalOnProperty(name = "datasource.replica.enabled", havingValue = "true")
+public class ReadReplicaConfig {
+
+    @Value("${datasource.replica.urls}")
+    private String urls;
+
+    @Value("${datasource.replica.username:${spring.datasource.username}}")
+    private String username;
+
+    @Value("${datasource.replica.password:${spring.datasource.password}}")
+    private String password;
+
+    @Value("${datasource.replica.pool-size:5}")
+    private int poolSize;
+
+    @Value("${datasource.replica.max-lag-ms:1000}")
+    private long maxLagMs;
+
+    @Value("${spring.application.name}")
+    private String applicationName;
+
+    @Bean(destroyMethod = "close")
+    public ReadReplicas readReplicas(MeterRegistry meterRegistry) {
+        List<String> jdbcUrls = Arrays.stream(urls.split(",")).map(String::trim).filter(url -> !url.isEmpty()).toList();
+        if (jdbcUrls.isEmpty()) {
+            throw new IllegalStateException("datasource.replica.enabled is set but datasource.replica.urls is empty");
+        }
+        return new ReadReplicas(jdbcUrls, username, password, poolSize, maxLagMs, applicationName, meterRegistry);
+    }
+
+    // Ordered so the routing is in place before the SQL timing proxy wraps the data source,
+    // which then times replica reads as well. The return type has to show that it is
+    // Ordered, because post processors are sorted before they are instantiated.
+    @Bean
+    public static RoutingPostProcessor readReplicaRoutingPostProcessor(ObjectProvider<ReadReplicas> readReplicas) {
+        return new RoutingPostProcessor(readReplicas);
+    }
+
+    record RoutingPostProcessor(ObjectProvider<ReadReplicas> readReplicas) implements BeanPostProcessor, Ordered {
+
+        @Override
+        public Object postProcessAfterInitialization(Object bean, String beanName) {
+            if (bean instanceof DataSource primary && !(bean instanceof LazyConnectionDataSourceProxy)) {
+                log.info("Routing read-only transactions of data source '{}' to read replicas", beanName);
+                return new LazyConnectionDataSourceProxy(new ReadReplicaRoutingDataSource(primary, readReplicas.getObject()));
+            }
+            return bean;
+        }
+
+        @Override
+        public int getOrder() {
+            return Ordered.HIGHEST_PRECEDENCE;
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.gesund.demo.invoiceaggregator.controller;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.gesund.demo.invoiceaggregator.repository.InvoiceExportRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+
+/**
+ * Streams invoices out of Postgres as NDJSON or CSV. Each row is written to the
+ * response as soon as it is read from the cursor, so memory use does not depend on
+ * the size of the export.
+ */
+@RestController
+@RequestMapping("/api/invoices")
+@Slf4j
+public class InvoiceExportController {
+
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+    private static final MediaType CSV = MediaType.parseMediaType("text/csv");
+
+    private final InvoiceExportRepository exportRepository;
+    private final JsonFactory jsonFactory = new JsonFactory();
+
+    public InvoiceExportController(InvoiceExportRepository exportRepository) {
+        this.exportRepository = exportRepository;
+    }
+
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> export(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(required = false) String customerId,
+            @RequestParam(defaultValue = "ndjson") String format) {
+
+        LocalDateTime end = to != null ? to : LocalDateTime.now();
+        LocalDateTime start = from != null ? from : end.minusDays(1);
+        boolean csv = "csv".equalsIgnoreCase(format);
+        if (!csv && !"ndjson".equalsIgnoreCase(format)) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        log.info("Exporting invoices from {} to {} (customer: {}, format: {})", start, end, customerId, format);
+
+        StreamingResponseBody body = out -> {
+            long rows = csv ? writeCsv(out, start, end, customerId) : writeNdjson(out, start, end, customerId);
+            log.info("Exported {} invoices from {} to {}", rows, start, end);
+        };
+
+        String filename = "invoices." + (csv ? "csv" : "ndjson");
+        return ResponseEntity.ok()
+                .contentType(csv ? CSV : NDJSON)
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"")
+                .body(body);
+    }
+
+    private long writeNdjson(OutputStream out, LocalDateTime from, LocalDateTime to, String customerId)
+            throws IOException {
+        long[] rows = {0};
+        try (JsonGenerator json = jsonFactory.createGenerator(out, JsonEncoding.UTF8)) {
+            json.setRootValueSeparator(null);
+            exportRepository.streamInvoices(from, to, customerId, rs -> {
+                try {
+                    json.writeStartObject();
+                    for (int i = 0; i < InvoiceExportRepository.COLUMNS.length; i++) {
+                        json.writeFieldName(InvoiceExportRepository.COLUMNS[i]);
+                        Object value = rs.getObject(i + 1);
+                        if (value instanceof BigDecimal amount) {
+                            json.writeNumber(amount);
+                        } else if (value instanceof Timestamp timestamp) {
+                            json.writeString(timestamp.toLocalDateTime().toString());
+                        } else if (value != null) {
+                            json.writeString(value.toString());
+                        } else {
+                            json.writeNull();
+                        }
+                    }
+                    json.writeEndObject();
+                    json.writeRaw('\n');
+                    rows[0]++;
+                } catch (IOException e) {
+                    // Client went away: abort the query so the cursor is closed
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+        return rows[0];
+    }
+
+    private long writeCsv(OutputStream out, LocalDateTime from, LocalDateTime to, String customerId)
+            throws IOException {
+        long[] rows = {0};
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8))) {
+            writer.write(String.join(",", InvoiceExportRepository.COLUMNS));
+            writer.write('\n');
+            exportRepository.streamInvoices(from, to, customerId, rs -> {
+                try {
+                    for (int i = 0; i < InvoiceExportRepository.COLUMNS.length; i++) {
+                        if (i > 0) {
+                            writer.write(',');
+                        }
+                        writeCsvField(writer, columnValue(rs, i + 1));
+                    }
+                    writer.write('\n');
+                    rows[0]++;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+        return rows[0];
+    }
+
+    private static String columnValue(ResultSet rs, int column) throws SQLException {
+        Object value = rs.getObject(column);
+        if (value instanceof Timestamp timestamp) {
+            return timestamp.toLocalDateTime().toString();
+        }
+        if (value instanceof BigDecimal amount) {
+            return amount.toPlainString();
+        }
+        return value != null ? value.toString() : null;
+    }
+
+    private static void writeCsvField(Writer writer, String value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        writer.write(value.replace("\"", "\"\""));
+        writer.write('"');
+    }
+}
@@ -0,0 +1,30 @@
+package com.gesund.demo.invoiceaggregator.controller;
+
+import com.gesund.demo.invoiceaggregator.util.PipelineLatencyRecorder;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/pipeline/latency")
+@RequiredArgsConstructor
+public class PipelineLatencyController {
+
+    private final PipelineLatencyRecorder latencyRecorder;
+
+    @GetMapping
+    public ResponseEntity<Map<String, Object>> latency() {
+        return ResponseEntity.ok(latencyRecorder.snapshot());
+    }
+
+    @DeleteMapping
+    public ResponseEntity<Void> reset() {
+        latencyRecorder.reset();
+        return ResponseEntity.noContent().build();
+    }
+}
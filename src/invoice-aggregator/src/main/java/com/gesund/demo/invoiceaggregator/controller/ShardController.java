@@ -0,0 +1,71 @@
+package com.gesund.demo.invoiceaggregator.controller;
+
+import com.gesund.demo.invoiceaggregator.repository.ShardRebalancer;
+import com.gesund.demo.invoiceaggregator.util.CustomerShards;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+@RestController
+@RequestMapping("/admin/shards")
+@RequiredArgsConstructor
+public class ShardController {
+
+    private final CustomerShards customerShards;
+    private final ShardRebalancer shardRebalancer;
+
+    @GetMapping
+    public ResponseEntity<Map<String, Object>> shards(@RequestParam(required = false) String customerId) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("shards", customerShards.getShards());
+        body.put("ownership", customerShards.getRing().ownership());
+        if (customerId != null) {
+            body.put("customerId", customerId);
+            body.put("shard", customerShards.shardFor(customerId));
+        }
+        return ResponseEntity.ok(body);
+    }
+
+    /**
+     * Moves rows to the shard owning their customer. Runs as a dry run, returning only
+     * the plan, unless dryRun=false is passed.
+     */
+    @PostMapping("/rebalance")
+    public ResponseEntity<Map<String, Object>> rebalance(@RequestParam(defaultValue = "true") boolean dryRun,
+                                                         @RequestParam(defaultValue = "1000") int batchSize) {
+        if (batchSize <= 0) {
+            return ResponseEntity.badRequest().build();
+        }
+        long start = System.nanoTime();
+        List<ShardRebalancer.Move> moves = shardRebalancer.plan();
+
+        Map<String, Map<String, Long>> rowsByRoute = new TreeMap<>();
+        long rows = 0;
+        for (ShardRebalancer.Move move : moves) {
+            rowsByRoute.computeIfAbsent(move.from() + " -> " + move.to(), route -> new LinkedHashMap<>())
+                    .merge("customers", 1L, Long::sum);
+            rowsByRoute.get(move.from() + " -> " + move.to()).merge("rows", move.rows(), Long::sum);
+            rows += move.rows();
+        }
+
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("dryRun", dryRun);
+        body.put("customers", moves.size());
+        body.put("rows", rows);
+        body.put("routes", rowsByRoute);
+        if (!dryRun) {
+            body.put("copiedRows", shardRebalancer.rebalance(moves, batchSize));
+        }
+        body.put("durationMs", (System.nanoTime() - start) / 1_000_000);
+        return ResponseEntity.ok(body);
+    }
+}
@@ -0,0 +1,322 @@
+package com.gesund.demo.invoiceaggregator.repository;
+
+import com.gesund.demo.invoiceaggregator.model.Invoice;
+import com.gesund.demo.invoiceaggregator.util.CustomerShards;
+import com.gesund.demo.invoiceaggregator.util.InvoiceSaveEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.io.StringReader;
+import java.sql.Connection;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Bulk write path for invoices. Instead of one JPA INSERT per invoice, invoices are
+ * buffered and streamed to Postgres in batches with the COPY protocol.
+ *
+ * A batch is flushed when it reaches the configured flush size or when the flush
+ * interval elapses, whichever comes first. If COPY rejects a batch, the rows are
+ * retried one by one through JPA so that a single bad row does not lose the batch.
+ * When the bulk path is disabled, {@link #save(Invoice)} simply delegates to
+ * {@link InvoiceRepository#save(Object)}. Every invoice is written to the shard of its
+ * customer; a flushed batch is split into one COPY per shard. A buffered invoice is not
+ * persisted until its batch is written, so callers learn about that through a callback
+ * rather than from {@code save} returning.
+ */
+@Slf4j
+@Component
+public class InvoiceBulkWriter {
+
+    private static final String COPY_SQL = "COPY invoice (invoice_id, transaction_id, payment_id, customer_id, "
+            + "product_id, amount, currency, status, payment_method, processor_reference, created_at, updated_at) "
+            + "FROM STDIN WITH (FORMAT csv)";
+
+    private final InvoiceRepository invoiceRepository;
+    private final DataSource dataSource;
+    private final CustomerShards customerShards;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${invoice.bulk-writer.enabled:false}")
+    private boolean enabled;
+
+    @Value("${invoice.bulk-writer.flush-size:500}")
+    private int flushSize;
+
+    @Value("${invoice.bulk-writer.flush-interval-ms:1000}")
+    private long flushIntervalMs;
+
+    @Value("${invoice.bulk-writer.buffer-capacity:10000}")
+    private int bufferCapacity;
+
+    // Scaled down by the heap-pressure watchdog so batches hold less memory
+    private volatile int effectiveFlushSize;
+
+    private BlockingQueue<BufferedInvoice> buffer;
+    private ScheduledExecutorService flusher;
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+
+    private Counter rowsWritten;
+    private Counter batchesWritten;
+    private Counter batchesRejected;
+    private Counter rowsRejected;
+    private Counter rowsFallback;
+    private Timer flushTimer;
+
+    public InvoiceBulkWriter(InvoiceRepository invoiceRepository, DataSource dataSource,
+                             CustomerShards customerShards, MeterRegistry meterRegistry) {
+        this.invoiceRepository = invoiceRepository;
+        this.dataSource = dataSource;
+        this.customerShards = customerShards;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            log.info("Invoice bulk writer disabled - invoices are saved row by row through JPA");
+            return;
+        }
+
+        effectiveFlushSize = flushSize;
+        buffer = new LinkedBlockingQueue<>(bufferCapacity);
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "invoice-bulk-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flushSafely, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+
+        rowsWritten = Counter.builder("invoice.bulk.rows").tag("result", "written")
+                .description("Invoices written through COPY").register(meterRegistry);
+        rowsRejected = Counter.builder("invoice.bulk.rows").tag("result", "rejected")
+                .description("Invoices that could not be written at all").register(meterRegistry);
+        rowsFallback = Counter.builder("invoice.bulk.rows").tag("result", "fallback")
+                .description("Invoices written through JPA after a rejected batch or a full buffer").register(meterRegistry);
+        batchesWritten = Counter.builder("invoice.bulk.batches").tag("result", "written").register(meterRegistry);
+        batchesRejected = Counter.builder("invoice.bulk.batches").tag("result", "rejected").register(meterRegistry);
+        flushTimer = Timer.builder("invoice.bulk.flush")
+                .description("Time spent streaming one batch with COPY")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        Gauge.builder("invoice.bulk.buffered", buffer, BlockingQueue::size)
+                .description("Invoices waiting for the next COPY batch")
+                .register(meterRegistry);
+
+        log.info("Invoice bulk writer enabled - flushSize: {}, flushIntervalMs: {}, bufferCapacity: {}",
+                flushSize, flushIntervalMs, bufferCapacity);
+    }
+
+    /**
+     * Saves an invoice, either by buffering it for the next COPY batch or, when the
+     * bulk path is disabled or the buffer is full, directly through JPA.
+     *
+     * @param invoice The invoice to save
+     * @param onPersisted Run once the invoice is in the database: before this method
+     *                    returns, or on the flusher thread when its batch is written.
+     *                    Not run for an invoice that cannot be written at all
+     * @return true if the invoice was persisted before returning, false if it was buffered
+     */
+    public boolean save(Invoice invoice, Runnable onPersisted) {
+        InvoiceSaveEvent event = InvoiceSaveEvent.start();
+        String path = store(invoice, onPersisted);
+        event.complete(invoice.getTransactionId(), path);
+        return !"buffered".equals(path);
+    }
+
+    private String store(Invoice invoice, Runnable onPersisted) {
+        if (!enabled) {
+            saveOnShard(invoice);
+            onPersisted.run();
+            return "jpa";
+        }
+
+        if (!buffer.offer(new BufferedInvoice(invoice, onPersisted))) {
+            // Buffer is full: apply backpressure on the caller instead of dropping the invoice
+            log.warn("Invoice bulk buffer full ({} rows) - saving invoice {} through JPA",
+                    bufferCapacity, invoice.getInvoiceId());
+            saveOnShard(invoice);
+            rowsFallback.increment();
+            onPersisted.run();
+            return "fallback";
+        }
+
+        if (buffer.size() >= effectiveFlushSize && flushScheduled.compareAndSet(false, true)) {
+            flusher.execute(() -> {
+                flushScheduled.set(false);
+                flushSafely();
+            });
+        }
+        return "buffered";
+    }
+
+    /**
+     * Scales the flush size relative to the configured value. A scale below 1 makes
+     * batches smaller and flushes them sooner.
+     *
+     * @param scale Factor applied to the configured flush size
+     */
+    public void setBatchScale(double scale) {
+        effectiveFlushSize = Math.max(1, (int) (flushSize * scale));
+    }
+
+    /**
+     * Returns the number of invoices buffered and not yet written.
+     */
+    public int getBufferedCount() {
+        return enabled ? buffer.size() : 0;
+    }
+
+    private void flushSafely() {
+        try {
+            flush();
+        } catch (Exception e) {
+            log.error("Unexpected error flushing invoice bulk buffer: {}", e.getMessage(), e);
+        }
+    }
+
+    private void flush() {
+        int batchSize = effectiveFlushSize;
+        List<BufferedInvoice> batch = new ArrayList<>(batchSize);
+        while (buffer.drainTo(batch, batchSize) > 0) {
+            writeBatch(batch);
+            batch.clear();
+        }
+    }
+
+    private void saveOnShard(Invoice invoice) {
+        customerShards.forCustomer(invoice.getCustomerId(), () -> invoiceRepository.save(invoice));
+    }
+
+    private void writeBatch(List<BufferedInvoice> batch) {
+        if (customerShards.getShards().size() == 1) {
+            copyBatch(batch);
+            return;
+        }
+        Map<String, List<BufferedInvoice>> byShard = new LinkedHashMap<>();
+        for (BufferedInvoice buffered : batch) {
+            byShard.computeIfAbsent(customerShards.shardFor(buffered.invoice().getCustomerId()),
+                    shard -> new ArrayList<>()).add(buffered);
+        }
+        byShard.forEach((shard, invoices) -> customerShards.onShard(shard, () -> {
+            copyBatch(invoices);
+            return null;
+        }));
+    }
+
+    private void copyBatch(List<BufferedInvoice> batch) {
+        String csv = toCsv(batch);
+        Timer.Sample sample = Timer.start(meterRegistry);
+        boolean written = false;
+        try (Connection connection = dataSource.getConnection()) {
+            CopyManager copyManager = connection.unwrap(PGConnection.class).getCopyAPI();
+            long rows = copyManager.copyIn(COPY_SQL, new StringReader(csv));
+            if (!connection.getAutoCommit()) {
+                connection.commit();
+            }
+            rowsWritten.increment(rows);
+            batchesWritten.increment();
+            log.debug("Wrote {} invoices with COPY", rows);
+            written = true;
+        } catch (Exception e) {
+            batchesRejected.increment();
+            log.error("COPY rejected batch of {} invoices: {} - retrying row by row", batch.size(), e.getMessage());
+            writeRowByRow(batch);
+        } finally {
+            sample.stop(flushTimer);
+        }
+        if (written) {
+            batch.forEach(buffered -> buffered.onPersisted().run());
+        }
+    }
+
+    private void writeRowByRow(List<BufferedInvoice> batch) {
+        for (BufferedInvoice buffered : batch) {
+            Invoice invoice = buffered.invoice();
+            try {
+                saveOnShard(invoice);
+                rowsFallback.increment();
+            } catch (Exception e) {
+                rowsRejected.increment();
+                log.error("Rejected invoice {} for payment {}: {}",
+                        invoice.getInvoiceId(), invoice.getPaymentId(), e.getMessage());
+                continue;
+            }
+            buffered.onPersisted().run();
+        }
+    }
+
+    private static String toCsv(List<BufferedInvoice> batch) {
+        StringBuilder csv = new StringBuilder(batch.size() * 256);
+        for (BufferedInvoice buffered : batch) {
+            Invoice invoice = buffered.invoice();
+            appendField(csv, invoice.getInvoiceId()).append(',');
+            appendField(csv, invoice.getTransactionId()).append(',');
+            appendField(csv, invoice.getPaymentId()).append(',');
+            appendField(csv, invoice.getCustomerId()).append(',');
+            appendField(csv, invoice.getProductId()).append(',');
+            appendField(csv, invoice.getAmount() != null ? invoice.getAmount().toPlainString() : null).append(',');
+            appendField(csv, invoice.getCurrency()).append(',');
+            appendField(csv, invoice.getStatus()).append(',');
+            appendField(csv, invoice.getPaymentMethod()).append(',');
+            appendField(csv, invoice.getProcessorReference()).append(',');
+            appendField(csv, invoice.getCreatedAt()).append(',');
+            appendField(csv, invoice.getUpdatedAt() != null ? invoice.getUpdatedAt() : LocalDateTime.now()).append('\n');
+        }
+        return csv.toString();
+    }
+
+    private static StringBuilder appendField(StringBuilder csv, Object value) {
+        // Unquoted empty fields are NULL in CSV COPY; quoted values are always literal
+        if (value == null) {
+            return csv;
+        }
+        String text = value.toString();
+        csv.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"') {
+                csv.append('"');
+            }
+            csv.append(c);
+        }
+        return csv.append('"');
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (!enabled) {
+            return;
+        }
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Write whatever is still buffered before the datasource goes away
+        flushSafely();
+    }
+
+    private record BufferedInvoice(Invoice invoice, Runnable onPersisted) {
+    }
+}
@@ -0,0 +1,82 @@
+package com.gesund.demo.invoiceaggregator.repository;
+
+import com.gesund.demo.invoiceaggregator.util.CustomerShards;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Read path for bulk exports. Rows are handed to the callback one at a time while the
+ * result set is being read, so nothing is materialized in memory.
+ *
+ * The Postgres driver only uses a server-side cursor when auto-commit is off and a
+ * fetch size is set; otherwise it buffers the whole result set. The query therefore
+ * runs inside a read-only transaction with a dedicated JdbcTemplate whose fetch size
+ * bounds how many rows are held client-side at once. With customer sharding, a
+ * customer export reads only that customer's shard and a full export reads the shards
+ * one after another.
+ */
+@Slf4j
+@Repository
+public class InvoiceExportRepository {
+
+    public static final String[] COLUMNS = {
+            "invoice_id", "transaction_id", "payment_id", "customer_id", "product_id", "amount",
+            "currency", "status", "payment_method", "processor_reference", "created_at", "updated_at"
+    };
+
+    private static final String SELECT_SQL = "SELECT " + String.join(", ", COLUMNS)
+            + " FROM invoice WHERE created_at >= ? AND created_at < ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final CustomerShards customerShards;
+    private final TransactionTemplate transactionTemplate;
+
+    public InvoiceExportRepository(DataSource dataSource,
+                                   CustomerShards customerShards,
+                                   PlatformTransactionManager transactionManager,
+                                   @Value("${invoice.export.fetch-size:1000}") int fetchSize) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(fetchSize);
+        this.customerShards = customerShards;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+    }
+
+    /**
+     * Streams the invoices created in [from, to), optionally restricted to one customer.
+     *
+     * @param from Inclusive lower bound on created_at
+     * @param to Exclusive upper bound on created_at
+     * @param customerId Customer to restrict to, or null for all customers
+     * @param handler Callback invoked for every row while the cursor is open
+     */
+    public void streamInvoices(LocalDateTime from, LocalDateTime to, String customerId, RowCallbackHandler handler) {
+        StringBuilder sql = new StringBuilder(SELECT_SQL);
+        List<Object> args = new ArrayList<>(3);
+        args.add(Timestamp.valueOf(from));
+        args.add(Timestamp.valueOf(to));
+        if (customerId != null) {
+            sql.append(" AND customer_id = ?");
+            args.add(customerId);
+            customerShards.forCustomer(customerId, () -> transactionTemplate.execute(status -> {
+                jdbcTemplate.query(sql.toString(), handler, args.toArray());
+                return null;
+            }));
+            return;
+        }
+
+        customerShards.forEachShard(shard -> transactionTemplate.executeWithoutResult(status ->
+                jdbcTemplate.query(sql.toString(), handler, args.toArray())));
+    }
+}
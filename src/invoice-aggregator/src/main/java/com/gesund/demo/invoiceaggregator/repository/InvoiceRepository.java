@@ -3,13 +3,19 @@ package com.gesund.demo.invoiceaggregator.repository;
 import com.gesund.demo.invoiceaggregator.model.Invoice;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.Optional;
 import java.util.UUID;
 
 @Repository
 public interface InvoiceRepository extends JpaRepository<Invoice, Long> {
+    @Transactional(readOnly = true)
     Optional<Invoice> findByInvoiceId(UUID invoiceId);
+
+    @Transactional(readOnly = true)
     Optional<Invoice> findByTransactionId(UUID transactionId);
+
+    @Transactional(readOnly = true)
     Optional<Invoice> findByPaymentId(UUID paymentId);
 }
@@ -0,0 +1,102 @@
+package com.gesund.demo.invoiceaggregator.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * SQL side of the billing -> payment -> invoice reconciliation.
+ *
+ * Every query is bounded by created_at on all joined tables so Postgres only touches
+ * the partitions of the slice being reconciled. Payments and invoices are written
+ * shortly after the billing record, so they are looked up within the slice widened by
+ * the configured lag instead of across the whole table.
+ */
+@Repository
+public class ReconciliationRepository {
+
+    public static final String MISSING_PAYMENT = "MISSING_PAYMENT";
+    public static final String MISSING_INVOICE = "MISSING_INVOICE";
+    public static final String AMOUNT_MISMATCH = "AMOUNT_MISMATCH";
+
+    private static final String INSERT = "INSERT INTO reconciliation_discrepancy "
+            + "(kind, transaction_id, payment_id, customer_id, billing_amount, payment_amount, invoice_amount, occurred_at) ";
+
+    private static final String MISSING_PAYMENT_SQL = INSERT
+            + "SELECT '" + MISSING_PAYMENT + "', b.transaction_id, NULL, b.customer_id, b.amount, NULL, NULL, b.created_at "
+            + "FROM billing_record b "
+            + "WHERE b.created_at >= ? AND b.created_at < ? AND b.transaction_id IS NOT NULL "
+            + "AND NOT EXISTS (SELECT 1 FROM payment p WHERE p.transaction_id = b.transaction_id "
+            + "AND p.created_at >= ? AND p.created_at < ?) "
+            + "ON CONFLICT (kind, transaction_id) DO NOTHING";
+
+    private static final String MISSING_INVOICE_SQL = INSERT
+            + "SELECT '" + MISSING_INVOICE + "', p.transaction_id, p.payment_id, p.customer_id, NULL, p.amount, NULL, p.created_at "
+            + "FROM payment p "
+            + "WHERE p.created_at >= ? AND p.created_at < ? AND p.transaction_id IS NOT NULL "
+            + "AND NOT EXISTS (SELECT 1 FROM invoice i WHERE i.payment_id = p.payment_id "
+            + "AND i.created_at >= ? AND i.created_at < ?) "
+            + "ON CONFLICT (kind, transaction_id) DO NOTHING";
+
+    private static final String AMOUNT_MISMATCH_SQL = INSERT
+            + "SELECT '" + AMOUNT_MISMATCH + "', b.transaction_id, p.payment_id, b.customer_id, b.amount, p.amount, i.amount, b.created_at "
+            + "FROM billing_record b "
+            + "JOIN payment p ON p.transaction_id = b.transaction_id AND p.created_at >= ? AND p.created_at < ? "
+            + "LEFT JOIN invoice i ON i.payment_id = p.payment_id AND i.created_at >= ? AND i.created_at < ? "
+            + "WHERE b.created_at >= ? AND b.created_at < ? "
+            + "AND (b.amount <> p.amount OR i.amount <> p.amount) "
+            + "ON CONFLICT (kind, transaction_id) DO NOTHING";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public ReconciliationRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Returns the end of the last reconciled slice for a job, starting it at the given
+     * time if the job never ran. The watermark row stays locked until the surrounding
+     * transaction ends, so only one instance reconciles at a time.
+     */
+    public LocalDateTime lockWatermark(String job, LocalDateTime initial) {
+        jdbcTemplate.update("INSERT INTO reconciliation_watermark (job, reconciled_until) VALUES (?, ?) "
+                + "ON CONFLICT (job) DO NOTHING", job, ts(initial));
+        List<Timestamp> rows = jdbcTemplate.queryForList(
+                "SELECT reconciled_until FROM reconciliation_watermark WHERE job = ? FOR UPDATE SKIP LOCKED",
+                Timestamp.class, job);
+        if (rows.isEmpty()) {
+            throw new IllegalStateException("Reconciliation job " + job + " is already running elsewhere");
+        }
+        return rows.get(0).toLocalDateTime();
+    }
+
+    public void advanceWatermark(String job, LocalDateTime reconciledUntil) {
+        jdbcTemplate.update("UPDATE reconciliation_watermark SET reconciled_until = ?, updated_at = now() WHERE job = ?",
+                ts(reconciledUntil), job);
+    }
+
+    public int recordMissingPayments(LocalDateTime from, LocalDateTime to, Duration lag) {
+        return jdbcTemplate.update(MISSING_PAYMENT_SQL,
+                ts(from), ts(to), ts(from.minus(lag)), ts(to.plus(lag)));
+    }
+
+    public int recordMissingInvoices(LocalDateTime from, LocalDateTime to, Duration lag) {
+        return jdbcTemplate.update(MISSING_INVOICE_SQL,
+                ts(from), ts(to), ts(from.minus(lag)), ts(to.plus(lag)));
+    }
+
+    public int recordAmountMismatches(LocalDateTime from, LocalDateTime to, Duration lag) {
+        return jdbcTemplate.update(AMOUNT_MISMATCH_SQL,
+                ts(from.minus(lag)), ts(to.plus(lag)),
+                ts(from.minus(lag)), ts(to.plus(lag)),
+                ts(from), ts(to));
+    }
+
+    private static Timestamp ts(LocalDateTime time) {
+        return Timestamp.valueOf(time);
+    }
+}
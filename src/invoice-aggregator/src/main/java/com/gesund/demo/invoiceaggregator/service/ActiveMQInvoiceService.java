@@ -2,9 +2,13 @@ package com.gesund.demo.invoiceaggregator.service;
 
 import com.gesund.demo.invoiceaggregator.model.Invoice;
 import com.gesund.demo.invoiceaggregator.model.PaymentMessage;
-import com.gesund.demo.invoiceaggregator.repository.InvoiceRepository;
+import com.gesund.demo.invoiceaggregator.repository.InvoiceBulkWriter;
 import com.gesund.demo.invoiceaggregator.util.ContextPropagationUtil;
 import com.gesund.demo.invoiceaggregator.util.ContextPropagatingExecutorService;
+import com.gesund.demo.invoiceaggregator.util.InvoiceMetrics;
+import com.gesund.demo.invoiceaggregator.util.PipelineLatencyRecorder;
+import com.gesund.demo.invoiceaggregator.util.PipelineTimestamps;
+import com.gesund.demo.invoiceaggregator.util.TracingHelper;
 import io.opentelemetry.api.GlobalOpenTelemetry;
 import io.opentelemetry.api.trace.Span;
 import io.opentelemetry.api.trace.SpanKind;
@@ -22,6 +26,7 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.Map;
 import java.util.UUID;
 
 @Service
@@ -29,13 +34,23 @@ import java.util.UUID;
 @ConditionalOnProperty(name = "messaging.system", havingValue = "activemq")
 public class ActiveMQInvoiceService implements InvoiceService {
 
-    private final InvoiceRepository invoiceRepository;
+    private final InvoiceBulkWriter invoiceBulkWriter;
     private final ContextPropagatingExecutorService executorService;
+    private final PipelineLatencyRecorder latencyRecorder;
+    private final InvoiceMetrics invoiceMetrics;
     private final Tracer tracer = GlobalOpenTelemetry.getTracer("activemq-invoice-processor");
+    private final TracingHelper tracingHelper;
     
-    public ActiveMQInvoiceService(InvoiceRepository invoiceRepository) {
-        this.invoiceRepository = invoiceRepository;
-        this.executorService = new ContextPropagatingExecutorService(10);
+    public ActiveMQInvoiceService(InvoiceBulkWriter invoiceBulkWriter,
+                                ContextPropagatingExecutorService executorService,
+                                PipelineLatencyRecorder latencyRecorder,
+                                TracingHelper tracingHelper,
+                                InvoiceMetrics invoiceMetrics) {
+        this.invoiceBulkWriter = invoiceBulkWriter;
+        this.executorService = executorService;
+        this.latencyRecorder = latencyRecorder;
+        this.invoiceMetrics = invoiceMetrics;
+        this.tracingHelper = tracingHelper;
     }
 
     @Autowired
@@ -51,16 +66,13 @@ public class ActiveMQInvoiceService implements InvoiceService {
         try {
             // Create a span for processing this message
             Span processSpan = tracer.spanBuilder("process-payment-direct")
-                    .setAttribute("payment.id", message.getPaymentId().toString())
-                    .setAttribute("transaction.id", message.getTransactionId().toString())
                     .setSpanKind(SpanKind.CONSUMER)
                     .startSpan();
+            TracingHelper.tag(processSpan, TracingHelper.PAYMENT_ID, message.getPaymentId());
+            TracingHelper.tag(processSpan, TracingHelper.TRANSACTION_ID, message.getTransactionId());
             
-            try (Scope scope = processSpan.makeCurrent()) {
-                executorService.execute(() -> processMessageInThread(message));
-            } finally {
-                processSpan.end();
-            }
+            Map<String, Long> timestamps = PipelineTimestamps.start(PipelineTimestamps.INVOICE_DEQUEUE);
+            handOver(processSpan, timestamps, message);
         } catch (Exception e) {
             log.error("Error processing payment: {}", e.getMessage(), e);
             throw e;
@@ -76,6 +88,8 @@ public class ActiveMQInvoiceService implements InvoiceService {
             
             // Extract context from JMS message properties
             Context extractedContext = ContextPropagationUtil.extractContextFromJmsMessage(jmsMessage);
+            Map<String, Long> timestamps = PipelineTimestamps.stamp(
+                    PipelineTimestamps.fromJmsMessage(jmsMessage), PipelineTimestamps.INVOICE_DEQUEUE);
             
             log.info("Processing payment message for transaction: {}, payment: {}", 
                     message.getTransactionId(), message.getPaymentId());
@@ -83,41 +97,60 @@ public class ActiveMQInvoiceService implements InvoiceService {
             // Create a child span for processing this message, using the extracted context as parent
             Span processSpan = tracer.spanBuilder("process-payment")
                     .setParent(extractedContext)
-                    .setAttribute("message.id", message.getPaymentId().toString())
-                    .setAttribute("transaction.id", message.getTransactionId().toString())
                     .setSpanKind(SpanKind.CONSUMER)
                     .startSpan();
+            TracingHelper.tag(processSpan, TracingHelper.MESSAGE_ID, message.getPaymentId());
+            TracingHelper.tag(processSpan, TracingHelper.TRANSACTION_ID, message.getTransactionId());
             
             // Add JMS destination as attribute if available
-            try {
-                processSpan.setAttribute("jms.destination", jmsMessage.getJMSDestination().toString());
-            } catch (JMSException e) {
-                log.warn("Could not get JMS destination: {}", e.getMessage());
+            if (processSpan.isRecording()) {
+                try {
+                    processSpan.setAttribute(TracingHelper.JMS_DESTINATION, jmsMessage.getJMSDestination().toString());
+                } catch (JMSException e) {
+                    log.warn("Could not get JMS destination: {}", e.getMessage());
+                }
             }
             
-            try (Scope scope = processSpan.makeCurrent()) {
-                log.info("Started processing with explicit span - TraceId: {}, SpanId: {}", 
-                        processSpan.getSpanContext().getTraceId(),
-                        processSpan.getSpanContext().getSpanId());
-                
-                // Now use our context-propagating executor
-                executorService.execute(() -> processMessageInThread(message));
-            } finally {
-                processSpan.end();
-            }
+            log.info("Started processing with explicit span - TraceId: {}, SpanId: {}", 
+                    processSpan.getSpanContext().getTraceId(),
+                    processSpan.getSpanContext().getSpanId());
+            handOver(processSpan, timestamps, message);
         } catch (Exception e) {
             log.error("Error processing payment message: {}", e.getMessage(), e);
             throw e;
         }
     }
 
-    private void processMessageInThread(PaymentMessage message) {
+    /**
+     * Saves the invoice on the context-propagating executor. When nested spans are merged,
+     * the process span is ended here, after the save it now covers, instead of when the
+     * listener hands the message off.
+     */
+    private void handOver(Span processSpan, Map<String, Long> timestamps, PaymentMessage message) {
+        Span ownedSpan = tracingHelper.isMergingNestedSpans() ? processSpan : null;
+        boolean submitted = false;
+        try (Scope scope = processSpan.makeCurrent()) {
+            // Now use our context-propagating executor
+            executorService.execute(() -> invoiceMetrics.recordProcessing(
+                    () -> processMessageInThread(message, timestamps, ownedSpan)), message.getTransactionId());
+            submitted = true;
+        } finally {
+            if (ownedSpan == null || !submitted) {
+                processSpan.end();
+            }
+        }
+    }
+
+    /**
+     * @return false if the invoice could not be saved
+     */
+    private boolean processMessageInThread(PaymentMessage message, Map<String, Long> timestamps, Span ownedSpan) {
+        PipelineTimestamps.stamp(timestamps, PipelineTimestamps.INVOICE_EXECUTOR_START);
+
         // Create a span for the database operation
-        Span dbSpan = tracer.spanBuilder("save-invoice")
-                .setParent(Context.current())
-                .setAttribute("payment.id", message.getPaymentId().toString())
-                .setAttribute("transaction.id", message.getTransactionId().toString())
-                .startSpan();
+        Span dbSpan = tracingHelper.startNested(tracer, "save-invoice", SpanKind.INTERNAL);
+        TracingHelper.tag(dbSpan, TracingHelper.PAYMENT_ID, message.getPaymentId());
+        TracingHelper.tag(dbSpan, TracingHelper.TRANSACTION_ID, message.getTransactionId());
                 
         try (Scope scope = dbSpan.makeCurrent()) {
             log.info("============ TRACE CONTEXT INFO ============");
@@ -143,13 +176,24 @@ public class ActiveMQInvoiceService implements InvoiceService {
                     .createdAt(LocalDateTime.now())
                     .build();
 
-            invoiceRepository.save(invoice);
-            log.info("Saved invoice with ID: {} for payment: {}", invoiceId, message.getPaymentId());
+            // The save hop ends when the row is in the database, which for a buffered invoice is at the flush
+            boolean persisted = invoiceBulkWriter.save(invoice, () -> latencyRecorder.record(
+                    PipelineTimestamps.stamp(timestamps, PipelineTimestamps.INVOICE_SAVED)));
+            if (persisted) {
+                log.info("Saved invoice with ID: {} for payment: {}", invoiceId, message.getPaymentId());
+            } else {
+                log.info("Buffered invoice with ID: {} for payment: {}", invoiceId, message.getPaymentId());
+            }
+            return true;
         } catch (Exception e) {
             log.error("Error processing payment message: {}", e.getMessage(), e);
             dbSpan.recordException(e);
+            return false;
         } finally {
-            dbSpan.end();
+            tracingHelper.endNested(dbSpan);
+            if (ownedSpan != null) {
+                ownedSpan.end();
+            }
         }
     }
 }
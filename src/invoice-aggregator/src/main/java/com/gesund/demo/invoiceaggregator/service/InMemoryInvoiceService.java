@@ -0,0 +1,193 @@
+package com.gesund.demo.invoiceaggregator.service;
+
+import com.gesund.demo.invoiceaggregator.model.Invoice;
+import com.gesund.demo.invoiceaggregator.model.PaymentMessage;
+import com.gesund.demo.invoiceaggregator.repository.InvoiceBulkWriter;
+import com.gesund.demo.invoiceaggregator.util.ContextPropagationUtil;
+import com.gesund.demo.invoiceaggregator.util.ContextPropagatingExecutorService;
+import com.gesund.demo.invoiceaggregator.util.InMemoryBroker;
+import com.gesund.demo.invoiceaggregator.util.InvoiceMetrics;
+import com.gesund.demo.invoiceaggregator.util.PipelineLatencyRecorder;
+import com.gesund.demo.invoiceaggregator.util.PipelineTimestamps;
+import com.gesund.demo.invoiceaggregator.util.TracingHelper;
+import io.opentelemetry.api.GlobalOpenTelemetry;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.context.Scope;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.UUID;
+
+@Service
+@Slf4j
+@ConditionalOnProperty(name = "messaging.system", havingValue = "inmemory")
+public class InMemoryInvoiceService implements InvoiceService {
+
+    private final InvoiceBulkWriter invoiceBulkWriter;
+    private final ContextPropagatingExecutorService executorService;
+    private final PipelineLatencyRecorder latencyRecorder;
+    private final InvoiceMetrics invoiceMetrics;
+    private final Tracer tracer = GlobalOpenTelemetry.getTracer("inmemory-invoice-processor");
+    private final TracingHelper tracingHelper;
+    private final InMemoryBroker inMemoryBroker;
+    private InMemoryBroker.Subscription subscription;
+
+    public InMemoryInvoiceService(InvoiceBulkWriter invoiceBulkWriter,
+                                  ContextPropagatingExecutorService executorService,
+                                  PipelineLatencyRecorder latencyRecorder,
+                                  TracingHelper tracingHelper,
+                                  InvoiceMetrics invoiceMetrics,
+                                  InMemoryBroker inMemoryBroker) {
+        this.invoiceBulkWriter = invoiceBulkWriter;
+        this.executorService = executorService;
+        this.latencyRecorder = latencyRecorder;
+        this.invoiceMetrics = invoiceMetrics;
+        this.tracingHelper = tracingHelper;
+        this.inMemoryBroker = inMemoryBroker;
+    }
+
+    @Value("${inmemory.queue.payment}")
+    private String paymentQueue;
+
+    @PostConstruct
+    public void subscribe() {
+        subscription = inMemoryBroker.subscribe(paymentQueue, PaymentMessage.class, this::processInMemoryMessage);
+    }
+
+    @PreDestroy
+    public void unsubscribe() throws InterruptedException {
+        subscription.close();
+    }
+
+    @Override
+    public void processPayment(PaymentMessage message) {
+        // This method is required by the InvoiceService interface
+        // In practice, it will not be called directly as the in-memory consumer
+        // will invoke processInMemoryMessage instead
+        log.warn("Direct processPayment call without message headers - context propagation will not work properly");
+        
+        try {
+            // Create a span for processing this message
+            Span processSpan = tracer.spanBuilder("process-payment-direct")
+                    .setSpanKind(SpanKind.CONSUMER)
+                    .startSpan();
+            TracingHelper.tag(processSpan, TracingHelper.PAYMENT_ID, message.getPaymentId());
+            TracingHelper.tag(processSpan, TracingHelper.TRANSACTION_ID, message.getTransactionId());
+            
+            Map<String, Long> timestamps = PipelineTimestamps.start(PipelineTimestamps.INVOICE_DEQUEUE);
+            handOver(processSpan, timestamps, message);
+        } catch (Exception e) {
+            log.error("Error processing payment: {}", e.getMessage(), e);
+            throw e;
+        }
+    }
+    
+    private void processInMemoryMessage(PaymentMessage message, Map<String, String> headers) {
+        try {
+            // Extract context from the message headers
+            Context extractedContext = ContextPropagationUtil.extractContextFromHeaders(headers);
+            Map<String, Long> timestamps = PipelineTimestamps.stamp(
+                    PipelineTimestamps.fromHeaders(headers), PipelineTimestamps.INVOICE_DEQUEUE);
+
+            log.info("Processing payment message for transaction: {}, payment: {}",
+                    message.getTransactionId(), message.getPaymentId());
+
+            // Create a child span for processing this message, using the extracted context as parent
+            Span processSpan = tracer.spanBuilder("process-payment")
+                    .setParent(extractedContext)
+                    .setSpanKind(SpanKind.CONSUMER)
+                    .startSpan();
+            TracingHelper.tag(processSpan, TracingHelper.MESSAGE_ID, message.getPaymentId());
+            TracingHelper.tag(processSpan, TracingHelper.TRANSACTION_ID, message.getTransactionId());
+            handOver(processSpan, timestamps, message);
+        } catch (Exception e) {
+            log.error("Error processing payment message: {}", e.getMessage(), e);
+            throw e; // Re-throw the exception to let the consumer redeliver the message
+        }
+    }
+
+    /**
+     * Saves the invoice on the context-propagating executor. When nested spans are merged,
+     * the process span is ended here, after the save it now covers, instead of when the
+     * listener hands the message off.
+     */
+    private void handOver(Span processSpan, Map<String, Long> timestamps, PaymentMessage message) {
+        Span ownedSpan = tracingHelper.isMergingNestedSpans() ? processSpan : null;
+        boolean submitted = false;
+        try (Scope scope = processSpan.makeCurrent()) {
+            // Now use our context-propagating executor
+            executorService.execute(() -> invoiceMetrics.recordProcessing(
+                    () -> processMessageInThread(message, timestamps, ownedSpan)), message.getTransactionId());
+            submitted = true;
+        } finally {
+            if (ownedSpan == null || !submitted) {
+                processSpan.end();
+            }
+        }
+    }
+
+    /**
+     * @return false if the invoice could not be saved
+     */
+    private boolean processMessageInThread(PaymentMessage message, Map<String, Long> timestamps, Span ownedSpan) {
+        PipelineTimestamps.stamp(timestamps, PipelineTimestamps.INVOICE_EXECUTOR_START);
+
+        // Create a span for the database operation
+        Span dbSpan = tracingHelper.startNested(tracer, "save-invoice", SpanKind.INTERNAL);
+        TracingHelper.tag(dbSpan, TracingHelper.PAYMENT_ID, message.getPaymentId());
+        TracingHelper.tag(dbSpan, TracingHelper.TRANSACTION_ID, message.getTransactionId());
+                
+        try (Scope scope = dbSpan.makeCurrent()) {
+            log.info("============ TRACE CONTEXT INFO ============");
+            log.info("Processing payment in thread for payment ID: {}", message.getPaymentId());
+            log.info("Current span ID: {}", Span.current().getSpanContext().getSpanId());
+            log.info("Current trace ID: {}", Span.current().getSpanContext().getTraceId());
+            log.info("Is sampled: {}", Span.current().getSpanContext().isSampled());
+            log.info("============================================");
+
+            // Create and save invoice
+            UUID invoiceId = UUID.randomUUID();
+            Invoice invoice = Invoice.builder()
+                    .invoiceId(invoiceId)
+                    .transactionId(message.getTransactionId())
+                    .paymentId(message.getPaymentId())
+                    .customerId(message.getCustomerId())
+                    .productId(message.getProductId())
+                    .amount(message.getAmount())
+                    .currency(message.getCurrency())
+                    .status("GENERATED")
+                    .paymentMethod(message.getPaymentMethod())
+                    .processorReference(message.getProcessorReference())
+                    .createdAt(LocalDateTime.now())
+                    .build();
+
+            // The save hop ends when the row is in the database, which for a buffered invoice is at the flush
+            boolean persisted = invoiceBulkWriter.save(invoice, () -> latencyRecorder.record(
+                    PipelineTimestamps.stamp(timestamps, PipelineTimestamps.INVOICE_SAVED)));
+            if (persisted) {
+                log.info("Saved invoice with ID: {} for payment: {}", invoiceId, message.getPaymentId());
+            } else {
+                log.info("Buffered invoice with ID: {} for payment: {}", invoiceId, message.getPaymentId());
+            }
+            return true;
+        } catch (Exception e) {
+            log.error("Error processing payment message: {}", e.getMessage(), e);
+            dbSpan.recordException(e);
+            return false;
+        } finally {
+            tracingHelper.endNested(dbSpan);
+            if (ownedSpan != null) {
+                ownedSpan.end();
+            }
+        }
+    }
+}
@@ -2,37 +2,65 @@ package com.gesund.demo.invoiceaggregator.service;
 
 import com.gesund.demo.invoiceaggregator.model.Invoice;
 import com.gesund.demo.invoiceaggregator.model.PaymentMessage;
-import com.gesund.demo.invoiceaggregator.repository.InvoiceRepository;
+import com.gesund.demo.invoiceaggregator.repository.InvoiceBulkWriter;
 import io.opentelemetry.api.trace.Span;
 import io.opentelemetry.context.Context;
 import io.opentelemetry.context.Scope;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.messaging.handler.annotation.Headers;
+import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.Map;
 import java.util.UUID;
 import com.gesund.demo.invoiceaggregator.util.ContextPropagatingExecutorService;
+import com.gesund.demo.invoiceaggregator.util.ContextPropagationUtil;
+import com.gesund.demo.invoiceaggregator.util.InvoiceMetrics;
+import com.gesund.demo.invoiceaggregator.util.PipelineLatencyRecorder;
+import com.gesund.demo.invoiceaggregator.util.PipelineTimestamps;
 
 @Service
 @Slf4j
 @ConditionalOnProperty(name = "messaging.system", havingValue = "rabbitmq")
 public class RabbitMQInvoiceService implements InvoiceService {
 
-    private final InvoiceRepository invoiceRepository;
+    private final InvoiceBulkWriter invoiceBulkWriter;
     private final ContextPropagatingExecutorService executorService;
+    private final PipelineLatencyRecorder latencyRecorder;
+    private final InvoiceMetrics invoiceMetrics;
     
-    public RabbitMQInvoiceService(InvoiceRepository invoiceRepository) {
-        this.invoiceRepository = invoiceRepository;
-        this.executorService = new ContextPropagatingExecutorService(10);
+    public RabbitMQInvoiceService(InvoiceBulkWriter invoiceBulkWriter,
+                                ContextPropagatingExecutorService executorService,
+                                PipelineLatencyRecorder latencyRecorder,
+                                InvoiceMetrics invoiceMetrics) {
+        this.invoiceBulkWriter = invoiceBulkWriter;
+        this.executorService = executorService;
+        this.latencyRecorder = latencyRecorder;
+        this.invoiceMetrics = invoiceMetrics;
     }
 
     @Override
-    @RabbitListener(queues = "${rabbitmq.queue.payment}")
     @Transactional
     public void processPayment(PaymentMessage message) {
+        processPayment(message, PipelineTimestamps.start(PipelineTimestamps.INVOICE_DEQUEUE));
+    }
+
+    @RabbitListener(queues = "${rabbitmq.queue.payment}")
+    @Transactional
+    public void processRabbitMessage(@Payload PaymentMessage message, @Headers Map<String, Object> headers) {
+        // Continue the trace of the payment-processor that sent the message
+        Context extractedContext = ContextPropagationUtil.extractContextFromAmqpHeaders(headers);
+        try (Scope scope = extractedContext.makeCurrent()) {
+            processPayment(message, PipelineTimestamps.stamp(
+                    PipelineTimestamps.fromAmqpHeaders(headers), PipelineTimestamps.INVOICE_DEQUEUE));
+        }
+    }
+
+    private void processPayment(PaymentMessage message, Map<String, Long> timestamps) {
         log.info("Processing payment message for transaction: {}, payment: {}", 
                 message.getTransactionId(), message.getPaymentId());
 
@@ -43,10 +71,16 @@ public class RabbitMQInvoiceService implements InvoiceService {
                 currentSpan.getSpanContext().getSpanId());
         
         // Use our context-propagating executor to ensure trace context is maintained
-        executorService.execute(() -> processMessageInThread(message));
+        executorService.execute(() -> invoiceMetrics.recordProcessing(
+                () -> processMessageInThread(message, timestamps)), message.getTransactionId());
     }
 
-    private void processMessageInThread(PaymentMessage message) {
+    /**
+     * @return false if the invoice could not be saved
+     */
+    private boolean processMessageInThread(PaymentMessage message, Map<String, Long> timestamps) {
+        PipelineTimestamps.stamp(timestamps, PipelineTimestamps.INVOICE_EXECUTOR_START);
+
         try {
             log.info("============ TRACE CONTEXT INFO ============");
             log.info("Processing payment in thread for payment ID: {}", message.getPaymentId());
@@ -71,10 +105,18 @@ public class RabbitMQInvoiceService implements InvoiceService {
                     .createdAt(LocalDateTime.now())
                     .build();
 
-            invoiceRepository.save(invoice);
-            log.info("Saved invoice with ID: {} for payment: {}", invoiceId, message.getPaymentId());
+            // The save hop ends when the row is in the database, which for a buffered invoice is at the flush
+            boolean persisted = invoiceBulkWriter.save(invoice, () -> latencyRecorder.record(
+                    PipelineTimestamps.stamp(timestamps, PipelineTimestamps.INVOICE_SAVED)));
+            if (persisted) {
+                log.info("Saved invoice with ID: {} for payment: {}", invoiceId, message.getPaymentId());
+            } else {
+                log.info("Buffered invoice with ID: {} for payment: {}", invoiceId, message.getPaymentId());
+            }
+            return true;
         } catch (Exception e) {
             log.error("Error processing payment message: {}", e.getMessage(), e);
+            return false;
         }
     }
 }
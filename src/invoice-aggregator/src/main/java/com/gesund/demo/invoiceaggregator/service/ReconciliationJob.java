@@ -0,0 +1,197 @@
+package com.gesund.demo.invoiceaggregator.service;
+
+import com.gesund.demo.invoiceaggregator.repository.ReconciliationRepository;
+import com.gesund.demo.invoiceaggregator.util.CustomerShards;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Incremental reconciliation of billing records, payments and invoices.
+ *
+ * Each run picks up at the persisted watermark and reconciles everything up to
+ * "now minus lag", so payments and invoices that are still in flight (async invoice
+ * saves, buffered bulk writes) are not reported. The window is cut into fixed time
+ * slices that are reconciled in parallel on a fork/join pool; the watermark only moves
+ * once every slice has succeeded. Findings are idempotent per (kind, transaction), so a
+ * failed run is simply retried from the same watermark.
+ *
+ * With customer sharding, a customer's billing record, payment and invoice live on the
+ * same shard, so every shard is reconciled on its own with its own watermark.
+ */
+@Slf4j
+@Component
+public class ReconciliationJob {
+
+    private static final String JOB = "billing-payment-invoice";
+
+    private final ReconciliationRepository reconciliationRepository;
+    private final CustomerShards customerShards;
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${reconciliation.enabled:false}")
+    private boolean enabled;
+
+    @Value("${reconciliation.slice-minutes:5}")
+    private long sliceMinutes;
+
+    @Value("${reconciliation.lag-minutes:10}")
+    private long lagMinutes;
+
+    @Value("${reconciliation.max-window-hours:24}")
+    private long maxWindowHours;
+
+    @Value("${reconciliation.initial-lookback-hours:24}")
+    private long initialLookbackHours;
+
+    @Value("${reconciliation.parallelism:4}")
+    private int parallelism;
+
+    private ForkJoinPool pool;
+    private Counter missingPayments;
+    private Counter missingInvoices;
+    private Counter amountMismatches;
+    private Timer runTimer;
+
+    public ReconciliationJob(ReconciliationRepository reconciliationRepository,
+                             CustomerShards customerShards,
+                             PlatformTransactionManager transactionManager,
+                             MeterRegistry meterRegistry) {
+        this.reconciliationRepository = reconciliationRepository;
+        this.customerShards = customerShards;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            log.info("Reconciliation job disabled");
+            return;
+        }
+        pool = new ForkJoinPool(parallelism);
+        missingPayments = discrepancyCounter(ReconciliationRepository.MISSING_PAYMENT);
+        missingInvoices = discrepancyCounter(ReconciliationRepository.MISSING_INVOICE);
+        amountMismatches = discrepancyCounter(ReconciliationRepository.AMOUNT_MISMATCH);
+        runTimer = Timer.builder("invoice.reconciliation.run")
+                .description("Time spent reconciling one window")
+                .register(meterRegistry);
+        log.info("Reconciliation job enabled - slice: {}m, lag: {}m, parallelism: {}",
+                sliceMinutes, lagMinutes, parallelism);
+    }
+
+    private Counter discrepancyCounter(String kind) {
+        return Counter.builder("invoice.reconciliation.discrepancies").tag("kind", kind)
+                .description("Discrepancies found by the reconciliation job").register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${reconciliation.interval-ms:60000}")
+    public void reconcile() {
+        if (!enabled) {
+            return;
+        }
+        customerShards.forEachShard(shard -> {
+            try {
+                // The transaction only holds the watermark row lock; slices use their own connections
+                transactionTemplate.executeWithoutResult(status -> runTimer.record(() -> reconcileWindow(shard)));
+            } catch (IllegalStateException e) {
+                log.debug("Skipping reconciliation run on {}: {}", shard, e.getMessage());
+            } catch (Exception e) {
+                log.error("Reconciliation run on {} failed, will retry from the same watermark: {}",
+                        shard, e.getMessage(), e);
+            }
+        });
+    }
+
+    private void reconcileWindow(String shard) {
+        Duration slice = Duration.ofMinutes(sliceMinutes);
+        LocalDateTime end = alignToSlice(LocalDateTime.now().minusMinutes(lagMinutes));
+        LocalDateTime start = reconciliationRepository.lockWatermark(JOB, end.minusHours(initialLookbackHours));
+        if (!start.isBefore(end)) {
+            return;
+        }
+        if (end.isAfter(start.plusHours(maxWindowHours))) {
+            // Catch up in bounded steps after a long pause instead of one huge run
+            end = start.plusHours(maxWindowHours);
+        }
+
+        long[] found = pool.invoke(new SliceTask(shard, start, end, slice, Duration.ofMinutes(lagMinutes)));
+        reconciliationRepository.advanceWatermark(JOB, end);
+
+        missingPayments.increment(found[0]);
+        missingInvoices.increment(found[1]);
+        amountMismatches.increment(found[2]);
+        log.info("Reconciled {} from {} to {} - missing payments: {}, missing invoices: {}, amount mismatches: {}",
+                shard, start, end, found[0], found[1], found[2]);
+    }
+
+    private LocalDateTime alignToSlice(LocalDateTime time) {
+        long minuteOfDay = time.toLocalTime().toSecondOfDay() / 60;
+        return time.truncatedTo(ChronoUnit.DAYS).plusMinutes(minuteOfDay - minuteOfDay % sliceMinutes);
+    }
+
+    /**
+     * Splits a window in halves on slice boundaries until a single slice is left, then
+     * reconciles that slice on the given shard. Returns the number of new findings per kind.
+     */
+    private class SliceTask extends RecursiveTask<long[]> {
+
+        private final String shard;
+        private final LocalDateTime from;
+        private final LocalDateTime to;
+        private final Duration slice;
+        private final Duration lag;
+
+        SliceTask(String shard, LocalDateTime from, LocalDateTime to, Duration slice, Duration lag) {
+            this.shard = shard;
+            this.from = from;
+            this.to = to;
+            this.slice = slice;
+            this.lag = lag;
+        }
+
+        @Override
+        protected long[] compute() {
+            long slices = Duration.between(from, to).dividedBy(slice);
+            if (slices <= 1) {
+                // Pool workers do not see the caller's shard selection
+                return customerShards.onShard(shard, () -> new long[] {
+                        reconciliationRepository.recordMissingPayments(from, to, lag),
+                        reconciliationRepository.recordMissingInvoices(from, to, lag),
+                        reconciliationRepository.recordAmountMismatches(from, to, lag)
+                });
+            }
+            LocalDateTime mid = from.plus(slice.multipliedBy(slices / 2));
+            SliceTask left = new SliceTask(shard, from, mid, slice, lag);
+            left.fork();
+            long[] right = new SliceTask(shard, mid, to, slice, lag).compute();
+            long[] result = left.join();
+            for (int i = 0; i < result.length; i++) {
+                result[i] += right[i];
+            }
+            return result;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+}
@@ -3,10 +3,13 @@ package com.gesund.demo.invoiceaggregator.util;
 import io.opentelemetry.context.Context;
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.UUID;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A wrapper for ExecutorService that automatically propagates OpenTelemetry context
@@ -16,10 +19,29 @@ import java.util.concurrent.Future;
 @Slf4j
 public class ContextPropagatingExecutorService {
     
-    private final ExecutorService executorService;
+    private final ThreadPoolExecutor executorService;
+    
+    // Cleared by the heap-pressure watchdog to shed new work while the heap recovers
+    private volatile boolean acceptingWork = true;
     
     public ContextPropagatingExecutorService(int threadPoolSize) {
-        this.executorService = Executors.newFixedThreadPool(threadPoolSize);
+        // What Executors.newFixedThreadPool builds, kept as a ThreadPoolExecutor for its queue and thread counts
+        this.executorService = new ThreadPoolExecutor(threadPoolSize, threadPoolSize,
+                0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>());
+    }
+    
+    /**
+     * Controls whether new tasks are accepted. While not accepting, {@link #execute(Runnable)}
+     * and {@link #submit(Callable)} throw {@link RejectedExecutionException}.
+     * 
+     * @param acceptingWork true to accept new tasks, false to reject them
+     */
+    public void setAcceptingWork(boolean acceptingWork) {
+        this.acceptingWork = acceptingWork;
+    }
+    
+    public boolean isAcceptingWork() {
+        return acceptingWork;
     }
     
     /**
@@ -28,11 +50,27 @@ public class ContextPropagatingExecutorService {
      * @param task The runnable task to execute
      */
     public void execute(Runnable task) {
+        execute(task, null);
+    }
+    
+    /**
+     * Executes the given command in a worker thread with the current OpenTelemetry context,
+     * recording the time it waits for that thread as an ExecutorWait JFR event.
+     * 
+     * @param task The runnable task to execute
+     * @param transactionId The transaction the task works on, for the JFR event
+     */
+    public void execute(Runnable task, UUID transactionId) {
+        rejectIfShedding();
+        
         // Capture the current context before submitting to the executor
         Context context = Context.current();
         log.debug("Capturing context for task execution: {}", context);
-                
+        
+        ExecutorWaitEvent waitEvent = ExecutorWaitEvent.start();
+        int queued = executorService.getQueue().size();
         executorService.execute(() -> {
+            waitEvent.complete(transactionId, queued);
             // Make the captured context current in the worker thread
             try (io.opentelemetry.context.Scope scope = context.makeCurrent()) {
                 log.debug("Restored context in worker thread: {}", Context.current());
@@ -49,6 +87,8 @@ public class ContextPropagatingExecutorService {
      * @return A Future representing the result of the task
      */
     public <V> Future<V> submit(Callable<V> task) {
+        rejectIfShedding();
+        
         // Capture the current context before submitting to the executor
         Context context = Context.current();
         log.debug("Capturing context for task submission: {}", context);
@@ -62,6 +102,30 @@ public class ContextPropagatingExecutorService {
         });
     }
     
+    /**
+     * @return The number of tasks waiting for a free worker thread
+     */
+    public int getQueueSize() {
+        return executorService.getQueue().size();
+    }
+    
+    /**
+     * @return The approximate number of worker threads running a task
+     */
+    public int getActiveCount() {
+        return executorService.getActiveCount();
+    }
+    
+    public int getPoolSize() {
+        return executorService.getMaximumPoolSize();
+    }
+    
+    private void rejectIfShedding() {
+        if (!acceptingWork) {
+            throw new RejectedExecutionException("Executor is shedding load under heap pressure");
+        }
+    }
+    
     /**
      * Shuts down the executor service.
      */
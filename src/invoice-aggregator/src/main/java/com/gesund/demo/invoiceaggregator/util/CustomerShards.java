@@ -0,0 +1,135 @@
+package com.gesund.demo.invoiceaggregator.util;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * The database shards and the customer-to-shard mapping.
+ *
+ * shard-0 is the data source configured under spring.datasource; every URL in
+ * sharding.shard-urls adds shard-1, shard-2 and so on, in list order. Customers are
+ * placed with a {@link ConsistentHashRing}, so appending a shard only moves about 1/N of
+ * the customers (see ShardRebalancer). Code that touches the database selects a shard
+ * with {@link #forCustomer} or {@link #onShard}; the ShardRoutingDataSource then hands out
+ * connections of that shard on the current thread. Without a selection, or with sharding
+ * disabled, everything goes to shard-0; repository calls are the exception, see
+ * ShardedRepositoryInterceptor.
+ */
+@Slf4j
+public class CustomerShards implements AutoCloseable {
+
+    public static final String FIRST_SHARD = "shard-0";
+
+    private static final ThreadLocal<String> CURRENT = new ThreadLocal<>();
+
+    private final ConsistentHashRing ring;
+    private final Map<String, HikariDataSource> pools = new LinkedHashMap<>();
+
+    /**
+     * A single shard: the configured data source.
+     */
+    public CustomerShards() {
+        this.ring = new ConsistentHashRing(List.of(FIRST_SHARD), 1);
+    }
+
+    public CustomerShards(List<String> shardUrls, String username, String password, int poolSize, int virtualNodes,
+                          String applicationName, MeterRegistry meterRegistry) {
+        List<String> names = new ArrayList<>();
+        names.add(FIRST_SHARD);
+        for (String url : shardUrls) {
+            String name = "shard-" + names.size();
+            HikariConfig config = new HikariConfig();
+            config.setPoolName(name);
+            config.setJdbcUrl(url);
+            config.setUsername(username);
+            config.setPassword(password);
+            config.setMaximumPoolSize(poolSize);
+            config.addDataSourceProperty("ApplicationName", applicationName);
+            config.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry));
+            pools.put(name, new HikariDataSource(config));
+            names.add(name);
+            log.info("Customer shard {} at {}", name, url);
+        }
+        this.ring = new ConsistentHashRing(names, virtualNodes);
+    }
+
+    /**
+     * Returns the shard selected on the current thread, or null for the default shard.
+     */
+    public static String currentShard() {
+        return CURRENT.get();
+    }
+
+    public List<String> getShards() {
+        return ring.getShards();
+    }
+
+    public ConsistentHashRing getRing() {
+        return ring;
+    }
+
+    public String shardFor(String customerId) {
+        return ring.shardFor(customerId);
+    }
+
+    /**
+     * Pools of shard-1 onwards by shard name; shard-0 is the application's own pool.
+     */
+    public Map<String, DataSource> getAdditionalShards() {
+        return Map.copyOf(pools);
+    }
+
+    /**
+     * Runs an action against the shard owning a customer.
+     */
+    public <T> T forCustomer(String customerId, Supplier<T> action) {
+        return onShard(shardFor(customerId), action);
+    }
+
+    /**
+     * Runs an action against a shard. Transactions have to begin inside the action: a
+     * transaction (or EntityManager) that already uses a connection keeps it, whichever
+     * shard it belongs to.
+     */
+    public <T> T onShard(String shard, Supplier<T> action) {
+        String previous = CURRENT.get();
+        CURRENT.set(shard);
+        try {
+            return action.get();
+        } finally {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+
+    /**
+     * Runs an action once per shard, in shard order, with the shard selected.
+     */
+    public void forEachShard(Consumer<String> action) {
+        for (String shard : getShards()) {
+            onShard(shard, () -> {
+                action.accept(shard);
+                return null;
+            });
+        }
+    }
+
+    @Override
+    public void close() {
+        pools.values().forEach(HikariDataSource::close);
+    }
+}
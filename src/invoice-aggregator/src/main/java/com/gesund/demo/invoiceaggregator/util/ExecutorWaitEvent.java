@@ -0,0 +1,41 @@
+package com.gesund.demo.invoiceaggregator.util;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import java.util.UUID;
+
+/**
+ * JFR event for the time an invoice task waits for a free worker thread. It starts on the
+ * submitting thread and is committed by the worker.
+ */
+@Name("com.gesund.demo.ExecutorWait")
+@Label("Executor Wait")
+@Category({"Gesund Demo", "Pipeline"})
+@StackTrace(false)
+public class ExecutorWaitEvent extends Event {
+
+    @Label("Transaction ID")
+    String transactionId;
+
+    @Label("Queued Tasks")
+    int queued;
+
+    public static ExecutorWaitEvent start() {
+        ExecutorWaitEvent event = new ExecutorWaitEvent();
+        event.begin();
+        return event;
+    }
+
+    public void complete(UUID transactionId, int queued) {
+        end();
+        if (shouldCommit()) {
+            this.transactionId = String.valueOf(transactionId);
+            this.queued = queued;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,306 @@
+package com.gesund.demo.invoiceaggregator.util;
+
+import com.gesund.demo.invoiceaggregator.repository.InvoiceBulkWriter;
+import com.sun.management.GarbageCollectionNotificationInfo;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jms.config.JmsListenerEndpointRegistry;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Watches heap usage and sheds load before the container is OOM-killed.
+ *
+ * Pressure is judged on heap usage right after a GC, taken from GC notifications and
+ * collection-usage threshold notifications: raw used heap also counts garbage that the
+ * next young collection frees, and would cross the watermarks during normal allocation.
+ * Past the elevated watermark the broker listeners and in-memory consumers are paused
+ * and bulk-writer batches shrink; past the critical watermark the invoice executor also
+ * rejects new work.
+ * Everything is resumed once post-GC usage drops below the recovery watermark. A
+ * periodic check can only de-escalate, for when the heap drains without a notification.
+ */
+@Slf4j
+@Component
+public class HeapPressureWatchdog {
+
+    public enum PressureLevel {
+        NORMAL, ELEVATED, CRITICAL
+    }
+
+    private final ContextPropagatingExecutorService executorService;
+    private final InvoiceBulkWriter invoiceBulkWriter;
+    private final ObjectProvider<KafkaListenerEndpointRegistry> kafkaRegistry;
+    private final ObjectProvider<JmsListenerEndpointRegistry> jmsRegistry;
+    private final ObjectProvider<RabbitListenerEndpointRegistry> rabbitRegistry;
+    private final ObjectProvider<InMemoryBroker> inMemoryBroker;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${heap.watchdog.enabled:true}")
+    private boolean enabled;
+
+    @Value("${heap.watchdog.elevated-threshold:0.75}")
+    private double elevatedThreshold;
+
+    @Value("${heap.watchdog.critical-threshold:0.90}")
+    private double criticalThreshold;
+
+    @Value("${heap.watchdog.recovery-threshold:0.60}")
+    private double recoveryThreshold;
+
+    @Value("${heap.watchdog.reduced-batch-scale:0.25}")
+    private double reducedBatchScale;
+
+    private volatile PressureLevel level = PressureLevel.NORMAL;
+    private volatile double usedRatio;
+
+    private final List<NotificationEmitter> emitters = new ArrayList<>();
+    private final NotificationListener notificationListener = this::handleNotification;
+    private Counter transitions;
+
+    public HeapPressureWatchdog(ContextPropagatingExecutorService executorService,
+                                InvoiceBulkWriter invoiceBulkWriter,
+                                ObjectProvider<KafkaListenerEndpointRegistry> kafkaRegistry,
+                                ObjectProvider<JmsListenerEndpointRegistry> jmsRegistry,
+                                ObjectProvider<RabbitListenerEndpointRegistry> rabbitRegistry,
+                                ObjectProvider<InMemoryBroker> inMemoryBroker,
+                                MeterRegistry meterRegistry) {
+        this.executorService = executorService;
+        this.invoiceBulkWriter = invoiceBulkWriter;
+        this.kafkaRegistry = kafkaRegistry;
+        this.jmsRegistry = jmsRegistry;
+        this.rabbitRegistry = rabbitRegistry;
+        this.inMemoryBroker = inMemoryBroker;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void init() {
+        Gauge.builder("invoice.heap.pressure.level", this, w -> w.level.ordinal())
+                .description("Heap pressure level: 0 = normal, 1 = elevated, 2 = critical")
+                .register(meterRegistry);
+        Gauge.builder("invoice.heap.pressure.used.ratio", this, w -> w.usedRatio)
+                .description("Heap used after GC / max as last seen by the watchdog")
+                .register(meterRegistry);
+        transitions = Counter.builder("invoice.heap.pressure.transitions")
+                .description("Number of heap pressure level changes")
+                .register(meterRegistry);
+
+        if (!enabled) {
+            log.info("Heap pressure watchdog disabled");
+            return;
+        }
+
+        // Collection usage thresholds fire on usage measured right after a GC, which is
+        // the signal that live data (not just garbage) is filling the heap
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() != MemoryType.HEAP || pool.getUsage().getMax() <= 0) {
+                continue;
+            }
+            if (pool.isCollectionUsageThresholdSupported()) {
+                pool.setCollectionUsageThreshold((long) (pool.getUsage().getMax() * elevatedThreshold));
+            }
+        }
+
+        MemoryMXBean memoryBean = ManagementFactory.getMemoryMXBean();
+        register((NotificationEmitter) memoryBean);
+        for (GarbageCollectorMXBean gcBean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (gcBean instanceof NotificationEmitter emitter) {
+                register(emitter);
+            }
+        }
+
+        log.info("Heap pressure watchdog started - elevated: {}, critical: {}, recovery: {}",
+                elevatedThreshold, criticalThreshold, recoveryThreshold);
+    }
+
+    private void register(NotificationEmitter emitter) {
+        emitter.addNotificationListener(notificationListener, null, null);
+        emitters.add(emitter);
+    }
+
+    private void handleNotification(Notification notification, Object handback) {
+        try {
+            String type = notification.getType();
+            if (GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(type)) {
+                GarbageCollectionNotificationInfo info =
+                        GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+                evaluate(heapRatio(info.getGcInfo().getMemoryUsageAfterGc()), true);
+            } else if (MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(type)) {
+                evaluate(collectionHeapRatio(), true);
+            }
+        } catch (Exception e) {
+            log.error("Error handling memory notification: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Periodic check so the watchdog also recovers when the heap drains without a
+     * notification being emitted. Current usage includes garbage, so it can show that
+     * live data is low but not that it is high; the check therefore never escalates.
+     */
+    @Scheduled(fixedDelayString = "${heap.watchdog.check-interval-ms:5000}")
+    public void periodicCheck() {
+        if (enabled) {
+            evaluate(Math.min(currentHeapRatio(), collectionHeapRatio()), false);
+        }
+    }
+
+    public PressureLevel getLevel() {
+        return level;
+    }
+
+    private static long heapMax() {
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        return heap.getMax() > 0 ? heap.getMax() : heap.getCommitted();
+    }
+
+    private static double currentHeapRatio() {
+        return (double) ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed() / heapMax();
+    }
+
+    /**
+     * Heap used after a GC over the heap maximum. Pools without a maximum of their own
+     * (G1's eden and survivor spaces) count towards the heap's.
+     */
+    private static double heapRatio(Map<String, MemoryUsage> usageAfterGc) {
+        long used = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            MemoryUsage usage = usageAfterGc.get(pool.getName());
+            if (pool.getType() == MemoryType.HEAP && usage != null) {
+                used += usage.getUsed();
+            }
+        }
+        return (double) used / heapMax();
+    }
+
+    /**
+     * Heap used as of each pool's most recent collection.
+     */
+    private static double collectionHeapRatio() {
+        long used = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            MemoryUsage usage = pool.getType() == MemoryType.HEAP ? pool.getCollectionUsage() : null;
+            if (usage != null) {
+                used += usage.getUsed();
+            }
+        }
+        return (double) used / heapMax();
+    }
+
+    /**
+     * @param mayEscalate false if the ratio can only prove that usage is low, so the level may only drop
+     */
+    private synchronized void evaluate(double ratio, boolean mayEscalate) {
+        usedRatio = ratio;
+        PressureLevel target;
+        if (ratio >= criticalThreshold) {
+            target = PressureLevel.CRITICAL;
+        } else if (ratio >= elevatedThreshold) {
+            target = PressureLevel.ELEVATED;
+        } else if (ratio >= recoveryThreshold && level != PressureLevel.NORMAL) {
+            // Hysteresis: stay degraded until the heap is well below the elevated watermark
+            target = PressureLevel.ELEVATED;
+        } else {
+            target = PressureLevel.NORMAL;
+        }
+
+        if (target.compareTo(level) > 0 && !mayEscalate) {
+            return;
+        }
+        if (target != level) {
+            log.warn("Heap pressure changed from {} to {} (heap used {}%)",
+                    level, target, Math.round(ratio * 100));
+            // Published only once its measures are in place, so readers never see a level ahead of them
+            apply(target);
+            level = target;
+            transitions.increment();
+        }
+    }
+
+    private void apply(PressureLevel target) {
+        switch (target) {
+            case NORMAL -> {
+                executorService.setAcceptingWork(true);
+                invoiceBulkWriter.setBatchScale(1.0);
+                resumeListeners();
+            }
+            case ELEVATED -> {
+                executorService.setAcceptingWork(true);
+                invoiceBulkWriter.setBatchScale(reducedBatchScale);
+                pauseListeners();
+            }
+            case CRITICAL -> {
+                executorService.setAcceptingWork(false);
+                invoiceBulkWriter.setBatchScale(reducedBatchScale);
+                pauseListeners();
+            }
+        }
+    }
+
+    private void pauseListeners() {
+        kafkaRegistry.ifAvailable(registry -> registry.getListenerContainers().forEach(MessageListenerContainer::pause));
+        jmsRegistry.ifAvailable(registry -> registry.getListenerContainers().forEach(container -> {
+            if (container.isRunning()) {
+                container.stop();
+            }
+        }));
+        rabbitRegistry.ifAvailable(registry -> registry.getListenerContainers().forEach(container -> {
+            if (container.isRunning()) {
+                container.stop();
+            }
+        }));
+        inMemoryBroker.ifAvailable(broker -> broker.getSubscriptions().forEach(InMemoryBroker.Subscription::pause));
+    }
+
+    private void resumeListeners() {
+        kafkaRegistry.ifAvailable(registry -> registry.getListenerContainers().forEach(MessageListenerContainer::resume));
+        jmsRegistry.ifAvailable(registry -> registry.getListenerContainers().forEach(container -> {
+            if (!container.isRunning()) {
+                container.start();
+            }
+        }));
+        rabbitRegistry.ifAvailable(registry -> registry.getListenerContainers().forEach(container -> {
+            if (!container.isRunning()) {
+                container.start();
+            }
+        }));
+        inMemoryBroker.ifAvailable(broker -> broker.getSubscriptions().forEach(InMemoryBroker.Subscription::resume));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (NotificationEmitter emitter : emitters) {
+            try {
+                emitter.removeNotificationListener(notificationListener);
+            } catch (ListenerNotFoundException e) {
+                // Already removed
+            }
+        }
+    }
+}
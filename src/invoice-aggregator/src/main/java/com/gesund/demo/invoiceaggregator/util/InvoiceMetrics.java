@@ -0,0 +1,49 @@
+package com.gesund.demo.invoiceaggregator.util;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * Meters for the invoice stage, exposed on /actuator/prometheus.
+ *
+ * invoice.process times the work done for one payment message on the invoice executor,
+ * tagged with the outcome. Waiting for a free worker is not included; the
+ * invoice.executor.queued gauge shows how many tasks are waiting.
+ */
+@Component
+public class InvoiceMetrics {
+
+    private final MeterRegistry meterRegistry;
+    private final Timer processedTimer;
+    private final Timer failedTimer;
+
+    public InvoiceMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        this.processedTimer = processTimer("success");
+        this.failedTimer = processTimer("failure");
+    }
+
+    private Timer processTimer(String outcome) {
+        return Timer.builder("invoice.process").tag("outcome", outcome)
+                .description("Time to turn one payment message into an invoice")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    /**
+     * Runs the processing of one message and times it. The processing reports whether it
+     * succeeded; an exception also counts as a failure and is rethrown.
+     */
+    public void recordProcessing(BooleanSupplier processing) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        boolean success = false;
+        try {
+            success = processing.getAsBoolean();
+        } finally {
+            sample.stop(success ? processedTimer : failedTimer);
+        }
+    }
+}
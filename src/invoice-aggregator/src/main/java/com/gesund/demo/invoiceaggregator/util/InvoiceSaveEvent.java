@@ -0,0 +1,40 @@
+package com.gesund.demo.invoiceaggregator.util;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import java.util.UUID;
+
+/**
+ * JFR event for storing one invoice, either through JPA or by buffering it for the next COPY batch.
+ */
+@Name("com.gesund.demo.InvoiceSave")
+@Label("Invoice Save")
+@Category({"Gesund Demo", "Pipeline"})
+@StackTrace(false)
+public class InvoiceSaveEvent extends Event {
+
+    @Label("Transaction ID")
+    String transactionId;
+
+    @Label("Path")
+    String path;
+
+    public static InvoiceSaveEvent start() {
+        InvoiceSaveEvent event = new InvoiceSaveEvent();
+        event.begin();
+        return event;
+    }
+
+    public void complete(UUID transactionId, String path) {
+        end();
+        if (shouldCommit()) {
+            this.transactionId = String.valueOf(transactionId);
+            this.path = path;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,324 @@
+package com.gesund.demo.invoiceaggregator.util;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedMethod;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordedThread;
+import jdk.jfr.consumer.RecordingFile;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Time-boxed JDK Flight Recorder captures with a per-stage summary.
+ *
+ * A capture records with the JDK's "profile" settings plus the pipeline stage events
+ * (com.gesund.demo.*). Afterwards every execution and allocation sample is attributed
+ * to the innermost stage event that was open on the sampled thread at that moment, which
+ * gives the hottest and the most allocating methods of each business stage. Samples
+ * outside any stage are reported as "other". Only one capture runs at a time, and the
+ * last few .jfr files are kept for download.
+ *
+ * The stage events only fill in their fields when a recording asks for them, so with no
+ * capture running they cost next to nothing.
+ */
+@Slf4j
+@Component
+public class JfrProfiler {
+
+    private static final String STAGE_EVENT_PREFIX = "com.gesund.demo.";
+    private static final String OTHER_STAGE = "other";
+    // Waits span the time before a thread picks the work up, so no sample belongs to them
+    private static final Set<String> WAIT_EVENTS = Set.of("com.gesund.demo.ExecutorWait");
+    private static final DateTimeFormatter ID_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    @Value("${spring.application.name}")
+    private String applicationName;
+
+    @Value("${profiling.max-duration-seconds:300}")
+    private long maxDurationSeconds;
+
+    @Value("${profiling.retained-recordings:5}")
+    private int retainedRecordings;
+
+    @Value("${profiling.top-methods:10}")
+    private int topMethods;
+
+    private final AtomicBoolean capturing = new AtomicBoolean(false);
+    private final Map<String, Path> recordings = new LinkedHashMap<>();
+    private ScheduledExecutorService scheduler;
+    private Path directory;
+
+    @PostConstruct
+    public void init() throws IOException {
+        directory = Files.createTempDirectory("jfr-captures");
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "jfr-capture");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    public long getMaxDurationSeconds() {
+        return maxDurationSeconds;
+    }
+
+    /**
+     * Starts a recording that stops by itself after the given duration.
+     *
+     * @param duration How long to record, at most profiling.max-duration-seconds
+     * @return The summary of the capture, completed once the recording has stopped
+     * @throws IllegalArgumentException If the duration is out of range
+     * @throws IllegalStateException If another capture is still running
+     */
+    public CompletableFuture<Map<String, Object>> capture(Duration duration) throws ParseException, IOException {
+        if (duration.isNegative() || duration.isZero() || duration.getSeconds() > maxDurationSeconds) {
+            throw new IllegalArgumentException("Duration must be between 1 and " + maxDurationSeconds + " seconds");
+        }
+        if (!capturing.compareAndSet(false, true)) {
+            throw new IllegalStateException("A profiling capture is already running");
+        }
+
+        String id = applicationName + "-" + LocalDateTime.now().format(ID_FORMAT);
+        Path file = directory.resolve(id + ".jfr");
+        Recording recording;
+        try {
+            recording = new Recording(Configuration.getConfiguration("profile"));
+            recording.setName(id);
+            recording.setToDisk(true);
+            recording.setDestination(file);
+            recording.start();
+        } catch (ParseException | IOException | RuntimeException e) {
+            capturing.set(false);
+            throw e;
+        }
+        log.info("Started JFR capture {} for {} seconds", id, duration.getSeconds());
+
+        CompletableFuture<Map<String, Object>> summary = new CompletableFuture<>();
+        scheduler.schedule(() -> finish(recording, id, file, duration, summary),
+                duration.toMillis(), TimeUnit.MILLISECONDS);
+        return summary;
+    }
+
+    /**
+     * @param id The id of a capture, as returned in its summary
+     * @return The .jfr file of the capture, while it is still retained
+     */
+    public synchronized Optional<Path> recording(String id) {
+        return Optional.ofNullable(recordings.get(id)).filter(Files::exists);
+    }
+
+    private void finish(Recording recording, String id, Path file, Duration duration,
+                        CompletableFuture<Map<String, Object>> summary) {
+        try {
+            // Stopping writes the recording to its destination
+            recording.stop();
+            recording.close();
+            retain(id, file);
+            Map<String, Object> result = summarize(file);
+            Map<String, Object> capture = new LinkedHashMap<>();
+            capture.put("id", id);
+            capture.put("durationSeconds", duration.getSeconds());
+            capture.put("sizeBytes", Files.size(file));
+            capture.put("recording", "/admin/profiling/recordings/" + id);
+            capture.putAll(result);
+            log.info("Finished JFR capture {} ({} bytes)", id, Files.size(file));
+            summary.complete(capture);
+        } catch (Exception e) {
+            log.error("JFR capture {} failed: {}", id, e.getMessage(), e);
+            summary.completeExceptionally(e);
+        } finally {
+            capturing.set(false);
+        }
+    }
+
+    private synchronized void retain(String id, Path file) {
+        recordings.put(id, file);
+        Iterator<Map.Entry<String, Path>> oldest = recordings.entrySet().iterator();
+        while (recordings.size() > retainedRecordings && oldest.hasNext()) {
+            Path expired = oldest.next().getValue();
+            oldest.remove();
+            try {
+                Files.deleteIfExists(expired);
+            } catch (IOException e) {
+                log.warn("Could not delete expired JFR capture {}: {}", expired, e.getMessage());
+            }
+        }
+    }
+
+    private Map<String, Object> summarize(Path file) throws IOException {
+        Map<Long, List<StageInterval>> stagesByThread = new HashMap<>();
+        Map<String, StageSummary> stages = new LinkedHashMap<>();
+        List<Sample> executionSamples = new ArrayList<>();
+        List<Sample> allocationSamples = new ArrayList<>();
+
+        try (RecordingFile recordingFile = new RecordingFile(file)) {
+            while (recordingFile.hasMoreEvents()) {
+                RecordedEvent event = recordingFile.readEvent();
+                String name = event.getEventType().getName();
+                if (name.startsWith(STAGE_EVENT_PREFIX)) {
+                    String stage = event.getEventType().getLabel() != null ? event.getEventType().getLabel() : name;
+                    stages.computeIfAbsent(stage, StageSummary::new).record(event.getDuration());
+                    RecordedThread thread = event.getThread();
+                    if (thread != null && !WAIT_EVENTS.contains(name)) {
+                        stagesByThread.computeIfAbsent(thread.getJavaThreadId(), t -> new ArrayList<>())
+                                .add(new StageInterval(stage, toNanos(event.getStartTime()), toNanos(event.getEndTime())));
+                    }
+                } else if ("jdk.ExecutionSample".equals(name)) {
+                    addSample(executionSamples, event, event.getThread("sampledThread"), 1);
+                } else if ("jdk.ObjectAllocationSample".equals(name)) {
+                    addSample(allocationSamples, event, event.getThread(), event.getLong("weight"));
+                }
+            }
+        }
+
+        stagesByThread.values().forEach(intervals -> intervals.sort(Comparator.comparingLong(StageInterval::start)));
+        stages.computeIfAbsent(OTHER_STAGE, StageSummary::new);
+        for (Sample sample : executionSamples) {
+            stages.get(stageOf(stagesByThread, sample)).cpu.merge(sample.method(), sample.weight(), Long::sum);
+        }
+        for (Sample sample : allocationSamples) {
+            stages.get(stageOf(stagesByThread, sample)).allocations.merge(sample.method(), sample.weight(), Long::sum);
+        }
+
+        Map<String, Object> stageReport = new LinkedHashMap<>();
+        stages.forEach((stage, summary) -> stageReport.put(stage, summary.toReport(topMethods)));
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("executionSamples", executionSamples.size());
+        result.put("allocationSamples", allocationSamples.size());
+        result.put("stages", stageReport);
+        return result;
+    }
+
+    private static void addSample(List<Sample> samples, RecordedEvent event, RecordedThread thread, long weight) {
+        RecordedStackTrace stackTrace = event.getStackTrace();
+        if (thread == null || stackTrace == null || stackTrace.getFrames().isEmpty()) {
+            return;
+        }
+        RecordedFrame top = stackTrace.getFrames().get(0);
+        RecordedMethod method = top.getMethod();
+        samples.add(new Sample(thread.getJavaThreadId(), toNanos(event.getStartTime()),
+                method.getType().getName() + "." + method.getName(), weight));
+    }
+
+    /**
+     * Returns the innermost stage open on the sample's thread: among the intervals that
+     * contain the sample, the one that started last.
+     */
+    private static String stageOf(Map<Long, List<StageInterval>> stagesByThread, Sample sample) {
+        List<StageInterval> intervals = stagesByThread.get(sample.threadId());
+        if (intervals == null) {
+            return OTHER_STAGE;
+        }
+        int low = 0;
+        int high = intervals.size() - 1;
+        int last = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (intervals.get(mid).start() <= sample.time()) {
+                last = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        for (int i = last; i >= 0; i--) {
+            StageInterval interval = intervals.get(i);
+            if (interval.end() >= sample.time()) {
+                return interval.stage();
+            }
+        }
+        return OTHER_STAGE;
+    }
+
+    private static long toNanos(java.time.Instant instant) {
+        return instant.getEpochSecond() * 1_000_000_000L + instant.getNano();
+    }
+
+    private record StageInterval(String stage, long start, long end) {
+    }
+
+    private record Sample(long threadId, long time, String method, long weight) {
+    }
+
+    private static final class StageSummary {
+
+        private final String stage;
+        private long count;
+        private long totalNanos;
+        private long maxNanos;
+        private final Map<String, Long> cpu = new HashMap<>();
+        private final Map<String, Long> allocations = new HashMap<>();
+
+        private StageSummary(String stage) {
+            this.stage = stage;
+        }
+
+        private void record(Duration duration) {
+            long nanos = duration.toNanos();
+            count++;
+            totalNanos += nanos;
+            maxNanos = Math.max(maxNanos, nanos);
+        }
+
+        private Map<String, Object> toReport(int topMethods) {
+            Map<String, Object> report = new LinkedHashMap<>();
+            if (!OTHER_STAGE.equals(stage)) {
+                report.put("events", count);
+                report.put("totalMillis", totalNanos / 1_000_000.0);
+                report.put("meanMillis", count > 0 ? totalNanos / 1_000_000.0 / count : 0.0);
+                report.put("maxMillis", maxNanos / 1_000_000.0);
+            }
+            report.put("cpuSamples", cpu.values().stream().mapToLong(Long::longValue).sum());
+            report.put("hottestMethods", top(cpu, topMethods, "samples"));
+            report.put("sampledAllocationBytes", allocations.values().stream().mapToLong(Long::longValue).sum());
+            report.put("topAllocatingMethods", top(allocations, topMethods, "bytes"));
+            return report;
+        }
+
+        private static List<Map<String, Object>> top(Map<String, Long> counts, int limit, String unit) {
+            return counts.entrySet().stream()
+                    .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                    .limit(limit)
+                    .map(entry -> {
+                        Map<String, Object> method = new LinkedHashMap<>();
+                        method.put("method", entry.getKey());
+                        method.put(unit, entry.getValue());
+                        return method;
+                    })
+                    .toList();
+        }
+    }
+}
@@ -77,24 +77,7 @@ public class MemoryLeakSimulator {
                 // Continue allocating memory until we're told to stop or until OOM
                 while (currentlyLeaking) {
                     try {
-                        // Allocate a chunk of memory (10MB)
-                        byte[] chunk = new byte[CHUNK_SIZE_MB * 1024 * 1024];
-                        
-                        // Fill with random data to ensure it's actually allocated
-                        random.nextBytes(chunk);
-                        
-                        // Add to our leak collection so it's not garbage collected
-                        MEMORY_LEAK_COLLECTION.add(chunk);
-                        
-                        // Try to force GC to clear any temporary objects and make OOM more likely
-                        System.gc();
-                        
-                        // Create additional temporary objects to increase memory pressure
-                        byte[][] tempArrays = new byte[20][];
-                        for (int i = 0; i < tempArrays.length; i++) {
-                            tempArrays[i] = new byte[20 * 1024 * 1024]; // 20MB each
-                            random.nextBytes(tempArrays[i]);
-                        }
+                        leakStep(MEMORY_LEAK_COLLECTION, CHUNK_SIZE_MB * 1024 * 1024, 20 * 1024 * 1024, random);
                         
                         // Log memory usage
                         long usedMemory = (Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory()) / (1024 * 1024);
@@ -127,4 +110,29 @@ public class MemoryLeakSimulator {
         leakThread.setName("memory-leak-simulator");
         leakThread.start();
     }
+
+    /**
+     * One round of the leak: a chunk that stays reachable through {@code retained}, a
+     * forced GC, and then short-lived arrays on top to add allocation churn.
+     */
+    static void leakStep(List<byte[]> retained, int chunkBytes, int temporaryBytes, Random random) {
+        // Allocate a chunk of memory
+        byte[] chunk = new byte[chunkBytes];
+        
+        // Fill with random data to ensure it's actually allocated
+        random.nextBytes(chunk);
+        
+        // Add to our leak collection so it's not garbage collected
+        retained.add(chunk);
+        
+        // Try to force GC to clear any temporary objects and make OOM more likely
+        System.gc();
+        
+        // Create additional temporary objects to increase memory pressure
+        byte[][] tempArrays = new byte[20][];
+        for (int i = 0; i < tempArrays.length; i++) {
+            tempArrays[i] = new byte[temporaryBytes];
+            random.nextBytes(tempArrays[i]);
+        }
+    }
 }
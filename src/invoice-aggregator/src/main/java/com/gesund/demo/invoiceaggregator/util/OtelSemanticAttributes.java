@@ -63,6 +63,16 @@ public final class OtelSemanticAttributes {
     public static final String EXCEPTION_MESSAGE = "exception.message";
     public static final String EXCEPTION_STACKTRACE = "exception.stacktrace";
     
+    // Pipeline attributes of the manual spans (not semantic conventions; dashboards query them by these names)
+    public static final String TRANSACTION_ID = "transaction.id";
+    public static final String CUSTOMER_ID = "customer.id";
+    public static final String PAYMENT_ID = "payment.id";
+    public static final String MESSAGE_ID = "message.id";
+    public static final String KAFKA_TOPIC = "kafka.topic";
+    public static final String KAFKA_PARTITION = "kafka.partition";
+    public static final String KAFKA_OFFSET = "kafka.offset";
+    public static final String JMS_DESTINATION = "jms.destination";
+    
     private OtelSemanticAttributes() {
         // Private constructor to prevent instantiation
     }
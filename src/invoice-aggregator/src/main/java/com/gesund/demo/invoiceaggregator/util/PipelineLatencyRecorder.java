@@ -0,0 +1,114 @@
+package com.gesund.demo.invoiceaggregator.util;
+
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latency distributions for every hop of the billing -> payment -> invoice pipeline,
+ * computed from the {@link PipelineTimestamps} carried in the message headers.
+ *
+ * Writers record into HdrHistogram {@link Recorder}s, which are wait-free and safe to
+ * call from any listener or executor thread. Readers drain the recorders into
+ * cumulative histograms when a snapshot is taken.
+ */
+@Slf4j
+@Component
+public class PipelineLatencyRecorder {
+
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.HOURS.toMicros(1);
+    private static final int SIGNIFICANT_DIGITS = 3;
+
+    // Hop name -> the two stamps it is measured between, in pipeline order
+    private static final Map<String, String[]> HOPS = new LinkedHashMap<>();
+
+    static {
+        HOPS.put("billing", new String[] {PipelineTimestamps.INGEST, PipelineTimestamps.BILLING_ENQUEUE});
+        HOPS.put("billing-broker", new String[] {PipelineTimestamps.BILLING_ENQUEUE, PipelineTimestamps.PAYMENT_DEQUEUE});
+        HOPS.put("payment", new String[] {PipelineTimestamps.PAYMENT_DEQUEUE, PipelineTimestamps.PAYMENT_ENQUEUE});
+        HOPS.put("payment-broker", new String[] {PipelineTimestamps.PAYMENT_ENQUEUE, PipelineTimestamps.INVOICE_DEQUEUE});
+        HOPS.put("executor-queue", new String[] {PipelineTimestamps.INVOICE_DEQUEUE, PipelineTimestamps.INVOICE_EXECUTOR_START});
+        HOPS.put("invoice-save", new String[] {PipelineTimestamps.INVOICE_EXECUTOR_START, PipelineTimestamps.INVOICE_SAVED});
+        HOPS.put("end-to-end", new String[] {PipelineTimestamps.INGEST, PipelineTimestamps.INVOICE_SAVED});
+    }
+
+    private final Map<String, Recorder> recorders = new LinkedHashMap<>();
+    private final Map<String, Histogram> totals = new LinkedHashMap<>();
+    private final AtomicLong skewedSamples = new AtomicLong();
+
+    @Value("${messaging.system:kafka}")
+    private String messagingSystem;
+
+    public PipelineLatencyRecorder() {
+        for (String hop : HOPS.keySet()) {
+            recorders.put(hop, new Recorder(HIGHEST_TRACKABLE_MICROS, SIGNIFICANT_DIGITS));
+            totals.put(hop, new Histogram(HIGHEST_TRACKABLE_MICROS, SIGNIFICANT_DIGITS));
+        }
+    }
+
+    /**
+     * Records every hop for which both stamps are present.
+     *
+     * @param timestamps Pipeline stamps of one message, in epoch microseconds
+     */
+    public void record(Map<String, Long> timestamps) {
+        for (Map.Entry<String, String[]> hop : HOPS.entrySet()) {
+            Long from = timestamps.get(hop.getValue()[0]);
+            Long to = timestamps.get(hop.getValue()[1]);
+            if (from == null || to == null) {
+                continue;
+            }
+            long latency = to - from;
+            if (latency < 0) {
+                // Wall clocks of two hosts disagree; keep the sample but make the skew visible
+                skewedSamples.incrementAndGet();
+                latency = 0;
+            }
+            recorders.get(hop.getKey()).recordValue(Math.min(latency, HIGHEST_TRACKABLE_MICROS));
+        }
+    }
+
+    /**
+     * Returns the percentiles of every hop since startup or the last reset, in microseconds.
+     */
+    public synchronized Map<String, Object> snapshot() {
+        Map<String, Object> hops = new LinkedHashMap<>();
+        for (String hop : HOPS.keySet()) {
+            Histogram total = totals.get(hop);
+            total.add(recorders.get(hop).getIntervalHistogram());
+
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("count", total.getTotalCount());
+            stats.put("mean", Math.round(total.getMean()));
+            stats.put("p50", total.getValueAtPercentile(50));
+            stats.put("p90", total.getValueAtPercentile(90));
+            stats.put("p99", total.getValueAtPercentile(99));
+            stats.put("p999", total.getValueAtPercentile(99.9));
+            stats.put("max", total.getMaxValue());
+            hops.put(hop, stats);
+        }
+
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("messagingSystem", messagingSystem);
+        snapshot.put("unit", "microseconds");
+        snapshot.put("clockSkewedSamples", skewedSamples.get());
+        snapshot.put("hops", hops);
+        return snapshot;
+    }
+
+    public synchronized void reset() {
+        for (String hop : HOPS.keySet()) {
+            recorders.get(hop).reset();
+            totals.get(hop).reset();
+        }
+        skewedSamples.set(0);
+        log.info("Pipeline latency histograms reset");
+    }
+}
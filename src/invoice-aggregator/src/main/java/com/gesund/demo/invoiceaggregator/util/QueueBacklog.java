@@ -0,0 +1,128 @@
+package com.gesund.demo.invoiceaggregator.util;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.jms.ConnectionFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.jms.core.JmsTemplate;
+
+import java.util.Enumeration;
+import java.util.Queue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Gauges for the number of messages waiting in the queue this service consumes, so
+ * autoscaling can follow the backlog rather than CPU.
+ *
+ * RabbitMQ reports the message count of a passive queue declare, which is cheap enough to
+ * read on every scrape. ActiveMQ has no such count over JMS, so its queue is browsed up to
+ * a limit and the gauge saturates there; browsing pulls every message over the wire, so it
+ * runs on its own thread every refresh interval and scrapes read the last result.
+ * In-memory queues report their size.
+ */
+@Slf4j
+public final class QueueBacklog {
+
+    public static final String METER_NAME = "messaging.queue.backlog";
+
+    private QueueBacklog() {
+    }
+
+    public static BrowsedBacklog jms(ConnectionFactory connectionFactory, String queue, int browseLimit,
+                                     long refreshMs) {
+        return new BrowsedBacklog(new JmsTemplate(connectionFactory), queue, browseLimit, refreshMs);
+    }
+
+    public static MeterBinder amqp(RabbitTemplate rabbitTemplate, String queue) {
+        return registry -> Gauge.builder(METER_NAME, () -> messageCount(rabbitTemplate, queue))
+                .description("Messages ready for delivery in the queue")
+                .tag("system", "rabbitmq")
+                .tag("queue", queue)
+                .register(registry);
+    }
+
+    public static MeterBinder inMemory(Queue<?> messages, String queue) {
+        return registry -> Gauge.builder(METER_NAME, messages, Queue::size)
+                .description("Messages waiting in the in-memory queue")
+                .tag("system", "inmemory")
+                .tag("queue", queue)
+                .register(registry);
+    }
+
+    private static double browseDepth(JmsTemplate browser, String queue, int browseLimit) {
+        try {
+            Integer depth = browser.browse(queue, (session, queueBrowser) -> {
+                int count = 0;
+                Enumeration<?> messages = queueBrowser.getEnumeration();
+                while (count < browseLimit && messages.hasMoreElements()) {
+                    messages.nextElement();
+                    count++;
+                }
+                return count;
+            });
+            return depth != null ? depth : Double.NaN;
+        } catch (RuntimeException e) {
+            log.debug("Could not browse queue {}: {}", queue, e.getMessage());
+            return Double.NaN;
+        }
+    }
+
+    /**
+     * The ActiveMQ gauge and the thread that browses its queue. Closing stops the thread.
+     */
+    public static final class BrowsedBacklog implements MeterBinder, AutoCloseable {
+
+        private final JmsTemplate browser;
+        private final String queue;
+        private final int browseLimit;
+        private final long refreshMs;
+        private volatile double depth = Double.NaN;
+        private ScheduledExecutorService refresher;
+
+        private BrowsedBacklog(JmsTemplate browser, String queue, int browseLimit, long refreshMs) {
+            this.browser = browser;
+            this.queue = queue;
+            this.browseLimit = browseLimit;
+            this.refreshMs = refreshMs;
+        }
+
+        @Override
+        public synchronized void bindTo(MeterRegistry registry) {
+            Gauge.builder(METER_NAME, this, backlog -> backlog.depth)
+                    .description("Messages waiting in the queue, capped at the browse limit")
+                    .tag("system", "activemq")
+                    .tag("queue", queue)
+                    .register(registry);
+            if (refresher == null) {
+                refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+                    Thread thread = new Thread(r, "queue-backlog-" + queue);
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                refresher.scheduleWithFixedDelay(() -> depth = browseDepth(browser, queue, browseLimit),
+                        0, refreshMs, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        @Override
+        public synchronized void close() {
+            if (refresher != null) {
+                refresher.shutdownNow();
+            }
+        }
+    }
+
+    private static double messageCount(RabbitTemplate rabbitTemplate, String queue) {
+        try {
+            Integer count = rabbitTemplate.execute(channel -> channel.queueDeclarePassive(queue).getMessageCount());
+            return count != null ? count : Double.NaN;
+        } catch (RuntimeException e) {
+            log.debug("Could not read the message count of queue {}: {}", queue, e.getMessage());
+            return Double.NaN;
+        }
+    }
+}
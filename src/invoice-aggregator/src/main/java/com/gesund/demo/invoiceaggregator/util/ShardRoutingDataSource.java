@@ -0,0 +1,48 @@
+package com.gesund.demo.invoiceaggregator.util;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Hands out connections of the shard selected on the current thread through
+ * {@link CustomerShards}, and of shard-0 when none is selected.
+ *
+ * JPA opens its connection while beginning a transaction, before a repository call can
+ * select a shard, so this DataSource sits behind a LazyConnectionDataSourceProxy that
+ * fetches the real connection on the first statement.
+ */
+public class ShardRoutingDataSource extends AbstractRoutingDataSource {
+
+    private final DataSource firstShard;
+
+    public ShardRoutingDataSource(DataSource firstShard, CustomerShards customerShards) {
+        this.firstShard = firstShard;
+        Map<Object, Object> targets = new HashMap<>(customerShards.getAdditionalShards());
+        targets.put(CustomerShards.FIRST_SHARD, firstShard);
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(firstShard);
+        setLenientFallback(false);
+        afterPropertiesSet();
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        String shard = CustomerShards.currentShard();
+        return shard != null ? shard : CustomerShards.FIRST_SHARD;
+    }
+
+    // Pool metrics and health checks look through to the shard-0 pool
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        return iface.isInstance(this) ? iface.cast(this) : firstShard.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this) || firstShard.isWrapperFor(iface);
+    }
+}
@@ -0,0 +1,63 @@
+package com.gesund.demo.invoiceaggregator.util;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.ProxyMethodInvocation;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.Optional;
+
+/**
+ * Routes repository calls that run without a shard selected.
+ *
+ * Saves select the customer's shard around the call, but a lookup by transaction, payment
+ * or invoice ID does not know the customer. With more than one shard, the finders declared
+ * on the repository interface that return an Optional are therefore asked on every shard
+ * in shard order, and the first row found is returned; a miss costs one query per shard.
+ * Any other repository call without a selected shard fails instead of quietly reading or
+ * writing shard-0. With a single shard, or a shard selected, calls pass straight through.
+ *
+ * The interceptor is the outermost advice of the repository proxy, so every shard gets its
+ * own transaction.
+ */
+public class ShardedRepositoryInterceptor implements MethodInterceptor {
+
+    private final CustomerShards customerShards;
+    private final Class<?> repositoryInterface;
+
+    public ShardedRepositoryInterceptor(CustomerShards customerShards, Class<?> repositoryInterface) {
+        this.customerShards = customerShards;
+        this.repositoryInterface = repositoryInterface;
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        Method method = invocation.getMethod();
+        if (CustomerShards.currentShard() != null || customerShards.getShards().size() == 1
+                || method.getDeclaringClass() == Object.class) {
+            return invocation.proceed();
+        }
+        if (method.getDeclaringClass() != repositoryInterface || method.getReturnType() != Optional.class) {
+            throw new IllegalStateException(repositoryInterface.getSimpleName() + "." + method.getName()
+                    + " needs a shard; call it inside CustomerShards.forCustomer or onShard");
+        }
+        for (String shard : customerShards.getShards()) {
+            Optional<?> result = (Optional<?>) customerShards.onShard(shard, () -> proceed(invocation));
+            if (result.isPresent()) {
+                return result;
+            }
+        }
+        return Optional.empty();
+    }
+
+    private static Object proceed(MethodInvocation invocation) {
+        try {
+            return ((ProxyMethodInvocation) invocation).invocableClone().proceed();
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new UndeclaredThrowableException(e);
+        }
+    }
+}
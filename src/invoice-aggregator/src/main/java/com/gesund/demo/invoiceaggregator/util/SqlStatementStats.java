@@ -0,0 +1,283 @@
+package com.gesund.demo.invoiceaggregator.util;
+
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * Latency histograms and row counts per SQL statement fingerprint, fed by {@link TimingDataSource}.
+ *
+ * A fingerprint is the statement text with literals and placeholders replaced by ?, comments
+ * dropped, whitespace collapsed and IN lists folded to (?...), so every execution of the same
+ * query shape lands in one entry. The number of fingerprints is capped; statements beyond the
+ * cap are counted under {@link #OVERFLOW_FINGERPRINT}. Statements slower than the threshold are
+ * logged with their fingerprint and the types of their bind parameters, never the values.
+ */
+@Slf4j
+@Component
+public class SqlStatementStats {
+
+    public static final String OVERFLOW_FINGERPRINT = "<other>";
+
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(10);
+    private static final int SIGNIFICANT_DIGITS = 2;
+    private static final int MAX_CACHED_SQL = 10_000;
+    private static final Pattern IN_LIST = Pattern.compile("\\(\\?(?:\\s*,\\s*\\?)+\\)");
+    private static final Object NULL_PARAMETER = new Object();
+
+    private final Map<String, StatementStats> byFingerprint = new ConcurrentHashMap<>();
+    private final Map<String, StatementStats> bySql = new ConcurrentHashMap<>();
+
+    @Value("${spring.application.name}")
+    private String applicationName;
+
+    @Value("${sql.timing.slow-threshold-ms:250}")
+    private long slowThresholdMs;
+
+    @Value("${sql.timing.max-fingerprints:500}")
+    private int maxFingerprints;
+
+    /**
+     * Returns the entry for a statement; the fingerprint of a given SQL string is only
+     * computed once.
+     */
+    public StatementStats statement(String sql) {
+        StatementStats stats = bySql.get(sql);
+        if (stats != null) {
+            return stats;
+        }
+        stats = forFingerprint(fingerprint(sql));
+        if (bySql.size() < MAX_CACHED_SQL) {
+            bySql.put(sql, stats);
+        }
+        return stats;
+    }
+
+    private StatementStats forFingerprint(String fingerprint) {
+        StatementStats stats = byFingerprint.get(fingerprint);
+        if (stats != null) {
+            return stats;
+        }
+        if (byFingerprint.size() >= maxFingerprints) {
+            return byFingerprint.computeIfAbsent(OVERFLOW_FINGERPRINT, StatementStats::new);
+        }
+        return byFingerprint.computeIfAbsent(fingerprint, StatementStats::new);
+    }
+
+    /**
+     * Records one execution.
+     *
+     * @param rows    Update count or rows returned so far; rows read later from a result set
+     *                are added with {@link StatementStats#addRows(long)}
+     * @param binds   Bind parameters by index (1-based, index 0 unused), or null for plain statements
+     */
+    public void record(StatementStats stats, long elapsedNanos, long rows, boolean failed, Object[] binds) {
+        long micros = TimeUnit.NANOSECONDS.toMicros(elapsedNanos);
+        stats.histogram.recordValue(Math.min(micros, HIGHEST_TRACKABLE_MICROS));
+        stats.totalMicros.add(micros);
+        if (rows > 0) {
+            stats.rows.add(rows);
+        }
+        if (failed) {
+            stats.errors.increment();
+        }
+        if (micros >= TimeUnit.MILLISECONDS.toMicros(slowThresholdMs)) {
+            log.warn("Slow SQL ({} ms, rows={}{}): {} binds=[{}]", micros / 1000, rows,
+                    failed ? ", failed" : "", stats.fingerprint, bindShapes(binds));
+        }
+    }
+
+    /**
+     * Marker for a parameter set with setNull, so it is reported as null rather than as unset.
+     */
+    public static Object nullParameter() {
+        return NULL_PARAMETER;
+    }
+
+    private static String bindShapes(Object[] binds) {
+        if (binds == null) {
+            return "";
+        }
+        StringBuilder shapes = new StringBuilder();
+        for (int i = 1; i < binds.length; i++) {
+            Object value = binds[i];
+            if (value == null) {
+                continue;
+            }
+            if (shapes.length() > 0) {
+                shapes.append(", ");
+            }
+            shapes.append('$').append(i).append('=');
+            if (value == NULL_PARAMETER) {
+                shapes.append("null");
+            } else if (value instanceof CharSequence text) {
+                shapes.append("String(").append(text.length()).append(')');
+            } else if (value instanceof byte[] bytes) {
+                shapes.append("byte[").append(bytes.length).append(']');
+            } else {
+                shapes.append(value.getClass().getSimpleName());
+            }
+        }
+        return shapes.toString();
+    }
+
+    /**
+     * Returns the top fingerprints by the given measure, in microseconds.
+     *
+     * @param orderBy One of total, p99, max, calls, rows or errors
+     */
+    public Map<String, Object> top(int limit, String orderBy) {
+        Comparator<Map<String, Object>> order = Comparator.comparingLong(entry -> (Long) entry.get(orderBy));
+        List<Map<String, Object>> statements = new ArrayList<>();
+        for (StatementStats stats : byFingerprint.values()) {
+            Histogram histogram = stats.histogram.copy();
+            if (histogram.getTotalCount() == 0) {
+                continue;
+            }
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("fingerprint", stats.fingerprint);
+            entry.put("calls", histogram.getTotalCount());
+            entry.put("errors", stats.errors.sum());
+            entry.put("rows", stats.rows.sum());
+            entry.put("total", stats.totalMicros.sum());
+            entry.put("mean", Math.round(histogram.getMean()));
+            entry.put("p50", histogram.getValueAtPercentile(50));
+            entry.put("p99", histogram.getValueAtPercentile(99));
+            entry.put("max", histogram.getMaxValue());
+            statements.add(entry);
+        }
+        statements.sort(order.reversed());
+
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("application", applicationName);
+        snapshot.put("unit", "microseconds");
+        snapshot.put("orderBy", orderBy);
+        snapshot.put("slowThresholdMs", slowThresholdMs);
+        snapshot.put("fingerprints", byFingerprint.size());
+        snapshot.put("statements", statements.subList(0, Math.min(limit, statements.size())));
+        return snapshot;
+    }
+
+    /**
+     * Zeroes every entry in place; statements prepared before the reset keep recording into
+     * the same entries.
+     */
+    public void reset() {
+        for (StatementStats stats : byFingerprint.values()) {
+            stats.histogram.reset();
+            stats.totalMicros.reset();
+            stats.rows.reset();
+            stats.errors.reset();
+        }
+        log.info("SQL statement statistics reset");
+    }
+
+    /**
+     * Normalizes a statement to its fingerprint.
+     */
+    static String fingerprint(String sql) {
+        int length = sql.length();
+        StringBuilder out = new StringBuilder(length);
+        boolean pendingSpace = false;
+        int i = 0;
+        while (i < length) {
+            char c = sql.charAt(i);
+            char next = i + 1 < length ? sql.charAt(i + 1) : 0;
+            if (Character.isWhitespace(c)) {
+                pendingSpace = true;
+                i++;
+                continue;
+            }
+            if (c == '-' && next == '-') {
+                while (i < length && sql.charAt(i) != '\n') {
+                    i++;
+                }
+                pendingSpace = true;
+                continue;
+            }
+            if (c == '/' && next == '*') {
+                int end = sql.indexOf("*/", i + 2);
+                i = end < 0 ? length : end + 2;
+                pendingSpace = true;
+                continue;
+            }
+            if (pendingSpace && out.length() > 0) {
+                out.append(' ');
+            }
+            pendingSpace = false;
+            if (c == '\'') {
+                // String literal; '' is an escaped quote inside it
+                i++;
+                while (i < length) {
+                    if (sql.charAt(i) == '\'') {
+                        if (i + 1 < length && sql.charAt(i + 1) == '\'') {
+                            i += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    i++;
+                }
+                i++;
+                out.append('?');
+            } else if (c == '"') {
+                // Quoted identifier, kept verbatim
+                int end = sql.indexOf('"', i + 1);
+                end = end < 0 ? length : end + 1;
+                out.append(sql, i, end);
+                i = end;
+            } else if ((c == '$' && Character.isDigit(next))
+                    || (Character.isDigit(c) && !endsWithIdentifier(out))) {
+                i++;
+                while (i < length && (Character.isDigit(sql.charAt(i)) || sql.charAt(i) == '.')) {
+                    i++;
+                }
+                out.append('?');
+            } else {
+                out.append(c);
+                i++;
+            }
+        }
+        return IN_LIST.matcher(out).replaceAll("(?...)");
+    }
+
+    private static boolean endsWithIdentifier(StringBuilder out) {
+        if (out.length() == 0) {
+            return false;
+        }
+        char last = out.charAt(out.length() - 1);
+        return Character.isLetterOrDigit(last) || last == '_' || last == '$';
+    }
+
+    /**
+     * Counters of one fingerprint.
+     */
+    public static final class StatementStats {
+
+        private final String fingerprint;
+        private final Histogram histogram = new ConcurrentHistogram(HIGHEST_TRACKABLE_MICROS, SIGNIFICANT_DIGITS);
+        private final LongAdder totalMicros = new LongAdder();
+        private final LongAdder rows = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+
+        private StatementStats(String fingerprint) {
+            this.fingerprint = fingerprint;
+        }
+
+        public void addRows(long count) {
+            rows.add(count);
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package com.gesund.demo.invoiceaggregator.util;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+
+/**
+ * DataSource that times every statement executed through its connections and records it in
+ * {@link SqlStatementStats}.
+ *
+ * Connections, statements and result sets are wrapped in JDK proxies that forward everything
+ * to the pooled objects; only the execute methods, parameter setters and ResultSet.next are
+ * looked at. unwrap is forwarded too, so driver-specific APIs such as PGConnection's COPY
+ * keep working. The time measured is the execute call itself; fetching further rows of a
+ * large result set is not included, but the rows are counted.
+ */
+public class TimingDataSource extends DelegatingDataSource {
+
+    private final SqlStatementStats statementStats;
+
+    public TimingDataSource(DataSource targetDataSource, SqlStatementStats statementStats) {
+        super(targetDataSource);
+        this.statementStats = statementStats;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return wrap(super.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return wrap(super.getConnection(username, password));
+    }
+
+    private Connection wrap(Connection connection) {
+        return proxy(Connection.class, new ConnectionHandler(connection));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(TimingDataSource.class.getClassLoader(), new Class<?>[] {type}, handler);
+    }
+
+    /**
+     * Base for the proxies: identity-based equals and hashCode, unwrap forwarded to the target.
+     */
+    private abstract static class ForwardingHandler implements InvocationHandler {
+
+        final Object target;
+
+        ForwardingHandler(Object target) {
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Timing[" + target + "]";
+                case "unwrap":
+                    return ((Class<?>) args[0]).isInstance(proxy) ? proxy : forward(method, args);
+                case "isWrapperFor":
+                    return ((Class<?>) args[0]).isInstance(proxy) || (Boolean) forward(method, args);
+                default:
+                    return handle(proxy, method, args);
+            }
+        }
+
+        abstract Object handle(Object proxy, Method method, Object[] args) throws Throwable;
+
+        final Object forward(Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    private final class ConnectionHandler extends ForwardingHandler {
+
+        ConnectionHandler(Connection connection) {
+            super(connection);
+        }
+
+        @Override
+        Object handle(Object proxy, Method method, Object[] args) throws Throwable {
+            Object result = forward(method, args);
+            switch (method.getName()) {
+                case "createStatement":
+                    return proxy(Statement.class, new StatementHandler(result, null));
+                case "prepareStatement":
+                    return proxy(PreparedStatement.class,
+                            new StatementHandler(result, statementStats.statement((String) args[0])));
+                case "prepareCall":
+                    return proxy(CallableStatement.class,
+                            new StatementHandler(result, statementStats.statement((String) args[0])));
+                default:
+                    return result;
+            }
+        }
+    }
+
+    private final class StatementHandler extends ForwardingHandler {
+
+        // Null for plain statements, whose SQL arrives with each execute call
+        private final SqlStatementStats.StatementStats prepared;
+        private SqlStatementStats.StatementStats lastBatched;
+        private Object[] binds;
+
+        StatementHandler(Object statement, SqlStatementStats.StatementStats prepared) {
+            super(statement);
+            this.prepared = prepared;
+        }
+
+        @Override
+        Object handle(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.startsWith("execute")) {
+                return execute(name, method, args);
+            }
+            if (prepared != null && name.startsWith("set") && args != null && args.length >= 2
+                    && args[0] instanceof Integer index) {
+                bind(index, name.equals("setNull") ? SqlStatementStats.nullParameter() : args[1]);
+            } else if (name.equals("clearParameters")) {
+                binds = null;
+            } else if (name.equals("addBatch") && args != null) {
+                lastBatched = statementStats.statement((String) args[0]);
+            }
+            Object result = forward(method, args);
+            if (name.equals("getResultSet") && result != null) {
+                return wrapResultSet((ResultSet) result, prepared != null ? prepared : lastBatched);
+            }
+            return result;
+        }
+
+        private void bind(int index, Object value) {
+            if (binds == null || binds.length <= index) {
+                binds = Arrays.copyOf(binds == null ? new Object[0] : binds, Math.max(index + 1, 8));
+            }
+            binds[index] = value;
+        }
+
+        private Object execute(String name, Method method, Object[] args) throws Throwable {
+            SqlStatementStats.StatementStats stats = prepared;
+            if (args != null && args.length > 0 && args[0] instanceof String sql) {
+                stats = statementStats.statement(sql);
+            } else if (stats == null) {
+                stats = lastBatched;
+            }
+            if (stats == null) {
+                return forward(method, args);
+            }
+
+            long start = System.nanoTime();
+            long rows = 0;
+            boolean failed = true;
+            try {
+                Object result = forward(method, args);
+                failed = false;
+                if (result instanceof ResultSet resultSet) {
+                    return wrapResultSet(resultSet, stats);
+                }
+                rows = rowCount(result);
+                return result;
+            } finally {
+                statementStats.record(stats, System.nanoTime() - start, rows, failed, binds);
+                if (name.equals("executeBatch") || name.equals("executeLargeBatch")) {
+                    lastBatched = null;
+                }
+            }
+        }
+
+        private long rowCount(Object result) {
+            if (result instanceof Integer count) {
+                return count;
+            }
+            if (result instanceof Long count) {
+                return count;
+            }
+            long rows = 0;
+            if (result instanceof int[] counts) {
+                for (int count : counts) {
+                    rows += Math.max(count, 0);
+                }
+            } else if (result instanceof long[] counts) {
+                for (long count : counts) {
+                    rows += Math.max(count, 0);
+                }
+            }
+            return rows;
+        }
+
+        private ResultSet wrapResultSet(ResultSet resultSet, SqlStatementStats.StatementStats stats) {
+            if (stats == null) {
+                return resultSet;
+            }
+            return proxy(ResultSet.class, new ForwardingHandler(resultSet) {
+                @Override
+                Object handle(Object proxy, Method method, Object[] args) throws Throwable {
+                    Object result = forward(method, args);
+                    if (Boolean.TRUE.equals(result) && method.getName().equals("next")) {
+                        stats.addRows(1);
+                    }
+                    return result;
+                }
+            });
+        }
+    }
+}
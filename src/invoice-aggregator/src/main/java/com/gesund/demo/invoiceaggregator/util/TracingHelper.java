@@ -0,0 +1,99 @@
+package com.gesund.demo.invoiceaggregator.util;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Context;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.UUID;
+
+/**
+ * Low-overhead helpers for the manual spans.
+ *
+ * Attribute keys are created once, and attribute values (UUID strings in particular) are
+ * only built when the span is recording, so an unsampled or no-op span costs no
+ * allocation beyond the span itself.
+ *
+ * tracing.span-budget decides how many spans a message gets: FULL creates the nested
+ * save and send spans, MINIMAL records them as events on the enclosing span instead.
+ */
+@Component
+public class TracingHelper {
+
+    public static final AttributeKey<String> TRANSACTION_ID = AttributeKey.stringKey(OtelSemanticAttributes.TRANSACTION_ID);
+    public static final AttributeKey<String> CUSTOMER_ID = AttributeKey.stringKey(OtelSemanticAttributes.CUSTOMER_ID);
+    public static final AttributeKey<String> PAYMENT_ID = AttributeKey.stringKey(OtelSemanticAttributes.PAYMENT_ID);
+    public static final AttributeKey<String> MESSAGE_ID = AttributeKey.stringKey(OtelSemanticAttributes.MESSAGE_ID);
+    public static final AttributeKey<String> KAFKA_TOPIC = AttributeKey.stringKey(OtelSemanticAttributes.KAFKA_TOPIC);
+    public static final AttributeKey<Long> KAFKA_PARTITION = AttributeKey.longKey(OtelSemanticAttributes.KAFKA_PARTITION);
+    public static final AttributeKey<Long> KAFKA_OFFSET = AttributeKey.longKey(OtelSemanticAttributes.KAFKA_OFFSET);
+    public static final AttributeKey<String> JMS_DESTINATION = AttributeKey.stringKey(OtelSemanticAttributes.JMS_DESTINATION);
+
+    public enum SpanBudget {
+        /** One span per unit of work, nested ones included. */
+        FULL,
+        /** One span per message; nested work becomes events on it. */
+        MINIMAL
+    }
+
+    @Value("${tracing.span-budget:full}")
+    private SpanBudget spanBudget = SpanBudget.FULL;
+
+    /**
+     * Starts a span for a unit of work nested in the current one, or, when the budget
+     * does not allow it, marks the start of that work with an event on the current span
+     * and returns the current span.
+     *
+     * Always pair with {@link #endNested(Span)}, never end the returned span directly.
+     */
+    public Span startNested(Tracer tracer, String name, SpanKind kind) {
+        if (isMergingNestedSpans()) {
+            Span current = Span.current();
+            if (current.isRecording()) {
+                current.addEvent(name);
+            }
+            return current;
+        }
+        return tracer.spanBuilder(name)
+                .setParent(Context.current())
+                .setSpanKind(kind)
+                .startSpan();
+    }
+
+    /**
+     * Ends a span from {@link #startNested}; a merged one belongs to its parent and stays open.
+     */
+    public void endNested(Span span) {
+        if (!isMergingNestedSpans()) {
+            span.end();
+        }
+    }
+
+    public boolean isMergingNestedSpans() {
+        return spanBudget == SpanBudget.MINIMAL;
+    }
+
+    public static void tag(Span span, AttributeKey<String> key, UUID value) {
+        if (value != null && span.isRecording()) {
+            span.setAttribute(key, value.toString());
+        }
+    }
+
+    public static void tag(Span span, AttributeKey<String> key, String value) {
+        if (value != null && span.isRecording()) {
+            span.setAttribute(key, value);
+        }
+    }
+
+    public static void tagKafkaRecord(Span span, ConsumerRecord<?, ?> record) {
+        if (span.isRecording()) {
+            span.setAttribute(KAFKA_TOPIC, record.topic());
+            span.setAttribute(KAFKA_PARTITION, record.partition());
+            span.setAttribute(KAFKA_OFFSET, record.offset());
+        }
+    }
+}
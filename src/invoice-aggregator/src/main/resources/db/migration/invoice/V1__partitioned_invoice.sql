@@ -0,0 +1,36 @@
+-- Invoices are range partitioned by created_at (one partition per day).
+-- Future partitions are created and expired ones dropped by PartitionMaintenance.
+
+-- Databases created before partitioning have a plain table built by Hibernate.
+-- Keep it around as invoice_legacy so no data is lost; it can be backfilled separately.
+DO $$
+BEGIN
+    IF EXISTS (SELECT 1 FROM pg_class c JOIN pg_namespace n ON n.oid = c.relnamespace
+               WHERE c.relname = 'invoice' AND n.nspname = current_schema() AND c.relkind = 'r') THEN
+        ALTER TABLE invoice RENAME TO invoice_legacy;
+        RAISE NOTICE 'Renamed unpartitioned invoice table to invoice_legacy';
+    END IF;
+END $$;
+
+CREATE TABLE invoice (
+    id                  BIGSERIAL,
+    invoice_id          UUID,
+    transaction_id      UUID,
+    payment_id          UUID,
+    customer_id         VARCHAR(255),
+    product_id          VARCHAR(255),
+    amount              NUMERIC(38, 2),
+    currency            VARCHAR(255),
+    status              VARCHAR(255),
+    payment_method      VARCHAR(255),
+    processor_reference VARCHAR(255),
+    created_at          TIMESTAMP(6) NOT NULL,
+    updated_at          TIMESTAMP(6),
+    PRIMARY KEY (id, created_at)
+) PARTITION BY RANGE (created_at);
+
+-- Catches rows outside the pre-created range so inserts never fail
+CREATE TABLE invoice_default PARTITION OF invoice DEFAULT;
+
+-- Rows arrive in created_at order, so a BRIN index stays tiny and prunes time ranges well
+CREATE INDEX invoice_created_at_brin ON invoice USING BRIN (created_at);
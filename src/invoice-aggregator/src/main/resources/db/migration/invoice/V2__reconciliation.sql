@@ -0,0 +1,26 @@
+-- Reconciliation of billing_record -> payment -> invoice.
+-- ReconciliationJob scans closed time slices after the watermark and records
+-- anything that does not line up in reconciliation_discrepancy.
+
+CREATE TABLE reconciliation_watermark (
+    job              VARCHAR(64) PRIMARY KEY,
+    reconciled_until TIMESTAMP(6) NOT NULL,
+    updated_at       TIMESTAMP(6) NOT NULL DEFAULT now()
+);
+
+-- One row per (kind, transaction) so re-scanning a slice never duplicates findings
+CREATE TABLE reconciliation_discrepancy (
+    id             BIGSERIAL PRIMARY KEY,
+    kind           VARCHAR(32) NOT NULL,
+    transaction_id UUID NOT NULL,
+    payment_id     UUID,
+    customer_id    VARCHAR(255),
+    billing_amount NUMERIC(38, 2),
+    payment_amount NUMERIC(38, 2),
+    invoice_amount NUMERIC(38, 2),
+    occurred_at    TIMESTAMP(6) NOT NULL,
+    detected_at    TIMESTAMP(6) NOT NULL DEFAULT now(),
+    CONSTRAINT reconciliation_discrepancy_kind_tx UNIQUE (kind, transaction_id)
+);
+
+CREATE INDEX reconciliation_discrepancy_occurred_at ON reconciliation_discrepancy (occurred_at);
@@ -0,0 +1,17 @@
+-- Lookup paths for InvoiceRepository.findByInvoiceId, findByTransactionId and findByPaymentId.
+--
+-- Indexes on the partitioned table cascade to every partition, including the ones
+-- PartitionMaintenance creates later. None is UNIQUE: a unique index on a partitioned
+-- table must contain the partition key (created_at), and a redelivered payment message
+-- can produce a second invoice, which reconciliation is there to find.
+--
+-- The payment_id index also carries created_at and amount, so the reconciliation queries
+-- (matched on payment_id within a created_at window, comparing amounts) are answered by
+-- index-only scans.
+--
+-- CREATE INDEX on a partitioned table cannot run CONCURRENTLY. On a large existing table,
+-- pre-build the indexes per partition with CREATE INDEX CONCURRENTLY and attach them to
+-- parent indexes created ON ONLY invoice before deploying.
+CREATE INDEX IF NOT EXISTS invoice_invoice_id ON invoice (invoice_id);
+CREATE INDEX IF NOT EXISTS invoice_transaction_id ON invoice (transaction_id);
+CREATE INDEX IF NOT EXISTS invoice_payment_id ON invoice (payment_id, created_at) INCLUDE (amount);
@@ -0,0 +1,137 @@
+package com.gesund.demo.invoiceaggregator.util;
+
+import com.gesund.demo.invoiceaggregator.repository.InvoiceBulkWriter;
+import com.gesund.demo.invoiceaggregator.util.HeapPressureWatchdog.PressureLevel;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Runs MemoryLeakSimulator's allocation pattern, scaled down to the 128 MB heap surefire
+ * gives this JVM, against a watchdog on the real GC notifications. The watermarks are
+ * lower than the defaults so that G1 keeps enough free regions to reach critical without
+ * running out of memory first.
+ */
+class HeapPressureWatchdogTest {
+
+    // Four of these fill a 1 MB G1 region almost exactly; 256 KB arrays plus header only fit three
+    private static final int CHUNK_BYTES = 250_000;
+    private static final int TEMPORARY_BYTES = 64 * 1024;
+
+    private ContextPropagatingExecutorService executorService;
+    private InvoiceBulkWriter invoiceBulkWriter;
+    private MessageListenerContainer listenerContainer;
+    private InMemoryBroker.Subscription subscription;
+    private HeapPressureWatchdog watchdog;
+
+    @BeforeEach
+    void setUp() {
+        executorService = new ContextPropagatingExecutorService(1);
+        invoiceBulkWriter = mock(InvoiceBulkWriter.class);
+        listenerContainer = mock(MessageListenerContainer.class);
+        KafkaListenerEndpointRegistry kafkaRegistry = mock(KafkaListenerEndpointRegistry.class);
+        when(kafkaRegistry.getListenerContainers()).thenReturn(List.of(listenerContainer));
+
+        InMemoryBroker inMemoryBroker = new InMemoryBroker(new ConcurrentHashMap<>(), new ObjectMapper(),
+                16, 1, 1, 100, 1, new SimpleMeterRegistry());
+        subscription = inMemoryBroker.subscribe("payments", String.class, (message, headers) -> { });
+
+        watchdog = new HeapPressureWatchdog(executorService, invoiceBulkWriter, provider(kafkaRegistry),
+                provider(null), provider(null), provider(inMemoryBroker), new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(watchdog, "enabled", true);
+        ReflectionTestUtils.setField(watchdog, "elevatedThreshold", 0.60);
+        ReflectionTestUtils.setField(watchdog, "criticalThreshold", 0.75);
+        ReflectionTestUtils.setField(watchdog, "recoveryThreshold", 0.45);
+        ReflectionTestUtils.setField(watchdog, "reducedBatchScale", 0.25);
+        System.gc();
+        watchdog.init();
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        watchdog.shutdown();
+        subscription.close();
+        executorService.shutdown();
+    }
+
+    @Test
+    void shedsLoadWhileLeakingAndRecoversAfterRelease() throws InterruptedException {
+        List<byte[]> retained = new ArrayList<>();
+        List<PressureLevel> levels = new ArrayList<>();
+        Random random = new Random(42);
+        long maxChunks = Runtime.getRuntime().maxMemory() * 90 / 100 / CHUNK_BYTES;
+
+        assertDoesNotThrow(() -> {
+            while (watchdog.getLevel() != PressureLevel.CRITICAL && retained.size() < maxChunks) {
+                MemoryLeakSimulator.leakStep(retained, CHUNK_BYTES, TEMPORARY_BYTES, random);
+                // GC notifications are delivered on their own thread
+                Thread.sleep(5);
+                levels.add(watchdog.getLevel());
+            }
+        });
+
+        assertEquals(PressureLevel.CRITICAL, watchdog.getLevel(), "leak never reached the critical watermark");
+        int firstElevated = levels.indexOf(PressureLevel.ELEVATED);
+        assertTrue(firstElevated >= 0 && firstElevated < levels.indexOf(PressureLevel.CRITICAL),
+                "level did not pass through ELEVATED: " + levels);
+        verify(listenerContainer, atLeastOnce()).pause();
+        assertTrue(subscription.isPaused());
+        verify(invoiceBulkWriter, atLeastOnce()).setBatchScale(0.25);
+        assertThrows(RejectedExecutionException.class, () -> executorService.execute(() -> { }));
+
+        retained.clear();
+        System.gc();
+        awaitLevel(PressureLevel.NORMAL);
+
+        verify(listenerContainer, atLeastOnce()).resume();
+        assertFalse(subscription.isPaused());
+        verify(invoiceBulkWriter, atLeastOnce()).setBatchScale(1.0);
+        assertDoesNotThrow(() -> executorService.execute(() -> { }));
+    }
+
+    private void awaitLevel(PressureLevel expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (watchdog.getLevel() != expected && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(expected, watchdog.getLevel());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> ObjectProvider<T> provider(T bean) {
+        ObjectProvider<T> provider = mock(ObjectProvider.class);
+        doAnswer(invocation -> {
+            if (bean != null) {
+                invocation.<Consumer<T>>getArgument(0).accept(bean);
+            }
+            return null;
+        }).when(provider).ifAvailable(any());
+        return provider;
+    }
+}
@@ -0,0 +1,74 @@
+package com.gesund.demo.loadsimulator.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.gesund.demo.loadsimulator.model.BillingMessage;
+import jakarta.jms.ConnectionFactory;
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jms.connection.CachingConnectionFactory;
+import org.springframework.jms.core.JmsTemplate;
+import org.springframework.jms.support.converter.MappingJackson2MessageConverter;
+import org.springframework.jms.support.converter.MessageConverter;
+import org.springframework.jms.support.converter.MessageType;
+
+import java.util.Map;
+
+/**
+ * JMS producer for the direct-to-broker load mode. Messages carry billing-service's
+ * class name in the "_type" property, which is what payment-processor maps from.
+ */
+@Configuration
+@ConditionalOnProperty(name = "load.simulator.client", havingValue = "activemq")
+public class ActiveMQConfig {
+
+    @Value("${spring.activemq.broker-url}")
+    private String brokerUrl;
+
+    @Value("${spring.activemq.user:admin}")
+    private String username;
+
+    @Value("${spring.activemq.password:admin}")
+    private String password;
+
+    @Value("${load.simulator.broker.publishers:4}")
+    private int publishers;
+
+    @Bean
+    public ConnectionFactory connectionFactory() {
+        ActiveMQConnectionFactory connectionFactory = new ActiveMQConnectionFactory();
+        connectionFactory.setBrokerURL(brokerUrl);
+        connectionFactory.setUserName(username);
+        connectionFactory.setPassword(password);
+
+        // Keep one session and producer per publisher thread instead of opening them per batch
+        CachingConnectionFactory cachingConnectionFactory = new CachingConnectionFactory(connectionFactory);
+        cachingConnectionFactory.setSessionCacheSize(publishers);
+        return cachingConnectionFactory;
+    }
+
+    @Bean
+    public MessageConverter jacksonJmsMessageConverter() {
+        MappingJackson2MessageConverter converter = new MappingJackson2MessageConverter();
+        ObjectMapper objectMapper = new ObjectMapper();
+        objectMapper.registerModule(new JavaTimeModule());
+        converter.setObjectMapper(objectMapper);
+        converter.setTargetType(MessageType.TEXT);
+        converter.setTypeIdPropertyName("_type");
+        converter.setTypeIdMappings(Map.of("com.gesund.demo.billingservice.model.BillingMessage", BillingMessage.class));
+        return converter;
+    }
+
+    @Bean
+    public JmsTemplate jmsTemplate() {
+        JmsTemplate template = new JmsTemplate();
+        template.setConnectionFactory(connectionFactory());
+        template.setMessageConverter(jacksonJmsMessageConverter());
+        template.setPubSubDomain(false); // false for queue, true for topic
+        template.setSessionTransacted(true);
+        return template;
+    }
+}
@@ -0,0 +1,55 @@
+package com.gesund.demo.loadsimulator.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Settings of the capacity-search mode, bound from {@code load.simulator.capacity.*}.
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "load.simulator.capacity")
+public class CapacitySearchProperties {
+
+    private boolean enabled;
+
+    /**
+     * Rate of the first step; the rate grows by growthFactor until a step breaches the SLO.
+     */
+    private double initialRate = 50;
+    private double growthFactor = 2;
+    private double maxRate = 100000;
+
+    /**
+     * The binary search stops once the passing and failing rates are this close, relative
+     * to the failing rate.
+     */
+    private double precision = 0.05;
+    private int maxSteps = 20;
+
+    /**
+     * Each step first runs warmupSeconds unmeasured, then stepSeconds measured.
+     */
+    private long warmupSeconds = 10;
+    private long stepSeconds = 30;
+
+    /**
+     * How long to wait for a step's outstanding requests before judging it; requests still
+     * outstanding afterwards count as errors.
+     */
+    private long drainTimeoutSeconds = 30;
+
+    private Slo slo = new Slo();
+
+    @Data
+    public static class Slo {
+
+        private long p99Ms = 500;
+
+        /**
+         * Maximum share of failed, dropped or unfinished requests.
+         */
+        private double errorRate = 0.01;
+    }
+}
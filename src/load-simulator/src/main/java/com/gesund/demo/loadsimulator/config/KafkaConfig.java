@@ -0,0 +1,72 @@
+package com.gesund.demo.loadsimulator.config;
+
+import com.gesund.demo.loadsimulator.model.BillingMessage;
+import org.apache.kafka.clients.admin.AdminClientConfig;
+import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaAdmin;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Kafka producer for the direct-to-broker load mode. Serialization matches
+ * billing-service's producer, including the "billingMessage" type header.
+ */
+@Configuration
+@ConditionalOnProperty(name = "load.simulator.client", havingValue = "kafka")
+public class KafkaConfig {
+
+    @Value("${spring.kafka.bootstrap-servers}")
+    private String bootstrapServers;
+
+    @Value("${kafka.topic.billing}")
+    private String billingTopic;
+
+    @Value("${kafka.topic.partitions:3}")
+    private int partitions;
+
+    @Value("${kafka.topic.replication-factor:1}")
+    private short replicationFactor;
+
+    @Value("${load.simulator.broker.linger-ms:5}")
+    private int lingerMs;
+
+    @Bean
+    public KafkaAdmin kafkaAdmin() {
+        Map<String, Object> configs = new HashMap<>();
+        configs.put(AdminClientConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        return new KafkaAdmin(configs);
+    }
+
+    @Bean
+    public NewTopic billingTopic() {
+        return new NewTopic(billingTopic, partitions, replicationFactor);
+    }
+
+    @Bean
+    public ProducerFactory<String, BillingMessage> producerFactory() {
+        Map<String, Object> configProps = new HashMap<>();
+        configProps.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        configProps.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        configProps.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, JsonSerializer.class);
+        configProps.put(ProducerConfig.LINGER_MS_CONFIG, lingerMs);
+        configProps.put(JsonSerializer.TYPE_MAPPINGS,
+                "billingMessage:com.gesund.demo.loadsimulator.model.BillingMessage");
+        return new DefaultKafkaProducerFactory<>(configProps);
+    }
+
+    @Bean
+    public KafkaTemplate<String, BillingMessage> kafkaTemplate() {
+        return new KafkaTemplate<>(producerFactory());
+    }
+}
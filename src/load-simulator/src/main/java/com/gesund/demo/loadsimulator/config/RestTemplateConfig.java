@@ -1,14 +1,28 @@
 package com.gesund.demo.loadsimulator.config;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
 import org.springframework.web.client.RestTemplate;
 
+import java.net.http.HttpClient;
+import java.time.Duration;
+
 @Configuration
 public class RestTemplateConfig {
 
     @Bean
-    public RestTemplate restTemplate() {
-        return new RestTemplate();
+    public RestTemplate restTemplate(
+            @Value("${load.simulator.http.connect-timeout-ms:5000}") long connectTimeoutMs,
+            @Value("${load.simulator.http.request-timeout-ms:30000}") long requestTimeoutMs) {
+        // HttpClient keeps persistent connections pooled, unlike the default HttpURLConnection factory
+        HttpClient httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                .build();
+        JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(httpClient);
+        requestFactory.setReadTimeout(Duration.ofMillis(requestTimeoutMs));
+        return new RestTemplate(requestFactory);
     }
 }
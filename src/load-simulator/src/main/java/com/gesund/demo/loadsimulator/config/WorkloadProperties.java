@@ -0,0 +1,125 @@
+package com.gesund.demo.loadsimulator.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Declarative workload profile for the load simulator, bound from {@code load.workload.*}.
+ *
+ * Profiles are usually kept in a Spring profile file (for example
+ * {@code application-hot-partition.yml}) and selected with SPRING_PROFILES_ACTIVE.
+ * Without phases the generator runs a single steady phase at
+ * {@code load.simulator.rate-per-second}.
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "load.workload")
+public class WorkloadProperties {
+
+    /**
+     * Phases run in order; the run ends after the last one.
+     */
+    private List<Phase> phases = new ArrayList<>();
+
+    private KeyDistribution customers = new KeyDistribution("CUST-", 10000, 90000);
+
+    private KeyDistribution products = new KeyDistribution("PROD-", 100, 900);
+
+    /**
+     * Currency code -> relative weight.
+     */
+    private Map<String, Double> currencies = new LinkedHashMap<>(Map.of("USD", 1.0));
+
+    private AmountDistribution amount = new AmountDistribution();
+
+    /**
+     * Number of distinct pre-serialized requests sampled at startup.
+     */
+    private int poolSize = 65536;
+
+    /**
+     * Seed for sampling the request pool; unset draws a new pool on every start.
+     */
+    private Long seed;
+
+    @Data
+    public static class Phase {
+
+        public enum Type {
+            RAMP, STEADY, SPIKE, SOAK
+        }
+
+        private String name;
+        private Type type = Type.STEADY;
+        private long durationSeconds;
+
+        /**
+         * Requests per second for steady, spike and soak phases.
+         */
+        private double rate;
+
+        /**
+         * Ramp phases change linearly from startRate to endRate.
+         */
+        private double startRate;
+        private double endRate;
+    }
+
+    @Data
+    public static class KeyDistribution {
+
+        public enum Type {
+            UNIFORM, ZIPF, HOTSET
+        }
+
+        private Type type = Type.UNIFORM;
+        private String prefix;
+        private int offset;
+        private int count;
+
+        /**
+         * Zipf exponent; 0 is uniform, around 1 is typical for real key popularity.
+         */
+        private double skew = 1.0;
+
+        /**
+         * Hot set: the first hotKeys keys receive hotFraction of the traffic.
+         */
+        private int hotKeys = 10;
+        private double hotFraction = 0.9;
+
+        public KeyDistribution() {
+        }
+
+        public KeyDistribution(String prefix, int offset, int count) {
+            this.prefix = prefix;
+            this.offset = offset;
+            this.count = count;
+        }
+    }
+
+    @Data
+    public static class AmountDistribution {
+
+        public enum Type {
+            UNIFORM, LOGNORMAL
+        }
+
+        private Type type = Type.UNIFORM;
+        private BigDecimal min = new BigDecimal("0.10");
+        private BigDecimal max = new BigDecimal("9.99");
+
+        /**
+         * Log-normal: median amount and the standard deviation of its logarithm.
+         */
+        private BigDecimal median = new BigDecimal("5.00");
+        private double sigma = 1.0;
+    }
+}
@@ -0,0 +1,75 @@
+package com.gesund.demo.loadsimulator.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gesund.demo.loadsimulator.util.ContextPropagationUtil;
+import com.gesund.demo.loadsimulator.util.PipelineTimestamps;
+import jakarta.jms.Destination;
+import jakarta.jms.JMSException;
+import jakarta.jms.Message;
+import jakarta.jms.MessageProducer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jms.core.JmsTemplate;
+import org.springframework.jms.core.MessagePostProcessor;
+import org.springframework.jms.support.JmsUtils;
+import org.springframework.jms.support.converter.MessageConverter;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Publishes billing messages to the billing queue, one locally transacted JMS session
+ * commit per batch. Messages are acknowledged when the commit returns.
+ */
+@Component
+@ConditionalOnProperty(name = "load.simulator.client", havingValue = "activemq")
+public class ActiveMQBillingClient extends BrokerBillingClient {
+
+    private final JmsTemplate jmsTemplate;
+    private final String billingQueue;
+
+    public ActiveMQBillingClient(
+            ObjectMapper objectMapper,
+            JmsTemplate jmsTemplate,
+            @Value("${activemq.queue.billing}") String billingQueue,
+            @Value("${load.simulator.broker.batch-size:100}") int batchSize,
+            @Value("${load.simulator.broker.linger-ms:5}") long lingerMs,
+            @Value("${load.simulator.broker.publishers:4}") int publishers) {
+        super(objectMapper, batchSize, lingerMs, publishers);
+        this.jmsTemplate = jmsTemplate;
+        this.billingQueue = billingQueue;
+        start(billingQueue);
+    }
+
+    @Override
+    protected void publish(List<Outgoing> batch) {
+        MessageConverter converter = jmsTemplate.getMessageConverter();
+        MessagePostProcessor contextInjector = ContextPropagationUtil.createContextInjector();
+
+        jmsTemplate.execute(session -> {
+            Destination destination = jmsTemplate.getDestinationResolver()
+                    .resolveDestinationName(session, billingQueue, false);
+            MessageProducer producer = session.createProducer(destination);
+            try {
+                for (Outgoing outgoing : batch) {
+                    Message message = converter.toMessage(outgoing.message(), session);
+                    traced(outgoing, billingQueue, () -> {
+                        try {
+                            contextInjector.postProcessMessage(message);
+                            PipelineTimestamps.jmsStamper(outgoing.timestamps()).postProcessMessage(message);
+                            producer.send(message);
+                        } catch (JMSException e) {
+                            throw JmsUtils.convertJmsAccessException(e);
+                        }
+                    });
+                }
+                JmsUtils.commitIfNecessary(session);
+            } finally {
+                producer.close();
+            }
+            return null;
+        }, false);
+
+        batch.forEach(outgoing -> outgoing.future().complete(null));
+    }
+}
@@ -0,0 +1,88 @@
+package com.gesund.demo.loadsimulator.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Non-blocking billing client on {@link HttpClient}.
+ *
+ * Requests are sent with {@code sendAsync}, so the number of requests in flight is not
+ * tied to the number of threads. With HTTP/2 the client upgrades plain-text connections
+ * to h2c and multiplexes concurrent requests over them; with HTTP/1.1 it keeps a pool of
+ * persistent connections (sized by {@code jdk.httpclient.connectionPoolSize}).
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "load.simulator.client", havingValue = "async", matchIfMissing = true)
+public class AsyncHttpBillingClient implements BillingClient {
+
+    private final URI billingUri;
+    private final Duration requestTimeout;
+    private final ExecutorService executor;
+    private final HttpClient httpClient;
+    private final AtomicBoolean versionLogged = new AtomicBoolean(false);
+
+    public AsyncHttpBillingClient(
+            @Value("${billing.service.url}") String billingServiceUrl,
+            @Value("${load.simulator.http.version:HTTP_2}") HttpClient.Version version,
+            @Value("${load.simulator.http.io-threads:0}") int ioThreads,
+            @Value("${load.simulator.http.connect-timeout-ms:5000}") long connectTimeoutMs,
+            @Value("${load.simulator.http.request-timeout-ms:30000}") long requestTimeoutMs) {
+        this.billingUri = URI.create(billingServiceUrl + "/api/billing");
+        this.requestTimeout = Duration.ofMillis(requestTimeoutMs);
+
+        // Completion callbacks are short, so a small fixed pool is enough for any request rate
+        int threads = ioThreads > 0 ? ioThreads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "billing-http-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.httpClient = HttpClient.newBuilder()
+                .version(version)
+                .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                .executor(executor)
+                .build();
+
+        log.info("Async billing client created - uri: {}, version: {}, io threads: {}", billingUri, version, threads);
+    }
+
+    @Override
+    public CompletableFuture<Void> post(byte[] body) {
+        HttpRequest httpRequest = HttpRequest.newBuilder(billingUri)
+                .timeout(requestTimeout)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                .build();
+
+        return httpClient.sendAsync(httpRequest, HttpResponse.BodyHandlers.discarding())
+                .thenAccept(response -> {
+                    if (versionLogged.compareAndSet(false, true)) {
+                        log.info("billing-service answered over {}", response.version());
+                    }
+                    if (response.statusCode() < 200 || response.statusCode() >= 300) {
+                        throw new IllegalStateException("billing-service returned status " + response.statusCode());
+                    }
+                });
+    }
+
+    @PreDestroy
+    public void close() {
+        executor.shutdownNow();
+    }
+}
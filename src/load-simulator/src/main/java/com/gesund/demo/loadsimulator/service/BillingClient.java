@@ -0,0 +1,22 @@
+package com.gesund.demo.loadsimulator.service;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Sends billing requests on behalf of the load generator, either to billing-service over
+ * HTTP or, in the broker modes, straight onto billing-service's outbound queue.
+ *
+ * Implementations do not parse responses, so client-side work stays out of the measured
+ * latency as far as possible.
+ */
+public interface BillingClient {
+
+    /**
+     * Posts a billing request.
+     *
+     * @param body The request as serialized JSON, typically from the {@link RequestPool}
+     * @return A future completed once the request was accepted (a 2xx response or a broker
+     *         acknowledgement), or exceptionally if it was not
+     */
+    CompletableFuture<Void> post(byte[] body);
+}
@@ -0,0 +1,168 @@
+package com.gesund.demo.loadsimulator.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gesund.demo.loadsimulator.model.BillingMessage;
+import com.gesund.demo.loadsimulator.model.BillingRequest;
+import com.gesund.demo.loadsimulator.util.PipelineTimestamps;
+import io.opentelemetry.api.GlobalOpenTelemetry;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.context.Scope;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Base for the direct-to-broker load modes, which publish {@link BillingMessage}s the way
+ * billing-service does and so load payment-processor and invoice-aggregator without
+ * going through billing-service's HTTP endpoint or database.
+ *
+ * Every request becomes a new billing message with a fresh transaction ID and an INGEST
+ * pipeline stamp. Publisher threads take up to batch-size messages at a time, waiting at
+ * most linger-ms for a batch to fill, and hand them to {@link #publish(List)}. The future
+ * of each message completes when the broker has acknowledged it.
+ */
+@Slf4j
+public abstract class BrokerBillingClient implements BillingClient {
+
+    private final Tracer tracer = GlobalOpenTelemetry.getTracer("load-simulator");
+    private final ObjectMapper objectMapper;
+    private final BlockingQueue<Outgoing> queue = new LinkedBlockingQueue<>();
+    private final int batchSize;
+    private final long lingerNanos;
+    private final List<Thread> publishers = new ArrayList<>();
+    private volatile boolean running = true;
+
+    protected BrokerBillingClient(ObjectMapper objectMapper, int batchSize, long lingerMs, int publisherThreads) {
+        this.objectMapper = objectMapper;
+        this.batchSize = Math.max(1, batchSize);
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(lingerMs);
+        for (int i = 1; i <= publisherThreads; i++) {
+            Thread publisher = new Thread(this::publishLoop, "broker-publisher-" + i);
+            publisher.setDaemon(true);
+            publishers.add(publisher);
+        }
+    }
+
+    /**
+     * Starts the publisher threads; called once the subclass is fully constructed.
+     */
+    protected void start(String destination) {
+        publishers.forEach(Thread::start);
+        log.info("{} publishing to {} - batch size: {}, linger: {}ms, publishers: {}",
+                getClass().getSimpleName(), destination, batchSize,
+                TimeUnit.NANOSECONDS.toMillis(lingerNanos), publishers.size());
+    }
+
+    @Override
+    public CompletableFuture<Void> post(byte[] body) {
+        Outgoing outgoing;
+        try {
+            outgoing = new Outgoing(toMessage(objectMapper.readValue(body, BillingRequest.class)),
+                    PipelineTimestamps.start(PipelineTimestamps.INGEST), new CompletableFuture<>());
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        queue.add(outgoing);
+        return outgoing.future();
+    }
+
+    /**
+     * Publishes a batch of messages. Implementations complete each message's future once
+     * the broker acknowledged it; anything left incomplete when this throws is failed.
+     */
+    protected abstract void publish(List<Outgoing> batch) throws Exception;
+
+    /**
+     * Runs the given send inside a producer span, so the trace context injected into the
+     * message headers starts a trace at the simulator just like an HTTP request would.
+     */
+    protected void traced(Outgoing outgoing, String destination, Runnable send) {
+        Span span = tracer.spanBuilder("send-billing-message")
+                .setParent(Context.current())
+                .setAttribute("transaction.id", outgoing.message().getTransactionId().toString())
+                .setAttribute("messaging.destination", destination)
+                .setSpanKind(SpanKind.PRODUCER)
+                .startSpan();
+        try (Scope scope = span.makeCurrent()) {
+            PipelineTimestamps.stamp(outgoing.timestamps(), PipelineTimestamps.BILLING_ENQUEUE);
+            send.run();
+        } finally {
+            span.end();
+        }
+    }
+
+    private BillingMessage toMessage(BillingRequest request) {
+        return BillingMessage.builder()
+                .transactionId(UUID.randomUUID())
+                .customerId(request.getCustomerId())
+                .productId(request.getProductId())
+                .amount(request.getAmount())
+                .currency(request.getCurrency())
+                .status("PENDING")
+                .timestamp(LocalDateTime.now())
+                .messageType("BILLING_CREATED")
+                .build();
+    }
+
+    private void publishLoop() {
+        List<Outgoing> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                Outgoing first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+
+                long deadline = System.nanoTime() + lingerNanos;
+                while (batch.size() < batchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    Outgoing next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                    queue.drainTo(batch, batchSize - batch.size());
+                }
+
+                try {
+                    publish(batch);
+                } catch (Exception e) {
+                    log.debug("Publishing a batch of {} billing messages failed: {}", batch.size(), e.getMessage());
+                    batch.forEach(outgoing -> outgoing.future().completeExceptionally(e));
+                }
+                batch.clear();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        running = false;
+        publishers.forEach(Thread::interrupt);
+    }
+
+    /**
+     * A billing message waiting to be published, with its pipeline stamps and the future
+     * reported back to the load generator.
+     */
+    protected record Outgoing(BillingMessage message, Map<String, Long> timestamps, CompletableFuture<Void> future) {
+    }
+}
@@ -0,0 +1,86 @@
+package com.gesund.demo.loadsimulator.service;
+
+import com.gesund.demo.loadsimulator.config.CapacitySearchProperties;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Chooses the offered rate of each capacity-search step.
+ *
+ * The rate grows geometrically from the initial rate until a step breaches the SLO, then
+ * a binary search between the highest passing and lowest failing rate narrows down the
+ * knee. Throughput is not monotonic in offered rate under overload, so the result is the
+ * highest passing step rather than the last one.
+ */
+class CapacitySearch {
+
+    private static final double MIN_RATE = 1;
+
+    private final CapacitySearchProperties properties;
+    private final List<Map<String, Object>> steps = new ArrayList<>();
+    private double highestPassing;
+    private double lowestFailing = Double.POSITIVE_INFINITY;
+    private Map<String, Object> bestStep;
+
+    CapacitySearch(CapacitySearchProperties properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * Returns the rate of the next step, or a negative value when the search is done.
+     */
+    synchronized double nextRate() {
+        if (steps.size() >= properties.getMaxSteps()) {
+            return -1;
+        }
+        if (Double.isInfinite(lowestFailing)) {
+            if (highestPassing >= properties.getMaxRate()) {
+                return -1;
+            }
+            double rate = highestPassing == 0
+                    ? properties.getInitialRate()
+                    : highestPassing * properties.getGrowthFactor();
+            return Math.min(rate, properties.getMaxRate());
+        }
+        if (highestPassing == 0) {
+            // Even the first step failed: halve until something passes
+            return lowestFailing / 2 >= MIN_RATE ? lowestFailing / 2 : -1;
+        }
+        if (lowestFailing - highestPassing <= properties.getPrecision() * lowestFailing) {
+            return -1;
+        }
+        return (highestPassing + lowestFailing) / 2;
+    }
+
+    /**
+     * Records the outcome of a step.
+     *
+     * @param step Measurements of the step, including "offeredRate", "achievedRate" and "passed"
+     */
+    synchronized void record(Map<String, Object> step) {
+        steps.add(step);
+        double rate = (double) step.get("offeredRate");
+        if ((boolean) step.get("passed")) {
+            highestPassing = Math.max(highestPassing, rate);
+            if (bestStep == null || (double) step.get("achievedRate") > (double) bestStep.get("achievedRate")) {
+                bestStep = step;
+            }
+        } else {
+            lowestFailing = Math.min(lowestFailing, rate);
+        }
+    }
+
+    synchronized Map<String, Object> result() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("maxSustainableRate", bestStep != null ? bestStep.get("achievedRate") : 0.0);
+        result.put("highestPassingOfferedRate", highestPassing);
+        result.put("lowestFailingOfferedRate", Double.isInfinite(lowestFailing) ? null : lowestFailing);
+        result.put("sloP99Ms", properties.getSlo().getP99Ms());
+        result.put("sloErrorRate", properties.getSlo().getErrorRate());
+        result.put("steps", steps);
+        return result;
+    }
+}
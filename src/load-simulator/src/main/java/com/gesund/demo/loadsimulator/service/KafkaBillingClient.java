@@ -0,0 +1,62 @@
+package com.gesund.demo.loadsimulator.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gesund.demo.loadsimulator.model.BillingMessage;
+import com.gesund.demo.loadsimulator.util.ContextPropagationUtil;
+import com.gesund.demo.loadsimulator.util.PipelineTimestamps;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Publishes billing messages to the billing topic, keyed by transaction ID like
+ * billing-service. The producer batches records on its own (linger.ms), so each batch
+ * taken from the queue is handed over without waiting for acknowledgements.
+ */
+@Component
+@ConditionalOnProperty(name = "load.simulator.client", havingValue = "kafka")
+public class KafkaBillingClient extends BrokerBillingClient {
+
+    private final KafkaTemplate<String, BillingMessage> kafkaTemplate;
+    private final String billingTopic;
+
+    public KafkaBillingClient(
+            ObjectMapper objectMapper,
+            KafkaTemplate<String, BillingMessage> kafkaTemplate,
+            @Value("${kafka.topic.billing}") String billingTopic,
+            @Value("${load.simulator.broker.batch-size:100}") int batchSize,
+            @Value("${load.simulator.broker.linger-ms:5}") long lingerMs,
+            @Value("${load.simulator.broker.publishers:4}") int publishers) {
+        super(objectMapper, batchSize, lingerMs, publishers);
+        this.kafkaTemplate = kafkaTemplate;
+        this.billingTopic = billingTopic;
+        start(billingTopic);
+    }
+
+    @Override
+    protected void publish(List<Outgoing> batch) {
+        for (Outgoing outgoing : batch) {
+            traced(outgoing, billingTopic, () -> {
+                ProducerRecord<String, BillingMessage> record = new ProducerRecord<>(
+                        billingTopic,
+                        outgoing.message().getTransactionId().toString(),
+                        outgoing.message()
+                );
+                ContextPropagationUtil.injectContextToKafkaHeaders(record);
+                PipelineTimestamps.addToKafkaHeaders(outgoing.timestamps(), record.headers());
+
+                kafkaTemplate.send(record).whenComplete((result, error) -> {
+                    if (error != null) {
+                        outgoing.future().completeExceptionally(error);
+                    } else {
+                        outgoing.future().complete(null);
+                    }
+                });
+            });
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.gesund.demo.loadsimulator.service;
+
+import com.gesund.demo.loadsimulator.config.WorkloadProperties.KeyDistribution;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Draws key indexes in [0, count) according to a {@link KeyDistribution}. Index 0 is the
+ * most popular key for skewed distributions.
+ */
+class KeySampler {
+
+    private final KeyDistribution distribution;
+    private final double[] zipfCdf;
+
+    KeySampler(KeyDistribution distribution) {
+        if (distribution.getCount() <= 0) {
+            throw new IllegalArgumentException("Key count must be positive for " + distribution.getPrefix());
+        }
+        this.distribution = distribution;
+        this.zipfCdf = distribution.getType() == KeyDistribution.Type.ZIPF ? zipfCdf(distribution) : null;
+    }
+
+    int sample(Random random) {
+        int count = distribution.getCount();
+        switch (distribution.getType()) {
+            case ZIPF:
+                int index = Arrays.binarySearch(zipfCdf, random.nextDouble());
+                return Math.min(index >= 0 ? index : -index - 1, count - 1);
+            case HOTSET:
+                int hotKeys = Math.min(distribution.getHotKeys(), count);
+                if (hotKeys == count || random.nextDouble() < distribution.getHotFraction()) {
+                    return random.nextInt(hotKeys);
+                }
+                return hotKeys + random.nextInt(count - hotKeys);
+            default:
+                return random.nextInt(count);
+        }
+    }
+
+    String key(int index) {
+        return distribution.getPrefix() + (distribution.getOffset() + index);
+    }
+
+    private static double[] zipfCdf(KeyDistribution distribution) {
+        double[] cdf = new double[distribution.getCount()];
+        double sum = 0;
+        for (int rank = 0; rank < cdf.length; rank++) {
+            sum += 1.0 / Math.pow(rank + 1, distribution.getSkew());
+            cdf[rank] = sum;
+        }
+        for (int rank = 0; rank < cdf.length; rank++) {
+            cdf[rank] /= sum;
+        }
+        return cdf;
+    }
+}
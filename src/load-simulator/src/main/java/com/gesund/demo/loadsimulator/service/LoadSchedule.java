@@ -0,0 +1,101 @@
+package com.gesund.demo.loadsimulator.service;
+
+import com.gesund.demo.loadsimulator.config.WorkloadProperties.Phase;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Target request rate over time for a sequence of workload phases.
+ */
+class LoadSchedule {
+
+    private final List<Phase> phases;
+    private final long[] phaseEndNanos;
+
+    LoadSchedule(List<Phase> phases) {
+        this.phases = phases;
+        this.phaseEndNanos = new long[phases.size()];
+        long end = 0;
+        for (int i = 0; i < phases.size(); i++) {
+            long duration = phases.get(i).getDurationSeconds();
+            end = duration > 0 && end != Long.MAX_VALUE ? end + TimeUnit.SECONDS.toNanos(duration) : Long.MAX_VALUE;
+            phaseEndNanos[i] = end;
+        }
+    }
+
+    /**
+     * Total length of the schedule, or Long.MAX_VALUE if a phase runs until shutdown.
+     */
+    long durationNanos() {
+        return phaseEndNanos.length == 0 ? 0 : phaseEndNanos[phaseEndNanos.length - 1];
+    }
+
+    /**
+     * Index of the phase running at the given offset from the start, or -1 after the end.
+     */
+    int phaseAt(long elapsedNanos) {
+        for (int i = 0; i < phaseEndNanos.length; i++) {
+            if (elapsedNanos < phaseEndNanos[i]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    List<Phase> phases() {
+        return phases;
+    }
+
+    Phase phase(int index) {
+        return phases.get(index);
+    }
+
+    /**
+     * Time from the given offset until the next request is due.
+     *
+     * On a ramp the rate changes between two requests, so this solves
+     * {@code rate * t + slope * t^2 / 2 = 1} instead of taking 1 / rate; otherwise a ramp
+     * starting near zero would wait for seconds before its second request. If no request
+     * is due in the rest of the phase, returns the time to the end of the phase.
+     */
+    long nextIntervalNanos(int index, long elapsedNanos) {
+        double rate = Math.max(0, rateAt(index, elapsedNanos));
+        double slope = slope(index);
+        double seconds;
+        if (slope == 0) {
+            seconds = rate > 0 ? 1 / rate : Double.POSITIVE_INFINITY;
+        } else {
+            double discriminant = rate * rate + 2 * slope;
+            seconds = discriminant >= 0 ? (Math.sqrt(discriminant) - rate) / slope : Double.POSITIVE_INFINITY;
+        }
+        if (Double.isInfinite(seconds) || seconds <= 0) {
+            long remaining = phaseEndNanos[index] - elapsedNanos;
+            return remaining > 0 && phaseEndNanos[index] != Long.MAX_VALUE ? remaining : TimeUnit.SECONDS.toNanos(1);
+        }
+        return Math.max(1, (long) (seconds * TimeUnit.SECONDS.toNanos(1)));
+    }
+
+    /**
+     * Target rate in requests per second at the given offset from the start.
+     */
+    double rateAt(int index, long elapsedNanos) {
+        Phase phase = phases.get(index);
+        if (phase.getType() != Phase.Type.RAMP) {
+            return phase.getRate();
+        }
+        long phaseStart = index == 0 ? 0 : phaseEndNanos[index - 1];
+        double progress = (double) (elapsedNanos - phaseStart) / (phaseEndNanos[index] - phaseStart);
+        return phase.getStartRate() + (phase.getEndRate() - phase.getStartRate()) * progress;
+    }
+
+    private double slope(int index) {
+        Phase phase = phases.get(index);
+        long phaseStart = index == 0 ? 0 : phaseEndNanos[index - 1];
+        if (phase.getType() != Phase.Type.RAMP || phaseEndNanos[index] == Long.MAX_VALUE) {
+            return 0;
+        }
+        double seconds = (phaseEndNanos[index] - phaseStart) / (double) TimeUnit.SECONDS.toNanos(1);
+        return (phase.getEndRate() - phase.getStartRate()) / seconds;
+    }
+}
@@ -1,64 +1,539 @@
 package com.gesund.demo.loadsimulator.service;
 
-import lombok.RequiredArgsConstructor;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.gesund.demo.loadsimulator.config.CapacitySearchProperties;
+import com.gesund.demo.loadsimulator.config.CapacitySearchProperties.Slo;
+import com.gesund.demo.loadsimulator.config.WorkloadProperties;
+import com.gesund.demo.loadsimulator.config.WorkloadProperties.Phase;
+import com.gesund.demo.loadsimulator.util.TrafficLogReader;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.ResponseEntity;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.event.EventListener;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
 
-import java.math.BigDecimal;
-import java.util.HashMap;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Random;
-import java.util.UUID;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 
+/**
+ * Open-loop load generator for billing-service.
+ *
+ * Requests are scheduled at the target rate of the current workload phase, independent of how fast billing-service
+ * answers: the generator thread only hands requests to the {@link BillingClient}, so many
+ * requests can be in flight at once. Requests beyond max-in-flight wait in a backlog and
+ * are sent as earlier ones complete. Latency is measured from each request's intended
+ * send time, so a slow system under test shows up as higher latency instead of silently
+ * lowering the request rate (coordinated omission).
+ *
+ * Request bodies come from the pre-sampled {@link RequestPool}. Alternatively, when a
+ * replay file is set, a traffic log captured by billing-service is played back with its
+ * original inter-arrival times, sped up by replay-speed (0 plays it as fast as the
+ * in-flight limit allows). In capacity-search mode the offered rate is raised step by
+ * step until p99 or the error rate breaches the SLO, see {@link CapacitySearch}.
+ * Percentiles are logged periodically, and a JSON report is written when the run ends.
+ */
 @Service
 @Slf4j
-@RequiredArgsConstructor
 public class LoadSimulatorService {
 
-    private final RestTemplate restTemplate;
-    private final Random random = new Random();
+    private final BillingClient billingClient;
+    private final RequestPool requestPool;
+    private final WorkloadProperties workload;
+    private final CapacitySearchProperties capacity;
+    private final ObjectMapper objectMapper;
+    private final ApplicationContext context;
 
-    @Value("${billing.service.url}")
-    private String billingServiceUrl;
+    @Value("${load.simulator.enabled:true}")
+    private boolean enabled;
+
+    @Value("${load.simulator.rate-per-second:0.17}")
+    private double ratePerSecond;
+
+    @Value("${load.simulator.max-in-flight:64}")
+    private int maxInFlight;
+
+    @Value("${load.simulator.max-backlog:10000}")
+    private int maxBacklog;
+
+    @Value("${load.simulator.duration-seconds:0}")
+    private long durationSeconds;
+
+    @Value("${load.simulator.report-file:}")
+    private String reportFile;
+
+    @Value("${load.simulator.replay.file:}")
+    private String replayFile;
+
+    @Value("${load.simulator.replay.speed:1.0}")
+    private double replaySpeed;
+
+    @Value("${load.simulator.exit-when-done:false}")
+    private boolean exitWhenDone;
+
+    private final LoadStatistics statistics = new LoadStatistics();
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private final AtomicBoolean reported = new AtomicBoolean(false);
+    private final Queue<Pending> backlog = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger backlogSize = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final ThreadLocal<Boolean> dispatching = ThreadLocal.withInitial(() -> false);
+    private LoadSchedule schedule;
+    private long replayed;
+    private CapacitySearch search;
+    private volatile double searchRate;
+    private volatile int currentPhase;
+    private Thread generator;
+    private Instant startedAt;
+    private long startNanos;
+    private long lastSummaryNanos;
+    private long lastSummaryCompleted;
+
+    public LoadSimulatorService(BillingClient billingClient, RequestPool requestPool,
+                                WorkloadProperties workload, CapacitySearchProperties capacity,
+                                ObjectMapper objectMapper, ApplicationContext context) {
+        this.billingClient = billingClient;
+        this.requestPool = requestPool;
+        this.workload = workload;
+        this.capacity = capacity;
+        this.objectMapper = objectMapper;
+        this.context = context;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        List<Phase> phases = workload.getPhases();
+        if (phases.isEmpty()) {
+            // No workload profile: a single steady phase at the configured rate
+            Phase steady = new Phase();
+            steady.setName("steady");
+            steady.setRate(ratePerSecond);
+            steady.setDurationSeconds(durationSeconds);
+            phases = List.of(steady);
+        }
+        boolean replay = replayFile != null && !replayFile.isBlank();
+        if (!enabled || (!replay && !capacity.isEnabled() && workload.getPhases().isEmpty() && ratePerSecond <= 0)) {
+            log.info("Load simulator disabled");
+            return;
+        }
+
+        startedAt = Instant.now();
+        startNanos = System.nanoTime();
+        lastSummaryNanos = startNanos;
+        running.set(true);
+
+        if (capacity.isEnabled()) {
+            search = new CapacitySearch(capacity);
+            generator = new Thread(this::searchCapacity, "load-capacity-search");
+            generator.setDaemon(true);
+            generator.start();
+            log.info("Load simulator searching capacity - client: {}, SLO: p99 <= {} ms and errors <= {}%, "
+                            + "max in flight: {}, step: {}s + {}s warmup",
+                    billingClient.getClass().getSimpleName(), capacity.getSlo().getP99Ms(),
+                    capacity.getSlo().getErrorRate() * 100, maxInFlight,
+                    capacity.getStepSeconds(), capacity.getWarmupSeconds());
+            return;
+        }
+
+        if (replay) {
+            generator = new Thread(this::replay, "load-replay");
+            generator.setDaemon(true);
+            generator.start();
+            log.info("Load simulator replaying {} - client: {}, speed: {}, max in flight: {}",
+                    replayFile, billingClient.getClass().getSimpleName(),
+                    replaySpeed > 0 ? replaySpeed + "x" : "maximum", maxInFlight);
+            return;
+        }
+
+        schedule = new LoadSchedule(phases);
+        generator = new Thread(this::generate, "load-generator");
+        generator.setDaemon(true);
+        generator.start();
+
+        long duration = schedule.durationNanos();
+        log.info("Load simulator started - client: {}, phases: {}, max in flight: {}, duration: {}",
+                billingClient.getClass().getSimpleName(), phases.size(), maxInFlight,
+                duration == Long.MAX_VALUE ? "unbounded" : TimeUnit.NANOSECONDS.toSeconds(duration) + "s");
+    }
+
+    private void generate() {
+        long intendedNanos = startNanos;
+        int phase = -1;
+
+        while (running.get()) {
+            long elapsedNanos = intendedNanos - startNanos;
+            int index = schedule.phaseAt(elapsedNanos);
+            if (index < 0) {
+                break;
+            }
+
+            if (!waitUntil(intendedNanos)) {
+                return;
+            }
+
+            if (index != phase) {
+                phase = index;
+                currentPhase = index;
+                log.info("Entering workload phase {} ({})", describe(index), schedule.phase(index).getType());
+            }
+            double rate = schedule.rateAt(index, elapsedNanos);
+            if (rate <= 0) {
+                // Nothing to send yet (for example the start of a ramp from zero)
+                intendedNanos += schedule.nextIntervalNanos(index, elapsedNanos);
+                continue;
+            }
+
+            // If the generator fell behind, the missed slots are sent right away so the
+            // schedule (and the latency measured against it) is preserved
+            enqueue(intendedNanos, requestPool.next(), null);
+            intendedNanos += schedule.nextIntervalNanos(index, elapsedNanos);
+        }
+
+        if (running.get()) {
+            log.info("Load simulator completed all workload phases");
+            finish();
+            exitIfRequested();
+        }
+    }
+
+    private void replay() {
+        try (TrafficLogReader reader = new TrafficLogReader(TrafficLogReader.resolve(replayFile))) {
+            long firstArrivalMicros = -1;
+            while (running.get() && reader.next()) {
+                if (firstArrivalMicros < 0) {
+                    firstArrivalMicros = reader.getArrivalMicros();
+                }
+
+                long intendedNanos;
+                if (replaySpeed > 0) {
+                    long offsetNanos = TimeUnit.MICROSECONDS.toNanos(reader.getArrivalMicros() - firstArrivalMicros);
+                    intendedNanos = startNanos + (long) (offsetNanos / replaySpeed);
+                    if (!waitUntil(intendedNanos)) {
+                        return;
+                    }
+                } else {
+                    // Maximum speed: only the backlog limit paces the replay, nothing is dropped
+                    while (backlogSize.get() >= maxBacklog) {
+                        LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+                        if (!running.get()) {
+                            return;
+                        }
+                    }
+                    intendedNanos = System.nanoTime();
+                }
+                enqueue(intendedNanos, reader.getBody(), null);
+                replayed++;
+            }
+        } catch (IOException e) {
+            log.error("Could not replay traffic log {}: {}", replayFile, e.getMessage(), e);
+        }
+
+        if (running.get()) {
+            log.info("Load simulator replayed {} requests from {}", replayed, replayFile);
+            finish();
+            exitIfRequested();
+        }
+    }
+
+    private void searchCapacity() {
+        double rate;
+        while (running.get() && (rate = search.nextRate()) > 0) {
+            searchRate = rate;
+            Map<String, Object> step = runStep(rate);
+            if (step == null) {
+                return;
+            }
+            search.record(step);
+            log.info("Capacity step - offered: {}/s, achieved: {}/s, errors: {}, response time (us): {}, {}",
+                    String.format("%.1f", rate), step.get("achievedRate"), step.get("errorRate"),
+                    step.get("responseTimeMicros"), (boolean) step.get("passed") ? "passed" : "breached SLO");
+        }
+
+        if (running.get()) {
+            log.info("Capacity search finished - max sustainable rate: {}/s",
+                    search.result().get("maxSustainableRate"));
+            finish();
+            exitIfRequested();
+        }
+    }
+
+    /**
+     * Offers a constant rate for one warmup and one measurement window, then waits for
+     * the measured requests to complete.
+     *
+     * @return The step's measurements, or null if the simulator was stopped
+     */
+    private Map<String, Object> runStep(double rate) {
+        LoadStatistics stepStatistics = new LoadStatistics();
+        long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+        long intendedNanos = System.nanoTime();
+        long measureFrom = intendedNanos + TimeUnit.SECONDS.toNanos(capacity.getWarmupSeconds());
+        long measureUntil = measureFrom + TimeUnit.SECONDS.toNanos(capacity.getStepSeconds());
+        long scheduled = 0;
+
+        while (intendedNanos < measureUntil) {
+            if (!waitUntil(intendedNanos)) {
+                return null;
+            }
+            // Warmup requests load the system but are not judged
+            boolean measured = intendedNanos >= measureFrom;
+            enqueue(intendedNanos, requestPool.next(), measured ? stepStatistics : null);
+            if (measured) {
+                scheduled++;
+            }
+            intendedNanos += intervalNanos;
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(capacity.getDrainTimeoutSeconds());
+        while (stepStatistics.getCompleted() + stepStatistics.getDropped() < scheduled
+                && System.nanoTime() < deadline) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+            if (!running.get()) {
+                return null;
+            }
+        }
+        // Whatever is still backlogged belongs to an overloaded step; don't let it skew the next one
+        Pending stale;
+        while ((stale = backlog.poll()) != null) {
+            backlogSize.decrementAndGet();
+            drop(stale.step());
+        }
+
+        Map<String, Object> total = stepStatistics.total();
+        @SuppressWarnings("unchecked")
+        Map<String, Object> responseTime = (Map<String, Object>) total.get("responseTimeMicros");
+        long succeeded = (long) total.get("succeeded");
+        double errorRate = scheduled > 0 ? (double) (scheduled - succeeded) / scheduled : 0;
+        Slo slo = capacity.getSlo();
+        boolean passed = scheduled > 0
+                && (long) responseTime.get("p99") <= TimeUnit.MILLISECONDS.toMicros(slo.getP99Ms())
+                && errorRate <= slo.getErrorRate();
+
+        Map<String, Object> step = new LinkedHashMap<>();
+        step.put("offeredRate", rate);
+        step.put("achievedRate", Math.round(succeeded * 10.0 / capacity.getStepSeconds()) / 10.0);
+        step.put("scheduled", scheduled);
+        step.put("succeeded", succeeded);
+        step.put("failed", total.get("failed"));
+        step.put("dropped", total.get("dropped"));
+        step.put("errorRate", Math.round(errorRate * 10000) / 10000.0);
+        step.put("responseTimeMicros", responseTime);
+        step.put("passed", passed);
+        return step;
+    }
+
+    /**
+     * Parks until the given time.
+     *
+     * @return false if the simulator was stopped while waiting
+     */
+    private boolean waitUntil(long intendedNanos) {
+        long waitNanos;
+        while ((waitNanos = intendedNanos - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(waitNanos);
+            if (!running.get()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param step Statistics of the capacity-search step the request belongs to, if any
+     */
+    private void enqueue(long intendedNanos, byte[] body, LoadStatistics step) {
+        if (backlogSize.get() >= maxBacklog) {
+            drop(step);
+        } else {
+            backlog.add(new Pending(intendedNanos, body, step));
+            backlogSize.incrementAndGet();
+            dispatch();
+        }
+    }
+
+    private void drop(LoadStatistics step) {
+        statistics.recordDropped();
+        if (step != null) {
+            step.recordDropped();
+        }
+    }
+
+    /**
+     * Sends backlogged requests while fewer than max-in-flight are outstanding. Called
+     * after every enqueue and every completion, so no request is left waiting in the
+     * backlog while a slot is free.
+     *
+     * A request that fails synchronously completes its future before send() returns, so
+     * its completion runs on the dispatching thread. Such a nested call returns at once and
+     * the loop already running on that thread picks up the freed slot; otherwise every
+     * backlogged request would add stack frames, up to max-backlog deep.
+     */
+    private void dispatch() {
+        if (dispatching.get()) {
+            return;
+        }
+        dispatching.set(true);
+        try {
+            while (!backlog.isEmpty()) {
+                int current = inFlight.get();
+                if (current >= maxInFlight) {
+                    return;
+                }
+                if (!inFlight.compareAndSet(current, current + 1)) {
+                    continue;
+                }
+                Pending next = backlog.poll();
+                if (next == null) {
+                    inFlight.decrementAndGet();
+                    continue;
+                }
+                backlogSize.decrementAndGet();
+                send(next);
+            }
+        } finally {
+            dispatching.set(false);
+        }
+    }
+
+    private void send(Pending pending) {
+        long sentNanos = System.nanoTime();
+        CompletableFuture<Void> response;
+        try {
+            response = billingClient.post(pending.body());
+        } catch (RuntimeException e) {
+            response = CompletableFuture.failedFuture(e);
+        }
+        response.whenComplete((ignored, error) -> {
+            long completedNanos = System.nanoTime();
+            statistics.record(pending.intendedNanos(), sentNanos, completedNanos, error == null);
+            if (pending.step() != null) {
+                pending.step().record(pending.intendedNanos(), sentNanos, completedNanos, error == null);
+            }
+            if (error != null) {
+                log.debug("Billing request failed: {}", error.getMessage());
+            }
+            inFlight.decrementAndGet();
+            dispatch();
+        });
+    }
+
+    private String describe(int index) {
+        Phase phase = schedule.phase(index);
+        return phase.getName() != null ? phase.getName() : String.valueOf(index + 1);
+    }
+
+    @Scheduled(fixedRateString = "${load.simulator.report-interval-ms:10000}")
+    public synchronized void logSummary() {
+        if (!running.get()) {
+            return;
+        }
+        long now = System.nanoTime();
+        long completed = statistics.getCompleted();
+        double seconds = (now - lastSummaryNanos) / 1e9;
+        Map<String, Object> interval = statistics.interval();
+        int phase = currentPhase;
+        String target = "-";
+        if (schedule != null) {
+            target = String.format("%.1f", schedule.rateAt(phase, now - startNanos));
+        } else if (search != null) {
+            target = String.format("%.1f", searchRate);
+        }
+        log.info("Load summary - phase: {}, target: {}/s, rate: {}/s, in flight: {}, backlog: {}, response time (us): {}",
+                schedule != null ? describe(phase) : search != null ? "capacity-search" : "replay", target,
+                String.format("%.1f", (completed - lastSummaryCompleted) / seconds),
+                inFlight.get(), backlogSize.get(), interval);
+        lastSummaryNanos = now;
+        lastSummaryCompleted = completed;
+    }
+
+    private void finish() {
+        if (!running.getAndSet(false)) {
+            return;
+        }
+        // Give outstanding requests a chance to complete so they are part of the report
+        Pending pending;
+        while ((pending = backlog.poll()) != null) {
+            drop(pending.step());
+        }
+        backlogSize.set(0);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (inFlight.get() > 0 && System.nanoTime() < deadline) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+        }
+        writeReport();
+    }
+
+    private void writeReport() {
+        if (!reported.compareAndSet(false, true)) {
+            return;
+        }
+        double elapsedSeconds = (System.nanoTime() - startNanos) / 1e9;
+        Map<String, Object> total = statistics.total();
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("startedAt", startedAt.toString());
+        report.put("elapsedSeconds", Math.round(elapsedSeconds * 10) / 10.0);
+        if (schedule != null) {
+            report.put("phases", schedule.phases());
+        } else if (search != null) {
+            report.put("capacity", search.result());
+        } else {
+            Map<String, Object> replay = new LinkedHashMap<>();
+            replay.put("file", replayFile);
+            replay.put("speed", replaySpeed > 0 ? replaySpeed : "maximum");
+            replay.put("requests", replayed);
+            report.put("replay", replay);
+        }
+        report.put("achievedRatePerSecond", Math.round(statistics.getCompleted() / elapsedSeconds * 10) / 10.0);
+        report.put("client", billingClient.getClass().getSimpleName());
+        report.put("maxInFlight", maxInFlight);
+        report.putAll(total);
 
-    @Scheduled(fixedDelayString = "${load.simulator.delay.min:5000}", timeUnit = TimeUnit.MILLISECONDS)
-    public void simulateLoad() {
         try {
-            // Add random delay between min and max
-            int minDelay = Integer.parseInt(System.getProperty("load.simulator.delay.min", "5000"));
-            int maxDelay = Integer.parseInt(System.getProperty("load.simulator.delay.max", "7000"));
-            int additionalDelay = random.nextInt(maxDelay - minDelay);
-            Thread.sleep(additionalDelay);
-
-            // Generate random billing request
-            String customerId = "CUST-" + (10000 + random.nextInt(90000));
-            String productId = "PROD-" + (100 + random.nextInt(900));
-            BigDecimal amount = BigDecimal.valueOf(10 + random.nextInt(990), 2); // Random amount between 10.00 and 999.99
-            String currency = "USD";
-
-            Map<String, Object> request = new HashMap<>();
-            request.put("customerId", customerId);
-            request.put("productId", productId);
-            request.put("amount", amount);
-            request.put("currency", currency);
-
-            log.info("Sending billing request for customer: {}, product: {}, amount: {}", 
-                    customerId, productId, amount);
-
-            ResponseEntity<Map> response = restTemplate.postForEntity(
-                    billingServiceUrl + "/api/billing", 
-                    request, 
-                    Map.class);
-
-            log.info("Received response with status: {}, transaction ID: {}", 
-                    response.getStatusCode(), response.getBody() != null ? response.getBody().get("transactionId") : "N/A");
-        } catch (Exception e) {
-            log.error("Error simulating load: {}", e.getMessage(), e);
+            String json = objectMapper.writer().with(SerializationFeature.INDENT_OUTPUT).writeValueAsString(report);
+            if (reportFile != null && !reportFile.isBlank()) {
+                Files.writeString(Path.of(reportFile), json);
+                log.info("Load report written to {}", reportFile);
+            }
+            log.info("Load report:\n{}", json);
+        } catch (IOException e) {
+            log.error("Could not write load report: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Shuts the application down after a run that ended on its own, so the simulator can
+     * run as a Kubernetes Job.
+     */
+    private void exitIfRequested() {
+        if (exitWhenDone) {
+            System.exit(SpringApplication.exit(context));
         }
     }
+
+    @PreDestroy
+    public void stop() {
+        if (generator != null) {
+            finish();
+        }
+    }
+
+    private record Pending(long intendedNanos, byte[] body, LoadStatistics step) {
+    }
 }
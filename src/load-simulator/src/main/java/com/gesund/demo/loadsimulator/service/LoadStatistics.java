@@ -0,0 +1,105 @@
+package com.gesund.demo.loadsimulator.service;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency and outcome counters for one load run.
+ *
+ * Two distributions are kept. Response time is measured from the moment a request was
+ * scheduled to be sent, so time spent waiting for a free sender counts against the
+ * system under test (coordinated-omission correction). Service time is measured from
+ * the moment the request actually went out, and is only there for comparison.
+ */
+public class LoadStatistics {
+
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(10);
+    private static final int SIGNIFICANT_DIGITS = 3;
+
+    private final Recorder responseTime = new Recorder(HIGHEST_TRACKABLE_MICROS, SIGNIFICANT_DIGITS);
+    private final Recorder serviceTime = new Recorder(HIGHEST_TRACKABLE_MICROS, SIGNIFICANT_DIGITS);
+    private final Histogram responseTimeTotal = new Histogram(HIGHEST_TRACKABLE_MICROS, SIGNIFICANT_DIGITS);
+    private final Histogram serviceTimeTotal = new Histogram(HIGHEST_TRACKABLE_MICROS, SIGNIFICANT_DIGITS);
+    private Histogram responseTimeInterval;
+    private Histogram serviceTimeInterval;
+
+    private final LongAdder succeeded = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    /**
+     * Records a completed request.
+     *
+     * @param intendedNanos System.nanoTime() at which the request was scheduled
+     * @param sentNanos System.nanoTime() at which the request was actually sent
+     * @param completedNanos System.nanoTime() at which the response (or error) arrived
+     * @param success Whether the request succeeded
+     */
+    public void record(long intendedNanos, long sentNanos, long completedNanos, boolean success) {
+        responseTime.recordValue(toMicros(completedNanos - intendedNanos));
+        serviceTime.recordValue(toMicros(completedNanos - sentNanos));
+        (success ? succeeded : failed).increment();
+    }
+
+    /**
+     * Counts a request that was never sent, because the backlog was full or the run ended.
+     */
+    public void recordDropped() {
+        dropped.increment();
+    }
+
+    public long getCompleted() {
+        return succeeded.sum() + failed.sum();
+    }
+
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * Returns the response-time percentiles since the previous call and folds them into
+     * the totals.
+     */
+    public synchronized Map<String, Object> interval() {
+        responseTimeInterval = responseTime.getIntervalHistogram(responseTimeInterval);
+        serviceTimeInterval = serviceTime.getIntervalHistogram(serviceTimeInterval);
+        responseTimeTotal.add(responseTimeInterval);
+        serviceTimeTotal.add(serviceTimeInterval);
+        return percentiles(responseTimeInterval);
+    }
+
+    /**
+     * Returns the outcome counters and both latency distributions for the whole run.
+     */
+    public synchronized Map<String, Object> total() {
+        interval();
+        Map<String, Object> total = new LinkedHashMap<>();
+        total.put("succeeded", succeeded.sum());
+        total.put("failed", failed.sum());
+        total.put("dropped", dropped.sum());
+        total.put("responseTimeMicros", percentiles(responseTimeTotal));
+        total.put("serviceTimeMicros", percentiles(serviceTimeTotal));
+        return total;
+    }
+
+    private static Map<String, Object> percentiles(Histogram histogram) {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("count", histogram.getTotalCount());
+        stats.put("mean", Math.round(histogram.getMean()));
+        stats.put("p50", histogram.getValueAtPercentile(50));
+        stats.put("p90", histogram.getValueAtPercentile(90));
+        stats.put("p99", histogram.getValueAtPercentile(99));
+        stats.put("p999", histogram.getValueAtPercentile(99.9));
+        stats.put("max", histogram.getMaxValue());
+        return stats;
+    }
+
+    private static long toMicros(long nanos) {
+        return Math.min(Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos)), HIGHEST_TRACKABLE_MICROS);
+    }
+}
@@ -0,0 +1,57 @@
+package com.gesund.demo.loadsimulator.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gesund.demo.loadsimulator.util.ContextPropagationUtil;
+import com.gesund.demo.loadsimulator.util.PipelineTimestamps;
+import org.springframework.amqp.core.MessagePostProcessor;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Publishes billing messages to the billing queue on one channel per batch, then waits
+ * for the broker's publisher confirms for the whole batch.
+ */
+@Component
+@ConditionalOnProperty(name = "load.simulator.client", havingValue = "rabbitmq")
+public class RabbitMQBillingClient extends BrokerBillingClient {
+
+    private final RabbitTemplate rabbitTemplate;
+    private final String billingQueue;
+    private final long confirmTimeoutMs;
+
+    public RabbitMQBillingClient(
+            ObjectMapper objectMapper,
+            RabbitTemplate rabbitTemplate,
+            @Value("${rabbitmq.queue.billing}") String billingQueue,
+            @Value("${load.simulator.broker.batch-size:100}") int batchSize,
+            @Value("${load.simulator.broker.linger-ms:5}") long lingerMs,
+            @Value("${load.simulator.broker.publishers:4}") int publishers,
+            @Value("${load.simulator.broker.confirm-timeout-ms:30000}") long confirmTimeoutMs) {
+        super(objectMapper, batchSize, lingerMs, publishers);
+        this.rabbitTemplate = rabbitTemplate;
+        this.billingQueue = billingQueue;
+        this.confirmTimeoutMs = confirmTimeoutMs;
+        start(billingQueue);
+    }
+
+    @Override
+    protected void publish(List<Outgoing> batch) {
+        MessagePostProcessor contextInjector = ContextPropagationUtil.createAmqpContextInjector();
+
+        rabbitTemplate.invoke(operations -> {
+            for (Outgoing outgoing : batch) {
+                MessagePostProcessor stamper = PipelineTimestamps.amqpStamper(outgoing.timestamps());
+                traced(outgoing, billingQueue, () -> operations.convertAndSend(billingQueue, outgoing.message(),
+                        message -> stamper.postProcessMessage(contextInjector.postProcessMessage(message))));
+            }
+            operations.waitForConfirmsOrDie(confirmTimeoutMs);
+            return null;
+        });
+
+        batch.forEach(outgoing -> outgoing.future().complete(null));
+    }
+}
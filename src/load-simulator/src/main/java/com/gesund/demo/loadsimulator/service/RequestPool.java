@@ -0,0 +1,99 @@
+package com.gesund.demo.loadsimulator.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gesund.demo.loadsimulator.config.WorkloadProperties;
+import com.gesund.demo.loadsimulator.config.WorkloadProperties.AmountDistribution;
+import com.gesund.demo.loadsimulator.model.BillingRequest;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Pre-serialized billing requests sampled from the workload's key, currency and amount
+ * distributions.
+ *
+ * The pool is built once at startup, so picking the next request body costs one random
+ * index and no allocation. With a pool much larger than the number of hot keys the
+ * sampled distribution stays close to the configured one.
+ */
+@Slf4j
+@Component
+public class RequestPool {
+
+    private final byte[][] bodies;
+
+    public RequestPool(WorkloadProperties workload, ObjectMapper objectMapper) throws JsonProcessingException {
+        Random random = workload.getSeed() != null ? new Random(workload.getSeed()) : new Random();
+        KeySampler customers = new KeySampler(workload.getCustomers());
+        KeySampler products = new KeySampler(workload.getProducts());
+        String[] currencies = workload.getCurrencies().keySet().toArray(new String[0]);
+        double[] currencyCdf = cumulativeWeights(workload.getCurrencies());
+
+        bodies = new byte[workload.getPoolSize()][];
+        for (int i = 0; i < bodies.length; i++) {
+            BillingRequest request = BillingRequest.builder()
+                    .customerId(customers.key(customers.sample(random)))
+                    .productId(products.key(products.sample(random)))
+                    .amount(sampleAmount(workload.getAmount(), random))
+                    .currency(currencies[pick(currencyCdf, random.nextDouble())])
+                    .build();
+            bodies[i] = objectMapper.writeValueAsBytes(request);
+        }
+
+        log.info("Request pool ready - {} requests, customers: {}, products: {}, currencies: {}",
+                bodies.length, workload.getCustomers().getType(), workload.getProducts().getType(),
+                workload.getCurrencies());
+    }
+
+    /**
+     * Returns the JSON body of a random pooled request.
+     */
+    public byte[] next() {
+        return bodies[ThreadLocalRandom.current().nextInt(bodies.length)];
+    }
+
+    private static BigDecimal sampleAmount(AmountDistribution amount, Random random) {
+        double min = amount.getMin().doubleValue();
+        double max = amount.getMax().doubleValue();
+        double value;
+        if (amount.getType() == AmountDistribution.Type.LOGNORMAL) {
+            value = amount.getMedian().doubleValue() * Math.exp(amount.getSigma() * random.nextGaussian());
+            value = Math.min(Math.max(value, min), max);
+        } else {
+            value = min + random.nextDouble() * (max - min);
+        }
+        return BigDecimal.valueOf(value).setScale(2, RoundingMode.HALF_UP);
+    }
+
+    private static double[] cumulativeWeights(Map<String, Double> weights) {
+        if (weights.isEmpty()) {
+            throw new IllegalArgumentException("load.workload.currencies must not be empty");
+        }
+        double[] cdf = new double[weights.size()];
+        double sum = 0;
+        int i = 0;
+        for (double weight : weights.values()) {
+            sum += weight;
+            cdf[i++] = sum;
+        }
+        for (i = 0; i < cdf.length; i++) {
+            cdf[i] /= sum;
+        }
+        return cdf;
+    }
+
+    private static int pick(double[] cdf, double value) {
+        for (int i = 0; i < cdf.length - 1; i++) {
+            if (value < cdf[i]) {
+                return i;
+            }
+        }
+        return cdf.length - 1;
+    }
+}
@@ -0,0 +1,59 @@
+package com.gesund.demo.loadsimulator.service;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Blocking billing client on {@link RestTemplate}.
+ *
+ * Every request occupies one sender thread until the response arrives, so the pool is
+ * sized to the generator's in-flight limit.
+ */
+@Component
+@ConditionalOnProperty(name = "load.simulator.client", havingValue = "blocking")
+public class RestTemplateBillingClient implements BillingClient {
+
+    private final RestTemplate restTemplate;
+    private final String billingUrl;
+    private final ExecutorService senders;
+    private final HttpHeaders headers = new HttpHeaders();
+
+    public RestTemplateBillingClient(
+            RestTemplate restTemplate,
+            @Value("${billing.service.url}") String billingServiceUrl,
+            @Value("${load.simulator.max-in-flight:64}") int maxInFlight) {
+        this.restTemplate = restTemplate;
+        this.billingUrl = billingServiceUrl + "/api/billing";
+        this.headers.setContentType(MediaType.APPLICATION_JSON);
+
+        AtomicInteger senderCount = new AtomicInteger();
+        this.senders = Executors.newFixedThreadPool(maxInFlight, r -> {
+            Thread thread = new Thread(r, "load-sender-" + senderCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> post(byte[] body) {
+        // Non-2xx responses surface as HttpStatusCodeException
+        return CompletableFuture.runAsync(
+                () -> restTemplate.postForEntity(billingUrl, new HttpEntity<>(body, headers), Void.class), senders);
+    }
+
+    @PreDestroy
+    public void close() {
+        senders.shutdownNow();
+    }
+}
@@ -0,0 +1,95 @@
+package com.gesund.demo.loadsimulator.util;
+
+import io.opentelemetry.api.OpenTelemetry;
+import io.opentelemetry.api.GlobalOpenTelemetry;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.context.propagation.TextMapSetter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.Headers;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.jms.core.MessagePostProcessor;
+
+import jakarta.jms.JMSException;
+import jakarta.jms.Message;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Utility class for propagating OpenTelemetry context across messaging systems.
+ *
+ * The getters and setters are stateless singletons that read and write the message
+ * headers or properties in place, so propagation allocates nothing beyond what the
+ * propagator itself and the broker client (Kafka header bytes) need.
+ */
+@Slf4j
+public class ContextPropagationUtil {
+
+    private static final OpenTelemetry openTelemetry = GlobalOpenTelemetry.get();
+
+    public static final TextMapSetter<Headers> KAFKA_SETTER =
+            (carrier, key, value) -> carrier.add(key, value.getBytes(StandardCharsets.UTF_8));
+
+    public static final TextMapSetter<Message> JMS_SETTER = (carrier, key, value) -> {
+        try {
+            carrier.setStringProperty(key, value);
+        } catch (JMSException e) {
+            log.error("Failed to inject context into JMS message: {}", e.getMessage(), e);
+        }
+    };
+
+    public static final TextMapSetter<MessageProperties> AMQP_SETTER = MessageProperties::setHeader;
+
+    /**
+     * Injects the current OpenTelemetry context into Kafka record headers.
+     *
+     * @param record The Kafka producer record to inject context into
+     */
+    public static void injectContextToKafkaHeaders(ProducerRecord<String, ?> record) {
+        openTelemetry.getPropagators().getTextMapPropagator().inject(Context.current(), record.headers(), KAFKA_SETTER);
+        log.debug("Injected OpenTelemetry context into Kafka headers");
+    }
+
+    /**
+     * Creates a JMS MessagePostProcessor that injects the current OpenTelemetry context into JMS message properties.
+     *
+     * @return A MessagePostProcessor that injects context
+     */
+    public static MessagePostProcessor createContextInjector() {
+        return message -> {
+            injectContextToJmsMessage(message);
+            return message;
+        };
+    }
+
+    /**
+     * Injects the current OpenTelemetry context into JMS message properties.
+     *
+     * @param message The JMS message to inject context into
+     */
+    public static void injectContextToJmsMessage(Message message) {
+        openTelemetry.getPropagators().getTextMapPropagator().inject(Context.current(), message, JMS_SETTER);
+        log.debug("Injected OpenTelemetry context into JMS message properties");
+    }
+
+    /**
+     * Creates an AMQP MessagePostProcessor that injects the current OpenTelemetry context into the message headers.
+     *
+     * @return A MessagePostProcessor that injects context
+     */
+    public static org.springframework.amqp.core.MessagePostProcessor createAmqpContextInjector() {
+        return message -> {
+            injectContextToAmqpMessage(message.getMessageProperties());
+            return message;
+        };
+    }
+
+    /**
+     * Injects the current OpenTelemetry context into AMQP message headers.
+     *
+     * @param properties The properties of the message to inject context into
+     */
+    public static void injectContextToAmqpMessage(MessageProperties properties) {
+        openTelemetry.getPropagators().getTextMapPropagator().inject(Context.current(), properties, AMQP_SETTER);
+        log.debug("Injected OpenTelemetry context into AMQP message headers");
+    }
+}
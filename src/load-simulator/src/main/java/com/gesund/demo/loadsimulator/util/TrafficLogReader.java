@@ -0,0 +1,160 @@
+package com.gesund.demo.loadsimulator.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Reads traffic logs captured by billing-service's TrafficCaptureFilter.
+ *
+ * Layout: a 16-byte header (magic "GSTL", version, chunk size, reserved) followed by
+ * records of {@code int length, long arrival epoch micros, byte[length] body}. Records
+ * never straddle a chunk boundary; a length of -1 skips to the next chunk and a length
+ * of 0 (or the end of the file) ends the log. The file is mapped read-only one chunk at
+ * a time.
+ *
+ * billing-service writes a new file on every start, so a capture can span several files.
+ * They are read one after the other as a single log; the time between two files, when
+ * billing-service was not running, is left out by shifting the arrival times of the later
+ * file to follow on from the last record of the earlier one.
+ */
+public class TrafficLogReader implements Closeable {
+
+    public static final int MAGIC = 0x4753544C;
+    public static final int VERSION = 1;
+    public static final int HEADER_BYTES = 16;
+    public static final int RECORD_HEADER_BYTES = Integer.BYTES + Long.BYTES;
+    public static final int SKIP_TO_NEXT_CHUNK = -1;
+
+    private final List<Path> files;
+    private int fileIndex;
+    private FileChannel channel;
+    private long size;
+    private int chunkBytes;
+    private MappedByteBuffer chunk;
+    private long chunkStart;
+    private long shiftMicros;
+    private boolean fileStarted;
+    private long arrivalMicros;
+    private byte[] body;
+
+    public TrafficLogReader(Path file) throws IOException {
+        this(List.of(file));
+    }
+
+    public TrafficLogReader(List<Path> files) throws IOException {
+        if (files.isEmpty()) {
+            throw new IOException("No traffic log to read");
+        }
+        this.files = List.copyOf(files);
+        open(this.files.get(0));
+    }
+
+    /**
+     * Resolves a comma-separated list of files and directories into the logs to read, in
+     * the order given. A directory stands for the regular files in it, oldest first by
+     * modification time, which is the order billing-service wrote them.
+     */
+    public static List<Path> resolve(String spec) throws IOException {
+        List<Path> files = new ArrayList<>();
+        for (String entry : spec.split(",")) {
+            if (entry.isBlank()) {
+                continue;
+            }
+            Path path = Path.of(entry.trim());
+            if (!Files.isDirectory(path)) {
+                files.add(path);
+                continue;
+            }
+            List<Path> logs = new ArrayList<>();
+            try (Stream<Path> children = Files.list(path)) {
+                children.filter(Files::isRegularFile).forEach(logs::add);
+            }
+            List<Map.Entry<Path, Long>> dated = new ArrayList<>();
+            for (Path log : logs) {
+                dated.add(Map.entry(log, Files.getLastModifiedTime(log).toMillis()));
+            }
+            dated.sort(Map.Entry.<Path, Long>comparingByValue().thenComparing(Map.Entry.comparingByKey()));
+            dated.forEach(log -> files.add(log.getKey()));
+        }
+        return files;
+    }
+
+    /**
+     * Advances to the next record.
+     *
+     * @return false at the end of the last log
+     */
+    public boolean next() throws IOException {
+        while (true) {
+            int length = chunk.remaining() >= RECORD_HEADER_BYTES ? chunk.getInt() : SKIP_TO_NEXT_CHUNK;
+            if (length == SKIP_TO_NEXT_CHUNK && chunkStart + chunkBytes < size) {
+                chunkStart += chunkBytes;
+                chunk = mapChunk(chunkStart);
+                continue;
+            }
+            if (length == SKIP_TO_NEXT_CHUNK || length <= 0 || length > chunk.remaining() - Long.BYTES) {
+                if (fileIndex + 1 >= files.size()) {
+                    return false;
+                }
+                channel.close();
+                open(files.get(++fileIndex));
+                continue;
+            }
+            long recordedMicros = chunk.getLong();
+            if (!fileStarted) {
+                // Later files continue right after the last record read so far
+                shiftMicros = body == null ? 0 : arrivalMicros - recordedMicros;
+                fileStarted = true;
+            }
+            arrivalMicros = recordedMicros + shiftMicros;
+            body = new byte[length];
+            chunk.get(body);
+            return true;
+        }
+    }
+
+    public long getArrivalMicros() {
+        return arrivalMicros;
+    }
+
+    public byte[] getBody() {
+        return body;
+    }
+
+    private void open(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        size = channel.size();
+        if (size < HEADER_BYTES) {
+            channel.close();
+            throw new IOException(file + " is not a traffic log");
+        }
+        MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+        if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+            channel.close();
+            throw new IOException(file + " is not a version " + VERSION + " traffic log");
+        }
+        chunkBytes = header.getInt();
+        chunkStart = 0;
+        fileStarted = false;
+        chunk = mapChunk(0);
+        chunk.position(HEADER_BYTES);
+    }
+
+    private MappedByteBuffer mapChunk(long start) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(chunkBytes, size - start));
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
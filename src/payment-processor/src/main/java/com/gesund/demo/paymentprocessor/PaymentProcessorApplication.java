@@ -2,8 +2,10 @@ package com.gesund.demo.paymentprocessor;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class PaymentProcessorApplication {
 
     public static void main(String[] args) {
@@ -3,6 +3,7 @@ package com.gesund.demo.paymentprocessor.config;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import jakarta.jms.ConnectionFactory;
+import com.gesund.demo.paymentprocessor.util.QueueBacklog;
 import org.apache.activemq.ActiveMQConnectionFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
@@ -31,6 +32,15 @@ public class ActiveMQConfig {
     @Value("${spring.activemq.password:admin}")
     private String password;
 
+    @Value("${activemq.queue.billing}")
+    private String billingQueue;
+
+    @Value("${metrics.backlog.browse-limit:10000}")
+    private int backlogBrowseLimit;
+
+    @Value("${metrics.backlog.refresh-ms:15000}")
+    private long backlogRefreshMs;
+
     @Bean
     public ConnectionFactory connectionFactory() {
         ActiveMQConnectionFactory connectionFactory = new ActiveMQConnectionFactory();
@@ -77,4 +87,9 @@ public class ActiveMQConfig {
         factory.setPubSubDomain(false); // false for queue, true for topic
         return factory;
     }
+
+    @Bean
+    public QueueBacklog.BrowsedBacklog billingQueueBacklog() {
+        return QueueBacklog.jms(connectionFactory(), billingQueue, backlogBrowseLimit, backlogRefreshMs);
+    }
 }
@@ -0,0 +1,64 @@
+package com.gesund.demo.paymentprocessor.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gesund.demo.paymentprocessor.util.InMemoryBroker;
+import com.gesund.demo.paymentprocessor.util.QueueBacklog;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+@Configuration
+@ConditionalOnProperty(name = "messaging.system", havingValue = "inmemory")
+public class InMemoryConfig {
+
+    @Value("${inmemory.queue.billing}")
+    private String billingQueue;
+
+    @Value("${inmemory.capacity}")
+    private int capacity;
+
+    @Value("${inmemory.consumers}")
+    private int consumers;
+
+    @Value("${inmemory.batch-size}")
+    private int batchSize;
+
+    @Value("${inmemory.send-timeout-ms}")
+    private long sendTimeoutMs;
+
+    @Value("${inmemory.max-deliveries}")
+    private int maxDeliveries;
+
+    /**
+     * The queues of this service alone. Running the services in one JVM means registering
+     * a shared registry under this name before the context is refreshed.
+     */
+    @Bean(InMemoryBroker.REGISTRY_BEAN)
+    @ConditionalOnMissingBean(name = InMemoryBroker.REGISTRY_BEAN)
+    public ConcurrentMap<String, Queue<Map.Entry<Map<String, String>, String>>> inMemoryQueues() {
+        return new ConcurrentHashMap<>();
+    }
+
+    @Bean
+    public InMemoryBroker inMemoryBroker(
+            @Qualifier(InMemoryBroker.REGISTRY_BEAN) ConcurrentMap<String, Queue<Map.Entry<Map<String, String>, String>>> queues,
+            ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        return new InMemoryBroker(queues, objectMapper, capacity, consumers, batchSize, sendTimeoutMs, maxDeliveries,
+                meterRegistry);
+    }
+
+    @Bean
+    public MeterBinder billingQueueBacklog(InMemoryBroker inMemoryBroker) {
+        return QueueBacklog.inMemory(inMemoryBroker.queue(billingQueue), billingQueue);
+    }
+}
@@ -2,6 +2,8 @@ package com.gesund.demo.paymentprocessor.config;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.gesund.demo.paymentprocessor.util.QueueBacklog;
+import io.micrometer.core.instrument.binder.MeterBinder;
 import org.springframework.amqp.core.Queue;
 import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
@@ -70,4 +72,9 @@ public class RabbitMQConfig {
         template.setMessageConverter(jsonMessageConverter());
         return template;
     }
+
+    @Bean
+    public MeterBinder billingQueueBacklog(RabbitTemplate rabbitTemplate) {
+        return QueueBacklog.amqp(rabbitTemplate, billingQueue);
+    }
 }
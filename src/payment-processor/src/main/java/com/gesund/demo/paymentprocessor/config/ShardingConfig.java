@@ -0,0 +1,112 @@
+package com.gesund.demo.paymentprocessor.config;
+
+import com.gesund.demo.paymentprocessor.util.CustomerShards;
+import com.gesund.demo.paymentprocessor.util.ShardRoutingDataSource;
+import com.gesund.demo.paymentprocessor.util.ShardedRepositoryInterceptor;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.flyway.FlywayMigrationStrategy;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.data.repository.core.support.RepositoryFactoryBeanSupport;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.Arrays;
+import java.util.List;
+
+@Configuration
+@Slf4j
+public class ShardingConfig {
+
+    @Value("${sharding.enabled:false}")
+    private boolean enabled;
+
+    @Value("${sharding.shard-urls:}")
+    private String shardUrls;
+
+    @Value("${sharding.pool-size:10}")
+    private int poolSize;
+
+    @Value("${sharding.virtual-nodes:256}")
+    private int virtualNodes;
+
+    @Value("${spring.datasource.username}")
+    private String username;
+
+    @Value("${spring.datasource.password}")
+    private String password;
+
+    @Value("${spring.application.name}")
+    private String applicationName;
+
+    @Bean(destroyMethod = "close")
+    public CustomerShards customerShards(MeterRegistry meterRegistry) {
+        if (!enabled) {
+            return new CustomerShards();
+        }
+        List<String> urls = Arrays.stream(shardUrls.split(",")).map(String::trim).filter(url -> !url.isEmpty()).toList();
+        CustomerShards customerShards = new CustomerShards(urls, username, password, poolSize, virtualNodes,
+                applicationName, meterRegistry);
+        log.info("Customer sharding over {} shards", customerShards.getShards().size());
+        return customerShards;
+    }
+
+    // Replica routing decides per transaction and sharding per call; stacking both would
+    // send shard-1 reads to replicas of shard-0, so the combination is refused.
+    @Bean
+    @ConditionalOnProperty(name = "sharding.enabled", havingValue = "true")
+    public static ShardRoutingPostProcessor shardRoutingPostProcessor(
+            ObjectProvider<CustomerShards> customerShards,
+            @Value("${datasource.replica.enabled:false}") boolean replicasEnabled) {
+        if (replicasEnabled) {
+            throw new IllegalStateException("sharding.enabled and datasource.replica.enabled cannot be combined");
+        }
+        return new ShardRoutingPostProcessor(customerShards);
+    }
+
+    // Boot migrates through the routed data source, so running the migration once per
+    // selected shard brings every shard to the same schema version before startup completes.
+    @Bean
+    @ConditionalOnProperty(name = "sharding.enabled", havingValue = "true")
+    public FlywayMigrationStrategy shardedFlywayMigrationStrategy(CustomerShards customerShards) {
+        return flyway -> customerShards.forEachShard(shard -> {
+            log.info("Migrating {}", shard);
+            flyway.migrate();
+        });
+    }
+
+    // Ordered ahead of the SQL timing proxy, which then times statements on every shard.
+    // Repositories get a ShardedRepositoryInterceptor before they are created.
+    record ShardRoutingPostProcessor(ObjectProvider<CustomerShards> customerShards) implements BeanPostProcessor, Ordered {
+
+        @Override
+        public Object postProcessBeforeInitialization(Object bean, String beanName) {
+            if (bean instanceof RepositoryFactoryBeanSupport<?, ?, ?> repositoryFactory) {
+                repositoryFactory.addRepositoryFactoryCustomizer(factory -> factory.addRepositoryProxyPostProcessor(
+                        (proxy, repository) -> proxy.addAdvice(0, new ShardedRepositoryInterceptor(
+                                customerShards.getObject(), repository.getRepositoryInterface()))));
+            }
+            return bean;
+        }
+
+        @Override
+        public Object postProcessAfterInitialization(Object bean, String beanName) {
+            if (bean instanceof DataSource firstShard && !(bean instanceof LazyConnectionDataSourceProxy)) {
+                log.info("Routing data source '{}' by customer shard", beanName);
+                return new LazyConnectionDataSourceProxy(new ShardRoutingDataSource(firstShard, customerShards.getObject()));
+            }
+            return bean;
+        }
+
+        @Override
+        public int getOrder() {
+            return Ordered.HIGHEST_PRECEDENCE;
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package com.gesund.demo.paymentprocessor.repository;
+
+import com.gesund.demo.paymentprocessor.util.CustomerShards;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.flywaydb.core.api.callback.Callback;
+import org.flywaydb.core.api.callback.Context;
+import org.flywaydb.core.api.callback.Event;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the daily range partitions of the payment table in shape: partitions for the
+ * next few days are created ahead of time, and partitions older than the retention
+ * window are dropped. Dropping a partition is instant, unlike a DELETE over the same rows.
+ * Every customer shard is maintained the same way.
+ *
+ * The partitions are first created from a Flyway afterMigrate callback, which runs on each
+ * shard during startup, before any listener or Tomcat takes traffic. Rows that still land
+ * in the default partition (a clock change, a day the cron missed) are moved into their
+ * day partition when it is created, and expired ones are deleted with the partitions; the
+ * partition.default.rows gauge shows what is left there.
+ */
+@Slf4j
+@Component
+public class PartitionMaintenance implements Callback {
+
+    private static final String TABLE = "payment";
+    private static final String PARTITION_PREFIX = TABLE + "_p";
+    private static final String DEFAULT_PARTITION = TABLE + "_default";
+    private static final DateTimeFormatter SUFFIX_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final CustomerShards customerShards;
+    private final AtomicLong defaultPartitionRows = new AtomicLong();
+
+    @Value("${partitioning.enabled:true}")
+    private boolean enabled;
+
+    @Value("${partitioning.premake-days:7}")
+    private int premakeDays;
+
+    @Value("${partitioning.retention-days:90}")
+    private int retentionDays;
+
+    @Value("${partitioning.lock-timeout-ms:500}")
+    private long lockTimeoutMs;
+
+    // A DataSource rather than the JdbcTemplate bean, which waits for Flyway and so for this callback
+    public PartitionMaintenance(DataSource dataSource, CustomerShards customerShards, MeterRegistry meterRegistry) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.customerShards = customerShards;
+        Gauge.builder("partition.default.rows", defaultPartitionRows, AtomicLong::get)
+                .description("Rows in the default partition, outside every daily partition")
+                .tag("table", TABLE)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public boolean supports(Event event, Context context) {
+        return enabled && event == Event.AFTER_MIGRATE;
+    }
+
+    @Override
+    public boolean canHandleInTransaction(Event event, Context context) {
+        return false;
+    }
+
+    @Override
+    public void handle(Event event, Context context) {
+        // Flyway's own connection, which belongs to the shard being migrated
+        createPartitions(new JdbcTemplate(new SingleConnectionDataSource(context.getConnection(), true)),
+                LocalDate.now());
+    }
+
+    @Override
+    public String getCallbackName() {
+        return getClass().getSimpleName();
+    }
+
+    @Scheduled(cron = "${partitioning.cron:0 15 * * * *}")
+    public void maintain() {
+        if (!enabled) {
+            return;
+        }
+        LocalDate today = LocalDate.now();
+        long[] defaultRows = new long[1];
+        customerShards.forEachShard(shard -> {
+            createPartitions(jdbcTemplate, today);
+            dropExpiredPartitions(today);
+            defaultRows[0] += trimDefaultPartition(today);
+        });
+        defaultPartitionRows.set(defaultRows[0]);
+    }
+
+    private void createPartitions(JdbcTemplate jdbc, LocalDate today) {
+        for (int day = 0; day <= premakeDays; day++) {
+            LocalDate from = today.plusDays(day);
+            String partition = PARTITION_PREFIX + SUFFIX_FORMAT.format(from);
+            try {
+                if (Boolean.TRUE.equals(jdbc.queryForObject("SELECT to_regclass(?) IS NOT NULL", Boolean.class, partition))) {
+                    continue;
+                }
+                if (Boolean.TRUE.equals(jdbc.queryForObject("SELECT EXISTS (SELECT 1 FROM " + DEFAULT_PARTITION
+                        + " WHERE created_at >= ? AND created_at < ?)", Boolean.class,
+                        from.atStartOfDay(), from.plusDays(1).atStartOfDay()))) {
+                    createFromDefault(jdbc, partition, from);
+                } else {
+                    jdbc.execute("CREATE TABLE IF NOT EXISTS " + partition + " PARTITION OF " + TABLE
+                            + " FOR VALUES FROM ('" + from + "') TO ('" + from.plusDays(1) + "')");
+                }
+            } catch (DataAccessException e) {
+                log.error("Could not create partition {}: {}", partition, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Postgres refuses a partition for a range the default partition holds rows of, so the
+     * default partition is detached, the day's rows moved out of it and it is attached again,
+     * all in one transaction. Writers wait for the move instead of failing.
+     */
+    private void createFromDefault(JdbcTemplate jdbc, String partition, LocalDate from) {
+        String range = "created_at >= '" + from + "' AND created_at < '" + from.plusDays(1) + "'";
+        jdbc.execute("DO $$ BEGIN "
+                + "ALTER TABLE " + TABLE + " DETACH PARTITION " + DEFAULT_PARTITION + "; "
+                + "CREATE TABLE " + partition + " PARTITION OF " + TABLE
+                + " FOR VALUES FROM ('" + from + "') TO ('" + from.plusDays(1) + "'); "
+                + "INSERT INTO " + partition + " SELECT * FROM " + DEFAULT_PARTITION + " WHERE " + range + "; "
+                + "DELETE FROM " + DEFAULT_PARTITION + " WHERE " + range + "; "
+                + "ALTER TABLE " + TABLE + " ATTACH PARTITION " + DEFAULT_PARTITION + " DEFAULT; "
+                + "END $$");
+        log.warn("Created partition {} from rows that had landed in {}", partition, DEFAULT_PARTITION);
+    }
+
+    /**
+     * Detaches expired partitions before dropping them. DETACH ... CONCURRENTLY is not
+     * allowed while the table has a default partition, so the detach takes the parent's
+     * exclusive lock, but only for the catalog update and with a lock timeout, so writers
+     * queue behind it at most that long; a partition that times out is retried next run.
+     * The detached table is then dropped without touching the parent.
+     */
+    private void dropExpiredPartitions(LocalDate today) {
+        LocalDate cutoff = today.minusDays(retentionDays);
+        List<String> partitions = jdbcTemplate.queryForList(
+                "SELECT c.relname FROM pg_inherits i "
+                        + "JOIN pg_class c ON c.oid = i.inhrelid "
+                        + "JOIN pg_class p ON p.oid = i.inhparent "
+                        + "WHERE p.relname = ?",
+                String.class, TABLE);
+
+        for (String partition : partitions) {
+            if (!partition.startsWith(PARTITION_PREFIX)) {
+                continue;
+            }
+            LocalDate day;
+            try {
+                day = LocalDate.parse(partition.substring(PARTITION_PREFIX.length()), SUFFIX_FORMAT);
+            } catch (DateTimeParseException e) {
+                continue;
+            }
+            if (day.isBefore(cutoff)) {
+                try {
+                    jdbcTemplate.execute("DO $$ BEGIN "
+                            + "PERFORM set_config('lock_timeout', '" + lockTimeoutMs + "ms', true); "
+                            + "ALTER TABLE " + TABLE + " DETACH PARTITION " + partition + "; "
+                            + "END $$");
+                    jdbcTemplate.execute("DROP TABLE IF EXISTS " + partition);
+                    log.info("Dropped expired partition {} (retention {} days)", partition, retentionDays);
+                } catch (DataAccessException e) {
+                    log.error("Could not drop partition {}: {}", partition, e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Applies the retention to the default partition, which dropping partitions never
+     * reaches, and reports how many rows remain in it.
+     */
+    private long trimDefaultPartition(LocalDate today) {
+        try {
+            int deleted = jdbcTemplate.update("DELETE FROM " + DEFAULT_PARTITION + " WHERE created_at < ?",
+                    today.minusDays(retentionDays).atStartOfDay());
+            if (deleted > 0) {
+                log.info("Deleted {} expired rows from {}", deleted, DEFAULT_PARTITION);
+            }
+            Long remaining = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + DEFAULT_PARTITION, Long.class);
+            if (remaining != null && remaining > 0) {
+                log.warn("{} rows are in {}, outside the daily partitions", remaining, DEFAULT_PARTITION);
+            }
+            return remaining != null ? remaining : 0;
+        } catch (DataAccessException e) {
+            log.error("Could not trim {}: {}", DEFAULT_PARTITION, e.getMessage());
+            return 0;
+        }
+    }
+}
@@ -3,12 +3,16 @@ package com.gesund.demo.paymentprocessor.repository;
 import com.gesund.demo.paymentprocessor.model.Payment;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.Optional;
 import java.util.UUID;
 
 @Repository
 public interface PaymentRepository extends JpaRepository<Payment, Long> {
+    @Transactional(readOnly = true)
     Optional<Payment> findByTransactionId(UUID transactionId);
+
+    @Transactional(readOnly = true)
     Optional<Payment> findByPaymentId(UUID paymentId);
 }
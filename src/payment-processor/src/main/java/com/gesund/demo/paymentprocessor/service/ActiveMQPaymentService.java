@@ -4,7 +4,12 @@ import com.gesund.demo.paymentprocessor.model.BillingMessage;
 import com.gesund.demo.paymentprocessor.model.Payment;
 import com.gesund.demo.paymentprocessor.model.PaymentMessage;
 import com.gesund.demo.paymentprocessor.repository.PaymentRepository;
+import com.gesund.demo.paymentprocessor.util.BrokerSendEvent;
 import com.gesund.demo.paymentprocessor.util.ContextPropagationUtil;
+import com.gesund.demo.paymentprocessor.util.CustomerShards;
+import com.gesund.demo.paymentprocessor.util.PaymentMetrics;
+import com.gesund.demo.paymentprocessor.util.PipelineTimestamps;
+import com.gesund.demo.paymentprocessor.util.TracingHelper;
 import io.opentelemetry.api.GlobalOpenTelemetry;
 import io.opentelemetry.api.trace.Span;
 import io.opentelemetry.api.trace.SpanKind;
@@ -25,6 +30,7 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.Map;
 import java.util.Random;
 import java.util.UUID;
 
@@ -34,17 +40,26 @@ import java.util.UUID;
 public class ActiveMQPaymentService implements PaymentService {
 
     private final PaymentRepository paymentRepository;
+    private final CustomerShards customerShards;
     private final JmsTemplate jmsTemplate;
     private final Random random = new Random();
     private final Tracer tracer = GlobalOpenTelemetry.getTracer("activemq-payment-processor");
+    private final TracingHelper tracingHelper;
+    private final PaymentMetrics paymentMetrics;
     
     @Autowired
     private MessageConverter messageConverter;
     
     public ActiveMQPaymentService(PaymentRepository paymentRepository, 
-                                JmsTemplate jmsTemplate) {
+                                CustomerShards customerShards,
+                                JmsTemplate jmsTemplate,
+                                TracingHelper tracingHelper,
+                                PaymentMetrics paymentMetrics) {
         this.paymentRepository = paymentRepository;
+        this.customerShards = customerShards;
         this.jmsTemplate = jmsTemplate;
+        this.tracingHelper = tracingHelper;
+        this.paymentMetrics = paymentMetrics;
     }
 
     @Value("${activemq.queue.payment}")
@@ -58,7 +73,9 @@ public class ActiveMQPaymentService implements PaymentService {
         log.warn("Direct processPayment call without JMS context - context propagation will not work properly");
         
         try {
-            processMessageWithContext(billingMessage);
+            paymentMetrics.recordProcessing(billingMessage.getTransactionId(),
+                    () -> processMessageWithContext(billingMessage,
+                            PipelineTimestamps.start(PipelineTimestamps.PAYMENT_DEQUEUE)));
         } catch (Exception e) {
             log.error("Error processing payment: {}", e.getMessage(), e);
             throw e;
@@ -80,6 +97,8 @@ public class ActiveMQPaymentService implements PaymentService {
             
             // Extract context from JMS message properties
             Context extractedContext = ContextPropagationUtil.extractContextFromJmsMessage(jmsMessage);
+            Map<String, Long> timestamps = PipelineTimestamps.stamp(
+                    PipelineTimestamps.fromJmsMessage(jmsMessage), PipelineTimestamps.PAYMENT_DEQUEUE);
             
             log.info("Processing payment for transaction: {}, customer: {}", 
                     billingMessage.getTransactionId(), billingMessage.getCustomerId());
@@ -87,13 +106,14 @@ public class ActiveMQPaymentService implements PaymentService {
             // Create a child span for processing this message, using the extracted context as parent
             Span processSpan = tracer.spanBuilder("process-payment")
                     .setParent(extractedContext)
-                    .setAttribute("transaction.id", billingMessage.getTransactionId().toString())
-                    .setAttribute("customer.id", billingMessage.getCustomerId())
                     .setSpanKind(SpanKind.CONSUMER)
                     .startSpan();
+            TracingHelper.tag(processSpan, TracingHelper.TRANSACTION_ID, billingMessage.getTransactionId());
+            TracingHelper.tag(processSpan, TracingHelper.CUSTOMER_ID, billingMessage.getCustomerId());
             
             try (Scope scope = processSpan.makeCurrent()) {
-                processMessageWithContext(billingMessage);
+                paymentMetrics.recordProcessing(billingMessage.getTransactionId(),
+                        () -> processMessageWithContext(billingMessage, timestamps));
             } finally {
                 processSpan.end();
             }
@@ -103,7 +123,7 @@ public class ActiveMQPaymentService implements PaymentService {
         }
     }
     
-    private void processMessageWithContext(BillingMessage billingMessage) {
+    private void processMessageWithContext(BillingMessage billingMessage, Map<String, Long> timestamps) {
 
         // Randomly throw an exception (about 5% of the time)
         if (random.nextInt(100) < 5) {
@@ -112,14 +132,13 @@ public class ActiveMQPaymentService implements PaymentService {
             log.error("Transaction details: customerId={}, amount={}, currency={}", 
                     billingMessage.getCustomerId(), billingMessage.getAmount(), billingMessage.getCurrency());
             Span.current().recordException(new RuntimeException("Random payment processing error"));
+            paymentMetrics.countRandomFailure();
             throw new RuntimeException("Random payment processing error");
         }
 
         // Create a span for the database operation
-        Span dbSpan = tracer.spanBuilder("save-payment")
-                .setParent(Context.current())
-                .setAttribute("transaction.id", billingMessage.getTransactionId().toString())
-                .startSpan();
+        Span dbSpan = tracingHelper.startNested(tracer, "save-payment", SpanKind.INTERNAL);
+        TracingHelper.tag(dbSpan, TracingHelper.TRANSACTION_ID, billingMessage.getTransactionId());
         
         UUID paymentId;
         Payment payment;
@@ -140,19 +159,16 @@ public class ActiveMQPaymentService implements PaymentService {
                     .createdAt(LocalDateTime.now())
                     .build();
 
-            paymentRepository.save(payment);
+            customerShards.forCustomer(payment.getCustomerId(), () -> paymentRepository.save(payment));
             log.info("Saved payment record with payment ID: {}", paymentId);
         } finally {
-            dbSpan.end();
+            tracingHelper.endNested(dbSpan);
         }
 
         // Create a span for sending the message
-        Span sendSpan = tracer.spanBuilder("send-payment-message")
-                .setParent(Context.current())
-                .setAttribute("payment.id", paymentId.toString())
-                .setAttribute("transaction.id", billingMessage.getTransactionId().toString())
-                .setSpanKind(SpanKind.PRODUCER)
-                .startSpan();
+        Span sendSpan = tracingHelper.startNested(tracer, "send-payment-message", SpanKind.PRODUCER);
+        TracingHelper.tag(sendSpan, TracingHelper.PAYMENT_ID, paymentId);
+        TracingHelper.tag(sendSpan, TracingHelper.TRANSACTION_ID, billingMessage.getTransactionId());
         
         try (Scope sendScope = sendSpan.makeCurrent()) {
             // Create and send message
@@ -170,14 +186,16 @@ public class ActiveMQPaymentService implements PaymentService {
                     .messageType("PAYMENT_PROCESSED")
                     .build();
 
-            sendToActiveMQ(paymentMessage);
+            BrokerSendEvent sendEvent = BrokerSendEvent.start();
+            sendToActiveMQ(paymentMessage, timestamps);
+            sendEvent.complete(billingMessage.getTransactionId(), "activemq", paymentQueue);
             log.info("Sent payment message to ActiveMQ for payment ID: {}", paymentId);
         } finally {
-            sendSpan.end();
+            tracingHelper.endNested(sendSpan);
         }
     }
 
-    private void sendToActiveMQ(PaymentMessage message) {
+    private void sendToActiveMQ(PaymentMessage message, Map<String, Long> timestamps) {
         try {
             log.debug("Sending message to ActiveMQ queue: {}, payment ID: {}", 
                     paymentQueue, message.getPaymentId().toString());
@@ -191,8 +209,13 @@ public class ActiveMQPaymentService implements PaymentService {
                     currentSpan.getSpanContext().getTraceId(),
                     currentSpan.getSpanContext().getSpanId());
             
+            // Stamp the enqueue time next to the trace context
+            MessagePostProcessor stamper = PipelineTimestamps.jmsStamper(
+                    PipelineTimestamps.stamp(timestamps, PipelineTimestamps.PAYMENT_ENQUEUE));
+
             // Send the message with context headers
-            jmsTemplate.convertAndSend(paymentQueue, message, contextInjector);
+            jmsTemplate.convertAndSend(paymentQueue, message,
+                    jmsMessage -> stamper.postProcessMessage(contextInjector.postProcessMessage(jmsMessage)));
         } catch (Exception e) {
             log.error("Error sending message to ActiveMQ: {}", e.getMessage(), e);
             throw e; // Re-throw the exception to let the caller handle it
@@ -0,0 +1,207 @@
+package com.gesund.demo.paymentprocessor.service;
+
+import com.gesund.demo.paymentprocessor.model.BillingMessage;
+import com.gesund.demo.paymentprocessor.model.Payment;
+import com.gesund.demo.paymentprocessor.model.PaymentMessage;
+import com.gesund.demo.paymentprocessor.repository.PaymentRepository;
+import com.gesund.demo.paymentprocessor.util.BrokerSendEvent;
+import com.gesund.demo.paymentprocessor.util.ContextPropagationUtil;
+import com.gesund.demo.paymentprocessor.util.CustomerShards;
+import com.gesund.demo.paymentprocessor.util.InMemoryBroker;
+import com.gesund.demo.paymentprocessor.util.PaymentMetrics;
+import com.gesund.demo.paymentprocessor.util.PipelineTimestamps;
+import com.gesund.demo.paymentprocessor.util.TracingHelper;
+import io.opentelemetry.api.GlobalOpenTelemetry;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.context.Scope;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+@Service
+@Slf4j
+@ConditionalOnProperty(name = "messaging.system", havingValue = "inmemory")
+public class InMemoryPaymentService implements PaymentService {
+
+    private final PaymentRepository paymentRepository;
+    private final CustomerShards customerShards;
+    private final InMemoryBroker inMemoryBroker;
+    private final Random random = new Random();
+    private final Tracer tracer = GlobalOpenTelemetry.getTracer("inmemory-payment-processor");
+    private final TracingHelper tracingHelper;
+    private final PaymentMetrics paymentMetrics;
+    private InMemoryBroker.Subscription subscription;
+
+    public InMemoryPaymentService(PaymentRepository paymentRepository,
+                                  CustomerShards customerShards,
+                                  InMemoryBroker inMemoryBroker,
+                                  TracingHelper tracingHelper,
+                                  PaymentMetrics paymentMetrics) {
+        this.paymentRepository = paymentRepository;
+        this.customerShards = customerShards;
+        this.inMemoryBroker = inMemoryBroker;
+        this.tracingHelper = tracingHelper;
+        this.paymentMetrics = paymentMetrics;
+    }
+
+    @Value("${inmemory.queue.billing}")
+    private String billingQueue;
+
+    @Value("${inmemory.queue.payment}")
+    private String paymentQueue;
+
+    @PostConstruct
+    public void subscribe() {
+        subscription = inMemoryBroker.subscribe(billingQueue, BillingMessage.class, this::processInMemoryMessage);
+    }
+
+    @PreDestroy
+    public void unsubscribe() throws InterruptedException {
+        subscription.close();
+    }
+
+    @Override
+    public void processPayment(BillingMessage billingMessage) {
+        paymentMetrics.recordProcessing(billingMessage.getTransactionId(),
+                () -> processPayment(billingMessage, Context.current(),
+                        PipelineTimestamps.start(PipelineTimestamps.PAYMENT_DEQUEUE)));
+    }
+
+    /**
+     * Handles a message of the billing queue on an in-memory consumer thread. There is no
+     * surrounding transaction; the payment is committed by the repository save.
+     */
+    private void processInMemoryMessage(BillingMessage billingMessage, Map<String, String> headers) {
+        Context parentContext = ContextPropagationUtil.extractContextFromHeaders(headers);
+        Map<String, Long> timestamps = PipelineTimestamps.stamp(
+                PipelineTimestamps.fromHeaders(headers), PipelineTimestamps.PAYMENT_DEQUEUE);
+        paymentMetrics.recordProcessing(billingMessage.getTransactionId(),
+                () -> processPayment(billingMessage, parentContext, timestamps));
+    }
+
+    private void processPayment(BillingMessage billingMessage, Context parentContext, Map<String, Long> timestamps) {
+        try {
+            log.info("Processing payment for transaction: {}, customer: {}", 
+                    billingMessage.getTransactionId(), billingMessage.getCustomerId());
+            
+            // Create a span for processing this message
+            Span processSpan = tracer.spanBuilder("process-payment")
+                    .setParent(parentContext)
+                    .setSpanKind(SpanKind.CONSUMER)
+                    .startSpan();
+            TracingHelper.tag(processSpan, TracingHelper.TRANSACTION_ID, billingMessage.getTransactionId());
+            TracingHelper.tag(processSpan, TracingHelper.CUSTOMER_ID, billingMessage.getCustomerId());
+            
+            try (Scope scope = processSpan.makeCurrent()) {
+                // Randomly throw an exception (about 5% of the time)
+                if (random.nextInt(100) < 5) {
+                    log.error("Random payment processing error for transaction: {}", billingMessage.getTransactionId());
+                    // Add more detailed logging for debugging
+                    log.error("Transaction details: customerId={}, amount={}, currency={}", 
+                            billingMessage.getCustomerId(), billingMessage.getAmount(), billingMessage.getCurrency());
+                    processSpan.recordException(new RuntimeException("Random payment processing error"));
+                    paymentMetrics.countRandomFailure();
+                    throw new RuntimeException("Random payment processing error");
+                }
+
+                // Create a span for the database operation
+                Span dbSpan = tracingHelper.startNested(tracer, "save-payment", SpanKind.INTERNAL);
+                TracingHelper.tag(dbSpan, TracingHelper.TRANSACTION_ID, billingMessage.getTransactionId());
+                
+                UUID paymentId;
+                Payment payment;
+                
+                try (Scope dbScope = dbSpan.makeCurrent()) {
+                    // Create and save payment record
+                    paymentId = UUID.randomUUID();
+                    payment = Payment.builder()
+                            .transactionId(billingMessage.getTransactionId())
+                            .paymentId(paymentId)
+                            .customerId(billingMessage.getCustomerId())
+                            .productId(billingMessage.getProductId())
+                            .amount(billingMessage.getAmount())
+                            .currency(billingMessage.getCurrency())
+                            .status("PROCESSED")
+                            .paymentMethod(determinePaymentMethod(billingMessage.getCustomerId()))
+                            .processorReference("REF-" + paymentId.toString().substring(0, 8))
+                            .createdAt(LocalDateTime.now())
+                            .build();
+
+                    customerShards.forCustomer(payment.getCustomerId(), () -> paymentRepository.save(payment));
+                    log.info("Saved payment record with payment ID: {}", paymentId);
+                } finally {
+                    tracingHelper.endNested(dbSpan);
+                }
+
+                // Create a span for sending the message
+                Span sendSpan = tracingHelper.startNested(tracer, "send-payment-message", SpanKind.PRODUCER);
+                TracingHelper.tag(sendSpan, TracingHelper.PAYMENT_ID, paymentId);
+                TracingHelper.tag(sendSpan, TracingHelper.TRANSACTION_ID, billingMessage.getTransactionId());
+                
+                try (Scope sendScope = sendSpan.makeCurrent()) {
+                    // Create and send message
+                    PaymentMessage paymentMessage = PaymentMessage.builder()
+                            .transactionId(billingMessage.getTransactionId())
+                            .paymentId(paymentId)
+                            .customerId(billingMessage.getCustomerId())
+                            .productId(billingMessage.getProductId())
+                            .amount(billingMessage.getAmount())
+                            .currency(billingMessage.getCurrency())
+                            .status("PROCESSED")
+                            .paymentMethod(payment.getPaymentMethod())
+                            .processorReference(payment.getProcessorReference())
+                            .timestamp(LocalDateTime.now())
+                            .messageType("PAYMENT_PROCESSED")
+                            .build();
+
+                    BrokerSendEvent sendEvent = BrokerSendEvent.start();
+                    sendToInMemoryQueue(paymentMessage, timestamps);
+                    sendEvent.complete(billingMessage.getTransactionId(), "inmemory", paymentQueue);
+                    log.info("Sent payment message to in-memory queue for payment ID: {}", paymentId);
+                } finally {
+                    tracingHelper.endNested(sendSpan);
+                }
+            } finally {
+                processSpan.end();
+            }
+        } catch (Exception e) {
+            log.error("Error processing payment: {}", e.getMessage(), e);
+            throw e; // Re-throw the exception to let the consumer redeliver the message
+        }
+    }
+
+    private void sendToInMemoryQueue(PaymentMessage message, Map<String, Long> timestamps) {
+        try {
+            log.debug("Sending message to in-memory queue: {}, payment ID: {}",
+                    paymentQueue, message.getPaymentId().toString());
+
+            Map<String, String> headers = new HashMap<>();
+            ContextPropagationUtil.injectContextToHeaders(headers);
+            PipelineTimestamps.addToHeaders(
+                    PipelineTimestamps.stamp(timestamps, PipelineTimestamps.PAYMENT_ENQUEUE), headers);
+            inMemoryBroker.send(paymentQueue, message, headers);
+        } catch (Exception e) {
+            log.error("Error sending message to in-memory queue: {}", e.getMessage(), e);
+            throw e; // Re-throw the exception to let the caller handle it
+        }
+    }
+
+    private String determinePaymentMethod(String customerId) {
+        // Simple logic to determine payment method based on customer ID
+        String[] methods = {"CREDIT_CARD", "DEBIT_CARD", "PAYPAL", "BANK_TRANSFER"};
+        int index = Math.abs(customerId.hashCode() % methods.length);
+        return methods[index];
+    }
+}
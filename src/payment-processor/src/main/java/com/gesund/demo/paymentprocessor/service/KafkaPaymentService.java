@@ -4,7 +4,12 @@ import com.gesund.demo.paymentprocessor.model.BillingMessage;
 import com.gesund.demo.paymentprocessor.model.Payment;
 import com.gesund.demo.paymentprocessor.model.PaymentMessage;
 import com.gesund.demo.paymentprocessor.repository.PaymentRepository;
+import com.gesund.demo.paymentprocessor.util.BrokerSendEvent;
 import com.gesund.demo.paymentprocessor.util.ContextPropagationUtil;
+import com.gesund.demo.paymentprocessor.util.CustomerShards;
+import com.gesund.demo.paymentprocessor.util.PaymentMetrics;
+import com.gesund.demo.paymentprocessor.util.PipelineTimestamps;
+import com.gesund.demo.paymentprocessor.util.TracingHelper;
 import io.opentelemetry.api.GlobalOpenTelemetry;
 import io.opentelemetry.api.trace.Span;
 import io.opentelemetry.api.trace.SpanKind;
@@ -22,6 +27,7 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.Map;
 import java.util.Random;
 import java.util.UUID;
 
@@ -31,14 +37,23 @@ import java.util.UUID;
 public class KafkaPaymentService implements PaymentService {
 
     private final PaymentRepository paymentRepository;
+    private final CustomerShards customerShards;
     private final KafkaTemplate<String, PaymentMessage> kafkaTemplate;
     private final Random random = new Random();
     private final Tracer tracer = GlobalOpenTelemetry.getTracer("kafka-payment-processor");
+    private final TracingHelper tracingHelper;
+    private final PaymentMetrics paymentMetrics;
     
     public KafkaPaymentService(PaymentRepository paymentRepository, 
-                              KafkaTemplate<String, PaymentMessage> kafkaTemplate) {
+                              CustomerShards customerShards,
+                              KafkaTemplate<String, PaymentMessage> kafkaTemplate,
+                              TracingHelper tracingHelper,
+                              PaymentMetrics paymentMetrics) {
         this.paymentRepository = paymentRepository;
+        this.customerShards = customerShards;
         this.kafkaTemplate = kafkaTemplate;
+        this.tracingHelper = tracingHelper;
+        this.paymentMetrics = paymentMetrics;
     }
 
     @Value("${kafka.topic.payment}")
@@ -52,7 +67,9 @@ public class KafkaPaymentService implements PaymentService {
         log.warn("Direct processPayment call without Kafka context - context propagation will not work properly");
         
         try {
-            processMessageWithContext(billingMessage);
+            paymentMetrics.recordProcessing(billingMessage.getTransactionId(),
+                    () -> processMessageWithContext(billingMessage,
+                            PipelineTimestamps.start(PipelineTimestamps.PAYMENT_DEQUEUE)));
         } catch (Exception e) {
             log.error("Error processing payment: {}", e.getMessage(), e);
             throw e;
@@ -67,6 +84,8 @@ public class KafkaPaymentService implements PaymentService {
             
             // Extract context from Kafka headers
             Context extractedContext = ContextPropagationUtil.extractContextFromKafkaRecord(record);
+            Map<String, Long> timestamps = PipelineTimestamps.stamp(
+                    PipelineTimestamps.fromKafkaHeaders(record.headers()), PipelineTimestamps.PAYMENT_DEQUEUE);
             
             log.info("Processing payment for transaction: {}, customer: {}", 
                     billingMessage.getTransactionId(), billingMessage.getCustomerId());
@@ -74,16 +93,15 @@ public class KafkaPaymentService implements PaymentService {
             // Create a child span for processing this message, using the extracted context as parent
             Span processSpan = tracer.spanBuilder("process-payment")
                     .setParent(extractedContext)
-                    .setAttribute("transaction.id", billingMessage.getTransactionId().toString())
-                    .setAttribute("customer.id", billingMessage.getCustomerId())
-                    .setAttribute("kafka.topic", record.topic())
-                    .setAttribute("kafka.partition", record.partition())
-                    .setAttribute("kafka.offset", record.offset())
                     .setSpanKind(SpanKind.CONSUMER)
                     .startSpan();
+            TracingHelper.tag(processSpan, TracingHelper.TRANSACTION_ID, billingMessage.getTransactionId());
+            TracingHelper.tag(processSpan, TracingHelper.CUSTOMER_ID, billingMessage.getCustomerId());
+            TracingHelper.tagKafkaRecord(processSpan, record);
             
             try (Scope scope = processSpan.makeCurrent()) {
-                processMessageWithContext(billingMessage);
+                paymentMetrics.recordProcessing(billingMessage.getTransactionId(),
+                        () -> processMessageWithContext(billingMessage, timestamps));
             } finally {
                 processSpan.end();
             }
@@ -93,7 +111,7 @@ public class KafkaPaymentService implements PaymentService {
         }
     }
     
-    private void processMessageWithContext(BillingMessage billingMessage) {
+    private void processMessageWithContext(BillingMessage billingMessage, Map<String, Long> timestamps) {
 
         // Randomly throw an exception (about 5% of the time)
         if (random.nextInt(100) < 5) {
@@ -102,14 +120,13 @@ public class KafkaPaymentService implements PaymentService {
             log.error("Transaction details: customerId={}, amount={}, currency={}", 
                     billingMessage.getCustomerId(), billingMessage.getAmount(), billingMessage.getCurrency());
             Span.current().recordException(new RuntimeException("Random payment processing error"));
+            paymentMetrics.countRandomFailure();
             throw new RuntimeException("Random payment processing error");
         }
 
         // Create a span for the database operation
-        Span dbSpan = tracer.spanBuilder("save-payment")
-                .setParent(Context.current())
-                .setAttribute("transaction.id", billingMessage.getTransactionId().toString())
-                .startSpan();
+        Span dbSpan = tracingHelper.startNested(tracer, "save-payment", SpanKind.INTERNAL);
+        TracingHelper.tag(dbSpan, TracingHelper.TRANSACTION_ID, billingMessage.getTransactionId());
         
         UUID paymentId;
         Payment payment;
@@ -130,19 +147,16 @@ public class KafkaPaymentService implements PaymentService {
                     .createdAt(LocalDateTime.now())
                     .build();
 
-            paymentRepository.save(payment);
+            customerShards.forCustomer(payment.getCustomerId(), () -> paymentRepository.save(payment));
             log.info("Saved payment record with payment ID: {}", paymentId);
         } finally {
-            dbSpan.end();
+            tracingHelper.endNested(dbSpan);
         }
 
         // Create a span for sending the message
-        Span sendSpan = tracer.spanBuilder("send-payment-message")
-                .setParent(Context.current())
-                .setAttribute("payment.id", paymentId.toString())
-                .setAttribute("transaction.id", billingMessage.getTransactionId().toString())
-                .setSpanKind(SpanKind.PRODUCER)
-                .startSpan();
+        Span sendSpan = tracingHelper.startNested(tracer, "send-payment-message", SpanKind.PRODUCER);
+        TracingHelper.tag(sendSpan, TracingHelper.PAYMENT_ID, paymentId);
+        TracingHelper.tag(sendSpan, TracingHelper.TRANSACTION_ID, billingMessage.getTransactionId());
         
         try (Scope sendScope = sendSpan.makeCurrent()) {
             // Create and send message
@@ -160,14 +174,16 @@ public class KafkaPaymentService implements PaymentService {
                     .messageType("PAYMENT_PROCESSED")
                     .build();
 
-            sendToKafka(paymentMessage);
+            BrokerSendEvent sendEvent = BrokerSendEvent.start();
+            sendToKafka(paymentMessage, timestamps);
+            sendEvent.complete(billingMessage.getTransactionId(), "kafka", paymentTopic);
             log.info("Sent payment message to Kafka for payment ID: {}", paymentId);
         } finally {
-            sendSpan.end();
+            tracingHelper.endNested(sendSpan);
         }
     }
 
-    private void sendToKafka(PaymentMessage message) {
+    private void sendToKafka(PaymentMessage message, Map<String, Long> timestamps) {
         try {
             log.debug("Sending message to Kafka topic: {}, key: {}", paymentTopic, message.getPaymentId().toString());
             
@@ -180,6 +196,8 @@ public class KafkaPaymentService implements PaymentService {
             
             // Inject the current context into the record headers
             ContextPropagationUtil.injectContextToKafkaHeaders(record);
+            PipelineTimestamps.addToKafkaHeaders(
+                    PipelineTimestamps.stamp(timestamps, PipelineTimestamps.PAYMENT_ENQUEUE), record.headers());
             
             // Get current span for logging
             Span currentSpan = Span.current();
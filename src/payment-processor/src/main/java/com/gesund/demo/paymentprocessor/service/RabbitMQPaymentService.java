@@ -4,6 +4,12 @@ import com.gesund.demo.paymentprocessor.model.BillingMessage;
 import com.gesund.demo.paymentprocessor.model.Payment;
 import com.gesund.demo.paymentprocessor.model.PaymentMessage;
 import com.gesund.demo.paymentprocessor.repository.PaymentRepository;
+import com.gesund.demo.paymentprocessor.util.BrokerSendEvent;
+import com.gesund.demo.paymentprocessor.util.ContextPropagationUtil;
+import com.gesund.demo.paymentprocessor.util.CustomerShards;
+import com.gesund.demo.paymentprocessor.util.PaymentMetrics;
+import com.gesund.demo.paymentprocessor.util.PipelineTimestamps;
+import com.gesund.demo.paymentprocessor.util.TracingHelper;
 import io.opentelemetry.api.GlobalOpenTelemetry;
 import io.opentelemetry.api.trace.Span;
 import io.opentelemetry.api.trace.SpanKind;
@@ -11,18 +17,18 @@ import io.opentelemetry.api.trace.Tracer;
 import io.opentelemetry.context.Context;
 import io.opentelemetry.context.Scope;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.amqp.core.Message;
 import org.springframework.amqp.core.MessagePostProcessor;
 import org.springframework.amqp.core.MessageProperties;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.messaging.handler.annotation.Headers;
+import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Random;
 import java.util.UUID;
@@ -33,33 +39,58 @@ import java.util.UUID;
 public class RabbitMQPaymentService implements PaymentService {
 
     private final PaymentRepository paymentRepository;
+    private final CustomerShards customerShards;
     private final RabbitTemplate rabbitTemplate;
     private final Random random = new Random();
     private final Tracer tracer = GlobalOpenTelemetry.getTracer("rabbitmq-payment-processor");
+    private final TracingHelper tracingHelper;
+    private final PaymentMetrics paymentMetrics;
     
     public RabbitMQPaymentService(PaymentRepository paymentRepository, 
-                                RabbitTemplate rabbitTemplate) {
+                                CustomerShards customerShards,
+                                RabbitTemplate rabbitTemplate,
+                                TracingHelper tracingHelper,
+                                PaymentMetrics paymentMetrics) {
         this.paymentRepository = paymentRepository;
+        this.customerShards = customerShards;
         this.rabbitTemplate = rabbitTemplate;
+        this.tracingHelper = tracingHelper;
+        this.paymentMetrics = paymentMetrics;
     }
 
     @Value("${rabbitmq.queue.payment}")
     private String paymentQueue;
 
     @Override
-    @RabbitListener(queues = "${rabbitmq.queue.billing}")
     @Transactional
     public void processPayment(BillingMessage billingMessage) {
+        paymentMetrics.recordProcessing(billingMessage.getTransactionId(),
+                () -> processPayment(billingMessage, Context.current(),
+                        PipelineTimestamps.start(PipelineTimestamps.PAYMENT_DEQUEUE)));
+    }
+
+    @RabbitListener(queues = "${rabbitmq.queue.billing}")
+    @Transactional
+    public void processRabbitMessage(@Payload BillingMessage billingMessage, @Headers Map<String, Object> headers) {
+        Context parentContext = ContextPropagationUtil.extractContextFromAmqpHeaders(headers);
+        Map<String, Long> timestamps = PipelineTimestamps.stamp(
+                PipelineTimestamps.fromAmqpHeaders(headers), PipelineTimestamps.PAYMENT_DEQUEUE);
+        paymentMetrics.recordProcessing(billingMessage.getTransactionId(),
+                () -> processPayment(billingMessage, parentContext, timestamps));
+    }
+
+    private void processPayment(BillingMessage billingMessage, Context parentContext, Map<String, Long> timestamps) {
         try {
             log.info("Processing payment for transaction: {}, customer: {}", 
                     billingMessage.getTransactionId(), billingMessage.getCustomerId());
             
             // Create a span for processing this message
             Span processSpan = tracer.spanBuilder("process-payment")
-                    .setAttribute("transaction.id", billingMessage.getTransactionId().toString())
-                    .setAttribute("customer.id", billingMessage.getCustomerId())
+                    .setParent(parentContext)
                     .setSpanKind(SpanKind.CONSUMER)
                     .startSpan();
+            TracingHelper.tag(processSpan, TracingHelper.TRANSACTION_ID, billingMessage.getTransactionId());
+            TracingHelper.tag(processSpan, TracingHelper.CUSTOMER_ID, billingMessage.getCustomerId());
             
             try (Scope scope = processSpan.makeCurrent()) {
                 // Randomly throw an exception (about 5% of the time)
@@ -69,14 +100,13 @@ public class RabbitMQPaymentService implements PaymentService {
                     log.error("Transaction details: customerId={}, amount={}, currency={}", 
                             billingMessage.getCustomerId(), billingMessage.getAmount(), billingMessage.getCurrency());
                     processSpan.recordException(new RuntimeException("Random payment processing error"));
+                    paymentMetrics.countRandomFailure();
                     throw new RuntimeException("Random payment processing error");
                 }
 
                 // Create a span for the database operation
-                Span dbSpan = tracer.spanBuilder("save-payment")
-                        .setParent(Context.current())
-                        .setAttribute("transaction.id", billingMessage.getTransactionId().toString())
-                        .startSpan();
+                Span dbSpan = tracingHelper.startNested(tracer, "save-payment", SpanKind.INTERNAL);
+                TracingHelper.tag(dbSpan, TracingHelper.TRANSACTION_ID, billingMessage.getTransactionId());
                 
                 UUID paymentId;
                 Payment payment;
@@ -97,19 +127,16 @@ public class RabbitMQPaymentService implements PaymentService {
                             .createdAt(LocalDateTime.now())
                             .build();
 
-                    paymentRepository.save(payment);
+                    customerShards.forCustomer(payment.getCustomerId(), () -> paymentRepository.save(payment));
                     log.info("Saved payment record with payment ID: {}", paymentId);
                 } finally {
-                    dbSpan.end();
+                    tracingHelper.endNested(dbSpan);
                 }
 
                 // Create a span for sending the message
-                Span sendSpan = tracer.spanBuilder("send-payment-message")
-                        .setParent(Context.current())
-                        .setAttribute("payment.id", paymentId.toString())
-                        .setAttribute("transaction.id", billingMessage.getTransactionId().toString())
-                        .setSpanKind(SpanKind.PRODUCER)
-                        .startSpan();
+                Span sendSpan = tracingHelper.startNested(tracer, "send-payment-message", SpanKind.PRODUCER);
+                TracingHelper.tag(sendSpan, TracingHelper.PAYMENT_ID, paymentId);
+                TracingHelper.tag(sendSpan, TracingHelper.TRANSACTION_ID, billingMessage.getTransactionId());
                 
                 try (Scope sendScope = sendSpan.makeCurrent()) {
                     // Create and send message
@@ -127,10 +154,12 @@ public class RabbitMQPaymentService implements PaymentService {
                             .messageType("PAYMENT_PROCESSED")
                             .build();
 
-                    sendToRabbitMQ(paymentMessage);
+                    BrokerSendEvent sendEvent = BrokerSendEvent.start();
+                    sendToRabbitMQ(paymentMessage, timestamps);
+                    sendEvent.complete(billingMessage.getTransactionId(), "rabbitmq", paymentQueue);
                     log.info("Sent payment message to RabbitMQ for payment ID: {}", paymentId);
                 } finally {
-                    sendSpan.end();
+                    tracingHelper.endNested(sendSpan);
                 }
             } finally {
                 processSpan.end();
@@ -141,32 +170,19 @@ public class RabbitMQPaymentService implements PaymentService {
         }
     }
 
-    private void sendToRabbitMQ(PaymentMessage message) {
+    private void sendToRabbitMQ(PaymentMessage message, Map<String, Long> timestamps) {
         try {
             log.debug("Sending message to RabbitMQ queue: {}, payment ID: {}", 
                     paymentQueue, message.getPaymentId().toString());
             
+            PipelineTimestamps.stamp(timestamps, PipelineTimestamps.PAYMENT_ENQUEUE);
+
             // Create a message post processor to inject context
             MessagePostProcessor contextInjector = msg -> {
-                // Get current span for logging
-                Span currentSpan = Span.current();
-                
                 // Inject trace context into message headers
-                Map<String, String> contextMap = new HashMap<>();
-                GlobalOpenTelemetry.get().getPropagators().getTextMapPropagator().inject(
-                        Context.current(),
-                        contextMap,
-                        (carrier, key, value) -> carrier.put(key, value)
-                );
-                
-                // Add all context entries as message headers
                 MessageProperties props = msg.getMessageProperties();
-                contextMap.forEach(props::setHeader);
-                
-                log.debug("Injected trace context - TraceId: {}, SpanId: {}", 
-                        currentSpan.getSpanContext().getTraceId(),
-                        currentSpan.getSpanContext().getSpanId());
-                
+                ContextPropagationUtil.injectContextToAmqpMessage(props);
+                timestamps.forEach(props::setHeader);
                 return msg;
             };
             
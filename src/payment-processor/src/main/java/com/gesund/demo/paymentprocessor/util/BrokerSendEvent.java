@@ -0,0 +1,44 @@
+package com.gesund.demo.paymentprocessor.util;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import java.util.UUID;
+
+/**
+ * JFR event for handing one message to the broker client, trace context and timestamp headers included.
+ */
+@Name("com.gesund.demo.BrokerSend")
+@Label("Broker Send")
+@Category({"Gesund Demo", "Pipeline"})
+@StackTrace(false)
+public class BrokerSendEvent extends Event {
+
+    @Label("Transaction ID")
+    String transactionId;
+
+    @Label("Messaging System")
+    String messagingSystem;
+
+    @Label("Destination")
+    String destination;
+
+    public static BrokerSendEvent start() {
+        BrokerSendEvent event = new BrokerSendEvent();
+        event.begin();
+        return event;
+    }
+
+    public void complete(UUID transactionId, String messagingSystem, String destination) {
+        end();
+        if (shouldCommit()) {
+            this.transactionId = String.valueOf(transactionId);
+            this.messagingSystem = messagingSystem;
+            this.destination = destination;
+            commit();
+        }
+    }
+}
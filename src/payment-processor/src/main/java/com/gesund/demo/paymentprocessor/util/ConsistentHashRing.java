@@ -0,0 +1,102 @@
+package com.gesund.demo.paymentprocessor.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Consistent hash ring mapping customer IDs to shard names.
+ *
+ * Every shard owns a number of virtual nodes spread over a 64-bit ring, and a key belongs
+ * to the first node at or after its hash. Adding a shard at the end of the list only
+ * takes keys over from the existing shards (about 1/N of them); nothing moves between
+ * the old ones. The points depend only on the shard names and the virtual node count,
+ * so every service instance builds the same ring from the same configuration.
+ */
+public final class ConsistentHashRing {
+
+    private final List<String> shards;
+    private final long[] points;
+    private final String[] owners;
+
+    public ConsistentHashRing(List<String> shards, int virtualNodes) {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("A hash ring needs at least one shard");
+        }
+        this.shards = List.copyOf(shards);
+        long[][] nodes = new long[shards.size() * virtualNodes][];
+        int n = 0;
+        for (int shard = 0; shard < shards.size(); shard++) {
+            for (int node = 0; node < virtualNodes; node++) {
+                nodes[n++] = new long[] {hash(shards.get(shard) + "#" + node), shard};
+            }
+        }
+        Arrays.sort(nodes, (a, b) -> Long.compare(a[0], b[0]));
+        this.points = new long[nodes.length];
+        this.owners = new String[nodes.length];
+        for (int i = 0; i < nodes.length; i++) {
+            points[i] = nodes[i][0];
+            owners[i] = shards.get((int) nodes[i][1]);
+        }
+    }
+
+    /**
+     * Returns the shard owning a customer. Records without a customer ID live on the
+     * first shard.
+     */
+    public String shardFor(String customerId) {
+        if (customerId == null || shards.size() == 1) {
+            return shards.get(0);
+        }
+        int index = Arrays.binarySearch(points, hash(customerId));
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return owners[index == points.length ? 0 : index];
+    }
+
+    public List<String> getShards() {
+        return shards;
+    }
+
+    /**
+     * Returns the fraction of the hash space owned by each shard, which is the share of
+     * customers (and, for similar customers, of writes) it receives.
+     */
+    public Map<String, Double> ownership() {
+        Map<String, Double> shares = new LinkedHashMap<>();
+        shards.forEach(shard -> shares.put(shard, 0.0));
+        if (shards.size() == 1) {
+            shares.put(shards.get(0), 1.0);
+            return shares;
+        }
+        for (int i = 0; i < points.length; i++) {
+            // Node i owns the arc after the previous node, wrapping around at the start;
+            // the subtraction wraps the same way, so it is read as unsigned
+            long arc = points[i] - points[i == 0 ? points.length - 1 : i - 1];
+            double fraction = (arc >= 0 ? arc : arc + 0x1p64) / 0x1p64;
+            shares.merge(owners[i], fraction, Double::sum);
+        }
+        return shares;
+    }
+
+    /**
+     * FNV-1a over the UTF-8 bytes, finished with the MurmurHash3 fmix64 step so that
+     * similar keys (customer-1, customer-2) land far apart.
+     */
+    static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -10,23 +10,129 @@ import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.clients.producer.ProducerRecord;
 import org.apache.kafka.common.header.Header;
 import org.apache.kafka.common.header.Headers;
+import org.springframework.amqp.core.MessageProperties;
 import org.springframework.jms.core.MessagePostProcessor;
 
 import jakarta.jms.JMSException;
 import jakarta.jms.Message;
 import java.nio.charset.StandardCharsets;
-import java.util.HashMap;
-import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
 import java.util.Map;
 
 /**
  * Utility class for propagating OpenTelemetry context across messaging systems.
+ *
+ * The getters and setters are stateless singletons that read and write the message
+ * headers or properties in place, so propagation allocates nothing beyond what the
+ * propagator itself and the broker client (Kafka header bytes) need.
  */
 @Slf4j
 public class ContextPropagationUtil {
 
     private static final OpenTelemetry openTelemetry = GlobalOpenTelemetry.get();
 
+    /**
+     * Reads trace headers straight from Kafka record headers; the last header of a key wins.
+     */
+    public static final TextMapGetter<Headers> KAFKA_GETTER = new TextMapGetter<>() {
+        @Override
+        public Iterable<String> keys(Headers carrier) {
+            List<String> keys = new ArrayList<>();
+            for (Header header : carrier) {
+                keys.add(header.key());
+            }
+            return keys;
+        }
+
+        @Override
+        public String get(Headers carrier, String key) {
+            Header header = carrier != null ? carrier.lastHeader(key) : null;
+            if (header == null || header.value() == null) {
+                return null;
+            }
+            return new String(header.value(), StandardCharsets.UTF_8);
+        }
+    };
+
+    public static final TextMapSetter<Headers> KAFKA_SETTER =
+            (carrier, key, value) -> carrier.add(key, value.getBytes(StandardCharsets.UTF_8));
+
+    /**
+     * Reads trace properties straight from a JMS message, without copying its other properties.
+     */
+    public static final TextMapGetter<Message> JMS_GETTER = new TextMapGetter<>() {
+        @Override
+        @SuppressWarnings("unchecked")
+        public Iterable<String> keys(Message carrier) {
+            try {
+                return Collections.list((Enumeration<String>) carrier.getPropertyNames());
+            } catch (JMSException e) {
+                log.error("Failed to read JMS message property names: {}", e.getMessage(), e);
+                return Collections.emptyList();
+            }
+        }
+
+        @Override
+        public String get(Message carrier, String key) {
+            if (carrier == null) {
+                return null;
+            }
+            try {
+                return carrier.getStringProperty(key);
+            } catch (JMSException e) {
+                log.error("Failed to extract context from JMS message: {}", e.getMessage(), e);
+                return null;
+            }
+        }
+    };
+
+    public static final TextMapSetter<Message> JMS_SETTER = (carrier, key, value) -> {
+        try {
+            carrier.setStringProperty(key, value);
+        } catch (JMSException e) {
+            log.error("Failed to inject context into JMS message: {}", e.getMessage(), e);
+        }
+    };
+
+    /**
+     * Reads trace headers from AMQP message headers, as passed to @RabbitListener methods
+     * or held by MessageProperties.
+     */
+    public static final TextMapGetter<Map<String, Object>> AMQP_GETTER = new TextMapGetter<>() {
+        @Override
+        public Iterable<String> keys(Map<String, Object> carrier) {
+            return carrier.keySet();
+        }
+
+        @Override
+        public String get(Map<String, Object> carrier, String key) {
+            Object value = carrier != null ? carrier.get(key) : null;
+            return value != null ? value.toString() : null;
+        }
+    };
+
+    public static final TextMapSetter<MessageProperties> AMQP_SETTER = MessageProperties::setHeader;
+
+    /**
+     * Reads and writes trace headers of in-memory messages (messaging.system=inmemory).
+     */
+    public static final TextMapGetter<Map<String, String>> HEADERS_GETTER = new TextMapGetter<>() {
+        @Override
+        public Iterable<String> keys(Map<String, String> carrier) {
+            return carrier.keySet();
+        }
+
+        @Override
+        public String get(Map<String, String> carrier, String key) {
+            return carrier != null ? carrier.get(key) : null;
+        }
+    };
+
+    public static final TextMapSetter<Map<String, String>> HEADERS_SETTER = Map::put;
+
     /**
      * Extracts OpenTelemetry context from Kafka record headers.
      *
@@ -44,38 +150,7 @@ public class ContextPropagationUtil {
      * @return The extracted context
      */
     public static Context extractContextFromKafkaHeaders(Headers headers) {
-        return openTelemetry.getPropagators().getTextMapPropagator().extract(
-                Context.current(),
-                headers,
-                new TextMapGetter<Headers>() {
-                    @Override
-                    public Iterable<String> keys(Headers carrier) {
-                        return () -> {
-                            final Iterator<Header> iterator = carrier.iterator();
-                            return new Iterator<String>() {
-                                @Override
-                                public boolean hasNext() {
-                                    return iterator.hasNext();
-                                }
-                                
-                                @Override
-                                public String next() {
-                                    return iterator.next().key();
-                                }
-                            };
-                        };
-                    }
-
-                    @Override
-                    public String get(Headers carrier, String key) {
-                        Header header = carrier.lastHeader(key);
-                        if (header == null) {
-                            return null;
-                        }
-                        return new String(header.value(), StandardCharsets.UTF_8);
-                    }
-                }
-        );
+        return openTelemetry.getPropagators().getTextMapPropagator().extract(Context.current(), headers, KAFKA_GETTER);
     }
 
     /**
@@ -84,16 +159,7 @@ public class ContextPropagationUtil {
      * @param record The Kafka producer record to inject context into
      */
     public static void injectContextToKafkaHeaders(ProducerRecord<String, ?> record) {
-        openTelemetry.getPropagators().getTextMapPropagator().inject(
-                Context.current(),
-                record.headers(),
-                new TextMapSetter<Headers>() {
-                    @Override
-                    public void set(Headers carrier, String key, String value) {
-                        carrier.add(key, value.getBytes(StandardCharsets.UTF_8));
-                    }
-                }
-        );
+        openTelemetry.getPropagators().getTextMapPropagator().inject(Context.current(), record.headers(), KAFKA_SETTER);
         log.debug("Injected OpenTelemetry context into Kafka headers");
     }
 
@@ -104,36 +170,7 @@ public class ContextPropagationUtil {
      * @return The extracted context
      */
     public static Context extractContextFromJmsMessage(Message message) {
-        try {
-            Map<String, String> contextMap = new HashMap<>();
-            
-            // Get all property names from the message
-            @SuppressWarnings("unchecked")
-            java.util.Enumeration<String> propertyNames = message.getPropertyNames();
-            while (propertyNames.hasMoreElements()) {
-                String name = propertyNames.nextElement();
-                contextMap.put(name, message.getStringProperty(name));
-            }
-
-            return openTelemetry.getPropagators().getTextMapPropagator().extract(
-                    Context.current(),
-                    contextMap,
-                    new TextMapGetter<Map<String, String>>() {
-                        @Override
-                        public Iterable<String> keys(Map<String, String> carrier) {
-                            return carrier.keySet();
-                        }
-
-                        @Override
-                        public String get(Map<String, String> carrier, String key) {
-                            return carrier.get(key);
-                        }
-                    }
-            );
-        } catch (JMSException e) {
-            log.error("Failed to extract context from JMS message: {}", e.getMessage(), e);
-            return Context.current();
-        }
+        return openTelemetry.getPropagators().getTextMapPropagator().extract(Context.current(), message, JMS_GETTER);
     }
 
     /**
@@ -154,26 +191,59 @@ public class ContextPropagationUtil {
      * @param message The JMS message to inject context into
      */
     public static void injectContextToJmsMessage(Message message) {
-        try {
-            Map<String, String> contextMap = new HashMap<>();
-            openTelemetry.getPropagators().getTextMapPropagator().inject(
-                    Context.current(),
-                    contextMap,
-                    new TextMapSetter<Map<String, String>>() {
-                        @Override
-                        public void set(Map<String, String> carrier, String key, String value) {
-                            carrier.put(key, value);
-                        }
-                    }
-            );
-
-            // Add all context entries as JMS properties
-            for (Map.Entry<String, String> entry : contextMap.entrySet()) {
-                message.setStringProperty(entry.getKey(), entry.getValue());
-            }
-            log.debug("Injected OpenTelemetry context into JMS message properties");
-        } catch (JMSException e) {
-            log.error("Failed to inject context into JMS message: {}", e.getMessage(), e);
-        }
+        openTelemetry.getPropagators().getTextMapPropagator().inject(Context.current(), message, JMS_SETTER);
+        log.debug("Injected OpenTelemetry context into JMS message properties");
+    }
+
+    /**
+     * Extracts OpenTelemetry context from AMQP message headers.
+     *
+     * @param headers The headers of the received message
+     * @return The extracted context
+     */
+    public static Context extractContextFromAmqpHeaders(Map<String, Object> headers) {
+        return openTelemetry.getPropagators().getTextMapPropagator().extract(Context.current(), headers, AMQP_GETTER);
+    }
+
+    /**
+     * Creates an AMQP MessagePostProcessor that injects the current OpenTelemetry context into the message headers.
+     *
+     * @return A MessagePostProcessor that injects context
+     */
+    public static org.springframework.amqp.core.MessagePostProcessor createAmqpContextInjector() {
+        return message -> {
+            injectContextToAmqpMessage(message.getMessageProperties());
+            return message;
+        };
+    }
+
+    /**
+     * Injects the current OpenTelemetry context into AMQP message headers.
+     *
+     * @param properties The properties of the message to inject context into
+     */
+    public static void injectContextToAmqpMessage(MessageProperties properties) {
+        openTelemetry.getPropagators().getTextMapPropagator().inject(Context.current(), properties, AMQP_SETTER);
+        log.debug("Injected OpenTelemetry context into AMQP message headers");
+    }
+
+    /**
+     * Extracts OpenTelemetry context from the headers of an in-memory message.
+     *
+     * @param headers The headers of the received message
+     * @return The extracted context
+     */
+    public static Context extractContextFromHeaders(Map<String, String> headers) {
+        return openTelemetry.getPropagators().getTextMapPropagator().extract(Context.current(), headers, HEADERS_GETTER);
+    }
+
+    /**
+     * Injects the current OpenTelemetry context into the headers of an in-memory message.
+     *
+     * @param headers The headers of the message to inject context into
+     */
+    public static void injectContextToHeaders(Map<String, String> headers) {
+        openTelemetry.getPropagators().getTextMapPropagator().inject(Context.current(), headers, HEADERS_SETTER);
+        log.debug("Injected OpenTelemetry context into in-memory message headers");
     }
 }
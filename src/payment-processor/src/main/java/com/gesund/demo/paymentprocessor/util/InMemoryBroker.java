@@ -0,0 +1,252 @@
+package com.gesund.demo.paymentprocessor.util;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Named in-process queues standing in for a message broker (messaging.system=inmemory).
+ *
+ * A message is a pair of string headers, which carry the trace context and pipeline
+ * timestamps as broker headers do, and a JSON body. Bodies are serialised because every
+ * service has its own message classes; it also keeps marshalling in the measurement when
+ * the transport is used as a zero-broker baseline. Queues are {@link InMemoryQueue}s held
+ * in a registry that only uses JDK types, so services running in one JVM exchange messages
+ * when they are given the same registry, and a service on its own simply has its own.
+ *
+ * Consumers are dedicated threads that drain up to batch-size messages per round and back
+ * off from spinning to parking when the queue stays empty. A message whose handler throws
+ * is put back at the tail until it has been delivered max-deliveries times, then dropped.
+ * A handler that rejects work (RejectedExecutionException) is shedding load, which says
+ * nothing about the message: the rest of the batch goes back to the queue without counting
+ * a delivery and the consumer backs off. Subscriptions can also be paused, as listener
+ * containers are, so a consumer under pressure stops taking messages altogether.
+ * Nothing survives a restart: queued messages are lost with the JVM.
+ */
+@Slf4j
+public class InMemoryBroker {
+
+    /**
+     * Name of the queue registry bean, which an embedding application can register up front.
+     */
+    public static final String REGISTRY_BEAN = "inMemoryQueues";
+
+    private static final String DELIVERY_COUNT = "inmemory_delivery_count";
+    private static final int SPINS = 100;
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long REJECTED_BACKOFF_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final long PAUSED_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final ConcurrentMap<String, Queue<Map.Entry<Map<String, String>, String>>> queues;
+    private final ObjectMapper objectMapper;
+    private final int capacity;
+    private final int consumers;
+    private final int batchSize;
+    private final long sendTimeoutNanos;
+    private final int maxDeliveries;
+    private final MeterRegistry meterRegistry;
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    public InMemoryBroker(ConcurrentMap<String, Queue<Map.Entry<Map<String, String>, String>>> queues,
+                          ObjectMapper objectMapper, int capacity, int consumers, int batchSize,
+                          long sendTimeoutMs, int maxDeliveries, MeterRegistry meterRegistry) {
+        this.queues = queues;
+        this.objectMapper = objectMapper;
+        this.capacity = capacity;
+        this.consumers = consumers;
+        this.batchSize = batchSize;
+        this.sendTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(sendTimeoutMs);
+        this.maxDeliveries = maxDeliveries;
+        this.meterRegistry = meterRegistry;
+    }
+
+    public Queue<?> queue(String name) {
+        return messages(name);
+    }
+
+    /**
+     * The open subscriptions of this broker.
+     */
+    public List<Subscription> getSubscriptions() {
+        return List.copyOf(subscriptions);
+    }
+
+    /**
+     * Enqueues a message, waiting up to the send timeout while the queue is full.
+     *
+     * @throws IllegalStateException if the queue is still full after the timeout
+     */
+    public void send(String queue, Object payload, Map<String, String> headers) {
+        String body;
+        try {
+            body = objectMapper.writeValueAsString(payload);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Cannot serialise message for queue " + queue, e);
+        }
+        Queue<Map.Entry<Map<String, String>, String>> messages = messages(queue);
+        Map.Entry<Map<String, String>, String> message = Map.entry(headers, body);
+        long deadline = System.nanoTime() + sendTimeoutNanos;
+        int idleRounds = 0;
+        while (!messages.offer(message)) {
+            if (System.nanoTime() - deadline > 0) {
+                Counter.builder("inmemory.messages").tag("queue", queue).tag("outcome", "rejected")
+                        .register(meterRegistry).increment();
+                throw new IllegalStateException("In-memory queue " + queue + " is full");
+            }
+            idle(++idleRounds);
+        }
+    }
+
+    /**
+     * Starts the consumer threads of a queue. The handler is called on those threads, one
+     * message at a time per thread.
+     */
+    public <T> Subscription subscribe(String queue, Class<T> type, MessageHandler<T> handler) {
+        Subscription subscription = new Subscription(subscriptions);
+        for (int i = 0; i < consumers; i++) {
+            Thread thread = new Thread(() -> consume(queue, type, handler, subscription), "inmemory-" + queue + "-" + i);
+            thread.setDaemon(true);
+            subscription.threads.add(thread);
+        }
+        subscriptions.add(subscription);
+        subscription.threads.forEach(Thread::start);
+        log.info("Started {} consumers of in-memory queue {}", consumers, queue);
+        return subscription;
+    }
+
+    private <T> void consume(String queue, Class<T> type, MessageHandler<T> handler, Subscription subscription) {
+        Queue<Map.Entry<Map<String, String>, String>> messages = messages(queue);
+        Counter redelivered = Counter.builder("inmemory.messages").tag("queue", queue).tag("outcome", "redelivered")
+                .register(meterRegistry);
+        Counter dropped = Counter.builder("inmemory.messages").tag("queue", queue).tag("outcome", "dropped")
+                .register(meterRegistry);
+        List<Map.Entry<Map<String, String>, String>> batch = new ArrayList<>(batchSize);
+        int idleRounds = 0;
+        while (subscription.running) {
+            if (subscription.paused) {
+                LockSupport.parkNanos(PAUSED_PARK_NANOS);
+                continue;
+            }
+            Map.Entry<Map<String, String>, String> message;
+            while (batch.size() < batchSize && (message = messages.poll()) != null) {
+                batch.add(message);
+            }
+            if (batch.isEmpty()) {
+                idle(++idleRounds);
+                continue;
+            }
+            idleRounds = 0;
+            for (int i = 0; i < batch.size(); i++) {
+                Map.Entry<Map<String, String>, String> entry = batch.get(i);
+                try {
+                    handler.handle(objectMapper.readValue(entry.getValue(), type), entry.getKey());
+                } catch (RejectedExecutionException e) {
+                    log.debug("Consumer of in-memory queue {} rejected work, backing off: {}", queue, e.getMessage());
+                    requeue(messages, batch.subList(i, batch.size()), subscription);
+                    LockSupport.parkNanos(REJECTED_BACKOFF_NANOS);
+                    break;
+                } catch (Exception e) {
+                    int deliveries = Integer.parseInt(entry.getKey().getOrDefault(DELIVERY_COUNT, "1"));
+                    if (deliveries < maxDeliveries) {
+                        Map<String, String> headers = new HashMap<>(entry.getKey());
+                        headers.put(DELIVERY_COUNT, Integer.toString(deliveries + 1));
+                        if (messages.offer(Map.entry(headers, entry.getValue()))) {
+                            redelivered.increment();
+                            continue;
+                        }
+                    }
+                    log.error("Dropping message from in-memory queue {} after {} deliveries: {}",
+                            queue, deliveries, e.getMessage());
+                    dropped.increment();
+                }
+            }
+            batch.clear();
+        }
+    }
+
+    /**
+     * Puts messages back unchanged, waiting for room, since they were not delivered.
+     */
+    private static void requeue(Queue<Map.Entry<Map<String, String>, String>> messages,
+                                List<Map.Entry<Map<String, String>, String>> undelivered, Subscription subscription) {
+        for (Map.Entry<Map<String, String>, String> message : undelivered) {
+            int idleRounds = 0;
+            while (!messages.offer(message) && subscription.running) {
+                idle(++idleRounds);
+            }
+        }
+    }
+
+    private Queue<Map.Entry<Map<String, String>, String>> messages(String queue) {
+        return queues.computeIfAbsent(queue, name -> new InMemoryQueue<>(capacity));
+    }
+
+    /**
+     * Spins briefly, then parks for longer and longer, up to a millisecond, so an idle
+     * consumer neither burns a core nor adds more than that to the next message's latency.
+     */
+    private static void idle(int idleRounds) {
+        if (idleRounds <= SPINS) {
+            Thread.onSpinWait();
+        } else {
+            LockSupport.parkNanos(Math.min(MAX_PARK_NANOS, 1_000L << Math.min(idleRounds - SPINS, 10)));
+        }
+    }
+
+    @FunctionalInterface
+    public interface MessageHandler<T> {
+        void handle(T message, Map<String, String> headers) throws Exception;
+    }
+
+    /**
+     * The consumer threads of one queue. Pausing stops them taking messages after their
+     * current batch, closing stops them altogether.
+     */
+    public static final class Subscription implements AutoCloseable {
+
+        private final List<Subscription> subscriptions;
+        private final List<Thread> threads = new ArrayList<>();
+        private volatile boolean running = true;
+        private volatile boolean paused;
+
+        private Subscription(List<Subscription> subscriptions) {
+            this.subscriptions = subscriptions;
+        }
+
+        public void pause() {
+            paused = true;
+        }
+
+        public void resume() {
+            paused = false;
+            threads.forEach(LockSupport::unpark);
+        }
+
+        public boolean isPaused() {
+            return paused;
+        }
+
+        @Override
+        public void close() throws InterruptedException {
+            running = false;
+            subscriptions.remove(this);
+            for (Thread thread : threads) {
+                LockSupport.unpark(thread);
+                thread.join(TimeUnit.SECONDS.toMillis(10));
+            }
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.gesund.demo.paymentprocessor.util;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.UUID;
+
+/**
+ * Meters for the payment stage, exposed on /actuator/prometheus.
+ *
+ * payment.process times each message from dequeue until its payment message is sent,
+ * tagged with the outcome. payment.failures counts the simulated random failures, so they
+ * can be told apart from real errors in the failure rate. Each processing run is also a
+ * PaymentProcess JFR event, for profiling captures.
+ */
+@Component
+public class PaymentMetrics {
+
+    private final MeterRegistry meterRegistry;
+    private final Timer processedTimer;
+    private final Timer failedTimer;
+    private final Counter randomFailures;
+
+    public PaymentMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        this.processedTimer = processTimer("success");
+        this.failedTimer = processTimer("failure");
+        this.randomFailures = Counter.builder("payment.failures").tag("reason", "random")
+                .description("Payments failed on purpose by the random failure injection")
+                .register(meterRegistry);
+    }
+
+    private Timer processTimer(String outcome) {
+        return Timer.builder("payment.process").tag("outcome", outcome)
+                .description("Time to process one billing message into a payment")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    /**
+     * Runs the processing of one message and times it; an exception counts as a failure
+     * and is rethrown.
+     */
+    public void recordProcessing(UUID transactionId, Runnable processing) {
+        PaymentProcessEvent event = PaymentProcessEvent.start();
+        Timer.Sample sample = Timer.start(meterRegistry);
+        boolean success = false;
+        try {
+            processing.run();
+            success = true;
+        } finally {
+            sample.stop(success ? processedTimer : failedTimer);
+            event.complete(transactionId, success ? "success" : "failure");
+        }
+    }
+
+    public void countRandomFailure() {
+        randomFailures.increment();
+    }
+}
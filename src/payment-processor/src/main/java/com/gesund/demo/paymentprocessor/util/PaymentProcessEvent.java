@@ -0,0 +1,40 @@
+package com.gesund.demo.paymentprocessor.util;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import java.util.UUID;
+
+/**
+ * JFR event for processing one billing message into a payment, save and send included.
+ */
+@Name("com.gesund.demo.PaymentProcess")
+@Label("Payment Process")
+@Category({"Gesund Demo", "Pipeline"})
+@StackTrace(false)
+public class PaymentProcessEvent extends Event {
+
+    @Label("Transaction ID")
+    String transactionId;
+
+    @Label("Outcome")
+    String outcome;
+
+    public static PaymentProcessEvent start() {
+        PaymentProcessEvent event = new PaymentProcessEvent();
+        event.begin();
+        return event;
+    }
+
+    public void complete(UUID transactionId, String outcome) {
+        end();
+        if (shouldCommit()) {
+            this.transactionId = String.valueOf(transactionId);
+            this.outcome = outcome;
+            commit();
+        }
+    }
+}
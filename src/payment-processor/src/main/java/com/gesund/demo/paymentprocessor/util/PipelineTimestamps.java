@@ -0,0 +1,154 @@
+package com.gesund.demo.paymentprocessor.util;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.springframework.jms.core.MessagePostProcessor;
+
+import jakarta.jms.JMSException;
+import jakarta.jms.Message;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Per-hop pipeline timestamps carried in message headers next to the trace context.
+ *
+ * Every service adds the time a message entered and left it, so the last hop can work
+ * out where a charge spent its time between HTTP ingest and the saved invoice. Values
+ * are wall-clock epoch microseconds: they are compared across JVMs, where a monotonic
+ * clock has no common origin. Header names only use characters that are valid in JMS
+ * property names.
+ */
+@Slf4j
+public final class PipelineTimestamps {
+
+    public static final String PREFIX = "pipeline_";
+
+    public static final String INGEST = PREFIX + "ingest_us";
+    public static final String BILLING_ENQUEUE = PREFIX + "billing_enqueue_us";
+    public static final String PAYMENT_DEQUEUE = PREFIX + "payment_dequeue_us";
+    public static final String PAYMENT_ENQUEUE = PREFIX + "payment_enqueue_us";
+    public static final String INVOICE_DEQUEUE = PREFIX + "invoice_dequeue_us";
+    public static final String INVOICE_EXECUTOR_START = PREFIX + "invoice_executor_start_us";
+    public static final String INVOICE_SAVED = PREFIX + "invoice_saved_us";
+
+    private PipelineTimestamps() {
+    }
+
+    /**
+     * Returns the current wall-clock time in epoch microseconds.
+     */
+    public static long nowMicros() {
+        Instant now = Instant.now();
+        return now.getEpochSecond() * 1_000_000L + now.getNano() / 1_000;
+    }
+
+    /**
+     * Starts a new set of timestamps with the given stamp taken now.
+     */
+    public static Map<String, Long> start(String stamp) {
+        Map<String, Long> timestamps = new LinkedHashMap<>();
+        timestamps.put(stamp, nowMicros());
+        return timestamps;
+    }
+
+    /**
+     * Adds a stamp taken now and returns the same map.
+     */
+    public static Map<String, Long> stamp(Map<String, Long> timestamps, String stamp) {
+        timestamps.put(stamp, nowMicros());
+        return timestamps;
+    }
+
+    public static void addToKafkaHeaders(Map<String, Long> timestamps, Headers headers) {
+        timestamps.forEach((key, value) ->
+                headers.add(key, Long.toString(value).getBytes(StandardCharsets.UTF_8)));
+    }
+
+    public static Map<String, Long> fromKafkaHeaders(Headers headers) {
+        Map<String, Long> timestamps = new LinkedHashMap<>();
+        for (Header header : headers) {
+            if (header.key().startsWith(PREFIX) && header.value() != null) {
+                put(timestamps, header.key(), new String(header.value(), StandardCharsets.UTF_8));
+            }
+        }
+        return timestamps;
+    }
+
+    /**
+     * Creates a JMS MessagePostProcessor that adds the timestamps as long message properties.
+     */
+    public static MessagePostProcessor jmsStamper(Map<String, Long> timestamps) {
+        return message -> {
+            for (Map.Entry<String, Long> entry : timestamps.entrySet()) {
+                message.setLongProperty(entry.getKey(), entry.getValue());
+            }
+            return message;
+        };
+    }
+
+    public static Map<String, Long> fromJmsMessage(Message message) {
+        Map<String, Long> timestamps = new LinkedHashMap<>();
+        try {
+            @SuppressWarnings("unchecked")
+            Enumeration<String> names = message.getPropertyNames();
+            while (names.hasMoreElements()) {
+                String name = names.nextElement();
+                if (name.startsWith(PREFIX)) {
+                    put(timestamps, name, message.getStringProperty(name));
+                }
+            }
+        } catch (JMSException e) {
+            log.warn("Could not read pipeline timestamps from JMS message: {}", e.getMessage());
+        }
+        return timestamps;
+    }
+
+    /**
+     * Creates an AMQP MessagePostProcessor that adds the timestamps as message headers.
+     */
+    public static org.springframework.amqp.core.MessagePostProcessor amqpStamper(Map<String, Long> timestamps) {
+        return message -> {
+            timestamps.forEach(message.getMessageProperties()::setHeader);
+            return message;
+        };
+    }
+
+    public static Map<String, Long> fromAmqpHeaders(Map<String, Object> headers) {
+        Map<String, Long> timestamps = new LinkedHashMap<>();
+        headers.forEach((key, value) -> {
+            if (key.startsWith(PREFIX) && value != null) {
+                put(timestamps, key, value.toString());
+            }
+        });
+        return timestamps;
+    }
+
+    /**
+     * Adds the timestamps to the string headers of an in-memory message.
+     */
+    public static void addToHeaders(Map<String, Long> timestamps, Map<String, String> headers) {
+        timestamps.forEach((key, value) -> headers.put(key, Long.toString(value)));
+    }
+
+    public static Map<String, Long> fromHeaders(Map<String, String> headers) {
+        Map<String, Long> timestamps = new LinkedHashMap<>();
+        headers.forEach((key, value) -> {
+            if (key.startsWith(PREFIX) && value != null) {
+                put(timestamps, key, value);
+            }
+        });
+        return timestamps;
+    }
+
+    private static void put(Map<String, Long> timestamps, String key, String value) {
+        try {
+            timestamps.put(key, Long.parseLong(value));
+        } catch (NumberFormatException e) {
+            log.debug("Ignoring malformed pipeline timestamp {}={}", key, value);
+        }
+    }
+}
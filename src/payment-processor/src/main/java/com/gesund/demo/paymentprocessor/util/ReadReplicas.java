@@ -0,0 +1,155 @@
+package com.gesund.demo.paymentprocessor.util;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Connection pools of the streaming replicas, with a periodic replication lag check.
+ *
+ * A replica only receives reads while its last check succeeded and its lag was within
+ * the limit. Until the first check has run, and whenever no replica qualifies, reads go
+ * to the primary and datasource.replica.fallbacks is counted. Lag is zero while the
+ * replica has replayed everything it received (after a restart the receive position
+ * starts behind the replay position); otherwise it is the age of the last replayed
+ * transaction, so an idle primary does not make a replica look behind.
+ */
+@Slf4j
+public class ReadReplicas implements AutoCloseable {
+
+    private static final String LAG_SQL = "SELECT pg_is_in_recovery(), CASE "
+            + "WHEN NOT pg_is_in_recovery() OR pg_last_wal_replay_lsn() >= pg_last_wal_receive_lsn() THEN 0 "
+            + "ELSE COALESCE(EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()) * 1000, 0) END";
+
+    private final List<Replica> replicas = new ArrayList<>();
+    private final long maxLagMs;
+    private final AtomicInteger next = new AtomicInteger();
+    private final Counter fallbacks;
+
+    public ReadReplicas(List<String> jdbcUrls, String username, String password, int poolSize, long maxLagMs,
+                        String applicationName, MeterRegistry meterRegistry) {
+        this.maxLagMs = maxLagMs;
+        for (int i = 0; i < jdbcUrls.size(); i++) {
+            HikariConfig config = new HikariConfig();
+            config.setPoolName("replica-" + i);
+            config.setJdbcUrl(jdbcUrls.get(i));
+            config.setUsername(username);
+            config.setPassword(password);
+            config.setMaximumPoolSize(poolSize);
+            config.setReadOnly(true);
+            // A replica that is down must neither block startup nor hold reads for long
+            config.setInitializationFailTimeout(-1);
+            config.setConnectionTimeout(2000);
+            config.addDataSourceProperty("ApplicationName", applicationName);
+            config.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry));
+
+            Replica replica = new Replica(config.getPoolName(), new HikariDataSource(config));
+            replicas.add(replica);
+            Gauge.builder("datasource.replica.lag", replica, r -> r.lagMs).tag("replica", replica.name)
+                    .description("Replication lag of the replica at the last check, NaN if it could not be checked")
+                    .baseUnit("milliseconds")
+                    .register(meterRegistry);
+            Gauge.builder("datasource.replica.healthy", replica, r -> r.healthy ? 1 : 0).tag("replica", replica.name)
+                    .description("Whether read-only transactions are currently sent to the replica")
+                    .register(meterRegistry);
+            log.info("Read replica {} at {}", replica.name, jdbcUrls.get(i));
+        }
+        this.fallbacks = Counter.builder("datasource.replica.fallbacks")
+                .description("Read-only connections served by the primary because no replica was usable")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Returns the next healthy replica in round-robin order, or null (counted as a
+     * fallback) if there is none.
+     */
+    public Replica select() {
+        int size = replicas.size();
+        int start = Math.floorMod(next.getAndIncrement(), size);
+        for (int i = 0; i < size; i++) {
+            Replica replica = replicas.get((start + i) % size);
+            if (replica.healthy) {
+                return replica;
+            }
+        }
+        fallbacks.increment();
+        return null;
+    }
+
+    /**
+     * Takes a replica out of rotation after a failed connection attempt; the next check
+     * decides whether it comes back. The caller falls back to the primary.
+     */
+    public void markDown(Replica replica, SQLException e) {
+        if (replica.healthy) {
+            log.warn("Read replica {} failed, reading from the primary: {}", replica.name, e.getMessage());
+        }
+        replica.healthy = false;
+        fallbacks.increment();
+    }
+
+    @Scheduled(fixedDelayString = "${datasource.replica.check-interval-ms:2000}")
+    public void checkLag() {
+        for (Replica replica : replicas) {
+            boolean healthy;
+            try (Connection connection = replica.pool.getConnection();
+                 Statement statement = connection.createStatement();
+                 ResultSet resultSet = statement.executeQuery(LAG_SQL)) {
+                resultSet.next();
+                boolean inRecovery = resultSet.getBoolean(1);
+                replica.lagMs = resultSet.getDouble(2);
+                if (!inRecovery && replica.healthy) {
+                    log.warn("Read replica {} is not in recovery; it may have been promoted", replica.name);
+                }
+                healthy = inRecovery && replica.lagMs <= maxLagMs;
+            } catch (SQLException e) {
+                replica.lagMs = Double.NaN;
+                healthy = false;
+                if (replica.healthy) {
+                    log.warn("Lag check of read replica {} failed: {}", replica.name, e.getMessage());
+                }
+            }
+            if (healthy != replica.healthy) {
+                log.info("Read replica {} {} (lag {}, limit {} ms)", replica.name,
+                        healthy ? "is in rotation" : "left rotation",
+                        Double.isNaN(replica.lagMs) ? "unknown" : Math.round(replica.lagMs) + " ms", maxLagMs);
+                replica.healthy = healthy;
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        replicas.forEach(replica -> replica.pool.close());
+    }
+
+    public static final class Replica {
+
+        private final String name;
+        private final HikariDataSource pool;
+        private volatile boolean healthy;
+        private volatile double lagMs = Double.NaN;
+
+        private Replica(String name, HikariDataSource pool) {
+            this.name = name;
+            this.pool = pool;
+        }
+
+        public Connection getConnection() throws SQLException {
+            return pool.getConnection();
+        }
+    }
+}
@@ -0,0 +1,16 @@
+-- Lookup paths for PaymentRepository.findByTransactionId and findByPaymentId.
+--
+-- Indexes on the partitioned table cascade to every partition, including the ones
+-- PartitionMaintenance creates later. Neither index is UNIQUE: a unique index on a
+-- partitioned table must contain the partition key (created_at), and redelivered
+-- messages can legitimately produce a second row for a transaction.
+--
+-- The transaction_id index also carries created_at, payment_id and amount, so the
+-- reconciliation queries (matched on transaction_id within a created_at window, reading
+-- payment_id and amount) are answered by index-only scans.
+--
+-- CREATE INDEX on a partitioned table cannot run CONCURRENTLY. On a large existing table,
+-- pre-build the indexes per partition with CREATE INDEX CONCURRENTLY and attach them to
+-- parent indexes created ON ONLY payment before deploying.
+CREATE INDEX IF NOT EXISTS payment_transaction_id ON payment (transaction_id, created_at) INCLUDE (payment_id, amount);
+CREATE INDEX IF NOT EXISTS payment_payment_id ON payment (payment_id);
@@ -0,0 +1,155 @@
+package com.gesund.demo.benchmarks;
+
+import com.gesund.demo.paymentprocessor.util.ContextPropagationUtil;
+import io.opentelemetry.api.GlobalOpenTelemetry;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.context.propagation.TextMapGetter;
+import org.apache.activemq.command.ActiveMQTextMessage;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.Headers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.amqp.core.MessageProperties;
+
+import jakarta.jms.JMSException;
+import jakarta.jms.Message;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * OpenTelemetry context inject and extract through {@link ContextPropagationUtil}, for
+ * Kafka headers, JMS message properties and AMQP headers, with a W3C propagator installed
+ * and a sampled span current. Inject benchmarks include creating the record or message
+ * they write to, as the services do for every message.
+ *
+ * The *Get benchmarks read traceparent through the carrier getters alone: gc.alloc.rate.norm
+ * is 0 for JMS and AMQP, and only the header value String for Kafka, whose headers hold
+ * bytes. jmsExtractCopyingProperties is extract as it was done before the getters, copying
+ * every property into a map first.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ContextPropagationBenchmark {
+
+    private static final String TOPIC = "payment-events";
+
+    private Context context;
+    private io.opentelemetry.context.Scope scope;
+    private Headers kafkaHeaders;
+    private Message jmsMessage;
+    private Map<String, Object> amqpHeaders;
+
+    @Setup
+    public void setUp() {
+        Fixtures.installPropagator();
+        context = Fixtures.sampledContext();
+        scope = context.makeCurrent();
+
+        ProducerRecord<String, Object> record = new ProducerRecord<>(TOPIC, "key", null);
+        ContextPropagationUtil.injectContextToKafkaHeaders(record);
+        kafkaHeaders = record.headers();
+
+        jmsMessage = new ActiveMQTextMessage();
+        ContextPropagationUtil.injectContextToJmsMessage(jmsMessage);
+
+        MessageProperties properties = new MessageProperties();
+        ContextPropagationUtil.injectContextToAmqpMessage(properties);
+        amqpHeaders = properties.getHeaders();
+        if (kafkaHeaders.lastHeader("traceparent") == null) {
+            throw new IllegalStateException("W3C propagator is not installed; inject would be a no-op");
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        scope.close();
+    }
+
+    @Benchmark
+    public ProducerRecord<String, Object> kafkaInject() {
+        ProducerRecord<String, Object> record = new ProducerRecord<>(TOPIC, "key", null);
+        ContextPropagationUtil.injectContextToKafkaHeaders(record);
+        return record;
+    }
+
+    @Benchmark
+    public Context kafkaExtract() {
+        return ContextPropagationUtil.extractContextFromKafkaHeaders(kafkaHeaders);
+    }
+
+    @Benchmark
+    public Message jmsInject() {
+        Message message = new ActiveMQTextMessage();
+        ContextPropagationUtil.injectContextToJmsMessage(message);
+        return message;
+    }
+
+    @Benchmark
+    public Context jmsExtract() {
+        return ContextPropagationUtil.extractContextFromJmsMessage(jmsMessage);
+    }
+
+    @Benchmark
+    public Context jmsExtractCopyingProperties() throws JMSException {
+        Map<String, String> properties = new HashMap<>();
+        Enumeration<?> names = jmsMessage.getPropertyNames();
+        while (names.hasMoreElements()) {
+            String name = (String) names.nextElement();
+            properties.put(name, jmsMessage.getStringProperty(name));
+        }
+        return GlobalOpenTelemetry.getPropagators().getTextMapPropagator().extract(
+                Context.current(), properties, new TextMapGetter<Map<String, String>>() {
+                    @Override
+                    public Iterable<String> keys(Map<String, String> carrier) {
+                        return carrier.keySet();
+                    }
+
+                    @Override
+                    public String get(Map<String, String> carrier, String key) {
+                        return carrier.get(key);
+                    }
+                });
+    }
+
+    @Benchmark
+    public MessageProperties amqpInject() {
+        MessageProperties properties = new MessageProperties();
+        ContextPropagationUtil.injectContextToAmqpMessage(properties);
+        return properties;
+    }
+
+    @Benchmark
+    public Context amqpExtract() {
+        return ContextPropagationUtil.extractContextFromAmqpHeaders(amqpHeaders);
+    }
+
+    @Benchmark
+    public String kafkaGet() {
+        return ContextPropagationUtil.KAFKA_GETTER.get(kafkaHeaders, "traceparent");
+    }
+
+    @Benchmark
+    public String jmsGet() {
+        return ContextPropagationUtil.JMS_GETTER.get(jmsMessage, "traceparent");
+    }
+
+    @Benchmark
+    public String amqpGet() {
+        return ContextPropagationUtil.AMQP_GETTER.get(amqpHeaders, "traceparent");
+    }
+}
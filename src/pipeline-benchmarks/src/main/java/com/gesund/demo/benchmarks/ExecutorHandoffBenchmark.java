@@ -0,0 +1,81 @@
+package com.gesund.demo.benchmarks;
+
+import com.gesund.demo.invoiceaggregator.util.ContextPropagatingExecutorService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hand-off of a listener's work to the invoice-aggregator worker pool through
+ * {@link ContextPropagatingExecutorService#execute}, against a plain executor of the same
+ * size as the baseline. Each invocation submits a batch and waits for all of it, so the
+ * score is tasks per second including the context capture and restore.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExecutorHandoffBenchmark {
+
+    private static final int BATCH = 1000;
+
+    @Param({"10"})
+    private int threads;
+
+    private ContextPropagatingExecutorService propagating;
+    private ExecutorService plain;
+
+    @Setup
+    public void setUp() {
+        Fixtures.installPropagator();
+        propagating = new ContextPropagatingExecutorService(threads);
+        plain = Executors.newFixedThreadPool(threads);
+    }
+
+    @TearDown
+    public void tearDown() {
+        propagating.shutdown();
+        plain.shutdown();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void contextPropagating() throws InterruptedException {
+        try (io.opentelemetry.context.Scope ignored = Fixtures.sampledContext().makeCurrent()) {
+            CountDownLatch done = new CountDownLatch(BATCH);
+            for (int i = 0; i < BATCH; i++) {
+                propagating.execute(done::countDown);
+            }
+            done.await();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void plainExecutor() throws InterruptedException {
+        try (io.opentelemetry.context.Scope ignored = Fixtures.sampledContext().makeCurrent()) {
+            CountDownLatch done = new CountDownLatch(BATCH);
+            for (int i = 0; i < BATCH; i++) {
+                plain.execute(done::countDown);
+            }
+            done.await();
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.gesund.demo.benchmarks;
+
+import com.gesund.demo.billingservice.model.BillingMessage;
+import com.gesund.demo.paymentprocessor.model.PaymentMessage;
+import io.opentelemetry.api.GlobalOpenTelemetry;
+import io.opentelemetry.api.OpenTelemetry;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanContext;
+import io.opentelemetry.api.trace.TraceFlags;
+import io.opentelemetry.api.trace.TraceState;
+import io.opentelemetry.api.trace.propagation.W3CTraceContextPropagator;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.context.propagation.ContextPropagators;
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.reflect.Field;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Sample messages and telemetry setup shared by the benchmarks.
+ */
+final class Fixtures {
+
+    private Fixtures() {
+    }
+
+    static BillingMessage billingMessage() {
+        return BillingMessage.builder()
+                .transactionId(UUID.randomUUID())
+                .customerId("customer-4711")
+                .productId("product-42")
+                .amount(new BigDecimal("129.95"))
+                .currency("EUR")
+                .status("PENDING")
+                .timestamp(LocalDateTime.now())
+                .messageType("BILLING_CREATED")
+                .build();
+    }
+
+    static PaymentMessage paymentMessage() {
+        UUID paymentId = UUID.randomUUID();
+        return PaymentMessage.builder()
+                .transactionId(UUID.randomUUID())
+                .paymentId(paymentId)
+                .customerId("customer-4711")
+                .productId("product-42")
+                .amount(new BigDecimal("129.95"))
+                .currency("EUR")
+                .status("PROCESSED")
+                .paymentMethod("CREDIT_CARD")
+                .processorReference("REF-" + paymentId.toString().substring(0, 8))
+                .timestamp(LocalDateTime.now())
+                .messageType("PAYMENT_PROCESSED")
+                .build();
+    }
+
+    /**
+     * Sets a field a service's configuration class would get from @Value, so its bean
+     * methods can be called without an application context.
+     */
+    static <T> T withField(T target, String name, Object value) {
+        Field field = ReflectionUtils.findField(target.getClass(), name);
+        if (field == null) {
+            throw new IllegalArgumentException(target.getClass().getSimpleName() + " has no field " + name);
+        }
+        ReflectionUtils.makeAccessible(field);
+        ReflectionUtils.setField(field, target, value);
+        return target;
+    }
+
+    /**
+     * Registers a W3C trace-context propagator as the global OpenTelemetry, the way the
+     * agent or SDK does in a deployment. Without it, inject and extract are no-ops and
+     * measure nothing. Must run before the services' ContextPropagationUtil is loaded,
+     * since it caches GlobalOpenTelemetry.get() in a static field.
+     */
+    static synchronized void installPropagator() {
+        try {
+            GlobalOpenTelemetry.set(OpenTelemetry.propagating(
+                    ContextPropagators.create(W3CTraceContextPropagator.getInstance())));
+        } catch (IllegalStateException e) {
+            // Already installed by another benchmark in this JVM
+        }
+    }
+
+    /**
+     * Returns a context holding a sampled remote span, so inject has something to write.
+     */
+    static Context sampledContext() {
+        SpanContext spanContext = SpanContext.createFromRemoteParent(
+                "4bf92f3577b34da6a3ce929d0e0e4736", "00f067aa0ba902b7",
+                TraceFlags.getSampled(), TraceState.getDefault());
+        return Context.root().with(Span.wrap(spanContext));
+    }
+}
@@ -0,0 +1,164 @@
+package com.gesund.demo.benchmarks;
+
+import com.gesund.demo.paymentprocessor.model.BillingMessage;
+import com.gesund.demo.paymentprocessor.util.TracingHelper;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.samplers.Sampler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The three manual spans payment-processor creates per message (process-payment,
+ * save-payment, send-payment-message), built the way the services used to (string keys,
+ * eager toString() of every id) and through {@link TracingHelper} with either span budget.
+ *
+ * The SDK samples everything or nothing, and has no span processor, so the figures are the
+ * cost of creating spans and their attributes, not of exporting them. Compare
+ * gc.alloc.rate.norm between the variants for the allocation per message.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ManualSpanBenchmark {
+
+    @Param({"sampled", "unsampled"})
+    public String sampling;
+
+    private SdkTracerProvider tracerProvider;
+    private Tracer tracer;
+    private TracingHelper fullBudget;
+    private TracingHelper minimalBudget;
+    private BillingMessage billingMessage;
+    private UUID paymentId;
+    private io.opentelemetry.context.Scope scope;
+
+    @Setup
+    public void setUp() {
+        tracerProvider = SdkTracerProvider.builder()
+                .setSampler("sampled".equals(sampling) ? Sampler.alwaysOn() : Sampler.alwaysOff())
+                .build();
+        tracer = tracerProvider.get("payment-processor-benchmark");
+        fullBudget = Fixtures.withField(new TracingHelper(), "spanBudget", TracingHelper.SpanBudget.FULL);
+        minimalBudget = Fixtures.withField(new TracingHelper(), "spanBudget", TracingHelper.SpanBudget.MINIMAL);
+        billingMessage = BillingMessage.builder()
+                .transactionId(UUID.randomUUID())
+                .customerId("customer-4711")
+                .productId("product-42")
+                .amount(new BigDecimal("129.95"))
+                .currency("EUR")
+                .status("PENDING")
+                .timestamp(LocalDateTime.now())
+                .messageType("BILLING_CREATED")
+                .build();
+        paymentId = UUID.randomUUID();
+        scope = Fixtures.sampledContext().makeCurrent();
+    }
+
+    @TearDown
+    public void tearDown() {
+        scope.close();
+        tracerProvider.close();
+    }
+
+    /**
+     * The spans as the services built them before {@link TracingHelper}.
+     */
+    @Benchmark
+    public Span eagerAttributes() {
+        Span processSpan = tracer.spanBuilder("process-payment")
+                .setParent(Context.current())
+                .setAttribute("transaction.id", billingMessage.getTransactionId().toString())
+                .setAttribute("customer.id", billingMessage.getCustomerId())
+                .setSpanKind(SpanKind.CONSUMER)
+                .startSpan();
+        try (io.opentelemetry.context.Scope ignored = processSpan.makeCurrent()) {
+            Span dbSpan = tracer.spanBuilder("save-payment")
+                    .setParent(Context.current())
+                    .setAttribute("transaction.id", billingMessage.getTransactionId().toString())
+                    .startSpan();
+            try (io.opentelemetry.context.Scope dbScope = dbSpan.makeCurrent()) {
+                // Work of the save would happen here
+            } finally {
+                dbSpan.end();
+            }
+            Span sendSpan = tracer.spanBuilder("send-payment-message")
+                    .setParent(Context.current())
+                    .setAttribute("payment.id", paymentId.toString())
+                    .setAttribute("transaction.id", billingMessage.getTransactionId().toString())
+                    .setSpanKind(SpanKind.PRODUCER)
+                    .startSpan();
+            try (io.opentelemetry.context.Scope sendScope = sendSpan.makeCurrent()) {
+                // Work of the send would happen here
+            } finally {
+                sendSpan.end();
+            }
+        } finally {
+            processSpan.end();
+        }
+        return processSpan;
+    }
+
+    @Benchmark
+    public Span helperFullBudget() {
+        return helperSpans(fullBudget);
+    }
+
+    @Benchmark
+    public Span helperMinimalBudget() {
+        return helperSpans(minimalBudget);
+    }
+
+    /**
+     * The spans as KafkaPaymentService builds them now, minus the Kafka record attributes.
+     */
+    private Span helperSpans(TracingHelper tracingHelper) {
+        Span processSpan = tracer.spanBuilder("process-payment")
+                .setParent(Context.current())
+                .setSpanKind(SpanKind.CONSUMER)
+                .startSpan();
+        TracingHelper.tag(processSpan, TracingHelper.TRANSACTION_ID, billingMessage.getTransactionId());
+        TracingHelper.tag(processSpan, TracingHelper.CUSTOMER_ID, billingMessage.getCustomerId());
+        try (io.opentelemetry.context.Scope ignored = processSpan.makeCurrent()) {
+            Span dbSpan = tracingHelper.startNested(tracer, "save-payment", SpanKind.INTERNAL);
+            TracingHelper.tag(dbSpan, TracingHelper.TRANSACTION_ID, billingMessage.getTransactionId());
+            try (io.opentelemetry.context.Scope dbScope = dbSpan.makeCurrent()) {
+                // Work of the save would happen here
+            } finally {
+                tracingHelper.endNested(dbSpan);
+            }
+            Span sendSpan = tracingHelper.startNested(tracer, "send-payment-message", SpanKind.PRODUCER);
+            TracingHelper.tag(sendSpan, TracingHelper.PAYMENT_ID, paymentId);
+            TracingHelper.tag(sendSpan, TracingHelper.TRANSACTION_ID, billingMessage.getTransactionId());
+            try (io.opentelemetry.context.Scope sendScope = sendSpan.makeCurrent()) {
+                // Work of the send would happen here
+            } finally {
+                tracingHelper.endNested(sendSpan);
+            }
+        } finally {
+            processSpan.end();
+        }
+        return processSpan;
+    }
+}
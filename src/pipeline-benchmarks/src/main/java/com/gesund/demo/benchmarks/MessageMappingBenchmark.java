@@ -0,0 +1,120 @@
+package com.gesund.demo.benchmarks;
+
+import com.gesund.demo.invoiceaggregator.model.Invoice;
+import com.gesund.demo.paymentprocessor.model.BillingMessage;
+import com.gesund.demo.paymentprocessor.model.Payment;
+import com.gesund.demo.paymentprocessor.model.PaymentMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The builder chains that map one message to the next. The chains are private to the
+ * services, so they are repeated here field for field; keep them in sync with
+ * KafkaPaymentService.processMessageWithContext and KafkaInvoiceService.processMessageInThread.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageMappingBenchmark {
+
+    private static final String[] PAYMENT_METHODS = {"CREDIT_CARD", "DEBIT_CARD", "PAYPAL", "BANK_TRANSFER"};
+
+    private BillingMessage billingMessage;
+    private com.gesund.demo.invoiceaggregator.model.PaymentMessage paymentMessage;
+
+    @Setup
+    public void setUp() {
+        billingMessage = BillingMessage.builder()
+                .transactionId(UUID.randomUUID())
+                .customerId("customer-4711")
+                .productId("product-42")
+                .amount(new BigDecimal("129.95"))
+                .currency("EUR")
+                .status("PENDING")
+                .timestamp(LocalDateTime.now())
+                .messageType("BILLING_CREATED")
+                .build();
+        PaymentMessage payment = mapPayment(billingMessage);
+        paymentMessage = com.gesund.demo.invoiceaggregator.model.PaymentMessage.builder()
+                .transactionId(payment.getTransactionId())
+                .paymentId(payment.getPaymentId())
+                .customerId(payment.getCustomerId())
+                .productId(payment.getProductId())
+                .amount(payment.getAmount())
+                .currency(payment.getCurrency())
+                .status(payment.getStatus())
+                .paymentMethod(payment.getPaymentMethod())
+                .processorReference(payment.getProcessorReference())
+                .timestamp(payment.getTimestamp())
+                .messageType(payment.getMessageType())
+                .build();
+    }
+
+    @Benchmark
+    public PaymentMessage billingToPayment() {
+        return mapPayment(billingMessage);
+    }
+
+    @Benchmark
+    public Invoice paymentToInvoice() {
+        return Invoice.builder()
+                .invoiceId(UUID.randomUUID())
+                .transactionId(paymentMessage.getTransactionId())
+                .paymentId(paymentMessage.getPaymentId())
+                .customerId(paymentMessage.getCustomerId())
+                .productId(paymentMessage.getProductId())
+                .amount(paymentMessage.getAmount())
+                .currency(paymentMessage.getCurrency())
+                .status("GENERATED")
+                .paymentMethod(paymentMessage.getPaymentMethod())
+                .processorReference(paymentMessage.getProcessorReference())
+                .createdAt(LocalDateTime.now())
+                .build();
+    }
+
+    private static PaymentMessage mapPayment(BillingMessage billingMessage) {
+        UUID paymentId = UUID.randomUUID();
+        Payment payment = Payment.builder()
+                .transactionId(billingMessage.getTransactionId())
+                .paymentId(paymentId)
+                .customerId(billingMessage.getCustomerId())
+                .productId(billingMessage.getProductId())
+                .amount(billingMessage.getAmount())
+                .currency(billingMessage.getCurrency())
+                .status("PROCESSED")
+                .paymentMethod(PAYMENT_METHODS[Math.abs(billingMessage.getCustomerId().hashCode() % PAYMENT_METHODS.length)])
+                .processorReference("REF-" + paymentId.toString().substring(0, 8))
+                .createdAt(LocalDateTime.now())
+                .build();
+
+        return PaymentMessage.builder()
+                .transactionId(billingMessage.getTransactionId())
+                .paymentId(paymentId)
+                .customerId(billingMessage.getCustomerId())
+                .productId(billingMessage.getProductId())
+                .amount(billingMessage.getAmount())
+                .currency(billingMessage.getCurrency())
+                .status("PROCESSED")
+                .paymentMethod(payment.getPaymentMethod())
+                .processorReference(payment.getProcessorReference())
+                .timestamp(LocalDateTime.now())
+                .messageType("PAYMENT_PROCESSED")
+                .build();
+    }
+}
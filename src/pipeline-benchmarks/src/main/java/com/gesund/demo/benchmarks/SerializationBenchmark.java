@@ -0,0 +1,167 @@
+package com.gesund.demo.benchmarks;
+
+import com.gesund.demo.billingservice.model.BillingMessage;
+import com.gesund.demo.paymentprocessor.model.PaymentMessage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.activemq.command.ActiveMQTextMessage;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.Serializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+import org.springframework.jms.support.converter.MessageConverter;
+import org.springframework.util.ReflectionUtils;
+
+import jakarta.jms.Session;
+import jakarta.jms.TextMessage;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson (de)serialization of the pipeline messages, using the converters exactly as the
+ * services' KafkaConfig, ActiveMQConfig and RabbitMQConfig build them. Serializers come
+ * from the producing service, deserializers from the consuming one.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerializationBenchmark {
+
+    private static final String BILLING_TOPIC = "billing-events";
+    private static final String PAYMENT_TOPIC = "payment-events";
+
+    private BillingMessage billingMessage;
+    private PaymentMessage paymentMessage;
+
+    private Serializer<Object> kafkaBillingSerializer;
+    private Deserializer<Object> kafkaBillingDeserializer;
+    private Serializer<Object> kafkaPaymentSerializer;
+    private Deserializer<Object> kafkaPaymentDeserializer;
+    private byte[] kafkaBillingBytes;
+    private byte[] kafkaPaymentBytes;
+
+    private MessageConverter jmsBillingConverter;
+    private MessageConverter jmsPaymentConverter;
+    private Session jmsSession;
+    private TextMessage jmsBillingMessage;
+
+    private org.springframework.amqp.support.converter.MessageConverter amqpBillingConverter;
+    private org.springframework.amqp.support.converter.MessageConverter amqpPaymentConverter;
+    private Message amqpBillingMessage;
+
+    @Setup
+    public void setUp() throws Exception {
+        billingMessage = Fixtures.billingMessage();
+        paymentMessage = Fixtures.paymentMessage();
+
+        // The consumer factories only register their Kafka client metrics with it
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        kafkaBillingSerializer = new JsonSerializer<>();
+        kafkaBillingSerializer.configure(kafkaConfig(new com.gesund.demo.billingservice.config.KafkaConfig())
+                .producerFactory().getConfigurationProperties(), false);
+        kafkaBillingDeserializer = new JsonDeserializer<>();
+        kafkaBillingDeserializer.configure(kafkaConfig(new com.gesund.demo.paymentprocessor.config.KafkaConfig(meterRegistry))
+                .consumerFactory().getConfigurationProperties(), false);
+        kafkaPaymentSerializer = new JsonSerializer<>();
+        kafkaPaymentSerializer.configure(kafkaConfig(new com.gesund.demo.paymentprocessor.config.KafkaConfig(meterRegistry))
+                .producerFactory().getConfigurationProperties(), false);
+        kafkaPaymentDeserializer = new JsonDeserializer<>();
+        kafkaPaymentDeserializer.configure(kafkaConfig(new com.gesund.demo.invoiceaggregator.config.KafkaConfig(meterRegistry))
+                .consumerFactory().getConfigurationProperties(), false);
+        kafkaBillingBytes = kafkaBillingSerializer.serialize(BILLING_TOPIC, new RecordHeaders(), billingMessage);
+        kafkaPaymentBytes = kafkaPaymentSerializer.serialize(PAYMENT_TOPIC, new RecordHeaders(), paymentMessage);
+
+        jmsBillingConverter = new com.gesund.demo.billingservice.config.ActiveMQConfig().jacksonJmsMessageConverter();
+        jmsPaymentConverter = new com.gesund.demo.paymentprocessor.config.ActiveMQConfig().jacksonJmsMessageConverter();
+        jmsSession = textMessageSession();
+        jmsBillingMessage = (TextMessage) jmsBillingConverter.toMessage(billingMessage, jmsSession);
+
+        amqpBillingConverter = new com.gesund.demo.billingservice.config.RabbitMQConfig().jsonMessageConverter();
+        amqpPaymentConverter = new com.gesund.demo.paymentprocessor.config.RabbitMQConfig().jsonMessageConverter();
+        amqpBillingMessage = amqpBillingConverter.toMessage(billingMessage, new MessageProperties());
+        // The listener adapter sets the @Payload parameter type before converting
+        amqpBillingMessage.getMessageProperties().setInferredArgumentType(
+                com.gesund.demo.paymentprocessor.model.BillingMessage.class);
+    }
+
+    @Benchmark
+    public byte[] kafkaSerializeBillingMessage() {
+        return kafkaBillingSerializer.serialize(BILLING_TOPIC, new RecordHeaders(), billingMessage);
+    }
+
+    @Benchmark
+    public Object kafkaDeserializeBillingMessage() {
+        return kafkaBillingDeserializer.deserialize(BILLING_TOPIC, new RecordHeaders(), kafkaBillingBytes);
+    }
+
+    @Benchmark
+    public byte[] kafkaSerializePaymentMessage() {
+        return kafkaPaymentSerializer.serialize(PAYMENT_TOPIC, new RecordHeaders(), paymentMessage);
+    }
+
+    @Benchmark
+    public Object kafkaDeserializePaymentMessage() {
+        return kafkaPaymentDeserializer.deserialize(PAYMENT_TOPIC, new RecordHeaders(), kafkaPaymentBytes);
+    }
+
+    @Benchmark
+    public jakarta.jms.Message jmsToMessage() throws Exception {
+        return jmsBillingConverter.toMessage(billingMessage, jmsSession);
+    }
+
+    @Benchmark
+    public Object jmsFromMessage() throws Exception {
+        return jmsPaymentConverter.fromMessage(jmsBillingMessage);
+    }
+
+    @Benchmark
+    public Message amqpToMessage() {
+        return amqpBillingConverter.toMessage(billingMessage, new MessageProperties());
+    }
+
+    @Benchmark
+    public Object amqpFromMessage() {
+        return amqpPaymentConverter.fromMessage(amqpBillingMessage);
+    }
+
+    private static <T> T kafkaConfig(T config) {
+        Fixtures.withField(config, "bootstrapServers", "localhost:9092");
+        if (ReflectionUtils.findField(config.getClass(), "applicationName") != null) {
+            Fixtures.withField(config, "applicationName", "pipeline-benchmarks");
+        }
+        return config;
+    }
+
+    /**
+     * The JMS converter only needs a session to create text messages; everything else
+     * would require a broker connection.
+     */
+    private static Session textMessageSession() {
+        return (Session) Proxy.newProxyInstance(Session.class.getClassLoader(), new Class<?>[] {Session.class},
+                (proxy, method, args) -> {
+                    if (!method.getName().equals("createTextMessage")) {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                    ActiveMQTextMessage message = new ActiveMQTextMessage();
+                    if (args != null && args.length == 1) {
+                        message.setText((String) args[0]);
+                    }
+                    return message;
+                });
+    }
+}
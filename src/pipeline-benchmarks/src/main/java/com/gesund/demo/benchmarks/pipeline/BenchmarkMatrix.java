@@ -0,0 +1,314 @@
+package com.gesund.demo.benchmarks.pipeline;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.env.SimpleCommandLinePropertySource;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.web.util.HtmlUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Runs the {@link PipelineHarness} workload for every messaging system under every
+ * {@link Instrumentation} (none, manual spans only, the Java agent only, both), and writes
+ * one comparative report (JSON and HTML) with the CPU, allocation and latency cost of each
+ * relative to the uninstrumented run of the same messaging system.
+ *
+ * Every cell of the matrix runs in a freshly forked JVM with the same JVM options, so
+ * tracing (which is JVM-wide), JIT state and heap from one cell cannot leak into the next,
+ * and the CPU and allocation figures belong to that cell alone.
+ *
+ * The agent runs with the -Dotel.* flags of payment-processor's entrypoint.sh (packaged by
+ * the build), so its cost is that of the configuration we deploy. Instrumented cells
+ * export to an {@link OtlpSink} in this JVM instead of Dynatrace.
+ *
+ * <pre>
+ * java -cp target/benchmarks.jar com.gesund.demo.benchmarks.pipeline.BenchmarkMatrix \
+ *     --systems=kafka,activemq,rabbitmq,inmemory --instrumentation=none,manual,agent,both --charges=10000 \
+ *     --jvm-args="-Xmx1g -XX:+UseG1GC" --agent-jar=target/agent/opentelemetry-javaagent.jar
+ * </pre>
+ */
+@Slf4j
+public class BenchmarkMatrix {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    // -Dotel.some.flag=value lines of entrypoint.sh; quoted values may contain spaces
+    private static final Pattern AGENT_FLAG = Pattern.compile("-D(otel\\.[\\w.-]+)=(\"[^\"]*\"|\\S+)");
+
+    public static void main(String[] args) throws Exception {
+        SimpleCommandLinePropertySource options = new SimpleCommandLinePropertySource(args);
+        List<String> systems = List.of(PipelineHarness.option(options, "systems", "kafka,activemq,rabbitmq,inmemory").split(","));
+        List<Instrumentation> instrumentations = Arrays.stream(
+                        PipelineHarness.option(options, "instrumentation", "none,manual,agent,both").split(","))
+                .map(Instrumentation::of)
+                .toList();
+        String jvmArgs = PipelineHarness.option(options, "jvm-args", "-Xmx1g");
+        Path agentJar = Path.of(PipelineHarness.option(options, "agent-jar", "target/agent/opentelemetry-javaagent.jar"));
+        Path outputDir = Path.of(PipelineHarness.option(options, "output", "pipeline-matrix"));
+        int charges = Integer.parseInt(PipelineHarness.option(options, "charges", "10000"));
+        int warmup = Integer.parseInt(PipelineHarness.option(options, "warmup", "1000"));
+        List<String> workload = List.of(
+                "--charges=" + charges,
+                "--warmup=" + warmup,
+                "--max-in-flight=" + PipelineHarness.option(options, "max-in-flight", "64"),
+                "--drain-timeout-seconds=" + PipelineHarness.option(options, "drain-timeout-seconds", "30"));
+        if (instrumentations.stream().anyMatch(Instrumentation::agent) && !Files.isRegularFile(agentJar)) {
+            throw new IllegalArgumentException("OpenTelemetry agent not found at " + agentJar.toAbsolutePath()
+                    + "; build the module with mvn package or pass --agent-jar");
+        }
+        Files.createDirectories(outputDir);
+
+        Instant startedAt = Instant.now();
+        List<Map<String, Object>> cells = new ArrayList<>();
+        try (OtlpSink sink = OtlpSink.start()) {
+            for (String system : systems) {
+                for (Instrumentation instrumentation : instrumentations) {
+                    List<String> cellJvmArgs = new ArrayList<>(splitArgs(jvmArgs));
+                    List<String> harnessArgs = new ArrayList<>(workload);
+                    harnessArgs.add("--instrumentation=" + instrumentation.label());
+                    if (instrumentation.agent()) {
+                        cellJvmArgs.addAll(agentArgs(agentJar, instrumentation, sink.getEndpoint()));
+                    } else if (instrumentation.manualSpans()) {
+                        harnessArgs.add("--otlp-endpoint=" + sink.getEndpoint());
+                    }
+
+                    sink.reset();
+                    Map<String, Object> cell = runCell(system, instrumentation, cellJvmArgs, harnessArgs, outputDir);
+                    // Includes the warmup charges and anything exported at shutdown
+                    cell.put("exportedTraceBytesPerCharge", sink.getTraceBytes() / (charges + warmup));
+                    cells.add(cell);
+                }
+            }
+        }
+        addOverhead(cells);
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("startedAt", startedAt.toString());
+        report.put("jvmArgs", jvmArgs);
+        report.put("agentJar", agentJar.toString());
+        report.put("workload", workload);
+        report.put("cells", cells);
+        Path json = outputDir.resolve("pipeline-matrix.json");
+        Path html = outputDir.resolve("pipeline-matrix.html");
+        Files.writeString(json, objectMapper.writer().with(SerializationFeature.INDENT_OUTPUT).writeValueAsString(report));
+        Files.writeString(html, toHtml(report, cells));
+        log.info("Benchmark matrix written to {} and {}", json.toAbsolutePath(), html.toAbsolutePath());
+    }
+
+    private static List<String> splitArgs(String args) {
+        return Arrays.stream(args.trim().split("\\s+")).filter(arg -> !arg.isEmpty()).toList();
+    }
+
+    /**
+     * JVM options that attach the agent the way entrypoint.sh does, with the deployment
+     * specific values (service name, Dynatrace endpoint and token) replaced.
+     */
+    private static List<String> agentArgs(Path agentJar, Instrumentation instrumentation, String otlpEndpoint)
+            throws IOException {
+        Map<String, String> flags = new LinkedHashMap<>();
+        String entrypoint = new ClassPathResource("payment-processor/entrypoint.sh")
+                .getContentAsString(StandardCharsets.UTF_8);
+        Matcher matcher = AGENT_FLAG.matcher(entrypoint);
+        while (matcher.find()) {
+            flags.put(matcher.group(1), matcher.group(2).replace("\"", ""));
+        }
+        if (flags.isEmpty()) {
+            throw new IllegalStateException("No -Dotel.* flags found in entrypoint.sh");
+        }
+        flags.put("otel.service.name", "pipeline-harness");
+        flags.put("otel.exporter.otlp.endpoint", otlpEndpoint);
+        flags.remove("otel.exporter.otlp.headers");
+        // The harness's own load generator is not part of the services' cost
+        flags.put("otel.instrumentation.java-http-client.enabled", "false");
+        if (!instrumentation.manualSpans()) {
+            // Without the bridge, GlobalOpenTelemetry in the services stays a no-op
+            flags.put("otel.instrumentation.opentelemetry-api.enabled", "false");
+        }
+
+        List<String> args = new ArrayList<>();
+        args.add("-javaagent:" + agentJar.toAbsolutePath());
+        flags.forEach((key, value) -> args.add("-D" + key + "=" + value));
+        return args;
+    }
+
+    private static Map<String, Object> runCell(String system, Instrumentation instrumentation, List<String> jvmArgs,
+                                               List<String> harnessArgs, Path outputDir) throws Exception {
+        String name = system + "-" + instrumentation.label();
+        Path cellReport = outputDir.resolve(name + ".json");
+        Path cellLog = outputDir.resolve(name + ".log");
+        Files.deleteIfExists(cellReport);
+
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(jvmArgs);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(PipelineHarness.class.getName());
+        command.add("--systems=" + system);
+        command.addAll(harnessArgs);
+        command.add("--report=" + cellReport);
+
+        log.info("Running {} (log: {})", name, cellLog);
+        Process process = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(cellLog.toFile())
+                .start();
+        int exitCode = process.waitFor();
+        if (exitCode != 0 || !Files.exists(cellReport)) {
+            log.error("{} failed with exit code {}, see {}", name, exitCode, cellLog);
+            Map<String, Object> failed = new LinkedHashMap<>();
+            failed.put("messagingSystem", system);
+            failed.put("instrumentation", instrumentation.label());
+            failed.put("error", "exit code " + exitCode + ", see " + cellLog.getFileName());
+            return failed;
+        }
+
+        Map<String, Object> harnessReport = objectMapper.readValue(cellReport.toFile(), new TypeReference<>() {
+        });
+        @SuppressWarnings("unchecked")
+        List<Map<String, Object>> runs = (List<Map<String, Object>>) harnessReport.get("runs");
+        log.info("{}: {}/s, {} lost", name, runs.get(0).get("throughputPerSecond"), runs.get(0).get("lost"));
+        return runs.get(0);
+    }
+
+    /**
+     * Adds each cell's CPU, allocation and end-to-end latency cost over the uninstrumented
+     * cell of the same messaging system, if both succeeded.
+     */
+    @SuppressWarnings("unchecked")
+    private static void addOverhead(List<Map<String, Object>> cells) {
+        Map<Object, Map<String, Object>> baselines = new LinkedHashMap<>();
+        for (Map<String, Object> cell : cells) {
+            if (Instrumentation.NONE.label().equals(cell.get("instrumentation")) && !cell.containsKey("error")) {
+                baselines.put(cell.get("messagingSystem"), cell);
+            }
+        }
+        for (Map<String, Object> cell : cells) {
+            Map<String, Object> baseline = baselines.get(cell.get("messagingSystem"));
+            if (baseline == null || cell.containsKey("error")) {
+                continue;
+            }
+            Map<String, Object> endToEnd = (Map<String, Object>) ((Map<String, Object>)
+                    ((Map<String, Object>) cell.get("latency")).get("hops")).get("end-to-end");
+            Map<String, Object> baselineEndToEnd = (Map<String, Object>) ((Map<String, Object>)
+                    ((Map<String, Object>) baseline.get("latency")).get("hops")).get("end-to-end");
+
+            Map<String, Object> overhead = new LinkedHashMap<>();
+            overhead.put("cpuMicrosPerMessage", round(difference(cell, baseline, "cpuMicrosPerMessage")));
+            overhead.put("allocatedBytesPerMessage", Math.round(difference(cell, baseline, "allocatedBytesPerMessage")));
+            overhead.put("endToEndP50Micros", Math.round(difference(endToEnd, baselineEndToEnd, "p50")));
+            overhead.put("endToEndP99Micros", Math.round(difference(endToEnd, baselineEndToEnd, "p99")));
+            overhead.put("throughputRatio", round(((Number) cell.get("throughputPerSecond")).doubleValue()
+                    / ((Number) baseline.get("throughputPerSecond")).doubleValue()));
+            cell.put("overheadVsNone", overhead);
+        }
+    }
+
+    private static double difference(Map<String, Object> cell, Map<String, Object> baseline, String key) {
+        return ((Number) cell.get(key)).doubleValue() - ((Number) baseline.get(key)).doubleValue();
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static String toHtml(Map<String, Object> report, List<Map<String, Object>> cells) {
+        // Hop columns in pipeline order, as reported by invoice-aggregator
+        Set<String> hops = new LinkedHashSet<>();
+        for (Map<String, Object> cell : cells) {
+            Map<String, Object> latency = (Map<String, Object>) cell.get("latency");
+            if (latency != null) {
+                hops.addAll(((Map<String, Object>) latency.get("hops")).keySet());
+            }
+        }
+
+        StringBuilder html = new StringBuilder();
+        html.append("<!DOCTYPE html>\n<html><head><meta charset=\"utf-8\"><title>Pipeline benchmark matrix</title>\n")
+                .append("<style>body{font-family:sans-serif}table{border-collapse:collapse}")
+                .append("th,td{border:1px solid #ccc;padding:4px 8px;text-align:right}")
+                .append("th{background:#eee}td.name{text-align:left}</style></head><body>\n")
+                .append("<h1>Pipeline benchmark matrix</h1>\n<p>Started ")
+                .append(HtmlUtils.htmlEscape(String.valueOf(report.get("startedAt"))))
+                .append(", JVM options <code>").append(HtmlUtils.htmlEscape(String.valueOf(report.get("jvmArgs"))))
+                .append("</code>, workload <code>").append(HtmlUtils.htmlEscape(String.join(" ", (List<String>) report.get("workload"))))
+                .append("</code>. Latencies in milliseconds (p50 / p99); CPU and allocation per invoiced message, ")
+                .append("for the whole JVM including the load generator. Costs (+) are relative to the run without ")
+                .append("instrumentation of the same messaging system.</p>\n<table>\n<tr><th>Messaging system</th>")
+                .append("<th>Instrumentation</th><th>Throughput (msg/s)</th><th>Lost</th><th>CPU (&micro;s/msg)</th>")
+                .append("<th>+CPU (&micro;s/msg)</th><th>Allocation (KB/msg)</th><th>+Allocation (KB/msg)</th>")
+                .append("<th>+End-to-end p50 / p99 (ms)</th><th>Spans/msg</th><th>OTLP traces (B/charge)</th>");
+        for (String hop : hops) {
+            html.append("<th>").append(HtmlUtils.htmlEscape(hop)).append("</th>");
+        }
+        html.append("</tr>\n");
+
+        for (Map<String, Object> cell : cells) {
+            html.append("<tr><td class=\"name\">").append(HtmlUtils.htmlEscape(String.valueOf(cell.get("messagingSystem"))))
+                    .append("</td><td class=\"name\">").append(HtmlUtils.htmlEscape(String.valueOf(cell.get("instrumentation"))))
+                    .append("</td>");
+            if (cell.containsKey("error")) {
+                html.append("<td class=\"name\" colspan=\"").append(9 + hops.size()).append("\">Failed: ")
+                        .append(HtmlUtils.htmlEscape(String.valueOf(cell.get("error")))).append("</td></tr>\n");
+                continue;
+            }
+            Map<String, Object> overhead = (Map<String, Object>) cell.get("overheadVsNone");
+            html.append("<td>").append(cell.get("throughputPerSecond")).append("</td>")
+                    .append("<td>").append(cell.get("lost")).append(" (").append(percent(cell.get("lossRate"))).append(")</td>")
+                    .append("<td>").append(cell.get("cpuMicrosPerMessage")).append("</td>")
+                    .append("<td>").append(overhead != null ? overhead.get("cpuMicrosPerMessage") : "&ndash;").append("</td>")
+                    .append("<td>").append(kilobytes(cell.get("allocatedBytesPerMessage"))).append("</td>")
+                    .append("<td>").append(overhead != null ? kilobytes(overhead.get("allocatedBytesPerMessage")) : "&ndash;")
+                    .append("</td><td>");
+            if (overhead != null) {
+                html.append(millis(overhead.get("endToEndP50Micros"))).append(" / ").append(millis(overhead.get("endToEndP99Micros")));
+            } else {
+                html.append("&ndash;");
+            }
+            html.append("</td><td>").append(cell.get("spansPerMessage") != null ? cell.get("spansPerMessage") : "&ndash;")
+                    .append("</td><td>").append(cell.get("exportedTraceBytesPerCharge")).append("</td>");
+            Map<String, Object> cellHops = (Map<String, Object>) ((Map<String, Object>) cell.get("latency")).get("hops");
+            for (String hop : hops) {
+                Map<String, Object> stats = (Map<String, Object>) cellHops.get(hop);
+                html.append("<td>");
+                if (stats != null && ((Number) stats.get("count")).longValue() > 0) {
+                    html.append(millis(stats.get("p50"))).append(" / ").append(millis(stats.get("p99")));
+                } else {
+                    html.append("&ndash;");
+                }
+                html.append("</td>");
+            }
+            html.append("</tr>\n");
+        }
+        html.append("</table>\n</body></html>\n");
+        return html.toString();
+    }
+
+    private static String millis(Object micros) {
+        return String.format("%.1f", ((Number) micros).doubleValue() / 1000);
+    }
+
+    private static String kilobytes(Object bytes) {
+        return String.format("%.1f", ((Number) bytes).doubleValue() / 1024);
+    }
+
+    private static String percent(Object rate) {
+        return String.format("%.1f%%", ((Number) rate).doubleValue() * 100);
+    }
+}
@@ -0,0 +1,133 @@
+package com.gesund.demo.benchmarks.pipeline;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.broker.TransportConnector;
+import org.apache.qpid.server.SystemLauncher;
+import org.apache.qpid.server.model.SystemConfig;
+import org.springframework.kafka.test.EmbeddedKafkaKraftBroker;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * An in-process stand-in for the broker of one messaging system, together with the
+ * properties that point the services at it.
+ *
+ * kafka runs a single-node KRaft cluster from spring-kafka-test, activemq a non-persistent
+ * ActiveMQ Classic broker, and rabbitmq a Qpid Broker-J with an in-memory virtual host,
+ * which speaks the same AMQP 0-9-1 as RabbitMQ. All of them listen on loopback TCP ports,
+ * so messages are still marshalled and sent over a socket as in a deployment. inmemory
+ * needs no broker at all (see PipelineRun), which makes it the baseline the others are
+ * measured against.
+ */
+@Slf4j
+final class EmbeddedBroker implements AutoCloseable {
+
+    static final String BILLING_TOPIC = "billing-events";
+    static final String PAYMENT_TOPIC = "payment-events";
+    static final int PARTITIONS = 3;
+
+    private final String messagingSystem;
+    private final Map<String, String> properties;
+    private final AutoCloseable shutdown;
+
+    private EmbeddedBroker(String messagingSystem, Map<String, String> properties, AutoCloseable shutdown) {
+        this.messagingSystem = messagingSystem;
+        this.properties = properties;
+        this.shutdown = shutdown;
+    }
+
+    static EmbeddedBroker start(String messagingSystem) throws Exception {
+        return switch (messagingSystem) {
+            case "kafka" -> startKafka();
+            case "activemq" -> startActiveMQ();
+            case "rabbitmq" -> startRabbitMQ();
+            case "inmemory" -> new EmbeddedBroker("inmemory", Map.of(), () -> { });
+            default -> throw new IllegalArgumentException("Unknown messaging system: " + messagingSystem);
+        };
+    }
+
+    /**
+     * Returns the properties the services need to reach this broker.
+     */
+    Map<String, String> getProperties() {
+        return properties;
+    }
+
+    private static EmbeddedBroker startKafka() {
+        // Topics are created up front so consumers can be assigned before the first message
+        EmbeddedKafkaKraftBroker kafka = new EmbeddedKafkaKraftBroker(1, PARTITIONS, BILLING_TOPIC, PAYMENT_TOPIC);
+        kafka.afterPropertiesSet();
+
+        Map<String, String> properties = new LinkedHashMap<>();
+        properties.put("spring.kafka.bootstrap-servers", kafka.getBrokersAsString());
+        log.info("Embedded Kafka started on {}", kafka.getBrokersAsString());
+        return new EmbeddedBroker("kafka", properties, kafka::destroy);
+    }
+
+    private static EmbeddedBroker startActiveMQ() throws Exception {
+        BrokerService broker = new BrokerService();
+        broker.setBrokerName("pipeline-harness");
+        broker.setPersistent(false);
+        broker.setUseJmx(false);
+        broker.setUseShutdownHook(false);
+        TransportConnector connector = broker.addConnector("tcp://127.0.0.1:0");
+        broker.start();
+        broker.waitUntilStarted();
+
+        String url = connector.getConnectUri().toString();
+        Map<String, String> properties = new LinkedHashMap<>();
+        properties.put("spring.activemq.broker-url", url);
+        log.info("Embedded ActiveMQ started on {}", url);
+        return new EmbeddedBroker("activemq", properties, () -> {
+            broker.stop();
+            broker.waitUntilStopped();
+        });
+    }
+
+    private static EmbeddedBroker startRabbitMQ() throws Exception {
+        int port = freePort();
+        Path workDir = Files.createTempDirectory("qpid-broker");
+        Map<String, Object> attributes = new HashMap<>();
+        attributes.put(SystemConfig.TYPE, "Memory");
+        attributes.put(SystemConfig.INITIAL_CONFIGURATION_LOCATION,
+                EmbeddedBroker.class.getResource("/qpid-broker.json").toExternalForm());
+        attributes.put(SystemConfig.STARTUP_LOGGED_TO_SYSTEM_OUT, false);
+        attributes.put(SystemConfig.CONTEXT, Map.of(
+                "qpid.amqp_port", String.valueOf(port),
+                "qpid.work_dir", workDir.toString()));
+        SystemLauncher launcher = new SystemLauncher();
+        launcher.startup(attributes);
+
+        // billing-service uses Spring Boot's RabbitMQ auto-configuration, the consumers their own settings
+        Map<String, String> properties = new LinkedHashMap<>();
+        properties.put("spring.rabbitmq.host", "127.0.0.1");
+        properties.put("spring.rabbitmq.port", String.valueOf(port));
+        properties.put("rabbitmq.host", "127.0.0.1");
+        properties.put("rabbitmq.port", String.valueOf(port));
+        log.info("Embedded AMQP 0-9-1 broker (Qpid) started on port {}", port);
+        return new EmbeddedBroker("rabbitmq", properties, () -> {
+            launcher.shutdown();
+            FileSystemUtils.deleteRecursively(workDir);
+        });
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
+        shutdown.close();
+        log.info("Embedded {} broker stopped", messagingSystem);
+    }
+}
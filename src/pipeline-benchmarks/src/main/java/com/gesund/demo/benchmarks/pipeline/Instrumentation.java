@@ -0,0 +1,53 @@
+package com.gesund.demo.benchmarks.pipeline;
+
+import java.util.Locale;
+
+/**
+ * How a harness JVM is instrumented.
+ *
+ * The services' manual spans (process-payment, save-payment, send-payment-message, ...)
+ * go through GlobalOpenTelemetry and are no-ops unless an SDK is registered. The Java
+ * agent registers one and also instruments the broker clients, JDBC and Tomcat on its
+ * own, so "agent" switches off the agent's bridge to the application's OpenTelemetry API
+ * to keep the manual spans out of it.
+ */
+enum Instrumentation {
+
+    /** No agent, no SDK: the manual spans are no-ops. */
+    NONE(false, false),
+    /** The manual spans are recorded by an in-process SDK (see {@link Telemetry}). */
+    MANUAL(true, false),
+    /** The Java agent with the flags from entrypoint.sh; the manual spans stay no-ops. */
+    AGENT(false, true),
+    /** The Java agent as deployed, which also records the manual spans. */
+    BOTH(true, true);
+
+    private final boolean manualSpans;
+    private final boolean agent;
+
+    Instrumentation(boolean manualSpans, boolean agent) {
+        this.manualSpans = manualSpans;
+        this.agent = agent;
+    }
+
+    boolean manualSpans() {
+        return manualSpans;
+    }
+
+    boolean agent() {
+        return agent;
+    }
+
+    String label() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+
+    static Instrumentation of(String label) {
+        try {
+            return valueOf(label.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown instrumentation '" + label
+                    + "', expected one of none, manual, agent, both");
+        }
+    }
+}
@@ -0,0 +1,312 @@
+package com.gesund.demo.benchmarks.pipeline;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.Histogram;
+import org.flywaydb.core.Flyway;
+import org.springframework.core.env.SimpleCommandLinePropertySource;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Lookup latency of the invoice finder methods before and after the V3 lookup indexes.
+ *
+ * For every table size, migrates a fresh schema to V2 with invoice-aggregator's own Flyway
+ * scripts, spreads the rows over --days daily partitions in created_at order (as the
+ * services write them), times a few lookups per finder without indexes, applies V3 and
+ * times --lookups lookups per finder with them. The billing_record and payment indexes
+ * follow the same pattern, so invoice stands in for all three tables.
+ *
+ * <pre>
+ * java -cp target/benchmarks.jar com.gesund.demo.benchmarks.pipeline.LookupLatencyHarness \
+ *     --rows=10000000,100000000,1000000000 --days=30 --lookups=10000 --unindexed-lookups=20
+ * </pre>
+ *
+ * Runs against an embedded PostgreSQL unless --jdbc-url (with --user and --password) names
+ * a server; a billion rows take roughly 250 GB including the indexes, more than the
+ * embedded server's temp directory usually has. Each size gets its own schema, which is
+ * dropped afterwards unless --keep is given.
+ */
+@Slf4j
+public class LookupLatencyHarness {
+
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(30);
+    private static final int LOAD_CHUNK = 1_000_000;
+    private static final DateTimeFormatter SUFFIX_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd");
+    private static final Pattern SCAN_NODE = Pattern.compile("(Index Only Scan|Index Scan|Bitmap Heap Scan|Seq Scan)");
+
+    // Finder -> the column it filters on; the SQL matches what Spring Data derives
+    private static final Map<String, String> FINDERS = new LinkedHashMap<>();
+
+    static {
+        FINDERS.put("findByInvoiceId", "invoice_id");
+        FINDERS.put("findByTransactionId", "transaction_id");
+        FINDERS.put("findByPaymentId", "payment_id");
+    }
+
+    private static final String SELECT_SQL = "SELECT id, invoice_id, transaction_id, payment_id, customer_id, "
+            + "product_id, amount, currency, status, payment_method, processor_reference, created_at, updated_at "
+            + "FROM invoice WHERE %s = ?";
+
+    public static void main(String[] args) {
+        try {
+            run(args);
+            System.exit(0);
+        } catch (Exception e) {
+            log.error("Lookup harness failed: {}", e.getMessage(), e);
+            System.exit(1);
+        }
+    }
+
+    private static void run(String[] args) throws Exception {
+        SimpleCommandLinePropertySource options = new SimpleCommandLinePropertySource(args);
+        List<Long> sizes = new ArrayList<>();
+        for (String size : PipelineHarness.option(options, "rows", "10000000,100000000,1000000000").split(",")) {
+            sizes.add(Long.parseLong(size.trim()));
+        }
+        int days = Integer.parseInt(PipelineHarness.option(options, "days", "30"));
+        int lookups = Integer.parseInt(PipelineHarness.option(options, "lookups", "10000"));
+        int unindexedLookups = Integer.parseInt(PipelineHarness.option(options, "unindexed-lookups", "20"));
+        boolean keep = options.containsProperty("keep");
+        Path reportFile = Path.of(PipelineHarness.option(options, "report", "lookup-latency.json"));
+
+        Instant startedAt = Instant.now();
+        List<Map<String, Object>> results = new ArrayList<>();
+        String jdbcUrl = options.getProperty("jdbc-url");
+        if (jdbcUrl != null) {
+            String user = PipelineHarness.option(options, "user", "postgres");
+            String password = PipelineHarness.option(options, "password", "postgres");
+            for (long rows : sizes) {
+                results.add(measure(jdbcUrl, user, password, rows, days, lookups, unindexedLookups, keep));
+            }
+        } else {
+            try (EmbeddedPostgres postgres = EmbeddedPostgres.builder().start()) {
+                for (long rows : sizes) {
+                    results.add(measure(postgres.getJdbcUrl("postgres", "postgres"), "postgres", "postgres",
+                            rows, days, lookups, unindexedLookups, keep));
+                }
+            }
+        }
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("startedAt", startedAt.toString());
+        report.put("unit", "microseconds");
+        report.put("days", days);
+        report.put("lookups", lookups);
+        report.put("unindexedLookups", unindexedLookups);
+        report.put("sizes", results);
+        String json = new ObjectMapper().writer().with(SerializationFeature.INDENT_OUTPUT).writeValueAsString(report);
+        Files.writeString(reportFile, json);
+        log.info("Lookup report written to {}:\n{}", reportFile.toAbsolutePath(), json);
+    }
+
+    private static Map<String, Object> measure(String jdbcUrl, String user, String password, long rows, int days,
+                                               int lookups, int unindexedLookups, boolean keep) throws SQLException {
+        String schema = "lookup_" + rows;
+        Flyway flyway = Flyway.configure()
+                .dataSource(jdbcUrl, user, password)
+                .schemas(schema)
+                .locations("classpath:db/migration/invoice")
+                .table("flyway_schema_history_invoice")
+                .target("2")
+                .load();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("rows", rows);
+
+        try (Connection connection = DriverManager.getConnection(jdbcUrl, user, password)) {
+            execute(connection, "DROP SCHEMA IF EXISTS " + schema + " CASCADE");
+            flyway.migrate();
+            execute(connection, "SET search_path TO " + schema);
+
+            long started = System.nanoTime();
+            load(connection, rows, days);
+            result.put("loadSeconds", seconds(started));
+            log.info("Loaded {} invoices into {} partitions in {} s", rows, days, result.get("loadSeconds"));
+
+            Map<String, List<UUID>> keys = sampleKeys(connection, rows, Math.max(lookups, unindexedLookups));
+            Map<String, Object> finders = new LinkedHashMap<>();
+            for (String finder : FINDERS.keySet()) {
+                finders.put(finder, new LinkedHashMap<String, Object>());
+            }
+            if (unindexedLookups > 0) {
+                time(connection, keys, unindexedLookups, 0, "unindexed", finders);
+            }
+
+            started = System.nanoTime();
+            Flyway.configure().configuration(flyway.getConfiguration()).target("3").load().migrate();
+            result.put("indexBuildSeconds", seconds(started));
+            log.info("Built lookup indexes over {} invoices in {} s", rows, result.get("indexBuildSeconds"));
+
+            time(connection, keys, lookups, lookups / 10, "indexed", finders);
+            result.put("tableBytes", relationBytes(connection, "invoice"));
+            result.put("indexBytes", indexBytes(connection));
+            result.put("finders", finders);
+        } finally {
+            if (!keep) {
+                try (Connection connection = DriverManager.getConnection(jdbcUrl, user, password)) {
+                    execute(connection, "DROP SCHEMA IF EXISTS " + schema + " CASCADE");
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Fills daily partitions ending today. Rows are generated server-side in chunks, with
+     * created_at increasing like the services' inserts.
+     */
+    private static void load(Connection connection, long rows, int days) throws SQLException {
+        LocalDate first = LocalDate.now().minusDays(days - 1L);
+        for (int day = 0; day < days; day++) {
+            LocalDate from = first.plusDays(day);
+            execute(connection, "CREATE TABLE invoice_p" + SUFFIX_FORMAT.format(from) + " PARTITION OF invoice"
+                    + " FOR VALUES FROM ('" + from + "') TO ('" + from.plusDays(1) + "')");
+        }
+
+        String insert = "INSERT INTO invoice (invoice_id, transaction_id, payment_id, customer_id, product_id, amount, "
+                + "currency, status, payment_method, processor_reference, created_at, updated_at) "
+                + "SELECT gen_random_uuid(), gen_random_uuid(), gen_random_uuid(), 'customer-' || (g % 10000), "
+                + "'product-' || (g % 100), (g % 100000) / 100.0, 'EUR', 'PAID', 'CREDIT_CARD', 'ref-' || g, "
+                + "ts, ts FROM (SELECT g, ?::timestamp + (g::float8 / ?) * ? * interval '1 day' AS ts "
+                + "FROM generate_series(?::bigint, ?::bigint) g) s";
+        try (PreparedStatement statement = connection.prepareStatement(insert)) {
+            for (long from = 0; from < rows; from += LOAD_CHUNK) {
+                statement.setObject(1, first.atStartOfDay());
+                statement.setLong(2, rows);
+                statement.setInt(3, days);
+                statement.setLong(4, from);
+                statement.setLong(5, Math.min(from + LOAD_CHUNK, rows) - 1);
+                statement.executeUpdate();
+                if ((from / LOAD_CHUNK) % 50 == 49) {
+                    log.info("Loaded {} of {} invoices", from + LOAD_CHUNK, rows);
+                }
+            }
+        }
+        execute(connection, "ANALYZE invoice");
+    }
+
+    /**
+     * Picks existing keys spread over the whole table, so lookups hit every partition.
+     */
+    private static Map<String, List<UUID>> sampleKeys(Connection connection, long rows, int count) throws SQLException {
+        double percent = Math.min(100.0, 200.0 * count / rows);
+        Map<String, List<UUID>> keys = new LinkedHashMap<>();
+        FINDERS.keySet().forEach(finder -> keys.put(finder, new ArrayList<>(count)));
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT invoice_id, transaction_id, payment_id FROM invoice "
+                     + "TABLESAMPLE BERNOULLI (" + percent + ") ORDER BY random() LIMIT " + count)) {
+            while (resultSet.next()) {
+                int column = 1;
+                for (List<UUID> values : keys.values()) {
+                    values.add(resultSet.getObject(column++, UUID.class));
+                }
+            }
+        }
+        return keys;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void time(Connection connection, Map<String, List<UUID>> keys, int lookups, int warmup,
+                             String phase, Map<String, Object> finders) throws SQLException {
+        for (Map.Entry<String, String> finder : FINDERS.entrySet()) {
+            List<UUID> values = keys.get(finder.getKey());
+            Histogram histogram = new Histogram(HIGHEST_TRACKABLE_MICROS, 3);
+            try (PreparedStatement statement = connection.prepareStatement(String.format(SELECT_SQL, finder.getValue()))) {
+                for (int i = 0; i < warmup + lookups; i++) {
+                    statement.setObject(1, values.get(i % values.size()));
+                    long started = System.nanoTime();
+                    try (ResultSet resultSet = statement.executeQuery()) {
+                        if (!resultSet.next()) {
+                            throw new IllegalStateException(finder.getKey() + " found no row for a sampled key");
+                        }
+                    }
+                    if (i >= warmup) {
+                        histogram.recordValue(Math.min(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - started),
+                                HIGHEST_TRACKABLE_MICROS));
+                    }
+                }
+            }
+
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("plan", plan(connection, finder.getValue(), values.get(0)));
+            stats.put("count", histogram.getTotalCount());
+            stats.put("p50", histogram.getValueAtPercentile(50));
+            stats.put("p99", histogram.getValueAtPercentile(99));
+            stats.put("max", histogram.getMaxValue());
+            ((Map<String, Object>) finders.get(finder.getKey())).put(phase, stats);
+            log.info("{} {}: p50={} us p99={} us", finder.getKey(), phase, stats.get("p50"), stats.get("p99"));
+        }
+    }
+
+    /**
+     * Returns the distinct scan nodes of the lookup's plan, e.g. [Index Scan].
+     */
+    private static String plan(Connection connection, String column, UUID key) throws SQLException {
+        TreeSet<String> nodes = new TreeSet<>();
+        try (PreparedStatement statement = connection.prepareStatement(
+                "EXPLAIN " + String.format(SELECT_SQL, column))) {
+            statement.setObject(1, key);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    Matcher matcher = SCAN_NODE.matcher(resultSet.getString(1));
+                    if (matcher.find()) {
+                        nodes.add(matcher.group(1));
+                    }
+                }
+            }
+        }
+        return nodes.toString();
+    }
+
+    private static Map<String, Object> indexBytes(Connection connection) throws SQLException {
+        Map<String, Object> sizes = new LinkedHashMap<>();
+        for (String index : List.of("invoice_invoice_id", "invoice_transaction_id", "invoice_payment_id")) {
+            sizes.put(index, relationBytes(connection, index));
+        }
+        return sizes;
+    }
+
+    /**
+     * Sums the size of a partitioned table or index over all of its partitions.
+     */
+    private static long relationBytes(Connection connection, String relation) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT coalesce(sum(pg_relation_size(relid)), 0) "
+                     + "FROM pg_partition_tree('" + relation + "')")) {
+            resultSet.next();
+            return resultSet.getLong(1);
+        }
+    }
+
+    private static void execute(Connection connection, String sql) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+    private static double seconds(long startedNanos) {
+        return Math.round(Duration.ofNanos(System.nanoTime() - startedNanos).toMillis() / 100.0) / 10.0;
+    }
+}
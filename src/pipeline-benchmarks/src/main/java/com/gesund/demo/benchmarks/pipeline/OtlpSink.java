@@ -0,0 +1,85 @@
+package com.gesund.demo.benchmarks.pipeline;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * OTLP/HTTP endpoint that accepts every export and discards it, counting what arrived.
+ *
+ * Instrumented harness JVMs export to it the way the services export to Dynatrace, so
+ * their figures include serializing and sending the telemetry, while the sink itself runs
+ * in the matrix JVM and costs the measured one nothing.
+ */
+final class OtlpSink implements AutoCloseable {
+
+    private static final String TRACES_PATH = "/v1/traces";
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+    private final LongAdder traceRequests = new LongAdder();
+    private final LongAdder traceBytes = new LongAdder();
+
+    private OtlpSink(HttpServer server) {
+        this.server = server;
+    }
+
+    static OtlpSink start() throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        OtlpSink sink = new OtlpSink(server);
+        server.createContext("/", sink::handle);
+        server.setExecutor(sink.executor);
+        server.start();
+        return sink;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        long bytes = 0;
+        try (InputStream body = exchange.getRequestBody()) {
+            byte[] buffer = new byte[8192];
+            for (int read = body.read(buffer); read >= 0; read = body.read(buffer)) {
+                bytes += read;
+            }
+        }
+        if (TRACES_PATH.equals(exchange.getRequestURI().getPath())) {
+            traceRequests.increment();
+            traceBytes.add(bytes);
+        }
+        // An empty body is a valid, empty Export*ServiceResponse in protobuf
+        exchange.getResponseHeaders().add("Content-Type", "application/x-protobuf");
+        exchange.sendResponseHeaders(200, -1);
+        exchange.close();
+    }
+
+    /**
+     * Base URL for otel.exporter.otlp.endpoint; signals are posted to /v1/traces, /v1/metrics and /v1/logs.
+     */
+    String getEndpoint() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    long getTraceRequests() {
+        return traceRequests.sum();
+    }
+
+    long getTraceBytes() {
+        return traceBytes.sum();
+    }
+
+    void reset() {
+        traceRequests.reset();
+        traceBytes.reset();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,121 @@
+package com.gesund.demo.benchmarks.pipeline;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.env.SimpleCommandLinePropertySource;
+
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Offline full-pipeline throughput harness.
+ *
+ * For every messaging system, starts an embedded broker, runs billing-service,
+ * payment-processor and invoice-aggregator in this JVM against it and an embedded
+ * PostgreSQL, pushes charges through billing-service's REST API and waits for the
+ * invoices. Reports end-to-end throughput, the per-hop latency percentiles recorded by
+ * invoice-aggregator, and how many accepted charges never became an invoice.
+ *
+ * <pre>
+ * java -cp target/benchmarks.jar com.gesund.demo.benchmarks.pipeline.PipelineHarness \
+ *     --systems=kafka,activemq,rabbitmq,inmemory --charges=10000 --warmup=1000 --max-in-flight=64 --instrumentation=none
+ * </pre>
+ *
+ * With --instrumentation=manual the services' spans are recorded by an OpenTelemetry SDK
+ * (see {@link Telemetry}), exported to --otlp-endpoint if one is given. agent and both
+ * expect the JVM to have been started with the Java agent; the harness only checks that
+ * it was. Tracing is JVM-wide, so runs that compare it should use {@link BenchmarkMatrix},
+ * which forks one JVM per configuration.
+ *
+ * payment-processor fails about 5% of payments on purpose; how many of those are lost
+ * depends on each broker's redelivery behaviour and is part of what the report shows.
+ */
+@Slf4j
+public class PipelineHarness {
+
+    public static void main(String[] args) {
+        // Broker and client threads of the closed contexts are not all daemons, so exit explicitly
+        try {
+            run(args);
+            System.exit(0);
+        } catch (Exception e) {
+            log.error("Pipeline harness failed: {}", e.getMessage(), e);
+            System.exit(1);
+        }
+    }
+
+    private static void run(String[] args) throws Exception {
+        SimpleCommandLinePropertySource options = new SimpleCommandLinePropertySource(args);
+        List<String> systems = List.of(option(options, "systems", "kafka,activemq,rabbitmq,inmemory").split(","));
+        int charges = Integer.parseInt(option(options, "charges", "10000"));
+        int warmup = Integer.parseInt(option(options, "warmup", "1000"));
+        int maxInFlight = Integer.parseInt(option(options, "max-in-flight", "64"));
+        Duration drainTimeout = Duration.ofSeconds(Long.parseLong(option(options, "drain-timeout-seconds", "30")));
+        Path reportFile = Path.of(option(options, "report", "pipeline-harness.json"));
+        Instrumentation instrumentation = Instrumentation.of(option(options, "instrumentation", "none"));
+        if (instrumentation == Instrumentation.MANUAL) {
+            Telemetry.install(options.getProperty("otlp-endpoint"));
+        }
+        verify(instrumentation);
+
+        Instant startedAt = Instant.now();
+        List<Map<String, Object>> results = new ArrayList<>();
+        try (EmbeddedPostgres postgres = EmbeddedPostgres.builder().start()) {
+            for (String system : systems) {
+                String database = "pipeline_" + system;
+                try (Connection connection = postgres.getPostgresDatabase().getConnection();
+                     Statement statement = connection.createStatement()) {
+                    statement.execute("CREATE DATABASE " + database);
+                }
+                String jdbcUrl = postgres.getJdbcUrl("postgres", database);
+
+                try (EmbeddedBroker broker = EmbeddedBroker.start(system);
+                     PipelineRun run = PipelineRun.start(system, instrumentation, jdbcUrl, broker.getProperties())) {
+                    results.add(run.measure(charges, warmup, maxInFlight, drainTimeout));
+                }
+            }
+        }
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("startedAt", startedAt.toString());
+        report.put("instrumentation", instrumentation.label());
+        report.put("charges", charges);
+        report.put("warmup", warmup);
+        report.put("maxInFlight", maxInFlight);
+        report.put("runs", results);
+        String json = new ObjectMapper().writer().with(SerializationFeature.INDENT_OUTPUT).writeValueAsString(report);
+        Files.writeString(reportFile, json);
+        log.info("Pipeline report written to {}:\n{}", reportFile.toAbsolutePath(), json);
+    }
+
+    /**
+     * Fails fast when the JVM is not instrumented the way the report will say it was, e.g.
+     * when the agent is missing or still bridges the manual spans.
+     */
+    private static void verify(Instrumentation instrumentation) {
+        boolean agentAttached = ManagementFactory.getRuntimeMXBean().getInputArguments().stream()
+                .anyMatch(arg -> arg.startsWith("-javaagent:"));
+        boolean recordingManualSpans = Telemetry.isRecordingManualSpans();
+        if (agentAttached != instrumentation.agent() || recordingManualSpans != instrumentation.manualSpans()) {
+            throw new IllegalStateException("Instrumentation '" + instrumentation.label() + "' expected agent="
+                    + instrumentation.agent() + " and manual spans=" + instrumentation.manualSpans()
+                    + ", but found agent=" + agentAttached + " and manual spans=" + recordingManualSpans);
+        }
+    }
+
+    static String option(SimpleCommandLinePropertySource options, String name, String defaultValue) {
+        String value = options.getProperty(name);
+        return value != null ? value : defaultValue;
+    }
+}
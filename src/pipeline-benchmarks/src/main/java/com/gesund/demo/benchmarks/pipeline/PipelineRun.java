@@ -0,0 +1,280 @@
+package com.gesund.demo.benchmarks.pipeline;
+
+import com.gesund.demo.billingservice.BillingServiceApplication;
+import com.gesund.demo.invoiceaggregator.InvoiceAggregatorApplication;
+import com.gesund.demo.invoiceaggregator.util.CustomerShards;
+import com.gesund.demo.invoiceaggregator.util.InMemoryBroker;
+import com.gesund.demo.invoiceaggregator.util.PipelineLatencyRecorder;
+import com.gesund.demo.paymentprocessor.PaymentProcessorApplication;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.kafka.test.utils.ContainerTestUtils;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * billing-service, payment-processor and invoice-aggregator started as three application
+ * contexts in this JVM, wired to one embedded broker and one database.
+ *
+ * Each service reads its own application.properties (packaged under its name by the
+ * build) with the connection settings overridden, so the pipeline runs with the same
+ * configuration as in a deployment apart from addresses and log levels. With
+ * messaging.system=inmemory there is no broker: the three contexts are handed one queue
+ * registry, so their in-memory queues are the same objects.
+ */
+@Slf4j
+final class PipelineRun implements AutoCloseable {
+
+    private static final String[] CURRENCIES = {"EUR", "USD", "GBP"};
+
+    private final String messagingSystem;
+    private final Instrumentation instrumentation;
+    private final List<ConfigurableApplicationContext> contexts = new ArrayList<>();
+    private final ConcurrentMap<String, Queue<?>> inMemoryQueues = new ConcurrentHashMap<>();
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+    private ConfigurableApplicationContext invoiceContext;
+    private URI billingUri;
+
+    private PipelineRun(String messagingSystem, Instrumentation instrumentation) {
+        this.messagingSystem = messagingSystem;
+        this.instrumentation = instrumentation;
+    }
+
+    /**
+     * Starts the three services and waits until their listeners are consuming.
+     *
+     * @param instrumentation How this JVM is instrumented, for the report
+     * @param jdbcUrl Database shared by the three services, as in the deployment
+     * @param brokerProperties Properties pointing the services at the embedded broker
+     */
+    static PipelineRun start(String messagingSystem, Instrumentation instrumentation, String jdbcUrl,
+                             Map<String, String> brokerProperties) {
+        PipelineRun run = new PipelineRun(messagingSystem, instrumentation);
+        try {
+            ConfigurableApplicationContext billing = run.startService(
+                    BillingServiceApplication.class, "billing-service", jdbcUrl, brokerProperties);
+            ConfigurableApplicationContext payment = run.startService(
+                    PaymentProcessorApplication.class, "payment-processor", jdbcUrl, brokerProperties);
+            run.invoiceContext = run.startService(
+                    InvoiceAggregatorApplication.class, "invoice-aggregator", jdbcUrl, brokerProperties);
+            run.billingUri = URI.create("http://127.0.0.1:"
+                    + billing.getEnvironment().getProperty("local.server.port") + "/api/billing");
+
+            if ("kafka".equals(messagingSystem)) {
+                // The consumers start at the latest offset, so anything sent before the
+                // partitions are assigned would be skipped
+                awaitAssignment(payment);
+                awaitAssignment(run.invoiceContext);
+            }
+            return run;
+        } catch (RuntimeException e) {
+            run.close();
+            throw e;
+        }
+    }
+
+    private ConfigurableApplicationContext startService(Class<?> application, String name, String jdbcUrl,
+                                                        Map<String, String> brokerProperties) {
+        List<String> args = new ArrayList<>();
+        args.add("--spring.config.location=classpath:/" + name + "/application.properties");
+        args.add("--server.port=0");
+        args.add("--spring.main.banner-mode=off");
+        args.add("--messaging.system=" + messagingSystem);
+        args.add("--spring.datasource.url=" + jdbcUrl);
+        args.add("--otel.sdk.disabled=true");
+        // The services log every message at INFO; at harness rates that would dominate the profile
+        args.add("--logging.level.root=WARN");
+        args.add("--logging.level.com.gesund.demo=WARN");
+        args.add("--logging.level.com.gesund.demo.benchmarks=INFO");
+        brokerProperties.forEach((key, value) -> args.add("--" + key + "=" + value));
+
+        long started = System.nanoTime();
+        SpringApplicationBuilder builder = new SpringApplicationBuilder(application).logStartupInfo(false);
+        if ("inmemory".equals(messagingSystem)) {
+            builder.initializers(context -> context.getBeanFactory()
+                    .registerSingleton(InMemoryBroker.REGISTRY_BEAN, inMemoryQueues));
+        }
+        ConfigurableApplicationContext context = builder.run(args.toArray(String[]::new));
+        contexts.add(context);
+        log.info("Started {} for {} in {} ms", name, messagingSystem,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        return context;
+    }
+
+    private static void awaitAssignment(ConfigurableApplicationContext context) {
+        KafkaListenerEndpointRegistry registry = context.getBean(KafkaListenerEndpointRegistry.class);
+        for (MessageListenerContainer container : registry.getListenerContainers()) {
+            ContainerTestUtils.waitForAssignment(container, EmbeddedBroker.PARTITIONS);
+        }
+    }
+
+    /**
+     * Pushes warmup charges through the pipeline, then the measured ones, and waits for
+     * the resulting invoices.
+     *
+     * @param drainTimeout How long the invoice count may stall before the remaining charges count as lost
+     * @return Throughput, latency and loss of the measured charges
+     */
+    Map<String, Object> measure(int charges, int warmup, int maxInFlight, Duration drainTimeout)
+            throws InterruptedException {
+        JdbcTemplate jdbcTemplate = invoiceContext.getBean(JdbcTemplate.class);
+        CustomerShards customerShards = invoiceContext.getBean(CustomerShards.class);
+        PipelineLatencyRecorder latencyRecorder = invoiceContext.getBean(PipelineLatencyRecorder.class);
+
+        if (warmup > 0) {
+            long before = countInvoices(jdbcTemplate, customerShards);
+            long accepted = send(warmup, maxInFlight)[0];
+            awaitInvoices(jdbcTemplate, customerShards, before + accepted, drainTimeout);
+            log.info("{}: warmup of {} charges done", messagingSystem, warmup);
+        }
+        latencyRecorder.reset();
+
+        long before = countInvoices(jdbcTemplate, customerShards);
+        long spansBefore = Telemetry.flushAndCount();
+        ResourceUsage usageBefore = ResourceUsage.sample();
+        long startNanos = System.nanoTime();
+        long[] outcome = send(charges, maxInFlight);
+        long sentNanos = System.nanoTime();
+        long accepted = outcome[0];
+        long lastProgressNanos = awaitInvoices(jdbcTemplate, customerShards, before + accepted, drainTimeout);
+        long delivered = countInvoices(jdbcTemplate, customerShards) - before;
+        ResourceUsage usage = ResourceUsage.sample().minus(usageBefore);
+        long spans = Telemetry.flushAndCount() - spansBefore;
+        long perMessage = Math.max(1, delivered);
+
+        double sendSeconds = (sentNanos - startNanos) / 1e9;
+        double totalSeconds = (Math.max(lastProgressNanos, sentNanos) - startNanos) / 1e9;
+        long lost = Math.max(0, accepted - delivered);
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("messagingSystem", messagingSystem);
+        result.put("instrumentation", instrumentation.label());
+        result.put("charges", charges);
+        result.put("accepted", accepted);
+        result.put("rejected", outcome[1]);
+        result.put("delivered", delivered);
+        result.put("lost", lost);
+        result.put("lossRate", accepted > 0 ? round((double) lost / accepted, 4) : 0.0);
+        result.put("sendSeconds", round(sendSeconds, 2));
+        result.put("totalSeconds", round(totalSeconds, 2));
+        result.put("offeredRatePerSecond", round(charges / sendSeconds, 1));
+        result.put("throughputPerSecond", round(delivered / totalSeconds, 1));
+        // CPU and allocation cover the whole JVM, including the load generator
+        result.put("cpuMicrosPerMessage", round(usage.cpuNanos() / 1000.0 / perMessage, 1));
+        result.put("allocatedBytesPerMessage", usage.allocatedBytes() / perMessage);
+        // Spans recorded by the agent are not visible here, only those of our own SDK
+        result.put("spansPerMessage", Telemetry.isInstalled() ? round((double) spans / perMessage, 2) : null);
+        result.put("latency", latencyRecorder.snapshot());
+        log.info("{}: {} of {} charges invoiced in {} s ({}/s), {} lost", messagingSystem, delivered, charges,
+                result.get("totalSeconds"), result.get("throughputPerSecond"), lost);
+        return result;
+    }
+
+    /**
+     * Posts charges to billing-service with at most maxInFlight outstanding.
+     *
+     * @return The number of accepted and rejected charges
+     */
+    private long[] send(int charges, int maxInFlight) throws InterruptedException {
+        Semaphore permits = new Semaphore(maxInFlight);
+        AtomicLong accepted = new AtomicLong();
+        AtomicLong rejected = new AtomicLong();
+        for (int i = 0; i < charges; i++) {
+            permits.acquire();
+            HttpRequest request = HttpRequest.newBuilder(billingUri)
+                    .timeout(Duration.ofSeconds(30))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(chargeJson()))
+                    .build();
+            httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, error) -> {
+                        if (error == null && response.statusCode() / 100 == 2) {
+                            accepted.incrementAndGet();
+                        } else {
+                            rejected.incrementAndGet();
+                        }
+                        permits.release();
+                    });
+        }
+        permits.acquire(maxInFlight);
+        return new long[] {accepted.get(), rejected.get()};
+    }
+
+    private static String chargeJson() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        BigDecimal amount = BigDecimal.valueOf(random.nextDouble(5, 500)).setScale(2, RoundingMode.HALF_UP);
+        return "{\"customerId\":\"customer-" + random.nextInt(1000)
+                + "\",\"productId\":\"product-" + random.nextInt(100)
+                + "\",\"amount\":" + amount
+                + ",\"currency\":\"" + CURRENCIES[random.nextInt(CURRENCIES.length)] + "\"}";
+    }
+
+    /**
+     * Waits until the invoice count reaches the target or stops growing for drainTimeout.
+     *
+     * @return System.nanoTime() of the last observed progress
+     */
+    private static long awaitInvoices(JdbcTemplate jdbcTemplate, CustomerShards customerShards, long target,
+                                      Duration drainTimeout)
+            throws InterruptedException {
+        long count = countInvoices(jdbcTemplate, customerShards);
+        long lastProgressNanos = System.nanoTime();
+        while (count < target && System.nanoTime() - lastProgressNanos < drainTimeout.toNanos()) {
+            Thread.sleep(20);
+            long current = countInvoices(jdbcTemplate, customerShards);
+            if (current > count) {
+                count = current;
+                lastProgressNanos = System.nanoTime();
+            }
+        }
+        return lastProgressNanos;
+    }
+
+    // Invoices are spread over the customer shards when sharding is enabled
+    private static long countInvoices(JdbcTemplate jdbcTemplate, CustomerShards customerShards) {
+        long[] total = new long[1];
+        customerShards.forEachShard(shard -> {
+            Long count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM invoice", Long.class);
+            total[0] += count != null ? count : 0;
+        });
+        return total[0];
+    }
+
+    private static double round(double value, int decimals) {
+        double scale = Math.pow(10, decimals);
+        return Math.round(value * scale) / scale;
+    }
+
+    @Override
+    public void close() {
+        // Consumers first, so nothing is left half-processed when the producer goes away
+        for (int i = contexts.size() - 1; i >= 0; i--) {
+            contexts.get(i).close();
+        }
+        contexts.clear();
+    }
+}
@@ -0,0 +1,32 @@
+package com.gesund.demo.benchmarks.pipeline;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Process CPU time and heap allocation at one point in time.
+ *
+ * Allocation is summed over the live threads, so bytes allocated by threads that ended in
+ * between are missed. The pipeline's work runs on pooled, long-lived threads (listener
+ * containers, the invoice executor, Tomcat and HTTP client workers), which keeps the error
+ * small.
+ */
+record ResourceUsage(long cpuNanos, long allocatedBytes) {
+
+    static ResourceUsage sample() {
+        com.sun.management.OperatingSystemMXBean os =
+                (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long allocated = 0;
+        for (long bytes : threads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            if (bytes > 0) {
+                allocated += bytes;
+            }
+        }
+        return new ResourceUsage(os.getProcessCpuTime(), allocated);
+    }
+
+    ResourceUsage minus(ResourceUsage earlier) {
+        return new ResourceUsage(cpuNanos - earlier.cpuNanos, allocatedBytes - earlier.allocatedBytes);
+    }
+}
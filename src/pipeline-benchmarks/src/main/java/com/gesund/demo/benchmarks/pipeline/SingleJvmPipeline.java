@@ -0,0 +1,56 @@
+package com.gesund.demo.benchmarks.pipeline;
+
+import com.gesund.demo.billingservice.BillingServiceApplication;
+import com.gesund.demo.invoiceaggregator.InvoiceAggregatorApplication;
+import com.gesund.demo.invoiceaggregator.util.InMemoryBroker;
+import com.gesund.demo.paymentprocessor.PaymentProcessorApplication;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Runs billing-service, payment-processor and invoice-aggregator in one JVM, passing
+ * messages through in-memory queues instead of a broker, for benchmarks and local runs
+ * without one. It ships only in benchmarks.jar, which also bundles JMH and the embedded
+ * brokers and database, and is not meant to be deployed.
+ *
+ * Each service keeps its own application.properties and port (8080, 8081, 8082). The
+ * arguments are given to all three, so they suit settings the services share, such as
+ * the database:
+ *
+ * <pre>
+ * java -cp target/benchmarks.jar com.gesund.demo.benchmarks.pipeline.SingleJvmPipeline \
+ *     --spring.datasource.url=jdbc:postgresql://localhost:5432/billingdb
+ * </pre>
+ *
+ * Queued messages only live on the heap: whatever is in flight when the process stops
+ * is lost.
+ */
+@Slf4j
+public class SingleJvmPipeline {
+
+    public static void main(String[] args) {
+        ConcurrentMap<String, Queue<?>> queues = new ConcurrentHashMap<>();
+        // Consumers first, so nothing billing-service accepts waits for a service that is still starting
+        start(InvoiceAggregatorApplication.class, "invoice-aggregator", queues, args);
+        start(PaymentProcessorApplication.class, "payment-processor", queues, args);
+        start(BillingServiceApplication.class, "billing-service", queues, args);
+        log.info("billing-service, payment-processor and invoice-aggregator running on in-memory queues");
+    }
+
+    private static void start(Class<?> application, String name, ConcurrentMap<String, Queue<?>> queues,
+                              String[] args) {
+        List<String> arguments = new ArrayList<>();
+        arguments.add("--spring.config.location=classpath:/" + name + "/application.properties");
+        arguments.add("--messaging.system=inmemory");
+        arguments.addAll(List.of(args));
+        new SpringApplicationBuilder(application)
+                .initializers(context -> context.getBeanFactory().registerSingleton(InMemoryBroker.REGISTRY_BEAN, queues))
+                .run(arguments.toArray(String[]::new));
+    }
+}
@@ -0,0 +1,103 @@
+package com.gesund.demo.benchmarks.pipeline;
+
+import io.opentelemetry.api.GlobalOpenTelemetry;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.propagation.W3CTraceContextPropagator;
+import io.opentelemetry.context.propagation.ContextPropagators;
+import io.opentelemetry.exporter.otlp.http.trace.OtlpHttpSpanExporter;
+import io.opentelemetry.sdk.OpenTelemetrySdk;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.BatchSpanProcessor;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * OpenTelemetry SDK for {@link Instrumentation#MANUAL} runs: every span the services
+ * create is recorded, batched and handed to an exporter, as in a deployment. The exporter
+ * counts the spans and, when given an endpoint, sends them on over OTLP/HTTP like the
+ * agent does; without one it only counts, which leaves out serialization and network.
+ */
+final class Telemetry {
+
+    private static final LongAdder exportedSpans = new LongAdder();
+    private static OpenTelemetrySdk sdk;
+
+    private Telemetry() {
+    }
+
+    /**
+     * Registers the SDK as GlobalOpenTelemetry. Must run before any service class that
+     * caches GlobalOpenTelemetry.get() is loaded.
+     *
+     * @param otlpEndpoint OTLP/HTTP base URL to export to, or null to only count the spans
+     */
+    static synchronized void install(String otlpEndpoint) {
+        if (sdk != null) {
+            return;
+        }
+        SpanExporter delegate = otlpEndpoint != null
+                ? OtlpHttpSpanExporter.builder().setEndpoint(otlpEndpoint + "/v1/traces").build()
+                : null;
+        sdk = OpenTelemetrySdk.builder()
+                .setTracerProvider(SdkTracerProvider.builder()
+                        .addSpanProcessor(BatchSpanProcessor.builder(new CountingExporter(delegate)).build())
+                        .build())
+                .setPropagators(ContextPropagators.create(W3CTraceContextPropagator.getInstance()))
+                .buildAndRegisterGlobal();
+    }
+
+    static boolean isInstalled() {
+        return sdk != null;
+    }
+
+    /**
+     * Whether spans started through GlobalOpenTelemetry, as the services start theirs, are
+     * recorded by anything: this SDK or the Java agent's.
+     */
+    static boolean isRecordingManualSpans() {
+        Span probe = GlobalOpenTelemetry.getTracer("pipeline-harness").spanBuilder("instrumentation-probe").startSpan();
+        boolean recording = probe.isRecording();
+        probe.end();
+        return recording;
+    }
+
+    /**
+     * Flushes pending spans and returns how many were exported so far.
+     */
+    static long flushAndCount() {
+        if (sdk != null) {
+            sdk.getSdkTracerProvider().forceFlush().join(10, TimeUnit.SECONDS);
+        }
+        return exportedSpans.sum();
+    }
+
+    private static final class CountingExporter implements SpanExporter {
+
+        private final SpanExporter delegate;
+
+        CountingExporter(SpanExporter delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public CompletableResultCode export(Collection<SpanData> spans) {
+            exportedSpans.add(spans.size());
+            return delegate != null ? delegate.export(spans) : CompletableResultCode.ofSuccess();
+        }
+
+        @Override
+        public CompletableResultCode flush() {
+            return delegate != null ? delegate.flush() : CompletableResultCode.ofSuccess();
+        }
+
+        @Override
+        public CompletableResultCode shutdown() {
+            return delegate != null ? delegate.shutdown() : CompletableResultCode.ofSuccess();
+        }
+    }
+}